@@ -0,0 +1,206 @@
+package com.example.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Сравнивает результаты JMH с эталонными и находит регрессии.
+ *
+ * <p>Оба файла — в формате CSV, который JMH пишет с {@code -rf csv -rff файл}; строки,
+ * начинающиеся с {@code #}, считаются комментариями. Регрессия — результат хуже эталона
+ * больше чем на порог (по умолчанию 10 %) и больше суммарной погрешности двух измерений.
+ * Эталон, погрешность которого сама больше порога, ничего не доказывает: такие строки
+ * не сравниваются и печатаются как {@code NOISY} — их стоит перезаписать.</p>
+ *
+ * <pre>java -cp target/benchmarks.jar com.example.benchmarks.BaselineComparator baseline.csv results.csv [порог-в-процентах]</pre>
+ *
+ * <p>Код выхода 1, если найдена хотя бы одна регрессия.</p>
+ */
+public final class BaselineComparator {
+
+    /**
+     * Порог регрессии по умолчанию, в процентах.
+     */
+    public static final double DEFAULT_THRESHOLD = 10;
+
+    private BaselineComparator() {
+    }
+
+    /**
+     * Точка входа: {@code <эталон.csv> <результаты.csv> [порог]}.
+     *
+     * @param args аргументы командной строки
+     * @throws IOException при ошибке чтения файлов
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparator <baseline.csv> <results.csv> [threshold-percent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+        Map<String, Result> baseline = read(Paths.get(args[0]));
+        Map<String, Result> current = read(Paths.get(args[1]));
+        int regressions = 0;
+        int noisy = 0;
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result now = entry.getValue();
+            Result was = baseline.get(entry.getKey());
+            if (was == null) {
+                System.out.printf(Locale.ROOT, "NEW        %s: %.3f %s%n", entry.getKey(), now.score, now.unit);
+                continue;
+            }
+            if (!was.unit.equals(now.unit)) {
+                System.out.printf(Locale.ROOT, "SKIPPED    %s: unit %s vs %s%n", entry.getKey(), was.unit, now.unit);
+                continue;
+            }
+            double baselineError = was.error / was.score * 100;
+            if (baselineError > threshold) {
+                System.out.printf(Locale.ROOT, "NOISY      %s: baseline %.3f %s +/- %.1f%%, ignored%n",
+                        entry.getKey(), was.score, was.unit, baselineError);
+                noisy++;
+                continue;
+            }
+            double change = (now.score - was.score) / was.score * 100;
+            // Для времени на операцию больше — хуже, для пропускной способности — лучше
+            double worse = now.higherIsBetter() ? -change : change;
+            boolean beyondError = Math.abs(now.score - was.score) > was.error + now.error;
+            String verdict;
+            if (worse > threshold && beyondError) {
+                verdict = "REGRESSION";
+                regressions++;
+            } else if (worse < -threshold && beyondError) {
+                verdict = "IMPROVED  ";
+            } else {
+                verdict = "OK        ";
+            }
+            System.out.printf(Locale.ROOT, "%s %s: %.3f -> %.3f %s (%+.1f%%)%n",
+                    verdict, entry.getKey(), was.score, now.score, now.unit, change);
+        }
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.println("MISSING    " + key);
+            }
+        }
+        System.out.println(regressions == 0 ? "No regressions" : regressions + " regression(s)");
+        if (noisy > 0) {
+            System.out.printf(Locale.ROOT, "%d baseline row(s) ignored: error above %.1f%%, re-record them%n",
+                    noisy, threshold);
+        }
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    /**
+     * Читает результаты из CSV JMH. Ключ — имя бенчмарка и значения параметров.
+     *
+     * @param file файл
+     * @return результаты по ключам в порядке файла
+     * @throws IOException при ошибке чтения или неизвестном формате
+     */
+    static Map<String, Result> read(Path file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<String> header = null;
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                List<String> fields = split(line);
+                if (header == null) {
+                    header = fields;
+                    continue;
+                }
+                StringBuilder key = new StringBuilder(get(header, fields, "Benchmark", file));
+                for (int i = 0; i < header.size() && i < fields.size(); i++) {
+                    if (header.get(i).startsWith("Param: ") && !fields.get(i).isEmpty()) {
+                        key.append(' ').append(header.get(i).substring(7)).append('=').append(fields.get(i));
+                    }
+                }
+                String error = get(header, fields, "Score Error (99.9%)", file);
+                results.put(key.toString(), new Result(
+                        get(header, fields, "Mode", file),
+                        Double.parseDouble(get(header, fields, "Score", file)),
+                        error.isEmpty() || error.equals("NaN") ? 0 : Double.parseDouble(error),
+                        get(header, fields, "Unit", file)));
+            }
+        }
+        return results;
+    }
+
+    private static String get(List<String> header, List<String> fields, String column, Path file)
+            throws IOException {
+        int index = header.indexOf(column);
+        if (index < 0) {
+            throw new IOException("Column \"" + column + "\" not found in " + file);
+        }
+        return index < fields.size() ? fields.get(index) : "";
+    }
+
+    /**
+     * Разбивает строку CSV на поля с учётом кавычек.
+     */
+    private static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Результат одного бенчмарка.
+     */
+    static final class Result {
+
+        final String mode;
+
+        final double score;
+
+        final double error;
+
+        final String unit;
+
+        Result(String mode, double score, double error, String unit) {
+            this.mode = mode;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+
+        /**
+         * Пропускная способность (ops/время): чем больше, тем лучше.
+         */
+        boolean higherIsBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+}
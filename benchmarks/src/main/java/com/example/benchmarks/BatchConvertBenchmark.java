@@ -0,0 +1,91 @@
+package com.example.benchmarks;
+
+import com.example.BatchConverter;
+import com.example.BulkExecutors;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Пакетное преобразование множества маленьких файлов: пул обычных потоков против
+ * виртуальных потоков ввода-вывода с пулом разбора по числу ядер.
+ *
+ * <p>Одна операция — преобразование всего дерева, пропускная способность в файлах
+ * в секунду равна {@code files / score}. Виртуальные потоки есть только на Java 21+;
+ * на более старой JVM вариант {@code VIRTUAL} пропускается.</p>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class BatchConvertBenchmark {
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public String pipeline;
+
+    @Param({"10000"})
+    public int files;
+
+    /**
+     * Примерный размер одного файла в символах.
+     */
+    @Param({"2048"})
+    public int fileSize;
+
+    private Path source;
+
+    private Path target;
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        if ("VIRTUAL".equals(pipeline) && !BulkExecutors.virtualThreadsAvailable()) {
+            throw new IllegalStateException("Virtual threads require Java 21 or later");
+        }
+        source = Files.createTempDirectory("batch-src-");
+        CorpusGenerator.Style[] styles = CorpusGenerator.Style.values();
+        for (int i = 0; i < files; i++) {
+            // По 500 файлов в каталоге, как в типичном архиве документов
+            Path dir = Files.createDirectories(source.resolve("d" + i / 500));
+            String html = CorpusGenerator.generate(styles[i % styles.length], fileSize, i);
+            Files.write(dir.resolve("f" + i + ".doc"), html.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void createTarget() throws IOException {
+        target = Files.createTempDirectory("batch-dst-");
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteTarget() throws IOException {
+        delete(target);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        delete(source);
+    }
+
+    @Benchmark
+    public BatchConverter.Report convert() throws Exception {
+        BatchConverter converter = new BatchConverter(source, target, Runtime.getRuntime().availableProcessors(),
+                60_000, null, StandardCharsets.UTF_8, BatchConverter.Pipeline.valueOf(pipeline));
+        return converter.convertAll();
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.benchmarks;
+
+import com.example.WordProcessorEditorKit;
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Хранилища текста без документа вокруг: {@code GapContent}, таблица фрагментов
+ * и «верёвка» ({@link WordProcessorEditorKit.ContentEngine}) на вставке и удалении
+ * в случайных местах, посимвольном наборе и чтении всего текста.
+ *
+ * <p>Текст — символы сгенерированного HTML ({@link CorpusGenerator.Style#WORD}):
+ * хранилищу неважно, разметка это или нет. Чтение идёт по содержимому, уже
+ * раздробленному {@value #EDITS} случайными правками, — так оно выглядит после
+ * работы с документом.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ContentBenchmark {
+
+    /**
+     * Число случайных правок в содержимом для чтения.
+     */
+    static final int EDITS = 10_000;
+
+    private static final String WORD = "слово ";
+
+    /**
+     * Способ хранения текста ({@link WordProcessorEditorKit.ContentEngine}).
+     */
+    @Param({"GAP", "PIECE_TABLE", "ROPE"})
+    public String engine;
+
+    /**
+     * Размер текста в мегабайтах.
+     */
+    @Param({"1", "8"})
+    public int sizeMb;
+
+    private String text;
+
+    private AbstractDocument.Content content;
+
+    private AbstractDocument.Content fragmented;
+
+    private final Segment segment = new Segment();
+
+    private Random random;
+
+    private int count;
+
+    private int caret;
+
+    @Setup(Level.Trial)
+    public void generate() throws BadLocationException {
+        text = CorpusGenerator.generate(CorpusGenerator.Style.WORD, sizeMb * 1024 * 1024,
+                CorpusGenerator.DEFAULT_SEED);
+        fragmented = fill();
+        Random edits = new Random(CorpusGenerator.DEFAULT_SEED);
+        for (int i = 0; i < EDITS; i++) {
+            edit(fragmented, edits, i);
+        }
+        segment.setPartialReturn(true);
+    }
+
+    @Setup(Level.Iteration)
+    public void freshContent() throws BadLocationException {
+        content = fill();
+        random = new Random(CorpusGenerator.DEFAULT_SEED);
+        count = 0;
+        caret = content.length() / 2;
+    }
+
+    /**
+     * Вставка или удаление слова в случайном месте, по очереди.
+     */
+    @Benchmark
+    public AbstractDocument.Content randomEdit() throws BadLocationException {
+        edit(content, random, count++);
+        return content;
+    }
+
+    /**
+     * Набор по одному символу подряд с середины текста.
+     */
+    @Benchmark
+    public AbstractDocument.Content typing() throws BadLocationException {
+        content.insertString(caret++, String.valueOf(WORD.charAt(count++ % WORD.length())));
+        return content;
+    }
+
+    /**
+     * Чтение всего текста кусками, которые хранилище отдаёт без копирования.
+     */
+    @Benchmark
+    public long iterate() throws BadLocationException {
+        long sum = 0;
+        int length = fragmented.length();
+        for (int offset = 0; offset < length; offset += segment.count) {
+            fragmented.getChars(offset, length - offset, segment);
+            sum += segment.array[segment.offset] + segment.count;
+        }
+        return sum;
+    }
+
+    private AbstractDocument.Content fill() throws BadLocationException {
+        AbstractDocument.Content filled = WordProcessorEditorKit.ContentEngine.valueOf(engine).create();
+        filled.insertString(0, text);
+        return filled;
+    }
+
+    /**
+     * Чётная правка вставляет слово, нечётная удаляет столько же: длина текста не растёт.
+     */
+    private static void edit(AbstractDocument.Content target, Random random, int n) throws BadLocationException {
+        int length = target.length() - 1;
+        if (n % 2 == 0) {
+            target.insertString(random.nextInt(length), WORD);
+        } else {
+            target.remove(random.nextInt(length - WORD.length()), WORD.length());
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.example.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Генератор синтетических документов для бенчмарков.
+ *
+ * <p>Документы воспроизводимы: одинаковые стиль, размер и зерно дают один и тот же HTML.
+ * Из командной строки:</p>
+ *
+ * <pre>java -cp target/benchmarks.jar com.example.benchmarks.CorpusGenerator word 10 corpus/word-10mb.doc</pre>
+ */
+public final class CorpusGenerator {
+
+    /**
+     * Вид документа.
+     */
+    public enum Style {
+
+        /**
+         * Как сохраняет Word: классы {@code MsoNormal}, {@code <span>} со стилями шрифта,
+         * {@code <o:p>}, изредка таблицы.
+         */
+        WORD,
+
+        /**
+         * Как Word сохраняет «веб-страницу» без фильтра: то же, что {@link #WORD}, плюс
+         * условные комментарии с {@code <xml>} и VML, стили {@code mso-…}, вложенные
+         * {@code <span lang>}, маркеры списков {@code <![if !supportLists]>}.
+         */
+        WORD_UNFILTERED,
+
+        /**
+         * Много заголовков {@code <h1>}–{@code <h3>} и коротких абзацев.
+         */
+        HEADINGS,
+
+        /**
+         * Абзацы, в которых каждое третье-четвёртое слово — ссылка.
+         */
+        LINKS
+    }
+
+    /**
+     * Зерно генератора по умолчанию.
+     */
+    public static final long DEFAULT_SEED = 42;
+
+    private static final String[] WORDS = {
+            "документ", "текст", "абзац", "редактор", "строка", "сохранение", "формат", "ссылка",
+            "заголовок", "таблица", "страница", "шрифт", "отступ", "раздел", "список", "правка",
+            "и", "в", "на", "с", "по", "для", "не", "что", "это", "как", "от", "до",
+            "document", "text", "paragraph", "editor", "line", "format", "page", "section"
+    };
+
+    private CorpusGenerator() {
+    }
+
+    /**
+     * Создаёт документ заданного вида размером не меньше {@code bytes} символов.
+     *
+     * @param style вид документа
+     * @param bytes примерный размер в символах
+     * @param seed  зерно генератора
+     * @return HTML документа
+     */
+    public static String generate(Style style, int bytes, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(bytes + 4096);
+        header(sb, style);
+        int paragraph = 0;
+        while (sb.length() < bytes) {
+            switch (style) {
+                case WORD:
+                    wordParagraph(sb, random, paragraph);
+                    break;
+                case WORD_UNFILTERED:
+                    unfilteredWordParagraph(sb, random, paragraph);
+                    break;
+                case HEADINGS:
+                    headingParagraph(sb, random, paragraph);
+                    break;
+                default:
+                    linkParagraph(sb, random);
+            }
+            paragraph++;
+        }
+        footer(sb, style);
+        return sb.toString();
+    }
+
+    /**
+     * Записывает документ в файл в кодировке UTF-8.
+     *
+     * @param style  вид документа
+     * @param bytes  примерный размер в символах
+     * @param seed   зерно генератора
+     * @param target файл
+     * @throws IOException при ошибке записи
+     */
+    public static void write(Style style, int bytes, long seed, Path target) throws IOException {
+        try (Writer out = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            out.write(generate(style, bytes, seed));
+        }
+    }
+
+    /**
+     * Точка входа: {@code <word|word_unfiltered|headings|links> <мегабайты> <файл> [зерно]}.
+     *
+     * @param args аргументы командной строки
+     * @throws IOException при ошибке записи
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: CorpusGenerator <word|word_unfiltered|headings|links> <megabytes> <file> [seed]");
+            System.exit(2);
+        }
+        Style style = Style.valueOf(args[0].toUpperCase(Locale.ROOT));
+        int bytes = (int) (Double.parseDouble(args[1]) * 1024 * 1024);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+        Path target = Paths.get(args[2]);
+        write(style, bytes, seed, target);
+        System.out.println(target + ": " + Files.size(target) + " bytes");
+    }
+
+    private static void header(StringBuilder sb, Style style) {
+        if (style == Style.WORD_UNFILTERED) {
+            unfilteredWordHeader(sb);
+        } else if (style == Style.WORD) {
+            sb.append("<html xmlns:o=\"urn:schemas-microsoft-com:office:office\"")
+                    .append(" xmlns:w=\"urn:schemas-microsoft-com:office:word\">\n<head>\n")
+                    .append("<meta http-equiv=Content-Type content=\"text/html; charset=utf-8\">\n")
+                    .append("<meta name=Generator content=\"Microsoft Word 15 (filtered)\">\n")
+                    .append("<style>\np.MsoNormal, li.MsoNormal {margin:0cm; margin-bottom:.0001pt;")
+                    .append(" font-size:12.0pt; font-family:\"Times New Roman\",serif;}\n")
+                    .append("h1 {margin-top:12.0pt; font-size:16.0pt;}\n</style>\n</head>\n")
+                    .append("<body lang=RU>\n<div class=WordSection1>\n");
+        } else {
+            sb.append("<html>\n<head>\n<title>corpus</title>\n</head>\n<body>\n");
+        }
+    }
+
+    private static void footer(StringBuilder sb, Style style) {
+        if (style == Style.WORD || style == Style.WORD_UNFILTERED) {
+            sb.append("</div>\n");
+        }
+        sb.append("</body>\n</html>\n");
+    }
+
+    private static void wordParagraph(StringBuilder sb, Random random, int index) {
+        if (index % 40 == 39) {
+            sb.append("<table class=MsoTableGrid border=1 cellspacing=0 cellpadding=0>\n");
+            for (int row = 0; row < 3; row++) {
+                sb.append("<tr>");
+                for (int col = 0; col < 3; col++) {
+                    sb.append("<td width=200 valign=top><p class=MsoNormal>");
+                    words(sb, random, 2 + random.nextInt(4));
+                    sb.append("<o:p></o:p></p></td>");
+                }
+                sb.append("</tr>\n");
+            }
+            sb.append("</table>\n");
+            return;
+        }
+        if (index % 25 == 0) {
+            sb.append("<h1><span lang=RU>");
+            words(sb, random, 3 + random.nextInt(4));
+            sb.append("<o:p></o:p></span></h1>\n");
+            return;
+        }
+        sb.append("<p class=MsoNormal style='text-indent:35.4pt'>");
+        int spans = 1 + random.nextInt(4);
+        for (int i = 0; i < spans; i++) {
+            sb.append("<span style='font-size:12.0pt;font-family:\"Times New Roman\",serif'>");
+            if (random.nextInt(5) == 0) {
+                String tag = random.nextBoolean() ? "b" : "i";
+                sb.append('<').append(tag).append('>');
+                words(sb, random, 1 + random.nextInt(3));
+                // Пробел после слов выносим за пределы тега
+                sb.setLength(sb.length() - 1);
+                sb.append("</").append(tag).append("> ");
+            }
+            words(sb, random, 8 + random.nextInt(20));
+            sb.append("</span>");
+        }
+        sb.append("<o:p></o:p></p>\n");
+    }
+
+    private static void unfilteredWordHeader(StringBuilder sb) {
+        sb.append("<html xmlns:v=\"urn:schemas-microsoft-com:vml\"\n")
+                .append("xmlns:o=\"urn:schemas-microsoft-com:office:office\"\n")
+                .append("xmlns:w=\"urn:schemas-microsoft-com:office:word\"\n")
+                .append("xmlns:m=\"http://schemas.microsoft.com/office/2004/12/omml\"\n")
+                .append("xmlns=\"http://www.w3.org/TR/REC-html40\">\n\n<head>\n")
+                .append("<meta http-equiv=Content-Type content=\"text/html; charset=utf-8\">\n")
+                .append("<meta name=ProgId content=Word.Document>\n")
+                .append("<meta name=Generator content=\"Microsoft Word 15\">\n")
+                .append("<meta name=Originator content=\"Microsoft Word 15\">\n")
+                .append("<link rel=File-List href=\"corpus_files/filelist.xml\">\n")
+                .append("<!--[if gte mso 9]><xml>\n <o:DocumentProperties>\n  <o:Author>corpus</o:Author>\n")
+                .append("  <o:Revision>2</o:Revision>\n  <o:Pages>1</o:Pages>\n </o:DocumentProperties>\n")
+                .append("</xml><![endif]-->\n<!--[if gte mso 9]><xml>\n <w:WordDocument>\n")
+                .append("  <w:View>Print</w:View>\n  <w:TrackMoves>false</w:TrackMoves>\n")
+                .append("  <w:ValidateAgainstSchemas/>\n  <w:DoNotPromoteQF/>\n")
+                .append("  <w:LidThemeOther>RU</w:LidThemeOther>\n </w:WordDocument>\n</xml><![endif]-->")
+                .append("<!--[if gte mso 9]><xml>\n <w:LatentStyles DefLockedState=\"false\" DefUnhideWhenUsed=\"false\"")
+                .append(" DefSemiHidden=\"false\" DefQFormat=\"false\" DefPriority=\"99\" LatentStyleCount=\"376\">\n");
+        for (int i = 0; i < 376; i++) {
+            sb.append("  <w:LsdException Locked=\"false\" Priority=\"").append(i % 100)
+                    .append("\" SemiHidden=\"true\" UnhideWhenUsed=\"true\" Name=\"style ").append(i).append("\"/>\n");
+        }
+        sb.append(" </w:LatentStyles>\n</xml><![endif]-->\n<style>\n<!--\n /* Font Definitions */\n")
+                .append(" @font-face\n\t{font-family:\"Cambria Math\";\n\tpanose-1:2 4 5 3 5 4 6 3 2 4;\n")
+                .append("\tmso-font-charset:204;\n\tmso-generic-font-family:roman;\n\tmso-font-pitch:variable;\n")
+                .append("\tmso-font-signature:-536869121 1107305727 33554432 0 415 0;}\n")
+                .append(" /* Style Definitions */\n p.MsoNormal, li.MsoNormal, div.MsoNormal\n")
+                .append("\t{mso-style-unhide:no;\n\tmso-style-qformat:yes;\n\tmso-style-parent:\"\";\n")
+                .append("\tmargin:0cm;\n\tmargin-bottom:.0001pt;\n\tmso-pagination:widow-orphan;\n")
+                .append("\tfont-size:12.0pt;\n\tfont-family:\"Times New Roman\",serif;\n")
+                .append("\tmso-fareast-font-family:\"Times New Roman\";}\n")
+                .append("@page WordSection1\n\t{size:595.3pt 841.9pt;\n\tmargin:2.0cm 42.5pt 2.0cm 3.0cm;\n")
+                .append("\tmso-header-margin:35.4pt;\n\tmso-footer-margin:35.4pt;\n\tmso-paper-source:0;}\n")
+                .append("div.WordSection1\n\t{page:WordSection1;}\n-->\n</style>\n")
+                .append("<!--[if gte mso 10]>\n<style>\n table.MsoNormalTable\n\t{mso-style-name:\"Обычная таблица\";\n")
+                .append("\tmso-tstyle-rowband-size:0;\n\tmso-tstyle-colband-size:0;}\n</style>\n<![endif]-->\n")
+                .append("</head>\n\n<body lang=RU style='tab-interval:35.4pt'>\n\n<div class=WordSection1>\n\n");
+    }
+
+    private static void unfilteredWordParagraph(StringBuilder sb, Random random, int index) {
+        if (index % 40 == 39) {
+            sb.append("<table class=MsoTableGrid border=1 cellspacing=0 cellpadding=0\n")
+                    .append(" style='border-collapse:collapse;border:none;mso-border-alt:solid windowtext .5pt;\n")
+                    .append(" mso-yfti-tbllook:1184;mso-padding-alt:0cm 5.4pt 0cm 5.4pt'>\n");
+            for (int row = 0; row < 3; row++) {
+                sb.append(" <tr style='mso-yfti-irow:").append(row).append("'>\n");
+                for (int col = 0; col < 3; col++) {
+                    sb.append("  <td width=200 valign=top style='width:150.0pt;border:solid windowtext 1.0pt;\n")
+                            .append("  mso-border-alt:solid windowtext .5pt;padding:0cm 5.4pt 0cm 5.4pt'>\n")
+                            .append("  <p class=MsoNormal><span lang=RU style='mso-ansi-language:RU'>");
+                    words(sb, random, 2 + random.nextInt(4));
+                    sb.append("<o:p></o:p></span></p>\n  </td>\n");
+                }
+                sb.append(" </tr>\n");
+            }
+            sb.append("</table>\n\n");
+            return;
+        }
+        if (index % 25 == 0) {
+            sb.append("<h1><a name=\"_Toc").append(100000 + index).append("\"><span lang=RU style='mso-ansi-language:RU'>");
+            words(sb, random, 3 + random.nextInt(4));
+            sb.append("<o:p></o:p></span></a></h1>\n\n");
+            return;
+        }
+        if (index % 30 == 7) {
+            // Картинка: VML для Word и <img> для остальных
+            sb.append("<p class=MsoNormal><span style='mso-no-proof:yes'><!--[if gte vml 1]><v:shape id=\"Picture_x0020_")
+                    .append(index).append("\"\n o:spid=\"_x0000_i").append(1025 + index)
+                    .append("\" type=\"#_x0000_t75\" style='width:200pt;height:100pt;visibility:visible;")
+                    .append("mso-wrap-style:square'>\n <v:imagedata src=\"corpus_files/image").append(index)
+                    .append(".png\" o:title=\"\"/>\n</v:shape><![endif]--><![if !vml]><img width=267 height=133\n")
+                    .append("src=\"corpus_files/image").append(index).append(".jpg\" v:shapes=\"Picture_x0020_")
+                    .append(index).append("\"><![endif]></span><o:p></o:p></p>\n\n");
+            return;
+        }
+        if (index % 10 == 3) {
+            sb.append("<p class=MsoListParagraphCxSpMiddle style='text-indent:-18.0pt;mso-list:l0 level1 lfo1'>")
+                    .append("<![if !supportLists]><span lang=RU style='font-family:Symbol;mso-fareast-font-family:Symbol;\n")
+                    .append("mso-bidi-font-family:Symbol;mso-ansi-language:RU'><span style='mso-list:Ignore'>·<span\n")
+                    .append("style='font:7.0pt \"Times New Roman\"'>&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;\n")
+                    .append("</span></span></span><![endif]><span lang=RU style='mso-ansi-language:RU'>");
+            words(sb, random, 4 + random.nextInt(8));
+            sb.append("<o:p></o:p></span></p>\n\n");
+            return;
+        }
+        sb.append("<p class=MsoNormal style='text-indent:35.4pt;mso-pagination:widow-orphan'>");
+        int spans = 1 + random.nextInt(4);
+        for (int i = 0; i < spans; i++) {
+            sb.append("<span lang=RU style='font-size:12.0pt;mso-bidi-font-size:11.0pt;font-family:\"Times New Roman\",serif;\n")
+                    .append("mso-fareast-font-family:\"Times New Roman\";mso-ansi-language:RU;mso-fareast-language:RU'>");
+            if (random.nextInt(5) == 0) {
+                String tag = random.nextBoolean() ? "b" : "i";
+                sb.append('<').append(tag).append("><span style='mso-bidi-font-weight:normal'>");
+                words(sb, random, 1 + random.nextInt(3));
+                sb.setLength(sb.length() - 1);
+                sb.append("</span></").append(tag).append("><span style='mso-spacerun:yes'> </span>");
+            }
+            words(sb, random, 8 + random.nextInt(20));
+            sb.append("</span>");
+        }
+        sb.append("<span lang=RU style='mso-ansi-language:RU'><o:p></o:p></span></p>\n\n");
+    }
+
+    private static void headingParagraph(StringBuilder sb, Random random, int index) {
+        if (index % 2 == 0) {
+            int level = 1 + random.nextInt(3);
+            sb.append("<h").append(level).append('>');
+            words(sb, random, 2 + random.nextInt(5));
+            sb.append("</h").append(level).append(">\n");
+        } else {
+            sb.append("<p>");
+            words(sb, random, 10 + random.nextInt(30));
+            sb.append("</p>\n");
+        }
+    }
+
+    private static void linkParagraph(StringBuilder sb, Random random) {
+        sb.append("<p>");
+        int count = 15 + random.nextInt(30);
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(4) == 0) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                sb.append("<a href=\"https://example.com/").append(random.nextInt(10000)).append('/')
+                        .append(i).append("\">").append(word).append("</a> ");
+            } else {
+                words(sb, random, 1);
+            }
+        }
+        sb.append("</p>\n");
+    }
+
+    private static void words(StringBuilder sb, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        if (count > 0 && random.nextInt(6) == 0) {
+            sb.append('.');
+        }
+        sb.append(' ');
+    }
+}
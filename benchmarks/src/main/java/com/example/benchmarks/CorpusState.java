@@ -0,0 +1,100 @@
+package com.example.benchmarks;
+
+import com.example.WordProcessorEditorKit;
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.text.html.HTMLDocument;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Общий для бенчмарков документ: сгенерированный HTML, тот же HTML в файле
+ * и уже разобранный {@link HTMLDocument}.
+ *
+ * <p>Вид, размер и способ хранения текста задаются параметрами JMH, например
+ * {@code -p style=WORD -p sizeMb=8 -p engine=ROPE}.</p>
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+
+    /**
+     * Вид документа ({@link CorpusGenerator.Style}).
+     */
+    @Param({"WORD", "HEADINGS", "LINKS"})
+    public String style;
+
+    /**
+     * Размер документа в мегабайтах.
+     */
+    @Param({"1", "8"})
+    public int sizeMb;
+
+    /**
+     * Способ хранения текста ({@link WordProcessorEditorKit.ContentEngine}).
+     */
+    @Param({"PIECE_TABLE"})
+    public String engine;
+
+    /**
+     * Набор редактора с выбранным способом хранения.
+     */
+    public WordProcessorEditorKit kit;
+
+    /**
+     * HTML документа.
+     */
+    public String html;
+
+    /**
+     * Временный файл с HTML в кодировке по умолчанию — так его прочитает редактор.
+     */
+    public Path file;
+
+    /**
+     * Разобранный документ. Бенчмарки, которые его меняют, работают с копией.
+     */
+    public HTMLDocument document;
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        kit = new WordProcessorEditorKit(WordProcessorEditorKit.ContentEngine.valueOf(engine));
+        html = CorpusGenerator.generate(CorpusGenerator.Style.valueOf(style), sizeMb * 1024 * 1024,
+                CorpusGenerator.DEFAULT_SEED);
+        file = Files.createTempFile("corpus-", ".doc");
+        Files.write(file, html.getBytes(Charset.defaultCharset()));
+        document = parse();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Разбирает HTML документа в новый документ.
+     *
+     * @return документ
+     * @throws Exception при ошибке разбора
+     */
+    public HTMLDocument parse() throws Exception {
+        return parse(new StringReader(html));
+    }
+
+    /**
+     * Разбирает HTML из источника в новый документ.
+     *
+     * @param source источник HTML, например {@link #html} через фильтр
+     * @return документ
+     * @throws Exception при ошибке разбора
+     */
+    public HTMLDocument parse(Reader source) throws Exception {
+        HTMLDocument doc = (HTMLDocument) kit.createDefaultDocument();
+        doc.putProperty("IgnoreCharsetDirective", Boolean.TRUE);
+        kit.read(source, doc, 0);
+        return doc;
+    }
+}
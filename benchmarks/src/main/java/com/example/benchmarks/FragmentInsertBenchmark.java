@@ -0,0 +1,68 @@
+package com.example.benchmarks;
+
+import com.example.HtmlFragment;
+import com.example.WordProcessorDocument;
+import com.example.WordProcessorEditorKit;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Вставка заголовка и ссылки: разбор HTML ({@code HTMLEditorKit.insertHTML})
+ * против готового фрагмента ({@link WordProcessorDocument#insertFragment}).
+ *
+ * <p>Каждая вставка идёт в свежий документ из одного абзаца, чтобы документ
+ * не рос от вызова к вызову. Выделение памяти на вставку показывает профилировщик
+ * {@code gc}:</p>
+ *
+ * <pre>java -jar target/benchmarks.jar FragmentInsertBenchmark -prof gc</pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FragmentInsertBenchmark {
+
+    private static final String TEMPLATE = "<html><body><p>Текст абзаца, в который вставляется фрагмент</p></body></html>";
+
+    @Param({"heading", "link"})
+    public String fragment;
+
+    private final WordProcessorEditorKit kit = new WordProcessorEditorKit();
+
+    private HtmlFragment html;
+
+    private WordProcessorDocument document;
+
+    private int position;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        html = "heading".equals(fragment)
+                ? HtmlFragment.heading(1, "Заголовок")
+                : HtmlFragment.link("https://example.com", "ссылка");
+    }
+
+    @Setup(Level.Invocation)
+    public void freshDocument() throws Exception {
+        document = (WordProcessorDocument) kit.createDefaultDocument();
+        kit.read(new StringReader(TEMPLATE), document, 0);
+        // Середина абзаца: заголовок делит его, ссылка встаёт в текст
+        position = document.getLength() / 2;
+    }
+
+    @Benchmark
+    public WordProcessorDocument insertHtml() throws Exception {
+        kit.insertHTML(document, position, html.toHtml(), 0, 0, null);
+        return document;
+    }
+
+    @Benchmark
+    public WordProcessorDocument insertFragment() throws Exception {
+        document.insertFragment(position, html);
+        return document;
+    }
+}
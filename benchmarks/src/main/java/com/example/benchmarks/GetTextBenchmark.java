@@ -0,0 +1,39 @@
+package com.example.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Получение текста документа: {@code JEditorPane.getText()} (весь документ как HTML
+ * в одной строке) и {@code Document.getText} (простой текст из содержимого).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class GetTextBenchmark {
+
+    private JEditorPane editor;
+
+    @Setup(Level.Trial)
+    public void createEditor(CorpusState corpus) {
+        editor = new JEditorPane();
+        editor.setEditorKit(corpus.kit);
+        editor.setDocument(corpus.document);
+    }
+
+    @Benchmark
+    public String editorHtml() {
+        return editor.getText();
+    }
+
+    @Benchmark
+    public String documentText(CorpusState corpus) throws BadLocationException {
+        return corpus.document.getText(0, corpus.document.getLength());
+    }
+}
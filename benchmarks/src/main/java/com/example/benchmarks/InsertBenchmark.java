@@ -0,0 +1,73 @@
+package com.example.benchmarks;
+
+import com.example.HtmlFragment;
+import com.example.WordProcessorDocument;
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.text.Element;
+import javax.swing.text.html.HTMLEditorKit;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Вставка заголовков, абзацев и ссылок в случайные места большого документа:
+ * через разбор HTML ({@code HTMLEditorKit.insertHTML}, как раньше делал {@code Main})
+ * и готовыми фрагментами ({@link WordProcessorDocument#insertFragment}).
+ *
+ * <p>Документ разбирается заново перед каждой итерацией, последовательность мест
+ * вставки одинакова для обоих способов.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class InsertBenchmark {
+
+    private static final HtmlFragment[] FRAGMENTS = {
+            HtmlFragment.heading(1, "Заголовок"),
+            HtmlFragment.paragraph("Новый абзац текста"),
+            HtmlFragment.link("https://example.com", "ссылка")
+    };
+
+    private WordProcessorDocument document;
+
+    private HTMLEditorKit kit;
+
+    private Random random;
+
+    private int count;
+
+    @Setup(Level.Iteration)
+    public void freshDocument(CorpusState corpus) throws Exception {
+        document = (WordProcessorDocument) corpus.parse();
+        kit = corpus.kit;
+        random = new Random(CorpusGenerator.DEFAULT_SEED);
+        count = 0;
+    }
+
+    @Benchmark
+    public WordProcessorDocument insertHtml() throws Exception {
+        int offset = nextOffset();
+        kit.insertHTML(document, offset, FRAGMENTS[count++ % FRAGMENTS.length].toHtml(), 0, 0, null);
+        return document;
+    }
+
+    @Benchmark
+    public WordProcessorDocument insertFragment() throws Exception {
+        int offset = nextOffset();
+        document.insertFragment(offset, FRAGMENTS[count++ % FRAGMENTS.length]);
+        return document;
+    }
+
+    /**
+     * Случайное смещение внутри {@code <body>}: {@code insertHTML} не вставляет в {@code <head>}.
+     */
+    private int nextOffset() {
+        Element root = document.getDefaultRootElement();
+        Element body = root.getElement(root.getElementCount() - 1);
+        int start = body.getStartOffset();
+        return start + random.nextInt(body.getEndOffset() - 1 - start);
+    }
+}
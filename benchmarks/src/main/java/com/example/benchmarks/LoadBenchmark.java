@@ -0,0 +1,55 @@
+package com.example.benchmarks;
+
+import com.example.DocumentLoadWorker;
+import com.example.WordHtmlFilter;
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.text.html.HTMLDocument;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Открытие документа: разбор HTML из строки без очистки и с очисткой разметки Word
+ * ({@link WordHtmlFilter}), сама очистка и полный путь «Файл → Открыть»
+ * ({@link DocumentLoadWorker}: отображённый в память файл, декодирование, очистка, разбор).
+ *
+ * <p>Выигрыш очистки виден на {@code -p style=WORD_UNFILTERED}: сравните
+ * {@code parseString} и {@code parseCleaned}.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LoadBenchmark {
+
+    @Benchmark
+    public HTMLDocument parseString(CorpusState corpus) throws Exception {
+        return corpus.parse();
+    }
+
+    @Benchmark
+    public HTMLDocument parseCleaned(CorpusState corpus) throws Exception {
+        return corpus.parse(new WordHtmlFilter(new StringReader(corpus.html)));
+    }
+
+    @Benchmark
+    public long clean(CorpusState corpus) throws IOException {
+        char[] buffer = new char[8192];
+        try (WordHtmlFilter filter = new WordHtmlFilter(new StringReader(corpus.html))) {
+            while (filter.read(buffer, 0, buffer.length) >= 0) {
+                // Только очистка, без разбора
+            }
+            return filter.getCharactersRemoved();
+        }
+    }
+
+    @Benchmark
+    public HTMLDocument openFile(CorpusState corpus) throws Exception {
+        // run() выполняет doInBackground в текущем потоке
+        DocumentLoadWorker worker = new DocumentLoadWorker(corpus.file.toFile(), corpus.kit);
+        worker.run();
+        return worker.get();
+    }
+}
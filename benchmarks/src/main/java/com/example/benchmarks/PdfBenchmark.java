@@ -0,0 +1,75 @@
+package com.example.benchmarks;
+
+import com.example.PdfLayoutCache;
+import com.example.PdfWriter;
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.html.HTMLDocument;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Экспорт в PDF ({@link PdfWriter}): первый экспорт документа и повторный после
+ * правки одного абзаца, когда раскладка прошлого экспорта хранится в {@link PdfLayoutCache}.
+ *
+ * <p>Правка меняет документ, поэтому бенчмарк работает с копией документа {@link CorpusState}.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PdfBenchmark {
+
+    private HTMLDocument document;
+
+    private final PdfLayoutCache cache = new PdfLayoutCache();
+
+    @Setup(Level.Trial)
+    public void layOut(CorpusState corpus) throws Exception {
+        document = corpus.parse();
+        cache.setDocument(document);
+        PdfWriter.write(document, new CountingStream(), cache);
+    }
+
+    @TearDown(Level.Trial)
+    public void detach() {
+        cache.setDocument(null);
+    }
+
+    @Benchmark
+    public long writePdf() throws IOException {
+        CountingStream out = new CountingStream();
+        PdfWriter.write(document, out, null);
+        return out.count;
+    }
+
+    @Benchmark
+    public long rewritePdfAfterEdit() throws IOException, BadLocationException {
+        document.insertString(document.getLength() / 2, "x", null);
+        CountingStream out = new CountingStream();
+        PdfWriter.write(document, out, cache);
+        return out.count;
+    }
+
+    /**
+     * Приёмник, который только считает байты.
+     */
+    private static final class CountingStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.benchmarks;
+
+import com.example.AtomicFileSaver;
+import com.example.DocumentLoadWorker;
+import com.example.RtfWriter;
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.rtf.RTFEditorKit;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Импорт и экспорт RTF: собственные {@code RtfReader} (полный путь «Файл → Открыть»
+ * через {@link DocumentLoadWorker}) и {@link RtfWriter} против {@link RTFEditorKit} из JDK
+ * на том же файле.
+ *
+ * <p>Файл RTF пишется из документа {@link CorpusState} перед замерами; {@link RTFEditorKit}
+ * пишет документ, который сам же и прочитал.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RtfBenchmark {
+
+    private final RTFEditorKit rtfKit = new RTFEditorKit();
+
+    private Path file;
+
+    private DefaultStyledDocument styled;
+
+    @Setup(Level.Trial)
+    public void createFile(CorpusState corpus) throws Exception {
+        file = Files.createTempFile("corpus-", ".rtf");
+        RtfWriter.save(corpus.document, file, new AtomicFileSaver());
+        styled = readEditorKit();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Object openRtf(CorpusState corpus) throws Exception {
+        // run() выполняет doInBackground в текущем потоке
+        DocumentLoadWorker worker = new DocumentLoadWorker(file.toFile(), corpus.kit);
+        worker.run();
+        return worker.get();
+    }
+
+    @Benchmark
+    public DefaultStyledDocument readEditorKit() throws Exception {
+        DefaultStyledDocument doc = new DefaultStyledDocument();
+        try (InputStream in = Files.newInputStream(file)) {
+            rtfKit.read(in, doc, 0);
+        }
+        return doc;
+    }
+
+    @Benchmark
+    public long writeRtf(CorpusState corpus) throws IOException {
+        CountingStream out = new CountingStream();
+        RtfWriter.write(corpus.document, out);
+        return out.count;
+    }
+
+    @Benchmark
+    public long writeEditorKit() throws Exception {
+        CountingStream out = new CountingStream();
+        rtfKit.write(out, styled, 0, styled.getLength());
+        return out.count;
+    }
+
+    /**
+     * Приёмник, который только считает байты.
+     */
+    private static final class CountingStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.benchmarks;
+
+import com.example.DocumentSaver;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сохранение документа: обход дерева {@code HTMLWriter} в «пустой» приёмник
+ * и полный путь «Файл → Сохранить» ({@link DocumentSaver}: кодирование, временный
+ * файл, fsync, переименование).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class SaveBenchmark {
+
+    private Path target;
+
+    @Setup(Level.Trial)
+    public void createTarget() throws IOException {
+        target = Files.createTempFile("save-", ".doc");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTarget() throws IOException {
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public long serialize(CorpusState corpus) throws IOException {
+        CountingWriter out = new CountingWriter();
+        DocumentSaver.write(corpus.document, out, null);
+        return out.count;
+    }
+
+    @Benchmark
+    public Path saveFile(CorpusState corpus) throws IOException {
+        DocumentSaver.save(corpus.document, target);
+        return target;
+    }
+
+    /**
+     * Приёмник, который только считает символы.
+     */
+    private static final class CountingWriter extends Writer {
+
+        long count;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
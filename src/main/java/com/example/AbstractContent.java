@@ -0,0 +1,232 @@
+package com.example;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Общая часть собственных реализаций {@link AbstractDocument.Content}:
+ * проверка аргументов, позиции ({@link MarkTracker}) и правки отмены.
+ * Наследнику остаются хранение текста, вставка, удаление и чтение символов.
+ */
+abstract class AbstractContent implements AbstractDocument.Content {
+
+    /**
+     * Позиции документа; создаются при первом запросе позиции.
+     */
+    private MarkTracker marks;
+
+    /**
+     * Вставляет текст в хранилище.
+     *
+     * @param where смещение (уже проверено)
+     * @param str   непустой текст
+     */
+    protected abstract void insertText(int where, String str);
+
+    /**
+     * Удаляет текст из хранилища.
+     *
+     * @param where смещение (уже проверено)
+     * @param n     положительная длина
+     */
+    protected abstract void deleteText(int where, int n);
+
+    @Override
+    public Position createPosition(int offset) throws BadLocationException {
+        if (offset < 0 || offset > length()) {
+            throw new BadLocationException("Invalid position", offset);
+        }
+        if (marks == null) {
+            marks = new MarkTracker(length());
+        }
+        return marks.createPosition(offset);
+    }
+
+    @Override
+    public UndoableEdit insertString(int where, String str) throws BadLocationException {
+        if (where < 0 || where > length()) {
+            throw new BadLocationException("Invalid insert", length());
+        }
+        insert(where, str);
+        return new InsertUndo(where, str.length());
+    }
+
+    @Override
+    public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+        // Последний (неявный) перевод строки удалять нельзя, как и в GapContent
+        if (where < 0 || nitems < 0 || where + nitems >= length()) {
+            throw new BadLocationException("Invalid remove", length() + 1);
+        }
+        UndoableEdit edit = new RemoveUndo(where, getString(where, nitems));
+        delete(where, nitems);
+        return edit;
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        Segment s = new Segment();
+        getChars(where, len, s);
+        return new String(s.array, s.offset, s.count);
+    }
+
+    /**
+     * Проверяет диапазон чтения.
+     *
+     * @param where начало
+     * @param len   длина
+     * @throws BadLocationException если диапазон выходит за текст
+     */
+    protected void checkRange(int where, int len) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > length()) {
+            throw new BadLocationException("Invalid location", length());
+        }
+    }
+
+    private void insert(int where, String str) {
+        if (str.isEmpty()) {
+            return;
+        }
+        insertText(where, str);
+        if (marks != null) {
+            marks.insertUpdate(where, str.length());
+        }
+    }
+
+    private void delete(int where, int n) {
+        if (n == 0) {
+            return;
+        }
+        deleteText(where, n);
+        if (marks != null) {
+            marks.removeUpdate(where, n);
+        }
+    }
+
+    /**
+     * Запоминает позиции в диапазоне [where, where + n], которые схлопнутся при его удалении.
+     *
+     * @param where начало диапазона
+     * @param n     длина диапазона
+     * @return снимок или null, если позиций там нет
+     */
+    MarkTracker.Snapshot positions(int where, int n) {
+        return marks == null ? null : marks.snapshot(where, n);
+    }
+
+    /**
+     * Возвращает позиции снимка на прежние смещения после повторной вставки текста.
+     *
+     * @param positions снимок из {@link #positions(int, int)} или null
+     * @param where     начало вставленного текста
+     * @param n         длина вставленного текста
+     */
+    void restore(MarkTracker.Snapshot positions, int where, int n) {
+        if (positions != null) {
+            marks.restore(positions, where, n);
+        }
+    }
+
+    /**
+     * Расставляет позиции снимка после замены текста: вместо схлопывания к началу
+     * каждая позиция переносится на смещение, которое даёт {@code map}.
+     *
+     * @param positions снимок заменённого диапазона или null
+     * @param where     начало нового текста
+     * @param n         длина нового текста
+     * @param map       новое смещение позиции по прежнему
+     */
+    void remap(MarkTracker.Snapshot positions, int where, int n, IntUnaryOperator map) {
+        if (positions != null) {
+            marks.restore(positions, where, n, map);
+        }
+    }
+
+    /**
+     * Отмена вставки: удаляет вставленный текст, повтор возвращает его вместе с позициями.
+     */
+    private final class InsertUndo extends AbstractUndoableEdit {
+
+        private final int offset;
+
+        private final int length;
+
+        private String string;
+
+        private MarkTracker.Snapshot positions;
+
+        InsertUndo(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+                positions = positions(offset, length);
+                string = getString(offset, length);
+                delete(offset, length);
+            } catch (BadLocationException e) {
+                throw new CannotUndoException();
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            insert(offset, string);
+            restore(positions, offset, length);
+            string = null;
+            positions = null;
+        }
+    }
+
+    /**
+     * Отмена удаления: возвращает текст и позиции, которые были внутри удалённого диапазона.
+     */
+    private final class RemoveUndo extends AbstractUndoableEdit {
+
+        private final int offset;
+
+        private final int length;
+
+        private String string;
+
+        private MarkTracker.Snapshot positions;
+
+        RemoveUndo(int offset, String string) {
+            this.offset = offset;
+            this.length = string.length();
+            this.string = string;
+            this.positions = positions(offset, length);
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            insert(offset, string);
+            restore(positions, offset, length);
+            string = null;
+            positions = null;
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            try {
+                positions = positions(offset, length);
+                string = getString(offset, length);
+                delete(offset, length);
+            } catch (BadLocationException e) {
+                throw new CannotRedoException();
+            }
+        }
+    }
+}
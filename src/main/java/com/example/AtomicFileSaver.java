@@ -0,0 +1,175 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+
+/**
+ * Атомарное сохранение файла: запись во временный файл рядом с целевым,
+ * {@link FileChannel#force(boolean)} и переименование с {@link StandardCopyOption#ATOMIC_MOVE}.
+ *
+ * <p>Целевой файл не усекается заранее, поэтому сбой, нехватка места или падение
+ * программы посреди записи оставляют на диске прежнюю версию документа целиком.
+ * По желанию хранится несколько предыдущих версий: {@code имя.bak1} (самая свежая)
+ * … {@code имя.bakN}.</p>
+ */
+public class AtomicFileSaver {
+
+    /**
+     * Содержимое, записываемое в канал временного файла.
+     */
+    public interface Content {
+
+        /**
+         * Записывает содержимое в канал. Канал закрывает вызывающий.
+         *
+         * @param channel канал временного файла
+         * @throws IOException при ошибке записи
+         */
+        void writeTo(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Сколько предыдущих версий файла хранить (0 — не хранить).
+     */
+    private final int backupGenerations;
+
+    /**
+     * Создаёт сохранение без резервных копий.
+     */
+    public AtomicFileSaver() {
+        this(0);
+    }
+
+    /**
+     * Создаёт сохранение с заданным числом резервных копий.
+     *
+     * @param backupGenerations сколько предыдущих версий хранить рядом с файлом
+     */
+    public AtomicFileSaver(int backupGenerations) {
+        if (backupGenerations < 0) {
+            throw new IllegalArgumentException("backupGenerations < 0: " + backupGenerations);
+        }
+        this.backupGenerations = backupGenerations;
+    }
+
+    /**
+     * Атомарно заменяет файл новым содержимым.
+     *
+     * @param target  целевой файл (может не существовать)
+     * @param content записываемое содержимое
+     * @throws IOException при ошибке записи; целевой файл в этом случае не изменён
+     */
+    public void save(Path target, Content content) throws IOException {
+        target = target.toAbsolutePath();
+        Path dir = target.getParent();
+        Path temp = Files.createTempFile(dir, "." + target.getFileName() + ".", ".tmp");
+        boolean moved = false;
+        try {
+            copyPermissions(target, temp);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                content.writeTo(channel);
+                // Данные должны оказаться на диске до переименования, иначе после сбоя
+                // питания можно получить уже переименованный, но пустой файл
+                channel.force(true);
+            }
+            if (backupGenerations > 0 && Files.exists(target)) {
+                rotateBackups(target);
+            }
+            move(temp, target);
+            moved = true;
+            forceDirectory(dir);
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Возвращает путь резервной копии заданного поколения.
+     *
+     * @param target     сохраняемый файл
+     * @param generation номер поколения, начиная с 1 (самая свежая копия)
+     * @return путь вида {@code имя.bakN}
+     */
+    public static Path backupPath(Path target, int generation) {
+        return target.resolveSibling(target.getFileName() + ".bak" + generation);
+    }
+
+    /**
+     * Сдвигает резервные копии на одно поколение и делает текущий файл копией .bak1.
+     * Текущий файл при этом не перемещается — он остаётся на месте до атомарной замены.
+     *
+     * @param target сохраняемый файл
+     * @throws IOException при ошибке работы с файлами
+     */
+    private void rotateBackups(Path target) throws IOException {
+        Files.deleteIfExists(backupPath(target, backupGenerations));
+        for (int i = backupGenerations - 1; i >= 1; i--) {
+            Path from = backupPath(target, i);
+            if (Files.exists(from)) {
+                Files.move(from, backupPath(target, i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Path first = backupPath(target, 1);
+        try {
+            // Жёсткая ссылка ничего не копирует; старый inode переживёт замену файла
+            Files.createLink(first, target);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            Files.copy(target, first, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Переименовывает временный файл в целевой, по возможности атомарно.
+     *
+     * @param temp   временный файл
+     * @param target целевой файл
+     * @throws IOException при ошибке переименования
+     */
+    private static void move(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Переносит права доступа существующего файла на временный:
+     * createTempFile создаёт файл с правами 0600.
+     *
+     * @param target существующий файл
+     * @param temp   временный файл
+     * @throws IOException при ошибке чтения или установки прав
+     */
+    private static void copyPermissions(Path target, Path temp) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (view != null && Files.exists(target)) {
+            Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+        }
+    }
+
+    /**
+     * Сбрасывает на диск запись каталога, чтобы переименование пережило сбой питания.
+     * Поддерживается не всеми платформами (в Windows каталог не открыть как канал),
+     * поэтому ошибки игнорируются.
+     *
+     * @param dir каталог файла
+     */
+    private static void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Файл уже заменён; остаётся лишь чуть меньшая гарантия на этой платформе
+        }
+    }
+}
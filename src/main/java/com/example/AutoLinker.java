@@ -0,0 +1,240 @@
+package com.example;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.html.HTML;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Автоссылки: набранные или вставленные адреса сайтов, почты и пути к файлам
+ * превращаются в такие же ссылки, как вставленные через {@link HtmlFragment#link}.
+ *
+ * <p>Проверяются только абзацы, задетые вставкой текста, и в них — только адреса,
+ * касающиеся вставленного ({@link LinkDetector}). Все найденные адреса становятся
+ * ссылками одной правкой документа ({@link WordProcessorDocument#addLinks}), которую
+ * можно отменить отдельно от набора. Правки собираются до конца цикла событий, поэтому
+ * вставка большого текста проверяется один раз.</p>
+ *
+ * <p>Адрес, который ещё набирается (курсор сразу за ним), ссылкой не становится, пока
+ * за ним не введён пробел или перевод строки. Текст, возвращённый отменой или повтором,
+ * не проверяется: снятая отменой ссылка не появляется снова.</p>
+ */
+public class AutoLinker implements DocumentListener {
+
+    /**
+     * Идёт ли отмена или повтор правки.
+     */
+    private final BooleanSupplier replaying;
+
+    private WordProcessorDocument document;
+
+    private boolean enabled = true;
+
+    /**
+     * Границы вставленного текста, ещё не проверенного; null, если проверять нечего.
+     */
+    private Position pendingStart;
+
+    private Position pendingEnd;
+
+    /**
+     * Последний набранный символ, если последней правкой был набор не разделителя, иначе null.
+     */
+    private Position typed;
+
+    /**
+     * Создаёт автоссылки.
+     *
+     * @param replaying проверка, идёт ли отмена или повтор правки
+     */
+    public AutoLinker(BooleanSupplier replaying) {
+        this.replaying = replaying;
+    }
+
+    /**
+     * Подключает автоссылки к документу.
+     *
+     * @param doc документ; null или документ без {@link WordProcessorDocument#addLinks} — только отключить
+     */
+    public void setDocument(Document doc) {
+        if (document != null) {
+            document.removeDocumentListener(this);
+        }
+        document = doc instanceof WordProcessorDocument ? (WordProcessorDocument) doc : null;
+        pendingStart = null;
+        pendingEnd = null;
+        typed = null;
+        if (document != null) {
+            document.addDocumentListener(this);
+        }
+    }
+
+    /**
+     * Включены ли автоссылки.
+     *
+     * @return true, если включены
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Включает или выключает автоссылки.
+     *
+     * @param enabled true — включить
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        if (!enabled || replaying.getAsBoolean()) {
+            return;
+        }
+        int offset = e.getOffset();
+        int end = offset + e.getLength();
+        try {
+            boolean scheduled = pendingStart != null;
+            if (!scheduled || offset < pendingStart.getOffset()) {
+                pendingStart = document.createPosition(offset);
+            }
+            if (!scheduled || end > pendingEnd.getOffset()) {
+                pendingEnd = document.createPosition(end);
+            }
+            typed = e.getLength() == 1 && !LinkDetector.isSpace(document.getText(offset, 1).charAt(0))
+                    ? document.createPosition(offset) : null;
+            if (!scheduled) {
+                // Документ нельзя менять, пока он рассылает событие
+                SwingUtilities.invokeLater(this::process);
+            }
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        // Удаление не создаёт новых адресов
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // Смена атрибутов (в том числе поставленные здесь ссылки) не добавляет текста
+    }
+
+    /**
+     * Ищет адреса в абзацах вставленного текста и ставит на них ссылки.
+     */
+    private void process() {
+        if (pendingStart == null) {
+            return;
+        }
+        int from = pendingStart.getOffset();
+        int to = pendingEnd.getOffset();
+        int caret = typed != null ? typed.getOffset() + 1 : -1;
+        pendingStart = null;
+        pendingEnd = null;
+        typed = null;
+        if (!enabled || document == null) {
+            return;
+        }
+        Matches matches = new Matches();
+        Segment text = new Segment();
+        try {
+            for (Element paragraph : ElementChanges.paragraphs(document, from, to)) {
+                int start = paragraph.getStartOffset();
+                int end = Math.min(paragraph.getEndOffset(), document.getLength());
+                if (end <= start) {
+                    continue;
+                }
+                document.getText(start, end - start, text);
+                int base = start - text.offset;
+                char[] array = text.array;
+                int limit = text.offset + text.count;
+                LinkDetector.scan(array, text.offset, limit, (s, e, href) -> {
+                    int linkStart = base + s;
+                    int linkEnd = base + e;
+                    // Адрес, за которым набраны знаки препинания, закрывает следующий за ними разделитель
+                    boolean touched = linkStart <= to
+                            && (linkEnd >= from || typing(array, e, Math.min(from - base, limit)));
+                    if (!touched || linkStart < caret && typing(array, e, Math.min(caret - base, limit))
+                            || linked(paragraph, linkStart, linkEnd)) {
+                        return;
+                    }
+                    matches.add(linkStart, linkEnd, href);
+                });
+            }
+            document.addLinks(matches.starts, matches.ends, matches.hrefs, matches.count);
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Набирается ли ещё слово адреса: между концом адреса и курсором нет разделителей.
+     */
+    private static boolean typing(char[] text, int end, int caret) {
+        if (caret < end) {
+            return false;
+        }
+        for (int i = end; i < caret; i++) {
+            if (LinkDetector.isSpace(text[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Есть ли уже ссылка в участке абзаца.
+     */
+    private static boolean linked(Element paragraph, int start, int end) {
+        if (paragraph.isLeaf()) {
+            return paragraph.getAttributes().getAttribute(HTML.Tag.A) != null;
+        }
+        for (int i = paragraph.getElementIndex(start); i < paragraph.getElementCount(); i++) {
+            Element leaf = paragraph.getElement(i);
+            if (leaf.getStartOffset() >= end) {
+                break;
+            }
+            if (leaf.getAttributes().getAttribute(HTML.Tag.A) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Найденные адреса по возрастанию смещения.
+     */
+    private static final class Matches {
+
+        int[] starts = new int[16];
+
+        int[] ends = new int[16];
+
+        String[] hrefs = new String[16];
+
+        int count;
+
+        void add(int start, int end, String href) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                hrefs = Arrays.copyOf(hrefs, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            hrefs[count] = href;
+            count++;
+        }
+    }
+}
@@ -0,0 +1,690 @@
+package com.example;
+
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterReader;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Пакетное преобразование документов без окна редактора.
+ *
+ * <p>Каждый файл {@code .doc}/{@code .html}/{@code .htm} из дерева каталогов читается
+ * и записывается так же, как при «Открыть» и «Сохранить» в редакторе:
+ * {@link MappedFileReader} → {@link WordProcessorEditorKit} → {@code HTMLWriter}
+ * → атомарная замена файла. Результат — нормализованный HTML, который редактор
+ * сохранил бы сам.</p>
+ *
+ * <p>Потоки выбираются {@link Pipeline}: либо пул из заданного числа потоков, каждый
+ * из которых целиком обрабатывает свой файл, либо поток на файл для записи результата
+ * (виртуальный на Java 21+) и отдельный пул разбора по числу ядер. В обоих случаях
+ * файл читается через {@link MappedFileReader}.</p>
+ *
+ * <p>Время на файл ограничено мягко: срок проверяется при каждом чтении исходного файла
+ * и каждой записи результата, просроченный файл пропускается, а уже записанное удаляется.
+ * Потоки не прерываются, поэтому разбор, застрявший между двумя чтениями, срок не остановит.
+ * Ожидание свободного потока разбора в срок не входит.</p>
+ *
+ * <pre>java -jar simple-word-processor.jar --batch исходный-каталог каталог-результата
+ *     [--threads N] [--timeout секунд] [--ext doc|html] [--charset кодировка]
+ *     [--executor platform|virtual]</pre>
+ */
+public final class BatchConverter {
+
+    /**
+     * Способ распределения работы по потокам.
+     */
+    public enum Pipeline {
+
+        /**
+         * Пул обычных потоков: каждый читает, разбирает и записывает свой файл.
+         */
+        PLATFORM,
+
+        /**
+         * Поток на файл для записи результата (виртуальный, если среда выполнения их
+         * поддерживает, иначе пул обычных потоков) и пул разбора по числу потоков.
+         */
+        VIRTUAL;
+
+        /**
+         * Способ по умолчанию: виртуальные потоки, если они есть.
+         *
+         * @return способ для текущей среды выполнения
+         */
+        public static Pipeline preferred() {
+            return BulkExecutors.virtualThreadsAvailable() ? VIRTUAL : PLATFORM;
+        }
+    }
+
+    /**
+     * Расширения файлов, которые берутся в обработку.
+     */
+    private static final String[] EXTENSIONS = {".doc", ".html", ".htm"};
+
+    /**
+     * Параметры командной строки, принимающие значение.
+     */
+    private static final List<String> OPTIONS = Arrays.asList(
+            "--threads", "--timeout", "--ext", "--charset", "--executor");
+
+    /**
+     * Наибольший суммарный размер файлов в килобайтах, которые одновременно разбираются
+     * или ждут записи в режиме {@link Pipeline#VIRTUAL}: результат каждого из них лежит
+     * в памяти до конца записи. Файл больше предела обрабатывается один.
+     */
+    private static final int MAX_IN_FLIGHT_KB = 128 * 1024;
+
+    /**
+     * Размер пула чтения и записи, если виртуальных потоков нет.
+     */
+    private static final int IO_THREADS = Math.max(8, 4 * Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Корень исходного дерева.
+     */
+    private final Path source;
+
+    /**
+     * Корень дерева результатов (может совпадать с исходным).
+     */
+    private final Path target;
+
+    /**
+     * Число рабочих потоков.
+     */
+    private final int threads;
+
+    /**
+     * Предельное время на файл в миллисекундах.
+     */
+    private final long timeoutMillis;
+
+    /**
+     * Новое расширение файлов результата или null, чтобы оставить исходное.
+     */
+    private final String extension;
+
+    /**
+     * Кодировка исходных файлов и результата.
+     */
+    private final Charset charset;
+
+    /**
+     * Способ распределения работы по потокам.
+     */
+    private final Pipeline pipeline;
+
+    /**
+     * Атомарная запись результатов (без резервных копий).
+     */
+    private final AtomicFileSaver saver = new AtomicFileSaver();
+
+    /**
+     * Число символов разметки Word, выброшенных при чтении ({@link WordHtmlFilter}).
+     */
+    private final LongAdder markupRemoved = new LongAdder();
+
+    /**
+     * Создаёт преобразователь.
+     *
+     * @param source        корень исходного дерева
+     * @param target        корень дерева результатов
+     * @param threads       число рабочих потоков (для {@link Pipeline#VIRTUAL} — потоков разбора)
+     * @param timeoutMillis предельное время на файл в миллисекундах
+     * @param extension     новое расширение (например, {@code ".doc"}) или null
+     * @param charset       кодировка файлов
+     * @param pipeline      способ распределения работы по потокам
+     */
+    public BatchConverter(Path source, Path target, int threads, long timeoutMillis, String extension,
+                          Charset charset, Pipeline pipeline) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        if (timeoutMillis < 1) {
+            throw new IllegalArgumentException("timeout must be positive: " + timeoutMillis);
+        }
+        this.source = source;
+        this.target = target;
+        this.threads = threads;
+        this.timeoutMillis = timeoutMillis;
+        this.extension = extension;
+        this.charset = charset;
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Точка входа пакетного режима.
+     *
+     * @param args аргументы командной строки без {@code --batch}
+     */
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Разбирает аргументы и выполняет преобразование.
+     *
+     * @param args аргументы командной строки без {@code --batch}
+     * @return код выхода: 0 — все файлы преобразованы, 1 — были ошибки, 2 — неверные аргументы
+     */
+    public static int run(String[] args) {
+        // Окно не создаётся; без этого AWT на сервере без дисплея может отказаться загружаться
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        BatchConverter converter;
+        try {
+            converter = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Использование: --batch <исходный-каталог> <каталог-результата>"
+                    + " [--threads N] [--timeout секунд] [--ext doc|html] [--charset кодировка]"
+                    + " [--executor platform|virtual]");
+            System.err.println("--timeout ограничивает время на файл мягко: срок проверяется между чтениями"
+                    + " и записями, разбор не прерывается.");
+            return 2;
+        }
+        try {
+            Report report = converter.convertAll();
+            System.out.println(report);
+            return report.failed == 0 ? 0 : 1;
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Ошибка пакетного преобразования: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Преобразует все подходящие файлы исходного дерева. Ошибки отдельных файлов
+     * печатаются в {@code System.err} с путём файла и не прерывают обработку остальных.
+     *
+     * @return итоги
+     * @throws IOException          если не удалось обойти исходный каталог
+     * @throws InterruptedException если поток прерван во время ожидания
+     */
+    public Report convertAll() throws IOException, InterruptedException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(source)) {
+            files = walk.filter(Files::isRegularFile).filter(BatchConverter::isDocument).sorted()
+                    .collect(Collectors.toList());
+        }
+        long started = System.nanoTime();
+        ExecutorService pool;
+        ExecutorService parsers = null;
+        Report report = new Report();
+        markupRemoved.reset();
+        if (pipeline == Pipeline.PLATFORM) {
+            pool = BulkExecutors.newPlatformExecutor("batch-convert", threads);
+            report.executor = "обычные потоки: " + threads;
+        } else if (BulkExecutors.virtualThreadsAvailable()) {
+            pool = BulkExecutors.newVirtualThreadExecutor("batch-io");
+            parsers = BulkExecutors.newPlatformExecutor("batch-parse", threads);
+            report.executor = "виртуальные потоки, разбор: " + threads;
+        } else {
+            pool = BulkExecutors.newPlatformExecutor("batch-io", IO_THREADS);
+            parsers = BulkExecutors.newPlatformExecutor("batch-parse", threads);
+            report.executor = "ввод-вывод: " + IO_THREADS + " обычных потоков (нет виртуальных), разбор: " + threads;
+        }
+        CompletionService<Long> done = new ExecutorCompletionService<>(pool);
+        Map<Future<Long>, Path> submitted = new HashMap<>();
+        try {
+            Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT_KB);
+            ExecutorService parse = parsers;
+            for (Path file : files) {
+                submitted.put(done.submit(() -> parse == null ? convert(file) : convertStaged(file, parse, inFlight)),
+                        file);
+            }
+            for (int i = 0; i < files.size(); i++) {
+                Future<Long> result = done.take();
+                try {
+                    report.bytes += result.get();
+                    report.converted++;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    report.failed++;
+                    if (cause instanceof DeadlineExceededException) {
+                        report.timedOut++;
+                    }
+                    // У исключения может не быть сообщения (NullPointerException): печатается и его класс
+                    System.err.println(submitted.get(result) + ": " + cause);
+                }
+            }
+            report.nanos = System.nanoTime() - started;
+            report.markupRemoved = markupRemoved.sum();
+            return report;
+        } finally {
+            pool.shutdownNow();
+            if (parsers != null) {
+                parsers.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Преобразует один файл.
+     *
+     * @param file исходный файл
+     * @return размер исходного файла в байтах
+     * @throws IOException при ошибке чтения, записи или истечении времени
+     */
+    private long convert(Path file) throws IOException {
+        Deadline deadline = new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        Path out = targetPath(file);
+        try {
+            HTMLEditorKit kit = new WordProcessorEditorKit();
+            HTMLDocument doc;
+            long size;
+            try (MappedFileReader in = new MappedFileReader(file, charset)) {
+                size = in.size();
+                doc = DocumentLoadWorker.read(kit, new DeadlineReader(in, deadline));
+            }
+            countRemoved(doc);
+            if (out.getParent() != null) {
+                Files.createDirectories(out.getParent());
+            }
+            saver.save(out, channel -> {
+                // Срок проверяется под буфером, а не на каждой мелкой записи HTMLWriter
+                Writer writer = new BufferedWriter(new DeadlineWriter(DocumentSaver.newWriter(channel, charset),
+                        deadline), DocumentSaver.BUFFER_SIZE);
+                DocumentSaver.write(doc, writer, null);
+                writer.flush();
+            });
+            return size;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e.toString(), e);
+        }
+    }
+
+    /**
+     * Преобразует один файл по стадиям: разбор и обратная запись в HTML — в пуле разбора,
+     * запись результата — в текущем потоке (виртуальном).
+     *
+     * @param file     исходный файл
+     * @param parsers  пул разбора
+     * @param inFlight ограничение суммарного размера файлов в работе, в килобайтах
+     * @return размер исходного файла в байтах
+     * @throws IOException при ошибке чтения, записи или истечении времени
+     */
+    private long convertStaged(Path file, ExecutorService parsers, Semaphore inFlight) throws IOException {
+        long size = Files.size(file);
+        int permits = (int) Math.min(MAX_IN_FLIGHT_KB, Math.max(1, (size + 1023) >> 10));
+        try {
+            inFlight.acquire(permits);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("interrupted");
+        }
+        try {
+            Deadline deadline = new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+            long queued = System.nanoTime();
+            Future<byte[]> rendered = parsers.submit(() -> {
+                deadline.extend(System.nanoTime() - queued);
+                return render(file, size, deadline);
+            });
+            byte[] html;
+            try {
+                html = rendered.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+            Path out = targetPath(file);
+            if (out.getParent() != null) {
+                Files.createDirectories(out.getParent());
+            }
+            saver.save(out, channel -> {
+                ByteBuffer buffer = ByteBuffer.wrap(html);
+                while (buffer.hasRemaining()) {
+                    deadline.check();
+                    channel.write(buffer);
+                }
+            });
+            return size;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e.toString(), e);
+        } finally {
+            inFlight.release(permits);
+        }
+    }
+
+    /**
+     * Читает файл, разбирает HTML и записывает документ обратно в HTML в памяти.
+     */
+    private byte[] render(Path file, long size, Deadline deadline) throws Exception {
+        HTMLDocument doc;
+        try (MappedFileReader in = new MappedFileReader(file, charset)) {
+            doc = DocumentLoadWorker.read(new WordProcessorEditorKit(), new DeadlineReader(in, deadline));
+        }
+        countRemoved(doc);
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(size + size / 4, Integer.MAX_VALUE - 8));
+        Writer writer = new BufferedWriter(new DeadlineWriter(new OutputStreamWriter(out, charset), deadline),
+                DocumentSaver.BUFFER_SIZE);
+        DocumentSaver.write(doc, writer, null);
+        writer.flush();
+        return out.toByteArray();
+    }
+
+    /**
+     * Добавляет к итогам разметку Word, выброшенную при чтении документа.
+     */
+    private void countRemoved(HTMLDocument doc) {
+        Object removed = doc.getProperty(WordHtmlFilter.REMOVED_PROPERTY);
+        if (removed instanceof Long) {
+            markupRemoved.add((Long) removed);
+        }
+    }
+
+    /**
+     * Путь результата: то же относительное место в дереве результатов, при необходимости
+     * с новым расширением.
+     */
+    private Path targetPath(Path file) {
+        Path out = target.resolve(source.relativize(file).toString());
+        if (extension != null) {
+            String name = out.getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            out = out.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + extension);
+        }
+        return out;
+    }
+
+    /**
+     * Проверяет, берётся ли файл в обработку, по расширению.
+     *
+     * @param file файл
+     * @return true для {@code .doc}, {@code .html} и {@code .htm}
+     */
+    static boolean isDocument(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        for (String ext : EXTENSIONS) {
+            if (name.endsWith(ext)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Разбирает аргументы командной строки.
+     *
+     * @throws IllegalArgumentException при неверных аргументах
+     */
+    private static BatchConverter parse(String[] args) {
+        List<String> paths = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        long timeout = 60_000;
+        String extension = null;
+        Charset charset = Charset.defaultCharset();
+        Pipeline pipeline = Pipeline.preferred();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                paths.add(arg);
+                continue;
+            }
+            if (!OPTIONS.contains(arg)) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            try {
+                switch (arg) {
+                    case "--threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    case "--timeout":
+                        timeout = (long) (Double.parseDouble(value) * 1000);
+                        break;
+                    case "--ext":
+                        extension = "." + value.replaceFirst("^\\.", "").toLowerCase(Locale.ROOT);
+                        break;
+                    case "--charset":
+                        charset = Charset.forName(value);
+                        break;
+                    case "--executor":
+                        pipeline = Pipeline.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    default:
+                        throw new AssertionError(arg);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid value for " + arg + ": " + value, e);
+            }
+        }
+        if (paths.size() != 2) {
+            throw new IllegalArgumentException("Expected source and target directories");
+        }
+        Path source = Paths.get(paths.get(0)).toAbsolutePath().normalize();
+        if (!Files.isDirectory(source)) {
+            throw new IllegalArgumentException("Not a directory: " + source);
+        }
+        Path target = Paths.get(paths.get(1)).toAbsolutePath().normalize();
+        return new BatchConverter(source, target, threads, timeout, extension, charset, pipeline);
+    }
+
+    /**
+     * Итоги пакетного преобразования.
+     */
+    public static final class Report {
+
+        /**
+         * Число преобразованных файлов.
+         */
+        int converted;
+
+        /**
+         * Число файлов с ошибками (включая просроченные).
+         */
+        int failed;
+
+        /**
+         * Число файлов, не уложившихся во время.
+         */
+        int timedOut;
+
+        /**
+         * Суммарный размер преобразованных файлов в байтах.
+         */
+        long bytes;
+
+        /**
+         * Длительность в наносекундах.
+         */
+        long nanos;
+
+        /**
+         * Число символов разметки Word, выброшенных при чтении.
+         */
+        long markupRemoved;
+
+        /**
+         * Описание использованных потоков.
+         */
+        String executor;
+
+        /**
+         * Файлов в секунду.
+         *
+         * @return пропускная способность по файлам
+         */
+        public double filesPerSecond() {
+            return converted / seconds();
+        }
+
+        /**
+         * Мегабайт в секунду (по размеру исходных файлов).
+         *
+         * @return пропускная способность по объёму
+         */
+        public double megabytesPerSecond() {
+            return bytes / 1048576.0 / seconds();
+        }
+
+        /**
+         * Число преобразованных файлов.
+         *
+         * @return число файлов
+         */
+        public int getConverted() {
+            return converted;
+        }
+
+        /**
+         * Число файлов с ошибками, включая не уложившиеся во время.
+         *
+         * @return число ошибок
+         */
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * Число символов разметки Word ({@code mso-…}, условные комментарии, VML),
+         * выброшенных при чтении.
+         *
+         * @return символы
+         */
+        public long getMarkupRemoved() {
+            return markupRemoved;
+        }
+
+        private double seconds() {
+            return Math.max(nanos, 1) / 1e9;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "Преобразовано файлов: %d (%.1f МБ) за %.2f с — %.1f файл/с, %.2f МБ/с; "
+                            + "разметки Word убрано: %.1f тыс. символов; ошибок: %d (по времени: %d); %s",
+                    converted, bytes / 1048576.0, seconds(), filesPerSecond(), megabytesPerSecond(),
+                    markupRemoved / 1000.0, failed, timedOut, executor);
+        }
+    }
+
+    /**
+     * Срок обработки файла.
+     */
+    private static final class Deadline {
+
+        private long nanos;
+
+        Deadline(long nanos) {
+            this.nanos = nanos;
+        }
+
+        /**
+         * Отодвигает срок, например на время ожидания в очереди.
+         */
+        void extend(long delta) {
+            nanos += delta;
+        }
+
+        void check() throws DeadlineExceededException {
+            if (System.nanoTime() - nanos > 0) {
+                throw new DeadlineExceededException("timed out");
+            }
+        }
+    }
+
+    /**
+     * Истечение срока обработки файла.
+     */
+    private static final class DeadlineExceededException extends InterruptedIOException {
+
+        private static final long serialVersionUID = 1L;
+
+        DeadlineExceededException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Reader, прерывающий чтение по истечении срока.
+     */
+    private static final class DeadlineReader extends FilterReader {
+
+        private final Deadline deadline;
+
+        DeadlineReader(Reader in, Deadline deadline) {
+            super(in);
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int read() throws IOException {
+            deadline.check();
+            return super.read();
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            deadline.check();
+            return super.read(cbuf, off, len);
+        }
+    }
+
+    /**
+     * Writer, прерывающий запись по истечении срока.
+     */
+    private static final class DeadlineWriter extends FilterWriter {
+
+        private final Deadline deadline;
+
+        DeadlineWriter(Writer out, Deadline deadline) {
+            super(out);
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            deadline.check();
+            super.write(c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            deadline.check();
+            super.write(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            deadline.check();
+            super.write(str, off, len);
+        }
+    }
+}
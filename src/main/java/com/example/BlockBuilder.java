@@ -0,0 +1,500 @@
+package com.example;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.DefaultStyledDocument.ElementSpec;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.html.CSS;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.StyleSheet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сборка блоков документа из {@link ElementSpec} при импорте ({@link DocxReader},
+ * {@link RtfReader}): абзацы, заголовки, списки и таблицы в том виде, в каком их
+ * построил бы {@code HTMLReader}, готовые для {@link WordProcessorDocument#appendBlocks}.
+ *
+ * <p>Читатель формата решает, что за абзац начинается и какой у него текст, а сборщик
+ * открывает и закрывает вокруг абзацев списки нужной глубины, пункты, строки и ячейки
+ * таблиц. Текст абзацев копируется в общие массивы по {@value #CHUNK} символов, на
+ * которые ссылаются описания: один массив на множество коротких фрагментов
+ * ({@link TextSpec}).</p>
+ */
+final class BlockBuilder {
+
+    /**
+     * Размер общих массивов, в которые копируется текст.
+     */
+    static final int CHUNK = 8192;
+
+    /**
+     * Уровней вложенности списков (как в Word).
+     */
+    static final int LIST_LEVELS = 9;
+
+    /**
+     * Атрибуты обычного текста.
+     */
+    static final AttributeSet CONTENT = HtmlFragment.tag(HTML.Tag.CONTENT);
+
+    private static final HTML.Tag[] HEADINGS = {
+            HTML.Tag.H1, HTML.Tag.H2, HTML.Tag.H3, HTML.Tag.H4, HTML.Tag.H5, HTML.Tag.H6};
+
+    private static final AttributeSet PARAGRAPH = HtmlFragment.tag(HTML.Tag.P);
+
+    private static final AttributeSet LIST_PARAGRAPH = HtmlFragment.tag(HTML.Tag.IMPLIED);
+
+    private static final AttributeSet LIST_ITEM = HtmlFragment.tag(HTML.Tag.LI);
+
+    private static final AttributeSet ROW = HtmlFragment.tag(HTML.Tag.TR);
+
+    private static final AttributeSet TABLE;
+
+    private static final AttributeSet NO_ATTRIBUTES = new SimpleAttributeSet();
+
+    private static final char[] SPACE = {' '};
+
+    static {
+        SimpleAttributeSet table = new SimpleAttributeSet(HtmlFragment.tag(HTML.Tag.TABLE));
+        table.addAttribute(HTML.Attribute.BORDER, "1");
+        TABLE = table;
+    }
+
+    /**
+     * Открытые списки, пункты, таблицы, строки и ячейки — от внешнего к внутреннему.
+     */
+    private final List<Block> open = new ArrayList<>();
+
+    private final StyleSheet css = new StyleSheet();
+
+    /**
+     * Атрибуты текста по признакам оформления и цвету: у соседних фрагментов
+     * с одинаковым оформлением один набор атрибутов.
+     */
+    private final Map<Object, AttributeSet> runs = new HashMap<>();
+
+    private List<ElementSpec> specs;
+
+    /**
+     * Символов в выданных описаниях.
+     */
+    private long written;
+
+    private char[] chunk = new char[CHUNK];
+
+    private int chunkUsed;
+
+    private boolean inParagraph;
+
+    /**
+     * Задаёт список, в который добавляются описания следующей порции.
+     *
+     * @param specs список описаний
+     */
+    void setTarget(List<ElementSpec> specs) {
+        this.specs = specs;
+    }
+
+    /**
+     * Символов текста во всех выданных описаниях.
+     *
+     * @return число символов
+     */
+    long written() {
+        return written;
+    }
+
+    /**
+     * Можно ли закончить порцию: не открыт ни абзац, ни список, ни таблица.
+     *
+     * @return true на уровне {@code <body>}
+     */
+    boolean isTopLevel() {
+        return open.isEmpty() && !inParagraph;
+    }
+
+    /**
+     * Начат ли абзац.
+     *
+     * @return true между {@link #beginParagraph} и {@link #endParagraph}
+     */
+    boolean inParagraph() {
+        return inParagraph;
+    }
+
+    /**
+     * Открыт ли блок с тегом (таблица, строка, ячейка, список).
+     *
+     * @param tag тег блока
+     * @return true, если блок открыт на любой глубине
+     */
+    boolean isOpen(HTML.Tag tag) {
+        for (int i = open.size() - 1; i >= 0; i--) {
+            if (open.get(i).tag == tag) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Начинает абзац: заголовок, пункт списка или обычный абзац. Пункт списка
+     * продолжает открытый список той же нумерации на том же уровне; заголовок
+     * и обычный абзац закрывают открытые списки.
+     *
+     * @param heading   уровень заголовка 1–6 или 0
+     * @param align     выравнивание ({@code center}, {@code right}, {@code justify}) или null
+     * @param numbering нумерация списка или null, если абзац не в списке
+     * @param level     уровень списка, начиная с 0
+     */
+    void beginParagraph(int heading, String align, Numbering numbering, int level) {
+        AttributeSet tag;
+        if (heading == 0 && numbering != null) {
+            listItem(numbering, Math.max(0, Math.min(level, LIST_LEVELS - 1)));
+            tag = LIST_PARAGRAPH;
+        } else {
+            closeLists();
+            tag = heading > 0 ? HtmlFragment.tag(HEADINGS[Math.min(heading, HEADINGS.length) - 1]) : PARAGRAPH;
+        }
+        if (align != null) {
+            SimpleAttributeSet attributes = new SimpleAttributeSet(tag);
+            attributes.addAttribute(HTML.Attribute.ALIGN, align);
+            tag = attributes;
+        }
+        specs.add(new ElementSpec(tag, ElementSpec.StartTagType));
+        inParagraph = true;
+    }
+
+    /**
+     * Добавляет текст в начатый абзац. Переводов строк в тексте быть не должно.
+     *
+     * @param text       символы
+     * @param offset     начало текста
+     * @param length     длина текста
+     * @param attributes атрибуты текста
+     */
+    void text(char[] text, int offset, int length, AttributeSet attributes) {
+        if (length == 0) {
+            return;
+        }
+        if (chunkUsed + length > chunk.length) {
+            chunk = new char[Math.max(CHUNK, length)];
+            chunkUsed = 0;
+        }
+        System.arraycopy(text, offset, chunk, chunkUsed, length);
+        specs.add(new TextSpec(attributes, chunk, chunkUsed, length));
+        chunkUsed += length;
+        written += length;
+    }
+
+    /**
+     * Добавляет в начатый абзац элемент из одного символа: перевод строки или картинку.
+     *
+     * @param attributes атрибуты элемента
+     */
+    void leaf(AttributeSet attributes) {
+        specs.add(new ElementSpec(attributes, ElementSpec.ContentType, SPACE, 0, 1));
+        written++;
+    }
+
+    /**
+     * Заканчивает начатый абзац.
+     */
+    void endParagraph() {
+        specs.add(new ElementSpec(HtmlFragment.END_OF_PARAGRAPH, ElementSpec.ContentType, new char[] {'\n'}, 0, 1));
+        specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+        written++;
+        inParagraph = false;
+    }
+
+    /**
+     * Атрибуты текста, как их построил бы {@code HTMLReader} для тегов
+     * {@code <b>}, {@code <i>}, {@code <u>}, {@code <s>}, {@code <sup>}, {@code <sub>}
+     * и цвета шрифта.
+     *
+     * @param format признаки {@link Format}
+     * @param color  цвет как {@code #rrggbb} или null
+     * @return набор атрибутов; для одинакового оформления — один и тот же
+     */
+    AttributeSet run(int format, String color) {
+        if (format == 0 && color == null) {
+            return CONTENT;
+        }
+        Object key = color == null ? (Object) format : format + color;
+        AttributeSet cached = runs.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        SimpleAttributeSet attributes = new SimpleAttributeSet(CONTENT);
+        if ((format & Format.BOLD) != 0) {
+            attributes.addAttribute(HTML.Tag.B, NO_ATTRIBUTES);
+            css.addCSSAttribute(attributes, CSS.Attribute.FONT_WEIGHT, "bold");
+        }
+        if ((format & Format.ITALIC) != 0) {
+            attributes.addAttribute(HTML.Tag.I, NO_ATTRIBUTES);
+            css.addCSSAttribute(attributes, CSS.Attribute.FONT_STYLE, "italic");
+        }
+        if ((format & Format.UNDERLINE) != 0) {
+            attributes.addAttribute(HTML.Tag.U, NO_ATTRIBUTES);
+            css.addCSSAttribute(attributes, CSS.Attribute.TEXT_DECORATION, "underline");
+        }
+        if ((format & Format.STRIKE) != 0) {
+            attributes.addAttribute(HTML.Tag.S, NO_ATTRIBUTES);
+        }
+        if ((format & Format.SUPERSCRIPT) != 0) {
+            attributes.addAttribute(HTML.Tag.SUP, NO_ATTRIBUTES);
+            css.addCSSAttribute(attributes, CSS.Attribute.VERTICAL_ALIGN, "sup");
+        } else if ((format & Format.SUBSCRIPT) != 0) {
+            attributes.addAttribute(HTML.Tag.SUB, NO_ATTRIBUTES);
+            css.addCSSAttribute(attributes, CSS.Attribute.VERTICAL_ALIGN, "sub");
+        }
+        if (color != null) {
+            css.addCSSAttribute(attributes, CSS.Attribute.COLOR, color);
+        }
+        runs.put(key, attributes);
+        return attributes;
+    }
+
+    /**
+     * Закрывает открытые списки текущей ячейки или тела документа.
+     */
+    void closeLists() {
+        while (!open.isEmpty()) {
+            HTML.Tag tag = open.get(open.size() - 1).tag;
+            if (tag != HTML.Tag.LI && tag != HTML.Tag.UL && tag != HTML.Tag.OL) {
+                break;
+            }
+            closeBlock();
+        }
+    }
+
+    /**
+     * Открывает таблицу, закрыв открытые списки.
+     */
+    void openTable() {
+        closeLists();
+        openBlock(TABLE, HTML.Tag.TABLE, null);
+    }
+
+    void openRow() {
+        openBlock(ROW, HTML.Tag.TR, null);
+    }
+
+    /**
+     * Открывает ячейку строки.
+     *
+     * @param colspan сколько столбцов занимает ячейка
+     */
+    void openCell(int colspan) {
+        AttributeSet cell = HtmlFragment.tag(HTML.Tag.TD);
+        if (colspan > 1) {
+            SimpleAttributeSet attributes = new SimpleAttributeSet(cell);
+            attributes.addAttribute(HTML.Attribute.COLSPAN, Integer.toString(colspan));
+            cell = attributes;
+        }
+        openBlock(cell, HTML.Tag.TD, null);
+        open.get(open.size() - 1).start = specs.size();
+    }
+
+    /**
+     * Закрывает ячейку вместе с её списками. В пустую ячейку добавляется пустой абзац:
+     * без него ячейка не видна.
+     */
+    void closeCell() {
+        closeLists();
+        if (open.get(open.size() - 1).start == specs.size()) {
+            beginParagraph(0, null, null, 0);
+            endParagraph();
+        }
+        closeBlock();
+    }
+
+    /**
+     * Закрывает строку или таблицу.
+     */
+    void closeBlock() {
+        specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+        open.remove(open.size() - 1);
+    }
+
+    /**
+     * Закрывает все открытые блоки: конец документа.
+     */
+    void closeAll() {
+        while (!open.isEmpty()) {
+            closeBlock();
+        }
+    }
+
+    /**
+     * Открывает пункт списка на уровне {@code level}: закрывает более глубокие
+     * списки, продолжает список того же уровня или открывает недостающие.
+     */
+    private void listItem(Numbering numbering, int level) {
+        int depth = listDepth();
+        while (depth > level + 1) {
+            closeBlock();
+            closeBlock();
+            depth--;
+        }
+        if (depth == level + 1) {
+            closeBlock();
+            if (open.get(open.size() - 1).numbering == numbering) {
+                openBlock(LIST_ITEM, HTML.Tag.LI, null);
+                return;
+            }
+            closeBlock();
+            depth--;
+        }
+        for (; depth <= level; depth++) {
+            String format = numbering.formats[depth];
+            if (format == null || "bullet".equals(format) || "none".equals(format)) {
+                openBlock(HtmlFragment.tag(HTML.Tag.UL), HTML.Tag.UL, numbering);
+            } else {
+                SimpleAttributeSet attributes = new SimpleAttributeSet(HtmlFragment.tag(HTML.Tag.OL));
+                String type = listType(format);
+                if (type != null) {
+                    attributes.addAttribute(HTML.Attribute.TYPE, type);
+                }
+                if (numbering.starts[depth] != 1) {
+                    attributes.addAttribute(HTML.Attribute.START, Integer.toString(numbering.starts[depth]));
+                }
+                openBlock(attributes, HTML.Tag.OL, numbering);
+            }
+            openBlock(LIST_ITEM, HTML.Tag.LI, null);
+        }
+    }
+
+    /**
+     * Число открытых списков в текущей ячейке или в теле документа.
+     */
+    private int listDepth() {
+        int depth = 0;
+        for (int i = open.size() - 1; i >= 0; i--) {
+            HTML.Tag tag = open.get(i).tag;
+            if (tag == HTML.Tag.UL || tag == HTML.Tag.OL) {
+                depth++;
+            } else if (tag != HTML.Tag.LI) {
+                break;
+            }
+        }
+        return depth;
+    }
+
+    private void openBlock(AttributeSet attributes, HTML.Tag tag, Numbering numbering) {
+        specs.add(new ElementSpec(attributes, ElementSpec.StartTagType));
+        open.add(new Block(tag, numbering));
+    }
+
+    /**
+     * Значение атрибута {@code type} нумерованного списка HTML по формату номера Word.
+     */
+    private static String listType(String format) {
+        switch (format) {
+            case "lowerLetter":
+                return "a";
+            case "upperLetter":
+                return "A";
+            case "lowerRoman":
+                return "i";
+            case "upperRoman":
+                return "I";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Признаки оформления текста для {@link #run}.
+     */
+    static final class Format {
+        static final int BOLD = 1;
+        static final int ITALIC = 2;
+        static final int UNDERLINE = 4;
+        static final int STRIKE = 8;
+        static final int SUPERSCRIPT = 16;
+        static final int SUBSCRIPT = 32;
+
+        private Format() {
+        }
+    }
+
+    /**
+     * Нумерация списка: форматы номеров ({@code bullet}, {@code decimal}, {@code lowerLetter}…
+     * в терминах Word) и начальные номера уровней. Пункты одной нумерации на одном
+     * уровне идут в один список.
+     */
+    static final class Numbering {
+
+        final String[] formats = new String[LIST_LEVELS];
+
+        final int[] starts = new int[LIST_LEVELS];
+
+        Numbering() {
+            Arrays.fill(starts, 1);
+        }
+
+        Numbering copy() {
+            Numbering copy = new Numbering();
+            System.arraycopy(formats, 0, copy.formats, 0, LIST_LEVELS);
+            System.arraycopy(starts, 0, copy.starts, 0, LIST_LEVELS);
+            return copy;
+        }
+    }
+
+    /**
+     * Открытый блок: список, пункт, таблица, строка или ячейка.
+     */
+    private static final class Block {
+
+        final HTML.Tag tag;
+
+        /**
+         * Нумерация списка или null.
+         */
+        final Numbering numbering;
+
+        /**
+         * Номер описания, с которого начинается содержимое ячейки.
+         */
+        int start = -1;
+
+        Block(HTML.Tag tag, Numbering numbering) {
+            this.tag = tag;
+            this.numbering = numbering;
+        }
+    }
+
+    /**
+     * Описание текста, ссылающееся на общий массив. Конструктор {@link ElementSpec}
+     * с массивом в новых JDK копирует массив целиком, а {@link ElementSpec#getArray()}
+     * копирует его ещё раз: на массив в {@value #CHUNK} символов и фрагмент в одно слово
+     * это килобайты на каждый фрагмент. Документ читает текст только через
+     * {@link #getArray()} и {@link #getOffset()}, поэтому массив хранится здесь.
+     */
+    private static final class TextSpec extends ElementSpec {
+
+        private final char[] array;
+
+        private final int offset;
+
+        TextSpec(AttributeSet attributes, char[] array, int offset, int length) {
+            super(attributes, ContentType, length);
+            this.array = array;
+            this.offset = offset;
+        }
+
+        @Override
+        public char[] getArray() {
+            return array;
+        }
+
+        @Override
+        public int getOffset() {
+            return offset;
+        }
+    }
+}
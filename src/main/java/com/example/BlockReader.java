@@ -0,0 +1,33 @@
+package com.example;
+
+import javax.swing.text.DefaultStyledDocument.ElementSpec;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Импорт документа другого формата порциями блоков ({@link DocxReader}, {@link RtfReader}).
+ *
+ * <p>Порции дописываются в документ {@link WordProcessorDocument#appendBlocks}; первую
+ * можно показать, пока читаются остальные ({@link DocumentLoadWorker}).</p>
+ */
+interface BlockReader extends Closeable {
+
+    /**
+     * Читает следующую порцию документа: целые блоки верхнего уровня, пока в них не
+     * наберётся заданное число символов. Список или таблица между порциями не делятся.
+     *
+     * @param specs список, в который добавляются описания элементов
+     * @param chars сколько символов текста набрать в порции
+     * @return true, если документ прочитан не до конца
+     * @throws IOException при ошибке чтения или разбора файла
+     */
+    boolean next(List<ElementSpec> specs, int chars) throws IOException;
+
+    /**
+     * Доля прочитанного файла.
+     *
+     * @return процент от 0 до 100
+     */
+    int getProgress();
+}
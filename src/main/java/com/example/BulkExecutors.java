@@ -0,0 +1,109 @@
+package com.example;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Исполнители для массовой обработки файлов.
+ *
+ * <p>Ожидание диска удобно отдавать виртуальным потокам (Java 21+): поток на файл
+ * ничего не стоит, пока тот читается или пишется. Приложение собирается и под Java 8,
+ * поэтому виртуальные потоки создаются через отражение, если среда выполнения их
+ * поддерживает; иначе используется обычный пул. Разбор HTML нагружает процессор,
+ * для него — пул по числу ядер.</p>
+ */
+public final class BulkExecutors {
+
+    /**
+     * {@code Executors.newThreadPerTaskExecutor(ThreadFactory)} или null, если его нет.
+     */
+    private static final Method THREAD_PER_TASK;
+
+    /**
+     * {@code Thread.ofVirtual()} или null, если виртуальных потоков нет.
+     */
+    private static final Method OF_VIRTUAL;
+
+    /**
+     * {@code Thread.Builder.name(String, long)}.
+     */
+    private static final Method BUILDER_NAME;
+
+    /**
+     * {@code Thread.Builder.factory()}.
+     */
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method perTask = null;
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+        } catch (ReflectiveOperationException e) {
+            // Java до 21: виртуальных потоков нет
+            perTask = null;
+            ofVirtual = null;
+        }
+        THREAD_PER_TASK = perTask;
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_FACTORY = factory;
+    }
+
+    private BulkExecutors() {
+    }
+
+    /**
+     * Проверяет, поддерживает ли среда выполнения виртуальные потоки.
+     *
+     * @return true на Java 21 и новее
+     */
+    public static boolean virtualThreadsAvailable() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Создаёт исполнитель, запускающий каждую задачу в новом виртуальном потоке.
+     *
+     * @param name префикс имён потоков
+     * @return исполнитель
+     * @throws UnsupportedOperationException если виртуальные потоки не поддерживаются
+     */
+    public static ExecutorService newVirtualThreadExecutor(String name) {
+        if (!virtualThreadsAvailable()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+        }
+        try {
+            Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name + "-", 1L);
+            ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            return (ExecutorService) THREAD_PER_TASK.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Cannot create virtual thread executor", e);
+        }
+    }
+
+    /**
+     * Создаёт пул из заданного числа обычных потоков-демонов.
+     *
+     * @param name    префикс имён потоков
+     * @param threads число потоков
+     * @return исполнитель
+     */
+    public static ExecutorService newPlatformExecutor(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,211 @@
+package com.example;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument.ElementSpec;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+import java.io.File;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Фоновая загрузка документа из файла.
+ *
+ * <p>Чтение и разбор HTML выполняются вне потока обработки событий (EDT)
+ * в новый, ещё не подключённый к редактору {@link HTMLDocument}. Готовый документ
+ * возвращается из {@link #get()} и подставляется в редактор одним действием,
+ * поэтому окно остаётся отзывчивым даже при открытии файлов в десятки мегабайт.</p>
+ *
+ * <p>Файл читается через {@link MappedFileReader}: байты декодируются из отображённого
+ * в память файла прямо в буфер парсера, без промежуточных строк. По пути служебную
+ * разметку Word убирает {@link WordHtmlFilter}.</p>
+ *
+ * <p>Файлы {@code .docx} и {@code .rtf} читаются порциями через {@link DocxReader}
+ * и {@link RtfReader}. Первая порция —
+ * чуть больше страницы — сразу публикуется отдельным документом для предпросмотра
+ * ({@link #process}), пока остальное дописывается в полный документ.</p>
+ *
+ * <p>Ход чтения публикуется через свойство {@code progress} (0–100),
+ * отмена через {@link #cancel(boolean)} прерывает разбор при следующем чтении из файла.</p>
+ */
+public class DocumentLoadWorker extends SwingWorker<HTMLDocument, HTMLDocument> {
+
+    /**
+     * Символов импортируемого документа в первой порции, показываемой до конца загрузки: больше страницы.
+     */
+    static final int PREVIEW_CHARS = 6 * 1024;
+
+    /**
+     * Символов импортируемого документа в каждой следующей порции.
+     */
+    private static final int BATCH_CHARS = 256 * 1024;
+
+    /**
+     * Загружаемый файл.
+     */
+    private final File file;
+
+    /**
+     * Редакторский набор, которым создаётся и разбирается документ.
+     */
+    private final HTMLEditorKit editorKit;
+
+    /**
+     * Создаёт задачу загрузки.
+     *
+     * @param file      файл .doc/.html/.docx/.rtf для открытия
+     * @param editorKit набор редактора, в котором будет показан документ
+     */
+    public DocumentLoadWorker(File file, HTMLEditorKit editorKit) {
+        this.file = file;
+        this.editorKit = editorKit;
+    }
+
+    /**
+     * Возвращает загружаемый файл.
+     *
+     * @return файл
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Читает и разбирает файл в новый документ (выполняется в фоновом потоке).
+     *
+     * @return заполненный документ
+     * @throws IOException если файл не удалось прочитать или загрузка отменена
+     * @throws Exception   при ошибке разбора HTML
+     */
+    @Override
+    protected HTMLDocument doInBackground() throws Exception {
+        if (isImported(file)) {
+            try (BlockReader reader = isRtf(file) ? new RtfReader(file.toPath()) : new DocxReader(file.toPath())) {
+                return readBlocks(reader);
+            }
+        }
+        try (MappedFileReader source = new MappedFileReader(file.toPath(), Charset.defaultCharset());
+             Reader reader = new ProgressReader(source)) {
+            return read(editorKit, reader);
+        }
+    }
+
+    /**
+     * Разбирает HTML в новый документ набора редактора. Вызывается в любом потоке:
+     * документ ещё не подключён к редактору. HTML проходит через {@link WordHtmlFilter};
+     * число выброшенных символов сохраняется в свойстве {@link WordHtmlFilter#REMOVED_PROPERTY}.
+     *
+     * @param editorKit набор редактора
+     * @param reader    источник HTML (не закрывается)
+     * @return заполненный документ
+     * @throws IOException          при ошибке чтения
+     * @throws BadLocationException при ошибке построения документа
+     */
+    static HTMLDocument read(HTMLEditorKit editorKit, Reader reader) throws IOException, BadLocationException {
+        HTMLDocument doc = (HTMLDocument) editorKit.createDefaultDocument();
+        // Word пишет <meta charset=...>; кодировку выбираем сами, иначе парсер бросит ChangedCharSetException
+        doc.putProperty("IgnoreCharsetDirective", Boolean.TRUE);
+        WordHtmlFilter filter = new WordHtmlFilter(reader);
+        editorKit.read(filter, doc, 0);
+        doc.putProperty(WordHtmlFilter.REMOVED_PROPERTY, filter.getCharactersRemoved());
+        return doc;
+    }
+
+    /**
+     * Проверяет, импортируется ли файл из другого формата (DOCX или RTF, по расширению):
+     * такой документ открывается новым и сохраняется в {@code .doc}.
+     *
+     * @param file файл
+     * @return true для {@code .docx} и {@code .rtf}
+     */
+    public static boolean isImported(File file) {
+        return file.getName().toLowerCase(Locale.ROOT).endsWith(".docx") || isRtf(file);
+    }
+
+    private static boolean isRtf(File file) {
+        return file.getName().toLowerCase(Locale.ROOT).endsWith(".rtf");
+    }
+
+    /**
+     * Читает импортируемый документ порциями. Первая порция, если документ в неё
+     * не уместился, собирается ещё и в отдельный документ и публикуется для предпросмотра.
+     */
+    private HTMLDocument readBlocks(BlockReader reader) throws IOException, BadLocationException {
+        List<ElementSpec> batch = new ArrayList<>();
+        boolean more = reader.next(batch, PREVIEW_CHARS);
+        ElementSpec[] blocks = batch.toArray(new ElementSpec[0]);
+        if (more) {
+            WordProcessorDocument preview = (WordProcessorDocument) editorKit.createDefaultDocument();
+            preview.appendBlocks(blocks);
+            preview.finishAppending();
+            publish(preview);
+        }
+        WordProcessorDocument doc = (WordProcessorDocument) editorKit.createDefaultDocument();
+        doc.appendBlocks(blocks);
+        while (more) {
+            checkCancelled();
+            batch.clear();
+            more = reader.next(batch, BATCH_CHARS);
+            doc.appendBlocks(batch.toArray(new ElementSpec[0]));
+            setProgress(reader.getProgress());
+        }
+        doc.finishAppending();
+        return doc;
+    }
+
+    private void checkCancelled() throws InterruptedIOException {
+        if (isCancelled()) {
+            throw new InterruptedIOException("Загрузка отменена");
+        }
+    }
+
+    /**
+     * Reader, сообщающий позицию чтения файла индикатору
+     * и прерывающий чтение после отмены задачи.
+     */
+    private class ProgressReader extends FilterReader {
+
+        /**
+         * Исходный reader файла.
+         */
+        private final MappedFileReader source;
+
+        /**
+         * Размер файла в байтах.
+         */
+        private final long total;
+
+        ProgressReader(MappedFileReader source) {
+            super(source);
+            this.source = source;
+            this.total = Math.max(source.size(), 1);
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkCancelled();
+            int c = super.read();
+            advance();
+            return c;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            checkCancelled();
+            int n = super.read(cbuf, off, len);
+            advance();
+            return n;
+        }
+
+        private void advance() {
+            setProgress((int) Math.min(100, source.position() * 100 / total));
+        }
+    }
+}
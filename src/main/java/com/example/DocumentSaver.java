@@ -0,0 +1,129 @@
+package com.example;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLWriter;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+
+/**
+ * Потоковая запись документа в HTML.
+ *
+ * <p>Вместо {@code editorPane.getText()}, который собирает весь документ в одну строку,
+ * дерево элементов {@link HTMLDocument} обходится {@link HTMLWriter}, а разметка сразу
+ * кодируется в буферы ограниченного размера и уходит в {@link FileChannel}.
+ * Сохранение документа в 50 МБ не создаёт строки в 50 МБ.</p>
+ *
+ * <p>Файл заменяется атомарно через {@link AtomicFileSaver}: сбой посреди записи
+ * не портит ранее сохранённую версию.</p>
+ *
+ * <p>Запись выполняется под блокировкой чтения документа ({@link HTMLDocument#render}),
+ * поэтому в файл попадает согласованный снимок, даже если сохранение идёт в фоне,
+ * а пользователь продолжает редактирование.</p>
+ */
+public final class DocumentSaver {
+
+    /**
+     * Размер буфера кодировщика в байтах (и буфера символов перед ним).
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private DocumentSaver() {
+    }
+
+    /**
+     * Атомарно сохраняет документ в файл без резервных копий.
+     *
+     * @param doc    сохраняемый документ
+     * @param target путь к файлу
+     * @throws IOException при ошибке записи; прежнее содержимое файла в этом случае сохраняется
+     */
+    public static void save(HTMLDocument doc, Path target) throws IOException {
+        save(doc, target, new AtomicFileSaver());
+    }
+
+    /**
+     * Сохраняет документ в файл через заданный механизм атомарной записи.
+     *
+     * @param doc    сохраняемый документ
+     * @param target путь к файлу
+     * @param saver  атомарная запись (с резервными копиями или без)
+     * @throws IOException при ошибке записи; прежнее содержимое файла в этом случае сохраняется
+     */
+    public static void save(HTMLDocument doc, Path target, AtomicFileSaver saver) throws IOException {
+        save(doc, target, saver, null);
+    }
+
+    /**
+     * Сохраняет документ, сообщая о моменте снимка.
+     *
+     * @param doc        сохраняемый документ
+     * @param target     путь к файлу
+     * @param saver      атомарная запись (с резервными копиями или без)
+     * @param onSnapshot выполняется под блокировкой чтения перед записью (может быть null);
+     *                   все правки до этого момента попадут в файл, после — нет
+     * @throws IOException при ошибке записи; прежнее содержимое файла в этом случае сохраняется
+     */
+    public static void save(HTMLDocument doc, Path target, AtomicFileSaver saver, Runnable onSnapshot)
+            throws IOException {
+        saver.save(target, channel -> write(doc, channel, onSnapshot));
+    }
+
+    /**
+     * Записывает документ в открытый канал. Канал не закрывается.
+     *
+     * @param doc        сохраняемый документ
+     * @param channel    канал файла
+     * @param onSnapshot выполняется под блокировкой чтения перед записью (может быть null)
+     * @throws IOException при ошибке записи
+     */
+    public static void write(HTMLDocument doc, FileChannel channel, Runnable onSnapshot) throws IOException {
+        Writer out = newWriter(channel, Charset.defaultCharset());
+        write(doc, out, onSnapshot);
+        out.flush();
+    }
+
+    /**
+     * Создаёт буферизованный Writer, кодирующий символы прямо в канал.
+     * Закрытие Writer закрывает и канал.
+     *
+     * @param channel канал файла
+     * @param charset кодировка
+     * @return Writer
+     */
+    static Writer newWriter(FileChannel channel, Charset charset) {
+        return new BufferedWriter(Channels.newWriter(channel, charset.newEncoder(), BUFFER_SIZE), BUFFER_SIZE);
+    }
+
+    /**
+     * Записывает документ в поток символов под блокировкой чтения документа.
+     *
+     * @param doc        сохраняемый документ
+     * @param out        приёмник HTML
+     * @param onSnapshot выполняется под блокировкой чтения перед записью (может быть null)
+     * @throws IOException при ошибке записи
+     */
+    public static void write(HTMLDocument doc, Writer out, Runnable onSnapshot) throws IOException {
+        IOException[] failure = new IOException[1];
+        doc.render(() -> {
+            if (onSnapshot != null) {
+                onSnapshot.run();
+            }
+            try {
+                new HTMLWriter(out, doc).write();
+            } catch (IOException e) {
+                failure[0] = e;
+            } catch (BadLocationException e) {
+                failure[0] = new IOException("Повреждённая структура документа: " + e.getMessage(), e);
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+}
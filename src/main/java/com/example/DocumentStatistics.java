@@ -0,0 +1,354 @@
+package com.example;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.EventListenerList;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Счётчики слов, символов и абзацев документа, поддерживаемые по правкам.
+ *
+ * <p>Счётчики хранятся по абзацам (элементам без вложенных блоков), итог —
+ * их сумма. Правка пересчитывает только задетые абзацы ({@link ElementChanges}):
+ * при наборе — абзац под курсором, при изменении дерева элементов — абзацы
+ * в окне правки. Первый подсчёт большого документа делается
+ * заранее, в потоке загрузки ({@link #count}), пока документ ещё не показан.</p>
+ *
+ * <p>Словом считается последовательность непробельных символов, в которой есть буква
+ * или цифра; символы считаются без переводов строк; абзацы — только непустые.
+ * Используется в потоке событий; слушатели вызываются в нём же.</p>
+ */
+public class DocumentStatistics implements DocumentListener {
+
+    /**
+     * Скорость чтения для оценки времени, слов в минуту.
+     */
+    static final int WORDS_PER_MINUTE = 200;
+
+    /**
+     * Счётчики абзацев документа; первый подсчёт делается в фоне до подключения.
+     */
+    public static final class Tally {
+
+        private final Document document;
+
+        /**
+         * Абзацы по порядку.
+         */
+        private final List<Paragraph> paragraphs = new ArrayList<>();
+
+        private long words;
+
+        private long characters;
+
+        private int nonEmpty;
+
+        /**
+         * Суммарная длина абзацев: абзацы покрывают документ целиком, и расхождение
+         * с его длиной значит, что индекс разошёлся с документом.
+         */
+        private long covered;
+
+        private Tally(Document document) {
+            this.document = document;
+        }
+    }
+
+    /**
+     * Счётчики одного абзаца.
+     */
+    private static final class Paragraph {
+
+        final Element element;
+
+        int words;
+
+        int characters;
+
+        int length;
+
+        Paragraph(Element element) {
+            this.element = element;
+        }
+    }
+
+    private final EventListenerList listeners = new EventListenerList();
+
+    /**
+     * Буфер для чтения текста абзацев.
+     */
+    private final Segment segment = new Segment();
+
+    private Tally tally;
+
+    /**
+     * Считает документ. Вызывается в любом потоке, пока документ никому не виден
+     * (сразу после загрузки), или под блокировкой чтения.
+     *
+     * @param doc документ
+     * @return счётчики для {@link #setDocument}
+     */
+    public static Tally count(Document doc) {
+        Tally tally = new Tally(doc);
+        addAll(tally, doc.getDefaultRootElement(), new Segment());
+        return tally;
+    }
+
+    /**
+     * Подключает счётчики к документу.
+     *
+     * @param doc     документ; null — только отключить
+     * @param counted счётчики этого документа из {@link #count} или null — посчитать сейчас
+     */
+    public void setDocument(Document doc, Tally counted) {
+        if (tally != null) {
+            tally.document.removeDocumentListener(this);
+        }
+        if (doc == null) {
+            tally = null;
+        } else {
+            tally = counted != null && counted.document == doc ? counted : count(doc);
+            doc.addDocumentListener(this);
+        }
+        fireStateChanged();
+    }
+
+    /**
+     * Число слов.
+     *
+     * @return слов в документе
+     */
+    public long getWords() {
+        return tally != null ? tally.words : 0;
+    }
+
+    /**
+     * Число символов без переводов строк.
+     *
+     * @return символов в документе
+     */
+    public long getCharacters() {
+        return tally != null ? tally.characters : 0;
+    }
+
+    /**
+     * Число непустых абзацев.
+     *
+     * @return абзацев в документе
+     */
+    public int getParagraphs() {
+        return tally != null ? tally.nonEmpty : 0;
+    }
+
+    /**
+     * Оценка времени чтения при {@value #WORDS_PER_MINUTE} словах в минуту.
+     *
+     * @return минут, с округлением вверх
+     */
+    public long getReadingMinutes() {
+        return (getWords() + WORDS_PER_MINUTE - 1) / WORDS_PER_MINUTE;
+    }
+
+    /**
+     * Добавляет слушателя изменений счётчиков.
+     *
+     * @param l слушатель
+     */
+    public void addChangeListener(ChangeListener l) {
+        listeners.add(ChangeListener.class, l);
+    }
+
+    /**
+     * Удаляет слушателя изменений счётчиков.
+     *
+     * @param l слушатель
+     */
+    public void removeChangeListener(ChangeListener l) {
+        listeners.remove(ChangeListener.class, l);
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        update(e);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        update(e);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // Смена атрибутов текста не меняет
+    }
+
+    /**
+     * Пересчитывает абзацы, задетые правкой. Если дерево элементов изменилось,
+     * записи окна правки заменяются текущими абзацами.
+     */
+    private void update(DocumentEvent e) {
+        ElementChanges changes = ElementChanges.of(e, tally.document);
+        if (changes.paragraphs.isEmpty()) {
+            return;
+        }
+        List<Paragraph> all = tally.paragraphs;
+        boolean replaced = false;
+        if (!changes.structural) {
+            for (Element element : changes.paragraphs) {
+                int i = find(all, element);
+                if (i < 0) {
+                    replaced = true;
+                    break;
+                }
+                subtract(tally, all.get(i));
+                count(all.get(i), tally.document, segment);
+                add(tally, all.get(i));
+            }
+        }
+        if (changes.structural || replaced) {
+            List<Paragraph> window = all.subList(lowerBound(all, changes.start), lowerBound(all, changes.end));
+            for (Paragraph paragraph : window) {
+                subtract(tally, paragraph);
+            }
+            window.clear();
+            List<Paragraph> current = new ArrayList<>(changes.paragraphs.size());
+            for (Element element : changes.paragraphs) {
+                Paragraph paragraph = new Paragraph(element);
+                count(paragraph, tally.document, segment);
+                add(tally, paragraph);
+                current.add(paragraph);
+            }
+            window.addAll(current);
+        }
+        if (tally.covered != tally.document.getLength() + 1) {
+            tally = count(tally.document);
+        }
+        fireStateChanged();
+    }
+
+    /**
+     * Номер записи абзаца или -1.
+     */
+    private static int find(List<Paragraph> paragraphs, Element element) {
+        for (int i = lowerBound(paragraphs, element.getStartOffset()); i < paragraphs.size(); i++) {
+            Paragraph paragraph = paragraphs.get(i);
+            if (paragraph.element == element) {
+                return i;
+            }
+            if (paragraph.element.getStartOffset() > element.getStartOffset()) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Номер первого абзаца, начинающегося не раньше смещения.
+     */
+    private static int lowerBound(List<Paragraph> paragraphs, int offset) {
+        int low = 0;
+        int high = paragraphs.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (paragraphs.get(mid).element.getStartOffset() < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Добавляет абзацы поддерева по порядку.
+     */
+    private static void addAll(Tally tally, Element element, Segment text) {
+        if (ElementChanges.hasBlocks(element)) {
+            for (int i = 0, n = element.getElementCount(); i < n; i++) {
+                addAll(tally, element.getElement(i), text);
+            }
+        } else {
+            Paragraph paragraph = new Paragraph(element);
+            count(paragraph, tally.document, text);
+            add(tally, paragraph);
+            tally.paragraphs.add(paragraph);
+        }
+    }
+
+    /**
+     * Считает слова и символы абзаца.
+     */
+    private static void count(Paragraph paragraph, Document doc, Segment text) {
+        int words = 0;
+        int characters = 0;
+        boolean inWord = false;
+        boolean wordHasLetter = false;
+        int start = paragraph.element.getStartOffset();
+        int end = paragraph.element.getEndOffset();
+        text.setPartialReturn(true);
+        try {
+            // Последний абзац кончается за документом, на его неявном переводе строки
+            for (int offset = start, last = Math.min(end, doc.getLength()); offset < last; offset += text.count) {
+                doc.getText(offset, last - offset, text);
+                for (int i = text.offset, n = text.offset + text.count; i < n; i++) {
+                    char c = text.array[i];
+                    if (Character.isWhitespace(c)) {
+                        if (inWord && wordHasLetter) {
+                            words++;
+                        }
+                        inWord = false;
+                    } else {
+                        if (!inWord) {
+                            inWord = true;
+                            wordHasLetter = false;
+                        }
+                        wordHasLetter |= Character.isLetterOrDigit(c);
+                    }
+                    if (c != '\n') {
+                        characters++;
+                    }
+                }
+            }
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+        if (inWord && wordHasLetter) {
+            words++;
+        }
+        paragraph.words = words;
+        paragraph.characters = characters;
+        paragraph.length = end - start;
+    }
+
+    private static void add(Tally tally, Paragraph paragraph) {
+        tally.words += paragraph.words;
+        tally.characters += paragraph.characters;
+        tally.covered += paragraph.length;
+        if (paragraph.words > 0) {
+            tally.nonEmpty++;
+        }
+    }
+
+    private static void subtract(Tally tally, Paragraph paragraph) {
+        tally.words -= paragraph.words;
+        tally.characters -= paragraph.characters;
+        tally.covered -= paragraph.length;
+        if (paragraph.words > 0) {
+            tally.nonEmpty--;
+        }
+    }
+
+    private void fireStateChanged() {
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener l : listeners.getListeners(ChangeListener.class)) {
+            l.stateChanged(event);
+        }
+    }
+}
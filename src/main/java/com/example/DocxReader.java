@@ -0,0 +1,1077 @@
+package com.example;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.DefaultStyledDocument.ElementSpec;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.html.HTML;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Потоковый импорт DOCX (Office Open XML) без внешних библиотек — пара к {@link DocxWriter}.
+ *
+ * <p>Основная часть пакета ({@code word/document.xml}) читается StAX-парсером прямо
+ * из ZIP, и абзацы, списки, таблицы и фрагменты текста сразу превращаются в
+ * {@link ElementSpec} для {@link WordProcessorDocument#appendBlocks}: ни DOM, ни модель
+ * документа Word не строятся. Документ отдаётся порциями ({@link #next}), поэтому первую
+ * страницу можно показать, пока читается остальное. Заранее читаются только небольшие
+ * связи частей, стили и нумерация.</p>
+ *
+ * <p>Картинки не извлекаются: адрес {@code jar:} у элемента {@code <img>} указывает на
+ * часть внутри файла, и {@code ImageView} читает её, только когда картинка попадает на
+ * экран ({@link VirtualBlockView} создаёт виды лишь для видимой части документа).</p>
+ *
+ * <p>Переносятся абзацы и заголовки (стили «Заголовок 1–6» и «Название»), выравнивание,
+ * маркированные и нумерованные списки, таблицы с объединёнными по горизонтали ячейками,
+ * ссылки ({@code <w:hyperlink>} и поля {@code HYPERLINK}), картинки и оформление текста:
+ * полужирный, курсив, подчёркивание, зачёркивание, индексы, цвет. Удалённый при
+ * рецензировании текст, надписи, колонтитулы и сноски пропускаются.</p>
+ */
+public final class DocxReader implements BlockReader {
+
+    private static final String W = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+
+    private static final String R = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    private static final String MC = "http://schemas.openxmlformats.org/markup-compatibility/2006";
+
+    private static final String OFFICE_DOCUMENT = R + "/officeDocument";
+
+    /**
+     * EMU (единиц DrawingML) в пикселе при 96 точках на дюйм.
+     */
+    private static final int EMU_PER_PIXEL = 9525;
+
+    private static final AttributeSet CONTENT = BlockBuilder.CONTENT;
+
+    private static final AttributeSet BREAK = HtmlFragment.tag(HTML.Tag.BR);
+
+    private final ZipFile zip;
+
+    /**
+     * Адрес корня пакета: {@code jar:file:...!/}.
+     */
+    private final String base;
+
+    private final XMLInputFactory factory;
+
+    /**
+     * Связи основной части: идентификатор → имя части в пакете или внешний адрес.
+     */
+    private final Map<String, String> relationships = new HashMap<>();
+
+    private final Map<String, Style> styles = new HashMap<>();
+
+    /**
+     * Нумерация: {@code w:numId} → форматы уровней.
+     */
+    private final Map<String, BlockBuilder.Numbering> numbering = new HashMap<>();
+
+    private final CountingStream input;
+
+    /**
+     * Размер основной части в байтах.
+     */
+    private final long total;
+
+    private final XMLStreamReader xml;
+
+    private final BlockBuilder blocks = new BlockBuilder();
+
+    /**
+     * Текст текущего фрагмента.
+     */
+    private char[] text = new char[256];
+
+    private int textLength;
+
+    private boolean inText;
+
+    /**
+     * Код поля, собираемый из {@code <w:instrText>}, или null.
+     */
+    private StringBuilder instruction;
+
+    private boolean inInstruction;
+
+    /**
+     * Начатый абзац, описание которого ещё не выдано: ждёт свойств {@code <w:pPr>}.
+     */
+    private boolean paragraphPending;
+
+    private String paragraphStyle;
+
+    private String numId;
+
+    private int listLevel;
+
+    private String align;
+
+    /**
+     * Начатая ячейка, описание которой ждёт свойств {@code <w:tcPr>}.
+     */
+    private boolean cellPending;
+
+    private int colspan;
+
+    private AttributeSet run = CONTENT;
+
+    private String hyperlink;
+
+    private String simpleField;
+
+    /**
+     * Открытые сложные поля ({@code <w:fldChar>}), от внешнего к внутреннему.
+     */
+    private final List<Field> fields = new ArrayList<>();
+
+    private AttributeSet linkRun;
+
+    private String linkHref;
+
+    private AttributeSet linkAttributes;
+
+    /**
+     * Открывает файл DOCX и читает связи, стили и нумерацию.
+     *
+     * @param file файл DOCX
+     * @throws IOException если файл не читается или это не документ Word
+     */
+    public DocxReader(Path file) throws IOException {
+        zip = new ZipFile(file.toFile());
+        try {
+            base = "jar:" + file.toUri() + "!/";
+            factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+            Map<String, String> types = new HashMap<>();
+            readRelationships("", types, new HashMap<>());
+            String main = types.getOrDefault(OFFICE_DOCUMENT, "word/document.xml");
+            ZipEntry entry = zip.getEntry(main);
+            if (entry == null) {
+                throw new IOException("Not a Word document: " + main + " is missing");
+            }
+            types.clear();
+            readRelationships(main, types, relationships);
+            String stylesPart = types.get(R + "/styles");
+            if (stylesPart != null) {
+                readStyles(stylesPart);
+            }
+            String numberingPart = types.get(R + "/numbering");
+            if (numberingPart != null) {
+                readNumbering(numberingPart);
+            }
+
+            total = Math.max(entry.getSize(), 1);
+            input = new CountingStream(zip.getInputStream(entry));
+            xml = factory.createXMLStreamReader(input);
+        } catch (IOException | RuntimeException e) {
+            zip.close();
+            throw e;
+        } catch (XMLStreamException e) {
+            zip.close();
+            throw malformed(e);
+        }
+    }
+
+    @Override
+    public boolean next(List<ElementSpec> specs, int chars) throws IOException {
+        blocks.setTarget(specs);
+        long limit = blocks.written() + chars;
+        try {
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    startElement();
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (endElement() && blocks.isTopLevel() && blocks.written() >= limit) {
+                        return true;
+                    }
+                } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                    characters();
+                }
+            }
+            blocks.closeAll();
+            return false;
+        } catch (XMLStreamException e) {
+            throw malformed(e);
+        } finally {
+            blocks.setTarget(null);
+        }
+    }
+
+    @Override
+    public int getProgress() {
+        return (int) Math.min(100, input.count * 100 / total);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (xml != null) {
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            throw malformed(e);
+        } finally {
+            zip.close();
+        }
+    }
+
+    private void startElement() throws XMLStreamException {
+        String name = xml.getLocalName();
+        if (!W.equals(xml.getNamespaceURI())) {
+            // Запасной вариант рисунка для старых версий Word: картинка уже взята из mc:Choice
+            if (MC.equals(xml.getNamespaceURI()) && "Fallback".equals(name)) {
+                skip();
+            }
+            return;
+        }
+        if (cellPending && !"tcPr".equals(name)) {
+            beginCell();
+        }
+        switch (name) {
+            case "p":
+                paragraphPending = true;
+                paragraphStyle = null;
+                numId = null;
+                listLevel = 0;
+                align = null;
+                break;
+            case "pPr":
+                paragraphProperties();
+                break;
+            case "r":
+                run = CONTENT;
+                break;
+            case "rPr":
+                runProperties();
+                break;
+            case "t":
+                inText = true;
+                break;
+            case "instrText":
+                inInstruction = instruction != null;
+                break;
+            case "tab":
+                append('\t');
+                break;
+            case "noBreakHyphen":
+                append('\u2011');
+                break;
+            case "softHyphen":
+                append('\u00AD');
+                break;
+            case "br":
+            case "cr":
+                addLeaf(BREAK);
+                break;
+            case "drawing":
+                drawing();
+                break;
+            case "pict":
+            case "object":
+                picture();
+                break;
+            case "hyperlink":
+                hyperlink = href(xml.getAttributeValue(R, "id"), xml.getAttributeValue(W, "anchor"));
+                break;
+            case "fldSimple":
+                simpleField = fieldLink(xml.getAttributeValue(W, "instr"));
+                break;
+            case "fldChar":
+                fieldChar(xml.getAttributeValue(W, "fldCharType"));
+                break;
+            case "tbl":
+                blocks.openTable();
+                break;
+            case "tr":
+                blocks.openRow();
+                break;
+            case "tc":
+                cellPending = true;
+                colspan = 1;
+                break;
+            case "tcPr":
+                cellProperties();
+                break;
+            case "del":
+            case "moveFrom":
+            case "delText":
+            case "delInstrText":
+            case "sectPr":
+            case "tblPr":
+            case "tblGrid":
+            case "tblPrEx":
+            case "trPr":
+            case "sdtPr":
+            case "sdtEndPr":
+            case "rt":
+            case "txbxContent":
+                skip();
+                break;
+            default:
+                // ins, moveTo, sdt, smartTag, customXml и подобные обёртки прозрачны
+                break;
+        }
+    }
+
+    /**
+     * Обрабатывает конец элемента.
+     *
+     * @return true, если закончился абзац
+     */
+    private boolean endElement() {
+        if (!W.equals(xml.getNamespaceURI())) {
+            return false;
+        }
+        switch (xml.getLocalName()) {
+            case "p":
+                endParagraph();
+                return true;
+            case "t":
+                inText = false;
+                break;
+            case "instrText":
+                inInstruction = false;
+                break;
+            case "r":
+                flush();
+                run = CONTENT;
+                break;
+            case "hyperlink":
+                flush();
+                hyperlink = null;
+                break;
+            case "fldSimple":
+                flush();
+                simpleField = null;
+                break;
+            case "tc":
+                if (cellPending) {
+                    beginCell();
+                }
+                blocks.closeCell();
+                break;
+            case "tr":
+            case "tbl":
+                blocks.closeBlock();
+                break;
+            default:
+                break;
+        }
+        return false;
+    }
+
+    private void characters() {
+        char[] source = xml.getTextCharacters();
+        int start = xml.getTextStart();
+        int length = xml.getTextLength();
+        if (inInstruction) {
+            instruction.append(source, start, length);
+            return;
+        }
+        if (!inText || !fieldResult()) {
+            return;
+        }
+        ensureText(length);
+        for (int i = 0; i < length; i++) {
+            char c = source[start + i];
+            // Перевод строки разбил бы абзац
+            text[textLength++] = c == '\n' || c == '\r' ? ' ' : c;
+        }
+    }
+
+    private void append(char c) {
+        ensureText(1);
+        text[textLength++] = c;
+    }
+
+    private void ensureText(int length) {
+        if (textLength + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+        }
+    }
+
+    /**
+     * Выдаёт накопленный текст фрагмента с оформлением фрагмента и ссылкой.
+     */
+    private void flush() {
+        if (textLength == 0) {
+            return;
+        }
+        beginParagraph();
+        blocks.text(text, 0, textLength, textAttributes());
+        textLength = 0;
+    }
+
+    /**
+     * Добавляет в абзац элемент из одного символа: перевод строки или картинку.
+     */
+    private void addLeaf(AttributeSet attributes) {
+        flush();
+        beginParagraph();
+        blocks.leaf(attributes);
+    }
+
+    private AttributeSet textAttributes() {
+        String href = link();
+        if (href == null) {
+            return run;
+        }
+        if (run != linkRun || !href.equals(linkHref)) {
+            linkRun = run;
+            linkHref = href;
+            linkAttributes = HtmlFragment.linkAttributes(run, href);
+        }
+        return linkAttributes;
+    }
+
+    /**
+     * Адрес ссылки, внутри которой находится текст, или null.
+     */
+    private String link() {
+        if (hyperlink != null) {
+            return hyperlink;
+        }
+        if (simpleField != null) {
+            return simpleField;
+        }
+        for (int i = fields.size() - 1; i >= 0; i--) {
+            Field field = fields.get(i);
+            if (field.result && field.href != null) {
+                return field.href;
+            }
+        }
+        return null;
+    }
+
+    private void paragraphProperties() throws XMLStreamException {
+        while (child()) {
+            switch (xml.getLocalName()) {
+                case "pStyle":
+                    paragraphStyle = xml.getAttributeValue(W, "val");
+                    break;
+                case "jc":
+                    align = alignment(xml.getAttributeValue(W, "val"));
+                    break;
+                case "numPr":
+                    while (child()) {
+                        if ("numId".equals(xml.getLocalName())) {
+                            numId = xml.getAttributeValue(W, "val");
+                        } else if ("ilvl".equals(xml.getLocalName())) {
+                            listLevel = number(xml.getAttributeValue(W, "val"), 0);
+                        }
+                        skip();
+                    }
+                    continue;
+                default:
+                    break;
+            }
+            skip();
+        }
+    }
+
+    /**
+     * Выдаёт начало абзаца, если оно ещё не выдано: заголовок, пункт списка или обычный абзац.
+     */
+    private void beginParagraph() {
+        if (!paragraphPending) {
+            return;
+        }
+        paragraphPending = false;
+        Style style = paragraphStyle != null ? styles.get(paragraphStyle) : null;
+        int heading = style != null ? style.heading : 0;
+        String list = numId != null ? numId : style != null ? style.numId : null;
+        int level = numId != null ? listLevel : style != null ? style.level : 0;
+        blocks.beginParagraph(heading, align, list != null ? numbering.get(list) : null, level);
+    }
+
+    private void endParagraph() {
+        flush();
+        beginParagraph();
+        blocks.endParagraph();
+    }
+
+    private void cellProperties() throws XMLStreamException {
+        while (child()) {
+            if ("gridSpan".equals(xml.getLocalName())) {
+                colspan = Math.max(1, number(xml.getAttributeValue(W, "val"), 1));
+            }
+            skip();
+        }
+    }
+
+    private void beginCell() {
+        cellPending = false;
+        blocks.openCell(colspan);
+    }
+
+    private void runProperties() throws XMLStreamException {
+        int format = 0;
+        String color = null;
+        while (child()) {
+            String value = xml.getAttributeValue(W, "val");
+            switch (xml.getLocalName()) {
+                case "b":
+                    format = toggle(format, BlockBuilder.Format.BOLD, value);
+                    break;
+                case "i":
+                    format = toggle(format, BlockBuilder.Format.ITALIC, value);
+                    break;
+                case "u":
+                    format = toggle(format, BlockBuilder.Format.UNDERLINE, "none".equals(value) ? "0" : value);
+                    break;
+                case "strike":
+                case "dstrike":
+                    format = toggle(format, BlockBuilder.Format.STRIKE, value);
+                    break;
+                case "vertAlign":
+                    format &= ~(BlockBuilder.Format.SUPERSCRIPT | BlockBuilder.Format.SUBSCRIPT);
+                    format |= "superscript".equals(value) ? BlockBuilder.Format.SUPERSCRIPT
+                            : "subscript".equals(value) ? BlockBuilder.Format.SUBSCRIPT : 0;
+                    break;
+                case "color":
+                    color = value == null || "auto".equals(value) || value.length() != 6
+                            ? null : "#" + value.toLowerCase(Locale.ROOT);
+                    break;
+                default:
+                    break;
+            }
+            skip();
+        }
+        run = blocks.run(format, color);
+    }
+
+    /**
+     * Включает или выключает признак по значению свойства-переключателя Word:
+     * без значения — включён.
+     */
+    private static int toggle(int format, int flag, String value) {
+        boolean on = value == null || !("0".equals(value) || "false".equals(value) || "off".equals(value));
+        return on ? format | flag : format & ~flag;
+    }
+
+    private String href(String id, String anchor) {
+        String target = id != null ? relationships.get(id) : null;
+        if (anchor == null || anchor.isEmpty()) {
+            return target;
+        }
+        return (target != null ? target : "") + "#" + anchor;
+    }
+
+    private void fieldChar(String type) {
+        flush();
+        if ("begin".equals(type)) {
+            fields.add(new Field());
+            instruction = new StringBuilder();
+        } else if ("separate".equals(type) && !fields.isEmpty()) {
+            Field field = fields.get(fields.size() - 1);
+            field.result = true;
+            field.href = fieldLink(instruction != null ? instruction.toString() : null);
+            instruction = null;
+        } else if ("end".equals(type) && !fields.isEmpty()) {
+            fields.remove(fields.size() - 1);
+            instruction = null;
+        }
+    }
+
+    /**
+     * Находится ли текст в результате поля, а не в его коде.
+     */
+    private boolean fieldResult() {
+        return fields.isEmpty() || fields.get(fields.size() - 1).result;
+    }
+
+    /**
+     * Адрес из кода поля {@code HYPERLINK "адрес" \l "закладка"} или null для других полей.
+     */
+    static String fieldLink(String instruction) {
+        if (instruction == null) {
+            return null;
+        }
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        int length = instruction.length();
+        for (int i = 0; i < length; ) {
+            char c = instruction.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            word.setLength(0);
+            if (c == '"') {
+                for (i++; i < length && instruction.charAt(i) != '"'; i++) {
+                    char d = instruction.charAt(i);
+                    if (d == '\\' && i + 1 < length) {
+                        d = instruction.charAt(++i);
+                    }
+                    word.append(d);
+                }
+                i++;
+            } else {
+                for (; i < length && !Character.isWhitespace(instruction.charAt(i)); i++) {
+                    word.append(instruction.charAt(i));
+                }
+            }
+            words.add(word.toString());
+        }
+        if (words.isEmpty() || !"HYPERLINK".equalsIgnoreCase(words.get(0))) {
+            return null;
+        }
+        String target = null;
+        String anchor = null;
+        for (int i = 1; i < words.size(); i++) {
+            String w = words.get(i);
+            if ("\\l".equalsIgnoreCase(w) && i + 1 < words.size()) {
+                anchor = words.get(++i);
+            } else if (w.startsWith("\\")) {
+                // \o, \t и прочие ключи со значением
+                if (!"\\m".equalsIgnoreCase(w) && !"\\n".equalsIgnoreCase(w)) {
+                    i++;
+                }
+            } else if (target == null) {
+                target = w;
+            }
+        }
+        if (anchor != null && !anchor.isEmpty()) {
+            return (target != null ? target : "") + "#" + anchor;
+        }
+        return target != null && !target.isEmpty() ? target : null;
+    }
+
+    /**
+     * Читает рисунок DrawingML: картинку ({@code <a:blip r:embed>}) и её размер на странице.
+     */
+    private void drawing() throws XMLStreamException {
+        String embed = null;
+        long width = 0;
+        long height = 0;
+        for (int depth = 1; depth > 0; ) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String name = xml.getLocalName();
+                if ("extent".equals(name) && width == 0) {
+                    width = number(xml.getAttributeValue(null, "cx"), 0L);
+                    height = number(xml.getAttributeValue(null, "cy"), 0L);
+                } else if ("blip".equals(name) && embed == null) {
+                    embed = xml.getAttributeValue(R, "embed");
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        image(embed, (int) (width / EMU_PER_PIXEL), (int) (height / EMU_PER_PIXEL));
+    }
+
+    /**
+     * Читает рисунок VML ({@code <w:pict>}, {@code <w:object>}): картинку
+     * ({@code <v:imagedata r:id>}) и размер из стиля фигуры.
+     */
+    private void picture() throws XMLStreamException {
+        String id = null;
+        String style = null;
+        for (int depth = 1; depth > 0; ) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String name = xml.getLocalName();
+                if ("shape".equals(name) && style == null) {
+                    style = xml.getAttributeValue(null, "style");
+                } else if ("imagedata".equals(name) && id == null) {
+                    id = xml.getAttributeValue(R, "id");
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        image(id, points(style, "width"), points(style, "height"));
+    }
+
+    private void image(String id, int width, int height) {
+        String part = id != null ? relationships.get(id) : null;
+        if (part == null || part.indexOf(':') >= 0) {
+            return;
+        }
+        SimpleAttributeSet attributes = new SimpleAttributeSet(HtmlFragment.tag(HTML.Tag.IMG));
+        attributes.addAttribute(HTML.Attribute.SRC, base + part);
+        if (width > 0 && height > 0) {
+            attributes.addAttribute(HTML.Attribute.WIDTH, Integer.toString(width));
+            attributes.addAttribute(HTML.Attribute.HEIGHT, Integer.toString(height));
+        }
+        addLeaf(attributes);
+    }
+
+    /**
+     * Размер в пикселях из стиля фигуры VML, например {@code width:120pt}; 0, если не задан.
+     */
+    private static int points(String style, String property) {
+        if (style == null) {
+            return 0;
+        }
+        for (String declaration : style.split(";")) {
+            int colon = declaration.indexOf(':');
+            if (colon > 0 && declaration.substring(0, colon).trim().equals(property)) {
+                String value = declaration.substring(colon + 1).trim();
+                try {
+                    if (value.endsWith("pt")) {
+                        return (int) Math.round(Double.parseDouble(value.substring(0, value.length() - 2)) * 96 / 72);
+                    }
+                    if (value.endsWith("px")) {
+                        return (int) Math.round(Double.parseDouble(value.substring(0, value.length() - 2)));
+                    }
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Читает связи части пакета: для {@code word/document.xml} — из
+     * {@code word/_rels/document.xml.rels}.
+     *
+     * @param part    имя части; "" — связи самого пакета
+     * @param types   заполняется: тип связи → имя части
+     * @param targets заполняется: идентификатор → имя части или внешний адрес
+     */
+    private void readRelationships(String part, Map<String, String> types, Map<String, String> targets)
+            throws IOException, XMLStreamException {
+        String folder = part.substring(0, part.lastIndexOf('/') + 1);
+        XMLStreamReader r = openPart(folder + "_rels/" + part.substring(folder.length()) + ".rels");
+        if (r == null) {
+            return;
+        }
+        try {
+            while (r.hasNext()) {
+                if (r.next() != XMLStreamConstants.START_ELEMENT || !"Relationship".equals(r.getLocalName())) {
+                    continue;
+                }
+                String target = r.getAttributeValue(null, "Target");
+                if (target == null) {
+                    continue;
+                }
+                if (!"External".equals(r.getAttributeValue(null, "TargetMode"))) {
+                    target = resolve(folder, target);
+                }
+                String type = r.getAttributeValue(null, "Type");
+                if (type != null) {
+                    // Строгий Open XML пишет типы в другом пространстве имён
+                    types.putIfAbsent(type.replace("http://purl.oclc.org/ooxml/officeDocument/relationships", R),
+                            target);
+                }
+                String id = r.getAttributeValue(null, "Id");
+                if (id != null) {
+                    targets.put(id, target);
+                }
+            }
+        } finally {
+            r.close();
+        }
+    }
+
+    private void readStyles(String part) throws IOException, XMLStreamException {
+        XMLStreamReader r = openPart(part);
+        if (r == null) {
+            return;
+        }
+        try {
+            Style style = null;
+            while (r.hasNext()) {
+                if (r.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String value = r.getAttributeValue(W, "val");
+                switch (r.getLocalName()) {
+                    case "style":
+                        style = "paragraph".equals(r.getAttributeValue(W, "type")) ? new Style() : null;
+                        String id = r.getAttributeValue(W, "styleId");
+                        if (style != null && id != null) {
+                            styles.put(id, style);
+                        }
+                        break;
+                    case "name":
+                        if (style != null && value != null) {
+                            String name = value.toLowerCase(Locale.ROOT);
+                            if (name.equals("title")) {
+                                style.heading = 1;
+                            } else if (name.startsWith("heading ")) {
+                                int level = number(name.substring("heading ".length()), 0);
+                                style.heading = level >= 1 && level <= 6 ? level : 0;
+                            }
+                        }
+                        break;
+                    case "basedOn":
+                        if (style != null) {
+                            style.basedOn = value;
+                        }
+                        break;
+                    case "outlineLvl":
+                        if (style != null && style.heading == 0) {
+                            int level = number(value, 9) + 1;
+                            style.heading = level >= 1 && level <= 6 ? level : 0;
+                        }
+                        break;
+                    case "numId":
+                        if (style != null) {
+                            style.numId = value;
+                        }
+                        break;
+                    case "ilvl":
+                        if (style != null) {
+                            style.level = number(value, 0);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            r.close();
+        }
+        // Заголовок и список наследуются от стиля-основы
+        for (Style style : styles.values()) {
+            Style parent = style;
+            for (int i = 0; i < 8 && (style.heading == 0 || style.numId == null) && parent.basedOn != null; i++) {
+                parent = styles.get(parent.basedOn);
+                if (parent == null) {
+                    break;
+                }
+                if (style.heading == 0) {
+                    style.heading = parent.heading;
+                }
+                if (style.numId == null && parent.numId != null) {
+                    style.numId = parent.numId;
+                    style.level = parent.level;
+                }
+            }
+        }
+    }
+
+    private void readNumbering(String part) throws IOException, XMLStreamException {
+        XMLStreamReader r = openPart(part);
+        if (r == null) {
+            return;
+        }
+        try {
+            Map<String, BlockBuilder.Numbering> abstracts = new HashMap<>();
+            BlockBuilder.Numbering current = null;
+            String num = null;
+            int level = 0;
+            while (r.hasNext()) {
+                if (r.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String value = r.getAttributeValue(W, "val");
+                switch (r.getLocalName()) {
+                    case "abstractNum":
+                        current = new BlockBuilder.Numbering();
+                        abstracts.put(r.getAttributeValue(W, "abstractNumId"), current);
+                        break;
+                    case "num":
+                        current = null;
+                        num = r.getAttributeValue(W, "numId");
+                        break;
+                    case "abstractNumId":
+                        BlockBuilder.Numbering source = abstracts.get(value);
+                        if (num != null && source != null) {
+                            current = source.copy();
+                            numbering.put(num, current);
+                        }
+                        break;
+                    case "lvl":
+                    case "lvlOverride":
+                        level = number(r.getAttributeValue(W, "ilvl"), 0);
+                        break;
+                    case "numFmt":
+                        if (current != null && level >= 0 && level < BlockBuilder.LIST_LEVELS) {
+                            current.formats[level] = value;
+                        }
+                        break;
+                    case "start":
+                    case "startOverride":
+                        if (current != null && level >= 0 && level < BlockBuilder.LIST_LEVELS) {
+                            current.starts[level] = number(value, 1);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            r.close();
+        }
+    }
+
+    /**
+     * Открывает часть пакета для чтения; null, если её нет. Поток части закрывается
+     * вместе с ZIP-файлом.
+     */
+    private XMLStreamReader openPart(String name) throws IOException, XMLStreamException {
+        ZipEntry entry = zip.getEntry(name);
+        return entry == null ? null : factory.createXMLStreamReader(zip.getInputStream(entry));
+    }
+
+    /**
+     * Имя части по адресу связи относительно папки.
+     */
+    private static String resolve(String folder, String target) {
+        String path = target.startsWith("/") ? target.substring(1) : folder + target;
+        int up;
+        while ((up = path.indexOf("/../")) > 0) {
+            int parent = path.lastIndexOf('/', up - 1);
+            path = path.substring(0, parent + 1) + path.substring(up + 4);
+        }
+        return path;
+    }
+
+    /**
+     * Переходит к следующему дочернему элементу.
+     *
+     * @return true, если найден дочерний элемент; false, если закончился текущий
+     */
+    private boolean child() throws XMLStreamException {
+        while (true) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Пропускает текущий элемент вместе с содержимым.
+     */
+    private void skip() throws XMLStreamException {
+        for (int depth = 1; depth > 0; ) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static String alignment(String value) {
+        if (value == null) {
+            return null;
+        }
+        switch (value) {
+            case "center":
+                return "center";
+            case "right":
+            case "end":
+                return "right";
+            case "both":
+            case "distribute":
+                return "justify";
+            default:
+                return null;
+        }
+    }
+
+    private static int number(String value, int fallback) {
+        try {
+            return value != null ? Integer.parseInt(value.trim()) : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static long number(String value, long fallback) {
+        try {
+            return value != null ? Long.parseLong(value.trim()) : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static IOException malformed(XMLStreamException e) {
+        return new IOException("Malformed DOCX: " + e.getMessage(), e);
+    }
+
+    /**
+     * Стиль абзаца: уровень заголовка и нумерация.
+     */
+    private static final class Style {
+
+        int heading;
+
+        String numId;
+
+        int level;
+
+        String basedOn;
+    }
+
+    /**
+     * Открытое сложное поле.
+     */
+    private static final class Field {
+
+        /**
+         * Прочитан ли код поля (после {@code separate} идёт результат).
+         */
+        boolean result;
+
+        String href;
+    }
+
+    /**
+     * Поток, считающий прочитанные байты.
+     */
+    private static final class CountingStream extends FilterInputStream {
+
+        volatile long count;
+
+        CountingStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
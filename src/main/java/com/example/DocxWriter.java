@@ -0,0 +1,599 @@
+package com.example;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLDocument;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Потоковый экспорт документа в DOCX (Office Open XML) без внешних библиотек.
+ *
+ * <p>Дерево элементов {@link HTMLDocument} обходится под блокировкой чтения, как
+ * в {@link DocumentSaver}, и {@code word/document.xml} пишется прямо в
+ * {@link ZipOutputStream}: ни XML, ни модель документа Word в памяти не строятся,
+ * поэтому память не зависит от размера документа. Переносятся абзацы, заголовки
+ * H1–H6 (встроенные стили Word «Заголовок 1–6»), списки, цитаты, преформатированный
+ * текст, таблицы, выравнивание абзацев, ссылки и оформление текста: полужирный, курсив,
+ * подчёркивание, зачёркивание, верхний и нижний индексы, цвет.</p>
+ *
+ * <p>Ссылки пишутся полями {@code HYPERLINK}, а не элементами {@code <w:hyperlink>}:
+ * тем нужна запись в {@code document.xml.rels} на каждый адрес, то есть таблица всех
+ * ссылок документа до конца записи. Word и LibreOffice показывают поле как обычную
+ * ссылку. Нумерация списков ({@code numbering.xml}) пишется после текста — от неё
+ * нужно только число нумерованных списков.</p>
+ */
+public final class DocxWriter {
+
+    private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+    private static final String W_NS = "xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\"";
+
+    private static final String CONTENT_TYPES = XML_HEADER
+            + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+            + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+            + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+            + "<Override PartName=\"/word/document.xml\" ContentType=\""
+            + "application/vnd.openxmlformats-officedocument.wordprocessingml.document.main+xml\"/>"
+            + "<Override PartName=\"/word/styles.xml\" ContentType=\""
+            + "application/vnd.openxmlformats-officedocument.wordprocessingml.styles+xml\"/>"
+            + "<Override PartName=\"/word/numbering.xml\" ContentType=\""
+            + "application/vnd.openxmlformats-officedocument.wordprocessingml.numbering+xml\"/>"
+            + "</Types>";
+
+    private static final String PACKAGE_RELATIONSHIPS = XML_HEADER
+            + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+            + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/"
+            + "relationships/officeDocument\" Target=\"word/document.xml\"/>"
+            + "</Relationships>";
+
+    private static final String DOCUMENT_RELATIONSHIPS = XML_HEADER
+            + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+            + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/"
+            + "relationships/styles\" Target=\"styles.xml\"/>"
+            + "<Relationship Id=\"rId2\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/"
+            + "relationships/numbering\" Target=\"numbering.xml\"/>"
+            + "</Relationships>";
+
+    private static final String STYLES;
+
+    static {
+        StringBuilder sb = new StringBuilder(XML_HEADER);
+        sb.append("<w:styles ").append(W_NS).append('>')
+                .append("<w:docDefaults><w:rPrDefault><w:rPr>")
+                .append("<w:rFonts w:ascii=\"Times New Roman\" w:hAnsi=\"Times New Roman\" w:cs=\"Times New Roman\"/>")
+                .append("<w:sz w:val=\"24\"/><w:lang w:val=\"ru-RU\"/></w:rPr></w:rPrDefault>")
+                .append("<w:pPrDefault><w:pPr><w:spacing w:after=\"120\"/></w:pPr></w:pPrDefault></w:docDefaults>")
+                .append("<w:style w:type=\"paragraph\" w:default=\"1\" w:styleId=\"Normal\">")
+                .append("<w:name w:val=\"Normal\"/><w:qFormat/></w:style>");
+        int[] sizes = {48, 36, 28, 24, 20, 16};
+        for (int level = 1; level <= 6; level++) {
+            sb.append("<w:style w:type=\"paragraph\" w:styleId=\"Heading").append(level).append("\">")
+                    .append("<w:name w:val=\"heading ").append(level).append("\"/>")
+                    .append("<w:basedOn w:val=\"Normal\"/><w:next w:val=\"Normal\"/><w:qFormat/>")
+                    .append("<w:pPr><w:keepNext/><w:spacing w:before=\"240\" w:after=\"120\"/>")
+                    .append("<w:outlineLvl w:val=\"").append(level - 1).append("\"/></w:pPr>")
+                    .append("<w:rPr><w:b/><w:sz w:val=\"").append(sizes[level - 1]).append("\"/></w:rPr></w:style>");
+        }
+        sb.append("<w:style w:type=\"paragraph\" w:styleId=\"ListParagraph\">")
+                .append("<w:name w:val=\"List Paragraph\"/><w:basedOn w:val=\"Normal\"/>")
+                .append("<w:pPr><w:ind w:left=\"720\"/></w:pPr></w:style>")
+                .append("<w:style w:type=\"paragraph\" w:styleId=\"Quote\">")
+                .append("<w:name w:val=\"Quote\"/><w:basedOn w:val=\"Normal\"/>")
+                .append("<w:pPr><w:ind w:left=\"720\" w:right=\"720\"/></w:pPr><w:rPr><w:i/></w:rPr></w:style>")
+                .append("<w:style w:type=\"paragraph\" w:styleId=\"HTMLPreformatted\">")
+                .append("<w:name w:val=\"HTML Preformatted\"/><w:basedOn w:val=\"Normal\"/>")
+                .append("<w:pPr><w:spacing w:after=\"0\"/></w:pPr>")
+                .append("<w:rPr><w:rFonts w:ascii=\"Courier New\" w:hAnsi=\"Courier New\" w:cs=\"Courier New\"/>")
+                .append("<w:sz w:val=\"20\"/></w:rPr></w:style>")
+                .append("<w:style w:type=\"character\" w:styleId=\"Hyperlink\">")
+                .append("<w:name w:val=\"Hyperlink\"/><w:rPr><w:color w:val=\"0563C1\"/><w:u w:val=\"single\"/>")
+                .append("</w:rPr></w:style>")
+                .append("<w:style w:type=\"table\" w:styleId=\"TableGrid\">")
+                .append("<w:name w:val=\"Table Grid\"/><w:tblPr><w:tblBorders>");
+        for (String side : new String[] {"top", "left", "bottom", "right", "insideH", "insideV"}) {
+            sb.append("<w:").append(side).append(" w:val=\"single\" w:sz=\"4\" w:space=\"0\" w:color=\"auto\"/>");
+        }
+        sb.append("</w:tblBorders></w:tblPr></w:style></w:styles>");
+        STYLES = sb.toString();
+    }
+
+    /**
+     * Параметры страницы: A4, поля: левое 3 см, правое 1,5 см, верхнее и нижнее 2 см.
+     */
+    private static final String SECTION = "<w:sectPr><w:pgSz w:w=\"11906\" w:h=\"16838\"/>"
+            + "<w:pgMar w:top=\"1134\" w:right=\"850\" w:bottom=\"1134\" w:left=\"1701\""
+            + " w:header=\"708\" w:footer=\"708\" w:gutter=\"0\"/></w:sectPr>";
+
+    /**
+     * Уровней вложенности списков в Word.
+     */
+    private static final int LIST_LEVELS = 9;
+
+    /**
+     * Номер нумерации маркированных списков; нумерованные получают свои номера начиная со следующего,
+     * чтобы каждый начинался с единицы.
+     */
+    private static final int BULLET_LIST = 1;
+
+    private final HTMLDocument doc;
+
+    private final Writer out;
+
+    private final Segment text = new Segment();
+
+    /**
+     * Номера нумерации открытых списков по уровням и глубина вложенности.
+     */
+    private final int[] lists = new int[LIST_LEVELS];
+
+    private int listDepth;
+
+    /**
+     * Сколько нумерованных списков уже встретилось.
+     */
+    private int orderedLists;
+
+    /**
+     * Начат пункт списка, и его номер ещё не выведен (выводится у первого абзаца пункта).
+     */
+    private boolean itemStarted;
+
+    private int quoteDepth;
+
+    private int preDepth;
+
+    /**
+     * Число выведенных абзацев и был ли последним выведенный блок таблицей: ячейка
+     * Word должна кончаться абзацем.
+     */
+    private long paragraphs;
+
+    private boolean afterTable;
+
+    private DocxWriter(HTMLDocument doc, Writer out) {
+        this.doc = doc;
+        this.out = out;
+        text.setPartialReturn(true);
+    }
+
+    /**
+     * Атомарно сохраняет документ в файл DOCX.
+     *
+     * @param doc    документ
+     * @param target путь к файлу
+     * @param saver  атомарная запись
+     * @throws IOException при ошибке записи; прежнее содержимое файла в этом случае сохраняется
+     */
+    public static void save(HTMLDocument doc, Path target, AtomicFileSaver saver) throws IOException {
+        saver.save(target, channel -> write(doc, Channels.newOutputStream(channel)));
+    }
+
+    /**
+     * Записывает документ в поток как DOCX под блокировкой чтения документа. Поток не закрывается.
+     *
+     * @param doc документ
+     * @param out приёмник архива
+     * @throws IOException при ошибке записи
+     */
+    public static void write(HTMLDocument doc, OutputStream out) throws IOException {
+        BufferedOutputStream buffered = new BufferedOutputStream(out, DocumentSaver.BUFFER_SIZE);
+        ZipOutputStream zip = new ZipOutputStream(buffered, StandardCharsets.UTF_8);
+        Writer xml = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), DocumentSaver.BUFFER_SIZE);
+        part(zip, xml, "[Content_Types].xml", CONTENT_TYPES);
+        part(zip, xml, "_rels/.rels", PACKAGE_RELATIONSHIPS);
+        part(zip, xml, "word/_rels/document.xml.rels", DOCUMENT_RELATIONSHIPS);
+        part(zip, xml, "word/styles.xml", STYLES);
+
+        zip.putNextEntry(new ZipEntry("word/document.xml"));
+        DocxWriter writer = new DocxWriter(doc, xml);
+        IOException[] failure = new IOException[1];
+        doc.render(() -> {
+            try {
+                writer.document();
+            } catch (IOException e) {
+                failure[0] = e;
+            } catch (BadLocationException e) {
+                failure[0] = new IOException("Повреждённая структура документа: " + e.getMessage(), e);
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        xml.flush();
+        zip.closeEntry();
+
+        zip.putNextEntry(new ZipEntry("word/numbering.xml"));
+        writer.numbering();
+        xml.flush();
+        zip.closeEntry();
+        zip.finish();
+        buffered.flush();
+    }
+
+    private static void part(ZipOutputStream zip, Writer xml, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        xml.write(content);
+        xml.flush();
+        zip.closeEntry();
+    }
+
+    private void document() throws IOException, BadLocationException {
+        out.write(XML_HEADER);
+        out.write("<w:document ");
+        out.write(W_NS);
+        out.write("><w:body>");
+        block(doc.getDefaultRootElement());
+        out.write(SECTION);
+        out.write("</w:body></w:document>");
+    }
+
+    /**
+     * Выводит блок и всё, что в нём.
+     */
+    private void block(Element element) throws IOException, BadLocationException {
+        Object tag = element.getAttributes().getAttribute(StyleConstants.NameAttribute);
+        if (tag == HTML.Tag.HEAD) {
+            return;
+        }
+        if (!ElementChanges.hasBlocks(element)) {
+            if (element != doc.getDefaultRootElement()) {
+                paragraph(element);
+            }
+            return;
+        }
+        if (tag == HTML.Tag.TABLE && table(element)) {
+            return;
+        }
+        boolean list = tag == HTML.Tag.UL || tag == HTML.Tag.OL;
+        if (list) {
+            if (listDepth < LIST_LEVELS) {
+                lists[listDepth] = tag == HTML.Tag.OL ? BULLET_LIST + ++orderedLists : BULLET_LIST;
+            }
+            listDepth++;
+        } else if (tag == HTML.Tag.LI) {
+            itemStarted = true;
+        } else if (tag == HTML.Tag.BLOCKQUOTE) {
+            quoteDepth++;
+        } else if (tag == HTML.Tag.PRE) {
+            preDepth++;
+        }
+        for (int i = 0, n = element.getElementCount(); i < n; i++) {
+            block(element.getElement(i));
+        }
+        if (list) {
+            listDepth--;
+        } else if (tag == HTML.Tag.LI) {
+            itemStarted = false;
+        } else if (tag == HTML.Tag.BLOCKQUOTE) {
+            quoteDepth--;
+        } else if (tag == HTML.Tag.PRE) {
+            preDepth--;
+        }
+    }
+
+    /**
+     * Выводит таблицу; сетка столбцов берётся по первой строке.
+     *
+     * @return false, если в таблице нет ни одной ячейки (тогда её содержимое выводится как обычные блоки)
+     */
+    private boolean table(Element table) throws IOException, BadLocationException {
+        int columns = 0;
+        for (int i = 0, n = table.getElementCount(); i < n && columns == 0; i++) {
+            columns = cells(table.getElement(i));
+        }
+        if (columns == 0) {
+            return false;
+        }
+        out.write("<w:tbl><w:tblPr><w:tblStyle w:val=\"TableGrid\"/><w:tblW w:w=\"0\" w:type=\"auto\"/></w:tblPr>");
+        out.write("<w:tblGrid>");
+        for (int i = 0; i < columns; i++) {
+            out.write("<w:gridCol/>");
+        }
+        out.write("</w:tblGrid>");
+        for (int i = 0, n = table.getElementCount(); i < n; i++) {
+            Element row = table.getElement(i);
+            if (cells(row) == 0) {
+                continue;
+            }
+            out.write("<w:tr>");
+            for (int j = 0, m = row.getElementCount(); j < m; j++) {
+                cell(row.getElement(j));
+            }
+            out.write("</w:tr>");
+        }
+        out.write("</w:tbl>");
+        afterTable = true;
+        return true;
+    }
+
+    /**
+     * Число ячеек строки таблицы (0, если это не строка).
+     */
+    private static int cells(Element row) {
+        if (row.getAttributes().getAttribute(StyleConstants.NameAttribute) != HTML.Tag.TR) {
+            return 0;
+        }
+        int cells = 0;
+        for (int i = 0, n = row.getElementCount(); i < n; i++) {
+            Object tag = row.getElement(i).getAttributes().getAttribute(StyleConstants.NameAttribute);
+            if (tag == HTML.Tag.TD || tag == HTML.Tag.TH) {
+                cells++;
+            }
+        }
+        return cells;
+    }
+
+    private void cell(Element cell) throws IOException, BadLocationException {
+        Object tag = cell.getAttributes().getAttribute(StyleConstants.NameAttribute);
+        if (tag != HTML.Tag.TD && tag != HTML.Tag.TH) {
+            return;
+        }
+        out.write("<w:tc><w:tcPr><w:tcW w:w=\"0\" w:type=\"auto\"/>");
+        int span = TextStyle.number(cell.getAttributes().getAttribute(HTML.Attribute.COLSPAN));
+        if (span > 1) {
+            out.write("<w:gridSpan w:val=\"" + span + "\"/>");
+        }
+        out.write("</w:tcPr>");
+        long before = paragraphs;
+        afterTable = false;
+        // Список, в котором стоит таблица, внутри ячеек не продолжается
+        int depth = listDepth;
+        boolean item = itemStarted;
+        listDepth = 0;
+        itemStarted = false;
+        block(cell);
+        listDepth = depth;
+        itemStarted = item;
+        if (paragraphs == before || afterTable) {
+            out.write("<w:p/>");
+        }
+        out.write("</w:tc>");
+        afterTable = false;
+    }
+
+    /**
+     * Выводит абзац: его оформление и текст листьев.
+     */
+    private void paragraph(Element paragraph) throws IOException, BadLocationException {
+        paragraphs++;
+        afterTable = false;
+        out.write("<w:p>");
+        paragraphProperties(paragraph);
+        int end = Math.min(paragraph.getEndOffset() - 1, doc.getLength());
+        AttributeSet link = null;
+        for (int i = 0, n = paragraph.getElementCount(); i < n; i++) {
+            Element leaf = paragraph.getElement(i);
+            AttributeSet attributes = leaf.getAttributes();
+            Object tag = attributes.getAttribute(StyleConstants.NameAttribute);
+            AttributeSet leafLink = TextStyle.link(attributes);
+            if (!TextStyle.sameLink(leafLink, link)) {
+                if (link != null) {
+                    out.write("</w:fldSimple>");
+                }
+                if (leafLink != null) {
+                    hyperlink(leafLink.getAttribute(HTML.Attribute.HREF).toString());
+                }
+                link = leafLink;
+            }
+            if (tag == HTML.Tag.BR) {
+                out.write("<w:r><w:br/></w:r>");
+            } else if (tag == HTML.Tag.CONTENT) {
+                run(attributes, leaf.getStartOffset(), Math.min(leaf.getEndOffset(), end), link != null);
+            }
+        }
+        if (link != null) {
+            out.write("</w:fldSimple>");
+        }
+        out.write("</w:p>");
+    }
+
+    private void paragraphProperties(Element paragraph) throws IOException {
+        AttributeSet attributes = paragraph.getAttributes();
+        int level = HeadingIndex.level(paragraph);
+        String style = level > 0 ? "Heading" + level
+                : preDepth > 0 || attributes.getAttribute(StyleConstants.NameAttribute) == HTML.Tag.PRE
+                        ? "HTMLPreformatted"
+                        : listDepth > 0 ? "ListParagraph" : quoteDepth > 0 ? "Quote" : null;
+        boolean numbered = itemStarted && listDepth > 0;
+        String alignment = TextStyle.alignment(attributes);
+        if ("justify".equals(alignment)) {
+            alignment = "both";
+        }
+        if (style == null && !numbered && alignment == null) {
+            return;
+        }
+        out.write("<w:pPr>");
+        if (style != null) {
+            out.write("<w:pStyle w:val=\"" + style + "\"/>");
+        }
+        if (numbered) {
+            int level0 = Math.min(listDepth, LIST_LEVELS) - 1;
+            out.write("<w:numPr><w:ilvl w:val=\"" + level0 + "\"/><w:numId w:val=\"" + lists[level0] + "\"/></w:numPr>");
+            itemStarted = false;
+        }
+        if (alignment != null) {
+            out.write("<w:jc w:val=\"" + alignment + "\"/>");
+        }
+        out.write("</w:pPr>");
+    }
+
+    /**
+     * Начинает поле ссылки. Адрес внутри кода поля берётся в кавычки, поэтому свои
+     * кавычки адреса кодируются, а обратная косая черта (в путях Windows) удваивается.
+     */
+    private void hyperlink(String href) throws IOException {
+        out.write("<w:fldSimple w:instr=\" HYPERLINK ");
+        if (href.startsWith("#")) {
+            out.write("\\l ");
+            href = href.substring(1);
+        }
+        out.write("&quot;");
+        escape(href.replace("\\", "\\\\").replace("\"", "%22"));
+        out.write("&quot; \">");
+    }
+
+    /**
+     * Выводит кусок текста одним фрагментом Word с оформлением листа.
+     */
+    private void run(AttributeSet attributes, int start, int end, boolean link)
+            throws IOException, BadLocationException {
+        if (start >= end) {
+            return;
+        }
+        out.write("<w:r>");
+        runProperties(attributes, link);
+        boolean open = false;
+        for (int offset = start; offset < end; offset += text.count) {
+            doc.getText(offset, end - offset, text);
+            char[] array = text.array;
+            int plain = text.offset;
+            for (int i = text.offset, n = text.offset + text.count; i < n; i++) {
+                char c = array[i];
+                if (c >= ' ' && c != '&' && c != '<' && c != '>' && c < '\uFFFE') {
+                    continue;
+                }
+                if (i > plain) {
+                    if (!open) {
+                        out.write("<w:t xml:space=\"preserve\">");
+                        open = true;
+                    }
+                    out.write(array, plain, i - plain);
+                }
+                plain = i + 1;
+                if (c == '&' || c == '<' || c == '>') {
+                    if (!open) {
+                        out.write("<w:t xml:space=\"preserve\">");
+                        open = true;
+                    }
+                    out.write(c == '&' ? "&amp;" : c == '<' ? "&lt;" : "&gt;");
+                } else if (c == '\t' || c == '\n') {
+                    if (open) {
+                        out.write("</w:t>");
+                        open = false;
+                    }
+                    out.write(c == '\t' ? "<w:tab/>" : "<w:br/>");
+                }
+                // Прочие управляющие символы в XML недопустимы и пропускаются
+            }
+            int n = text.offset + text.count;
+            if (n > plain) {
+                if (!open) {
+                    out.write("<w:t xml:space=\"preserve\">");
+                    open = true;
+                }
+                out.write(array, plain, n - plain);
+            }
+        }
+        if (open) {
+            out.write("</w:t>");
+        }
+        out.write("</w:r>");
+    }
+
+    /**
+     * Выводит оформление текста. Порядок элементов задан схемой {@code CT_RPr}.
+     */
+    private void runProperties(AttributeSet a, boolean link) throws IOException {
+        boolean bold = TextStyle.isBold(a);
+        boolean italic = TextStyle.isItalic(a);
+        boolean underline = !link && TextStyle.isUnderline(a);
+        boolean strike = TextStyle.isStrike(a);
+        int vertical = TextStyle.position(a);
+        String position = vertical > 0 ? "superscript" : vertical < 0 ? "subscript" : null;
+        int rgb = link ? -1 : TextStyle.color(a, doc.getStyleSheet());
+        String color = rgb < 0 ? null : String.format(Locale.ROOT, "%06X", rgb);
+        if (!link && !bold && !italic && !underline && !strike && position == null && color == null) {
+            return;
+        }
+        out.write("<w:rPr>");
+        if (link) {
+            out.write("<w:rStyle w:val=\"Hyperlink\"/>");
+        }
+        if (bold) {
+            out.write("<w:b/>");
+        }
+        if (italic) {
+            out.write("<w:i/>");
+        }
+        if (strike) {
+            out.write("<w:strike/>");
+        }
+        if (color != null) {
+            out.write("<w:color w:val=\"" + color + "\"/>");
+        }
+        if (underline) {
+            out.write("<w:u w:val=\"single\"/>");
+        }
+        if (position != null) {
+            out.write("<w:vertAlign w:val=\"" + position + "\"/>");
+        }
+        out.write("</w:rPr>");
+    }
+
+    private void numbering() throws IOException {
+        out.write(XML_HEADER);
+        out.write("<w:numbering ");
+        out.write(W_NS);
+        out.write('>');
+        abstractNumbering(0, true);
+        abstractNumbering(1, false);
+        out.write("<w:num w:numId=\"" + BULLET_LIST + "\"><w:abstractNumId w:val=\"0\"/></w:num>");
+        for (int i = 1; i <= orderedLists; i++) {
+            out.write("<w:num w:numId=\"" + (BULLET_LIST + i) + "\"><w:abstractNumId w:val=\"1\"/>");
+            for (int level = 0; level < LIST_LEVELS; level++) {
+                out.write("<w:lvlOverride w:ilvl=\"" + level + "\"><w:startOverride w:val=\"1\"/></w:lvlOverride>");
+            }
+            out.write("</w:num>");
+        }
+        out.write("</w:numbering>");
+    }
+
+    private void abstractNumbering(int id, boolean bullet) throws IOException {
+        out.write("<w:abstractNum w:abstractNumId=\"" + id + "\"><w:multiLevelType w:val=\"hybridMultilevel\"/>");
+        for (int level = 0; level < LIST_LEVELS; level++) {
+            out.write("<w:lvl w:ilvl=\"" + level + "\"><w:start w:val=\"1\"/>");
+            out.write(bullet ? "<w:numFmt w:val=\"bullet\"/><w:lvlText w:val=\"•\"/>"
+                    : "<w:numFmt w:val=\"decimal\"/><w:lvlText w:val=\"%" + (level + 1) + ".\"/>");
+            out.write("<w:lvlJc w:val=\"left\"/><w:pPr><w:ind w:left=\"" + 720 * (level + 1)
+                    + "\" w:hanging=\"360\"/></w:pPr></w:lvl>");
+        }
+        out.write("</w:abstractNum>");
+    }
+
+    private void escape(String s) throws IOException {
+        int plain = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= ' ' && c != '&' && c != '<' && c != '>' && c != '"' && c < '\uFFFE') {
+                continue;
+            }
+            out.write(s, plain, i - plain);
+            plain = i + 1;
+            if (c == '&') {
+                out.write("&amp;");
+            } else if (c == '<') {
+                out.write("&lt;");
+            } else if (c == '>') {
+                out.write("&gt;");
+            } else if (c == '"') {
+                out.write("&quot;");
+            }
+        }
+        out.write(s, plain, s.length() - plain);
+    }
+}
@@ -0,0 +1,1036 @@
+package com.example;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.StyledDocument;
+import javax.swing.undo.UndoableEdit;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал правок для автосохранения и восстановления после сбоя.
+ *
+ * <p>Журнал подключается к документу как {@link DocumentListener} и на каждую
+ * вставку или удаление ставит в очередь компактную запись (смещение и текст или длина).
+ * Запись на диск выполняет отдельный поток пачками: сначала он немного ждёт,
+ * собирая записи подряд набранных символов, затем пишет их одним вызовом и один раз
+ * вызывает {@code force} (групповая фиксация). Поток EDT при наборе текста
+ * никогда не ждёт диска. Если запись на диск не удалась, журнал перестаёт принимать
+ * записи и сообщает об ошибке в EDT.</p>
+ *
+ * <p>Журнал хранится рядом с документом ({@code имя.doc.journal}) и применяется поверх
+ * последнего сохранённого файла; в заголовке записаны размер и время изменения этого
+ * файла и сам текст документа в момент снимка. Смещения записей относятся к этому тексту,
+ * а документ, заново прочитанный из файла, может от него отличаться (при записи в HTML
+ * и обратном разборе, например, схлопываются пробелы), поэтому перед записями документ
+ * приводится к тексту снимка. Когда журнал вырастает больше порога, вызывается
+ * обработчик сжатия — полное сохранение документа, после которого записи до момента
+ * снимка отбрасываются ({@link #checkpoint(Document)} и {@link #commit}).</p>
+ *
+ * <p>Файлы журналов открываются, читаются, сжимаются и закрываются вне EDT: в потоке
+ * записи или в общем потоке файлов журналов, который выполняет открытия и закрытия
+ * по порядку вызовов.</p>
+ *
+ * <p>Изменения атрибутов не журналируются: восстанавливается текст, вставленный
+ * в абзацы с атрибутами соседнего текста.</p>
+ */
+public class EditJournal implements DocumentListener, Closeable {
+
+    /**
+     * Сигнатура файла журнала ("SWJ3").
+     */
+    static final int MAGIC = 0x53574A33;
+
+    /**
+     * Вставка текста.
+     */
+    static final byte INSERT = 1;
+
+    /**
+     * Удаление текста.
+     */
+    static final byte REMOVE = 2;
+
+    /**
+     * Размер журнала, после которого запрашивается полное сохранение.
+     */
+    static final long DEFAULT_COMPACT_THRESHOLD = 4L << 20;
+
+    /**
+     * Сколько поток записи ждёт новые записи, прежде чем зафиксировать пачку.
+     */
+    static final long GROUP_COMMIT_DELAY_MS = 100;
+
+    /**
+     * Начало заголовка: сигнатура, размер и время изменения файла-снимка, длина текста снимка.
+     * За ним идут символы текста (UTF-16) и их CRC32.
+     */
+    private static final int FIXED_HEADER_SIZE = 4 + 8 + 8 + 4;
+
+    /**
+     * Команда завершения потока записи.
+     */
+    private static final Object CLOSE = new Object();
+
+    /**
+     * Поток файлов журналов: открытие, закрытие и чтение журналов по порядку вызовов.
+     */
+    private static final ExecutorService FILES = BulkExecutors.newPlatformExecutor("edit-journal-files", 1);
+
+    /**
+     * Файл документа, поверх которого применяется журнал.
+     */
+    private final Path target;
+
+    /**
+     * Файл журнала.
+     */
+    private final Path journalPath;
+
+    /**
+     * Удалять ли и сам файл-снимок, если журнал закрыт пустым
+     * (для безымянного документа снимок — служебный файл).
+     */
+    private final boolean ownsTarget;
+
+    /**
+     * Обработчик сжатия; вызывается в EDT.
+     */
+    private final Runnable compactionHandler;
+
+    /**
+     * Обработчик отказа журнала; вызывается в EDT.
+     */
+    private final Consumer<IOException> failureHandler;
+
+    /**
+     * Порог размера журнала для сжатия.
+     */
+    private final long compactThreshold;
+
+    /**
+     * Очередь записей и команд для потока записи.
+     */
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * Поток записи журнала.
+     */
+    private final Thread writer;
+
+    /**
+     * Открытие файла журнала в потоке файлов.
+     */
+    private final Future<?> opened;
+
+    /**
+     * Закрытие журнала в потоке файлов (null, пока журнал не закрыт).
+     */
+    private volatile Future<?> closed;
+
+    /**
+     * Канал файла журнала (используется потоком файлов до запуска записи и после её
+     * завершения, в остальное время — только потоком записи).
+     */
+    private FileChannel channel;
+
+    /**
+     * Запрошено ли уже сжатие (сбрасывается после {@link #commit}).
+     */
+    private boolean compactionRequested;
+
+    /**
+     * Есть ли в журнале записи после заголовка.
+     */
+    private boolean hasRecords;
+
+    /**
+     * Размер заголовка файла журнала.
+     */
+    private long headerSize;
+
+    /**
+     * Длина текста снимка, к которому относятся записи (-1, пока снимок не записан).
+     */
+    private int baseLength = -1;
+
+    /**
+     * Текст снимка для следующего заголовка (не короче {@link #baseLength});
+     * после записи заголовка не хранится.
+     */
+    private CharSequence baseText;
+
+    /**
+     * Ошибка, из-за которой журнал отключён (null, пока журнал работает).
+     */
+    private volatile IOException failure;
+
+    /**
+     * Открывает журнал документа.
+     *
+     * @param target            файл-снимок документа
+     * @param snapshot          документ в состоянии, записанном в файл-снимок (для нового журнала);
+     *                          null, если снимок ещё не записан — тогда журнал нельзя применить
+     *                          до первого {@link #commit}
+     * @param keepRecords       сохранить уже имеющиеся записи (после восстановления) или начать журнал заново
+     * @param ownsTarget        является ли снимок служебным файлом журнала
+     * @param compactionHandler вызывается в EDT, когда журнал пора сжать полным сохранением
+     * @param failureHandler    вызывается в EDT, если журнал не удалось записать и он отключён
+     * @return журнал, принимающий правки; его файл создаётся в фоне, ошибка создания
+     *         передаётся обработчику отказа
+     */
+    public static EditJournal open(Path target, Document snapshot, boolean keepRecords, boolean ownsTarget,
+                                   Runnable compactionHandler, Consumer<IOException> failureHandler) {
+        return new EditJournal(target, snapshot, keepRecords, ownsTarget, compactionHandler, failureHandler,
+                DEFAULT_COMPACT_THRESHOLD);
+    }
+
+    private EditJournal(Path target, Document snapshot, boolean keepRecords, boolean ownsTarget,
+                        Runnable compactionHandler, Consumer<IOException> failureHandler,
+                        long compactThreshold) {
+        this.target = target.toAbsolutePath();
+        this.journalPath = journalPath(this.target);
+        this.ownsTarget = ownsTarget;
+        this.compactionHandler = compactionHandler;
+        this.failureHandler = failureHandler;
+        this.compactThreshold = compactThreshold;
+
+        if (snapshot != null && !keepRecords) {
+            baseLength = snapshot.getLength();
+            baseText = text(snapshot);
+        }
+        opened = FILES.submit(() -> {
+            openFile(keepRecords);
+            return null;
+        });
+
+        writer = new Thread(this::run, "edit-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Открывает имеющийся файл журнала для дописывания или создаёт его заново.
+     *
+     * @param keepRecords сохранить записи имеющегося журнала
+     * @throws IOException при ошибке ввода-вывода
+     */
+    private void openFile(boolean keepRecords) throws IOException {
+        if (!keepRecords || !Files.exists(journalPath)) {
+            rewrite(ByteBuffer.allocate(0));
+            return;
+        }
+        channel = FileChannel.open(journalPath, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // читаем начало заголовка
+        }
+        headerSize = headerSize(header.hasRemaining() ? -1 : header.getInt(FIXED_HEADER_SIZE - 4));
+        channel.position(channel.size());
+        hasRecords = channel.size() > headerSize;
+    }
+
+    /**
+     * Ждёт, пока файл журнала будет открыт. До этого закрываемый журнал того же файла
+     * ещё может удалить его служебный снимок, поэтому снимок пишется после ожидания.
+     * Ошибка открытия передаётся обработчику отказа.
+     *
+     * @throws InterruptedException если ожидание прервано
+     */
+    public void awaitOpen() throws InterruptedException {
+        try {
+            opened.get();
+        } catch (ExecutionException e) {
+            // Журнал отключён, об ошибке сообщает поток записи
+        }
+    }
+
+    /**
+     * Путь журнала для файла документа.
+     *
+     * @param target файл документа
+     * @return путь {@code имя.journal} рядом с файлом
+     */
+    public static Path journalPath(Path target) {
+        return target.resolveSibling(target.getFileName() + ".journal");
+    }
+
+    /**
+     * Служебный файл-снимок для документа, ещё не сохранённого пользователем.
+     *
+     * @return путь в каталоге ~/.simple-word-processor
+     */
+    public static Path untitledTarget() {
+        return Paths.get(System.getProperty("user.home"), ".simple-word-processor", "untitled.html");
+    }
+
+    /**
+     * Возвращает файл-снимок, поверх которого ведётся журнал.
+     *
+     * @return путь к файлу документа
+     */
+    public Path getTarget() {
+        return target;
+    }
+
+    /**
+     * Отключён ли журнал из-за ошибки записи.
+     *
+     * @return true, если правки больше не журналируются
+     */
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        if (failure != null) {
+            return;
+        }
+        try {
+            String text = e.getDocument().getText(e.getOffset(), e.getLength());
+            queue.add(new Record(INSERT, e.getOffset(), e.getLength(), text));
+        } catch (BadLocationException ex) {
+            ex.printStackTrace(); // событие относится к этому документу, сюда не попадаем
+        }
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        if (failure != null) {
+            return;
+        }
+        queue.add(new Record(REMOVE, e.getOffset(), e.getLength(), null));
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // Атрибуты не журналируются
+    }
+
+    /**
+     * Отмечает момент снимка документа для полного сохранения.
+     * Вызывается под блокировкой чтения документа, пока в него пишется файл:
+     * все записи до метки войдут в сохранённый файл, после — нет.
+     *
+     * @param doc сохраняемый документ; его текст запоминается как основа записей после метки
+     * @return метка, передаваемая в {@link #commit} после успешного сохранения
+     */
+    public Checkpoint checkpoint(Document doc) {
+        Checkpoint checkpoint = new Checkpoint(doc.getLength(), text(doc));
+        if (failure == null) {
+            queue.add(checkpoint);
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Отбрасывает записи до метки: файл сохранён и уже содержит их.
+     *
+     * @param checkpoint метка из {@link #checkpoint(Document)}
+     */
+    public void commit(Checkpoint checkpoint) {
+        if (failure != null) {
+            return;
+        }
+        queue.add(new Commit(checkpoint));
+    }
+
+    /**
+     * Дописывает очередь на диск, закрывает журнал и ждёт завершения (не дольше 5 секунд).
+     * Если несохранённых правок нет, файл журнала удаляется.
+     * Для выхода из программы; в EDT журнал закрывается {@link #close(boolean)}.
+     */
+    @Override
+    public void close() {
+        close(false);
+        try {
+            closed.get(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // Ошибка передана обработчику отказа; при выходе не ждём дольше
+        }
+    }
+
+    /**
+     * Закрывает журнал, не дожидаясь диска: очередь дописывается, а файл закрывается
+     * в потоке файлов. Журналы, открытые и прочитанные после этого вызова,
+     * видят файл уже закрытым.
+     *
+     * @param discard удалить журнал, даже если в нём есть записи (правки отброшены пользователем)
+     */
+    public void close(boolean discard) {
+        queue.add(CLOSE);
+        closed = FILES.submit(() -> {
+            writer.join();
+            if (failure == null) {
+                try {
+                    finish(discard);
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Читает журнал в потоке файлов, после уже начатых открытий и закрытий журналов.
+     *
+     * @param target файл документа
+     * @return результат {@link #read(Path)}
+     */
+    public static Future<Recovery> readLater(Path target) {
+        return FILES.submit(() -> read(target));
+    }
+
+    /**
+     * Удаляет журнал в потоке файлов, после уже начатых открытий и закрытий журналов.
+     *
+     * @param target файл документа
+     * @return завершение удаления
+     */
+    public static Future<?> discardLater(Path target) {
+        return FILES.submit(() -> Files.deleteIfExists(journalPath(target.toAbsolutePath())));
+    }
+
+    /**
+     * Читает записи журнала вместе с текстом снимка, к которому они относятся.
+     * Журнал без записанного снимка или с повреждённым снимком удаляется. Журнал,
+     * записанный для другой версии файла (например, сохранение прервано между заменой
+     * файла и {@link #commit}), не удаляется: он отмечается как
+     * {@linkplain Recovery#isFileChanged() относящийся к изменившемуся файлу}.
+     *
+     * @param target файл документа
+     * @return записи по порядку и текст снимка; пустой журнал, если восстанавливать нечего
+     * @throws IOException при ошибке чтения
+     */
+    public static Recovery read(Path target) throws IOException {
+        Path journal = journalPath(target.toAbsolutePath());
+        List<Record> records = new ArrayList<>();
+        if (!Files.exists(journal)) {
+            return new Recovery(null, records, false);
+        }
+
+        String text = null;
+        boolean fileChanged = false;
+        try (InputStream raw = Files.newInputStream(journal);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw))) {
+            long[] base = baseOf(target);
+            if (in.readInt() == MAGIC) {
+                long size = in.readLong();
+                long modified = in.readLong();
+                fileChanged = size != base[0] || modified != base[1];
+                int length = in.readInt();
+                if (length >= 0 && headerSize(length) <= Files.size(journal)) {
+                    text = readText(in, length);
+                }
+                if (text != null) {
+                    readRecords(in, records);
+                }
+            }
+        } catch (EOFException e) {
+            // Конец журнала
+        }
+        if (text == null) {
+            Files.delete(journal);
+            records.clear();
+        }
+        return new Recovery(text, records, fileChanged);
+    }
+
+    /**
+     * Читает текст снимка из заголовка.
+     *
+     * @param in     поток журнала после длины текста
+     * @param length длина текста в символах
+     * @return текст или null, если контрольная сумма не сошлась
+     * @throws IOException при ошибке чтения
+     */
+    private static String readText(DataInputStream in, int length) throws IOException {
+        char[] chars = new char[length];
+        byte[] bytes = new byte[1 << 16];
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < length; ) {
+            int n = Math.min(bytes.length / 2, length - i);
+            in.readFully(bytes, 0, 2 * n);
+            crc.update(bytes, 0, 2 * n);
+            ByteBuffer.wrap(bytes, 0, 2 * n).asCharBuffer().get(chars, i, n);
+            i += n;
+        }
+        return in.readInt() == (int) crc.getValue() ? new String(chars) : null;
+    }
+
+    /**
+     * Читает записи до конца журнала или до первой повреждённой записи.
+     *
+     * @param in      поток журнала после заголовка
+     * @param records приёмник записей
+     * @throws IOException при ошибке чтения
+     */
+    private static void readRecords(DataInputStream in, List<Record> records) throws IOException {
+        CRC32 crc = new CRC32();
+        for (;;) {
+            byte type = in.readByte();
+            int offset = in.readInt();
+            int length = in.readInt();
+            String text = null;
+            crc.reset();
+            crc.update(type);
+            updateInt(crc, offset);
+            updateInt(crc, length);
+            if (type == INSERT) {
+                int size = in.readInt();
+                if (size < 0 || size > in.available() + (64 << 20)) {
+                    return;
+                }
+                byte[] bytes = new byte[size];
+                in.readFully(bytes);
+                crc.update(bytes, 0, bytes.length);
+                text = new String(bytes, StandardCharsets.UTF_8);
+            }
+            if (in.readInt() != (int) crc.getValue() || type != INSERT && type != REMOVE) {
+                return; // хвост, недописанный при сбое
+            }
+            records.add(new Record(type, offset, length, text));
+        }
+    }
+
+    /**
+     * Применяет записи журнала к документу, загруженному из файла-снимка.
+     * Сначала документ приводится к тексту снимка из заголовка: отличающиеся участки
+     * (например, пробелы, схлопнутые при разборе HTML, или другая версия файла)
+     * заменяются текстом снимка. Вставленный текст получает атрибуты предшествующего
+     * символа, как при наборе.
+     *
+     * <p>Журнал применяется целиком или не применяется вовсе: сначала проверяются границы
+     * всех записей, а если правка всё же не удалась, уже применённые откатываются.</p>
+     *
+     * @param doc      документ
+     * @param recovery журнал из {@link #read(Path)}
+     * @throws IOException если журнал не соответствует документу; документ при этом не меняется
+     */
+    public static void replay(Document doc, Recovery recovery) throws IOException {
+        if (recovery.text == null) {
+            throw new IOException("Journal has no snapshot");
+        }
+        long length = recovery.text.length();
+        for (Record r : recovery.records) {
+            boolean valid = r.type == INSERT
+                    ? r.offset >= 0 && r.offset <= length && r.text.length() == r.length
+                    : r.offset >= 0 && r.length >= 0 && (long) r.offset + r.length <= length;
+            if (!valid) {
+                throw new IOException("Journal record out of range: " + r.offset + ", " + r.length);
+            }
+            length += r.type == INSERT ? r.length : -r.length;
+        }
+
+        List<UndoableEdit> applied = new ArrayList<>();
+        UndoableEditListener listener = e -> applied.add(e.getEdit());
+        doc.addUndoableEditListener(listener);
+        try {
+            reconcile(doc, recovery.text);
+            if (!recovery.text.equals(doc.getText(0, doc.getLength()))) {
+                throw new BadLocationException("Document cannot be matched to the journal snapshot", 0);
+            }
+            for (Record r : recovery.records) {
+                if (r.type == INSERT) {
+                    insert(doc, r.offset, r.text);
+                } else {
+                    doc.remove(r.offset, r.length);
+                }
+            }
+        } catch (BadLocationException e) {
+            for (int i = applied.size() - 1; i >= 0; i--) {
+                applied.get(i).undo();
+            }
+            throw new IOException("Journal does not apply to the document", e);
+        } finally {
+            doc.removeUndoableEditListener(listener);
+        }
+    }
+
+    /**
+     * Приводит текст документа к тексту снимка. Заменяется только отличающаяся середина;
+     * если в ней столько же строк, сколько в снимке, — построчно, чтобы не сливать абзацы.
+     *
+     * @param doc  документ
+     * @param text текст снимка
+     * @throws BadLocationException если правка не удалась
+     */
+    private static void reconcile(Document doc, String text) throws BadLocationException {
+        String current = doc.getText(0, doc.getLength());
+        int prefix = commonPrefix(current, 0, current.length(), text, 0, text.length());
+        int suffix = commonSuffix(current, prefix, current.length(), text, prefix, text.length());
+        int end = current.length() - suffix;
+        int textEnd = text.length() - suffix;
+        List<Integer> lines = lineStarts(current, prefix, end);
+        List<Integer> textLines = lineStarts(text, prefix, textEnd);
+        if (lines.size() != textLines.size()) {
+            replace(doc, current, prefix, end, text, prefix, textEnd);
+            return;
+        }
+        // С конца: смещения предыдущих строк не сдвигаются
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            int lineEnd = i + 1 < lines.size() ? lines.get(i + 1) - 1 : end;
+            int textLineEnd = i + 1 < textLines.size() ? textLines.get(i + 1) - 1 : textEnd;
+            replace(doc, current, lines.get(i), lineEnd, text, textLines.get(i), textLineEnd);
+        }
+    }
+
+    /**
+     * Заменяет участок документа участком снимка, не трогая их общих начала и конца.
+     */
+    private static void replace(Document doc, String current, int from, int to,
+                                String text, int textFrom, int textTo) throws BadLocationException {
+        int prefix = commonPrefix(current, from, to, text, textFrom, textTo);
+        int suffix = commonSuffix(current, from + prefix, to, text, textFrom + prefix, textTo);
+        int offset = from + prefix;
+        if (to - suffix > offset) {
+            doc.remove(offset, to - suffix - offset);
+        }
+        if (textTo - suffix > textFrom + prefix) {
+            insert(doc, offset, text.substring(textFrom + prefix, textTo - suffix));
+        }
+    }
+
+    private static int commonPrefix(String a, int aFrom, int aTo, String b, int bFrom, int bTo) {
+        int n = 0;
+        while (aFrom + n < aTo && bFrom + n < bTo && a.charAt(aFrom + n) == b.charAt(bFrom + n)) {
+            n++;
+        }
+        return n;
+    }
+
+    private static int commonSuffix(String a, int aFrom, int aTo, String b, int bFrom, int bTo) {
+        int n = 0;
+        while (aTo - n > aFrom && bTo - n > bFrom && a.charAt(aTo - n - 1) == b.charAt(bTo - n - 1)) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Начала строк участка текста: первое — начало участка, остальные — после каждого перевода строки.
+     */
+    private static List<Integer> lineStarts(String s, int from, int to) {
+        List<Integer> starts = new ArrayList<>();
+        starts.add(from);
+        for (int i = s.indexOf('\n', from); i >= 0 && i < to; i = s.indexOf('\n', i + 1)) {
+            starts.add(i + 1);
+        }
+        return starts;
+    }
+
+    /**
+     * Вставляет текст с атрибутами предшествующего символа, как при наборе.
+     */
+    private static void insert(Document doc, int offset, String text) throws BadLocationException {
+        AttributeSet attrs = null;
+        if (doc instanceof StyledDocument && offset > 0) {
+            attrs = ((StyledDocument) doc).getCharacterElement(offset - 1).getAttributes();
+        }
+        doc.insertString(offset, text, attrs);
+    }
+
+    /**
+     * Текст документа для снимка: неизменяемый снимок содержимого без копирования,
+     * если содержимое его умеет делать, иначе копия текста. Может быть длиннее документа.
+     * Вызывается под блокировкой чтения документа или в EDT.
+     *
+     * @param doc документ
+     * @return текст, первые {@code doc.getLength()} символов которого — текст документа
+     */
+    static CharSequence text(Document doc) {
+        CharSequence snapshot = doc instanceof WordProcessorDocument
+                ? ((WordProcessorDocument) doc).snapshot() : null;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        try {
+            return doc.getText(0, doc.getLength());
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e); // границы взяты из самого документа
+        }
+    }
+
+    /**
+     * Основной цикл потока записи.
+     */
+    private void run() {
+        List<Object> batch = new ArrayList<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            try {
+                opened.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException
+                        ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+            for (;;) {
+                batch.add(queue.take());
+                // Групповая фиксация: собираем всё, что набрано за время ожидания
+                Thread.sleep(GROUP_COMMIT_DELAY_MS);
+                queue.drainTo(batch);
+
+                for (Object item : batch) {
+                    if (item instanceof Record) {
+                        encode((Record) item, out);
+                        continue;
+                    }
+                    flush(bytes);
+                    if (item instanceof Checkpoint) {
+                        ((Checkpoint) item).position = channel.position();
+                    } else if (item instanceof Commit) {
+                        compact(((Commit) item).checkpoint);
+                    } else {
+                        return; // файл закрывает поток файлов
+                    }
+                }
+                flush(bytes);
+                channel.force(false);
+                batch.clear();
+
+                if (!compactionRequested && channel.size() > compactThreshold) {
+                    compactionRequested = true;
+                    SwingUtilities.invokeLater(compactionHandler);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Отключает журнал после ошибки записи: новые записи не принимаются,
+     * очередь отбрасывается, обработчик отказа вызывается в EDT.
+     * Редактирование продолжается без журнала.
+     *
+     * @param e ошибка записи
+     */
+    private void fail(IOException e) {
+        failure = e;
+        queue.clear();
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException ex) {
+            e.addSuppressed(ex);
+        }
+        SwingUtilities.invokeLater(() -> failureHandler.accept(e));
+    }
+
+    /**
+     * Записывает накопленные байты в журнал.
+     *
+     * @param bytes буфер закодированных записей
+     * @throws IOException при ошибке записи
+     */
+    private void flush(ByteArrayOutputStream bytes) throws IOException {
+        if (bytes.size() == 0) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        bytes.reset();
+        hasRecords = true;
+    }
+
+    /**
+     * Отбрасывает записи до метки, атомарно переписывая журнал с новым заголовком.
+     *
+     * @param checkpoint метка снимка
+     * @throws IOException при ошибке записи
+     */
+    private void compact(Checkpoint checkpoint) throws IOException {
+        if (checkpoint.position < 0) {
+            return;
+        }
+        ByteBuffer tail = ByteBuffer.allocate((int) (channel.size() - checkpoint.position));
+        while (tail.hasRemaining() && channel.read(tail, checkpoint.position + tail.position()) >= 0) {
+            // читаем хвост целиком
+        }
+        tail.flip();
+        baseLength = checkpoint.length;
+        baseText = checkpoint.text;
+        rewrite(tail);
+        compactionRequested = false;
+    }
+
+    /**
+     * Создаёт файл журнала заново: заголовок по текущему снимку и заданный хвост записей.
+     *
+     * @param tail записи, сделанные после снимка
+     * @throws IOException при ошибке записи
+     */
+    private void rewrite(ByteBuffer tail) throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        Files.createDirectories(journalPath.getParent());
+        long[] base = baseOf(target);
+        String text = baseText == null ? "" : baseText.toString();
+        int length = baseText == null ? -1 : baseLength;
+        new AtomicFileSaver().save(journalPath, ch -> {
+            ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE);
+            header.putInt(MAGIC).putLong(base[0]).putLong(base[1]).putInt(length).flip();
+            writeFully(ch, header);
+            CRC32 crc = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            char[] chars = new char[buffer.capacity() / 2];
+            for (int i = 0; i < length; i += chars.length) {
+                int n = Math.min(chars.length, length - i);
+                text.getChars(i, i + n, chars, 0);
+                buffer.clear();
+                buffer.asCharBuffer().put(chars, 0, n);
+                buffer.limit(2 * n);
+                crc.update(buffer.array(), 0, 2 * n);
+                writeFully(ch, buffer);
+            }
+            ByteBuffer checksum = ByteBuffer.allocate(4);
+            checksum.putInt((int) crc.getValue()).flip();
+            writeFully(ch, checksum);
+            writeFully(ch, tail);
+        });
+        baseText = null;
+        headerSize = headerSize(length);
+        channel = FileChannel.open(journalPath, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        channel.position(channel.size());
+        hasRecords = channel.size() > headerSize;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Размер заголовка журнала со снимком заданной длины.
+     *
+     * @param length длина текста снимка (-1, если снимка нет)
+     * @return размер в байтах
+     */
+    private static long headerSize(int length) {
+        return FIXED_HEADER_SIZE + 2L * Math.max(length, 0) + 4;
+    }
+
+    /**
+     * Закрывает канал; пустой или отброшенный журнал удаляется вместе со служебным снимком.
+     *
+     * @param discard отбросить записи
+     * @throws IOException при ошибке ввода-вывода
+     */
+    private void finish(boolean discard) throws IOException {
+        channel.force(false);
+        channel.close();
+        if (discard || !hasRecords) {
+            Files.deleteIfExists(journalPath);
+            if (ownsTarget) {
+                Files.deleteIfExists(target);
+            }
+        }
+    }
+
+    /**
+     * Кодирует запись: тип, смещение, длина, текст в UTF-8 (для вставки) и CRC32.
+     *
+     * @param r   запись
+     * @param out приёмник
+     * @throws IOException не возникает при записи в память
+     */
+    private static void encode(Record r, DataOutputStream out) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(r.type);
+        updateInt(crc, r.offset);
+        updateInt(crc, r.length);
+        out.writeByte(r.type);
+        out.writeInt(r.offset);
+        out.writeInt(r.length);
+        if (r.type == INSERT) {
+            byte[] text = r.text.getBytes(StandardCharsets.UTF_8);
+            crc.update(text, 0, text.length);
+            out.writeInt(text.length);
+            out.write(text);
+        }
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void updateInt(CRC32 crc, int v) {
+        crc.update(v >>> 24);
+        crc.update(v >>> 16);
+        crc.update(v >>> 8);
+        crc.update(v);
+    }
+
+    /**
+     * Размер и время изменения файла-снимка (-1, если файла нет).
+     *
+     * @param target файл документа
+     * @return пара {размер, время изменения в мс}
+     * @throws IOException при ошибке чтения атрибутов
+     */
+    private static long[] baseOf(Path target) throws IOException {
+        if (!Files.exists(target)) {
+            return new long[]{-1, -1};
+        }
+        BasicFileAttributes attrs = Files.readAttributes(target, BasicFileAttributes.class);
+        return new long[]{attrs.size(), attrs.lastModifiedTime().toMillis()};
+    }
+
+    /**
+     * Запись журнала.
+     */
+    public static final class Record {
+
+        /**
+         * {@link #INSERT} или {@link #REMOVE}.
+         */
+        final byte type;
+
+        /**
+         * Смещение правки в документе.
+         */
+        final int offset;
+
+        /**
+         * Длина правки в символах.
+         */
+        final int length;
+
+        /**
+         * Вставленный текст (null для удаления).
+         */
+        final String text;
+
+        Record(byte type, int offset, int length, String text) {
+            this.type = type;
+            this.offset = offset;
+            this.length = length;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Записи журнала вместе с текстом снимка, к которому они относятся.
+     */
+    public static final class Recovery {
+
+        /**
+         * Текст снимка (null, если журнала нет).
+         */
+        final String text;
+
+        /**
+         * Записи по порядку.
+         */
+        final List<Record> records;
+
+        /**
+         * Изменился ли файл документа после записи журнала.
+         */
+        final boolean fileChanged;
+
+        Recovery(String text, List<Record> records, boolean fileChanged) {
+            this.text = text;
+            this.records = records;
+            this.fileChanged = fileChanged;
+        }
+
+        /**
+         * Есть ли что восстанавливать.
+         *
+         * @return true, если записей нет
+         */
+        public boolean isEmpty() {
+            return records.isEmpty();
+        }
+
+        /**
+         * Изменился ли файл документа после записи журнала: например, сохранение
+         * прервано после замены файла, но до сжатия журнала, или файл изменён другой
+         * программой. Записи всё равно применимы к тексту снимка, но пользователя
+         * стоит спросить.
+         *
+         * @return true, если размер или время изменения файла не совпадают с заголовком
+         */
+        public boolean isFileChanged() {
+            return fileChanged;
+        }
+    }
+
+    /**
+     * Метка снимка документа для полного сохранения.
+     */
+    public static final class Checkpoint {
+
+        /**
+         * Позиция в файле журнала, до которой записи вошли в снимок (-1, пока не записана).
+         */
+        volatile long position = -1;
+
+        /**
+         * Длина текста документа в момент снимка.
+         */
+        final int length;
+
+        /**
+         * Текст документа в момент снимка ({@link #text(Document)}).
+         */
+        final CharSequence text;
+
+        Checkpoint(int length, CharSequence text) {
+            this.length = length;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Команда отбросить записи до метки.
+     */
+    private static final class Commit {
+
+        final Checkpoint checkpoint;
+
+        Commit(Checkpoint checkpoint) {
+            this.checkpoint = checkpoint;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Абзацы, задетые правкой документа, и то, изменилось ли при этом дерево элементов.
+ *
+ * <p>Спуск от корня идёт только по ветвям, пересекающим правку (и по соседнему
+ * элементу с каждой стороны: при слиянии и делении абзацев пересоздаются и они),
+ * а также по элементам, добавленным правкой, — без обхода всего документа. Абзацем считается элемент, чьи дети — листья с текстом.</p>
+ *
+ * <p>Удалённые элементы из {@link DocumentEvent#getChange} не перебираются: после отмены
+ * вставки их поддеревья уже опустошены. Вместо этого индексы по абзацам
+ * ({@link HeadingIndex}, {@link DocumentStatistics}) заменяют все свои записи,
+ * начинающиеся в окне {@link #start}–{@link #end}, текущими абзацами окна: смещения
+ * удалённых элементов схлопываются внутрь него.</p>
+ */
+final class ElementChanges {
+
+    /**
+     * Текущие абзацы, пересекающие правку, по порядку.
+     */
+    final List<Element> paragraphs = new ArrayList<>();
+
+    /**
+     * Начало первого абзаца окна.
+     */
+    int start = Integer.MAX_VALUE;
+
+    /**
+     * Конец последнего абзаца окна.
+     */
+    int end;
+
+    /**
+     * Изменилось ли дерево элементов.
+     */
+    boolean structural;
+
+    private final DocumentEvent event;
+
+    /**
+     * Диапазон спуска.
+     */
+    private int from;
+
+    private int to;
+
+    private ElementChanges(DocumentEvent event) {
+        this.event = event;
+    }
+
+    /**
+     * Собирает абзацы события вставки или удаления.
+     *
+     * @param e   событие
+     * @param doc документ после правки
+     * @return задетые абзацы
+     */
+    static ElementChanges of(DocumentEvent e, Document doc) {
+        ElementChanges changes = new ElementChanges(e);
+        int end = e.getType() == DocumentEvent.EventType.REMOVE ? e.getOffset() : e.getOffset() + e.getLength();
+        int from = Math.max(0, e.getOffset() - 1);
+        int to = Math.min(doc.getLength(), end + 1);
+        // Документ может пересоздать ветвь целиком (например, всю цитату), и тогда окно
+        // расширяется до добавленных элементов, а спуск повторяется
+        do {
+            changes.from = from;
+            changes.to = to;
+            changes.paragraphs.clear();
+            changes.visit(doc.getDefaultRootElement());
+            from = Math.min(from, changes.start);
+            to = Math.max(to, Math.min(doc.getLength(), changes.end - 1));
+        } while (from < changes.from || to > changes.to);
+        return changes;
+    }
+
+    private void visit(Element element) {
+        DocumentEvent.ElementChange change = event.getChange(element);
+        if (change != null) {
+            structural = true;
+            Element[] added = change.getChildrenAdded();
+            if (added.length > 0) {
+                start = Math.min(start, added[0].getStartOffset());
+                end = Math.max(end, added[added.length - 1].getEndOffset());
+            }
+        }
+        if (!hasBlocks(element)) {
+            paragraphs.add(element);
+            start = Math.min(start, element.getStartOffset());
+            end = Math.max(end, element.getEndOffset());
+            return;
+        }
+        int last = element.getElementIndex(to);
+        for (int i = element.getElementIndex(from); i <= last; i++) {
+            visit(element.getElement(i));
+        }
+    }
+
+    /**
+     * Собирает текущие абзацы, пересекающие диапазон, — для правок без изменения
+     * дерева, например смены атрибутов.
+     *
+     * @param doc  документ
+     * @param from начало диапазона
+     * @param to   конец диапазона
+     * @return абзацы по порядку
+     */
+    static List<Element> paragraphs(Document doc, int from, int to) {
+        List<Element> out = new ArrayList<>();
+        collect(doc.getDefaultRootElement(), from, to, out);
+        return out;
+    }
+
+    private static void collect(Element element, int from, int to, List<Element> out) {
+        if (!hasBlocks(element)) {
+            out.add(element);
+            return;
+        }
+        int last = element.getElementIndex(to);
+        for (int i = element.getElementIndex(from); i <= last; i++) {
+            collect(element.getElement(i), from, to, out);
+        }
+    }
+
+    /**
+     * Содержит ли элемент блоки (а не только текст абзаца).
+     *
+     * @param element элемент
+     * @return true, если среди детей элемента есть не листья
+     */
+    static boolean hasBlocks(Element element) {
+        for (int i = 0, n = element.getElementCount(); i < n; i++) {
+            if (!element.getElement(i).isLeaf()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,351 @@
+package com.example;
+
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Document;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.Position;
+import javax.swing.text.View;
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Панель поиска и замены под редактором.
+ *
+ * <p>Поиск идёт по мере ввода строки: вхождения находит и поддерживает {@link MatchIndex},
+ * панель лишь переходит к ближайшему после курсора. Подсвечиваются только вхождения
+ * в видимой части документа — подсветка пересчитывается при прокрутке и изменении
+ * индекса, не чаще раза за цикл событий. "Заменить все" выполняется одной правкой
+ * ({@link WordProcessorDocument#replaceAll}).</p>
+ */
+public class FindReplaceBar extends JPanel {
+
+    /**
+     * Наибольшее число одновременно подсвеченных вхождений.
+     */
+    private static final int MAX_HIGHLIGHTS = 2000;
+
+    private static final Highlighter.HighlightPainter PAINTER =
+            new DefaultHighlighter.DefaultHighlightPainter(new Color(255, 235, 120));
+
+    private final JTextComponent editor;
+
+    private final MatchIndex index = new MatchIndex();
+
+    private final JTextField findField = new JTextField(20);
+
+    private final JTextField replaceField = new JTextField(16);
+
+    private final JCheckBox matchCase = new JCheckBox("Учитывать регистр");
+
+    private final JLabel status = new JLabel();
+
+    /**
+     * Текущие метки подсветки.
+     */
+    private final List<Object> highlights = new ArrayList<>();
+
+    /**
+     * Пересчитывает подсветку при прокрутке.
+     */
+    private final ChangeListener scrolled = e -> scheduleHighlight();
+
+    /**
+     * Запланирован ли пересчёт подсветки.
+     */
+    private boolean highlightPending;
+
+    /**
+     * Перейти ли к ближайшему вхождению, когда индекс будет построен.
+     */
+    private boolean jumpPending;
+
+    /**
+     * Создаёт панель для редактора. Панель изначально скрыта.
+     *
+     * @param editor редактор
+     */
+    public FindReplaceBar(JTextComponent editor) {
+        super(new FlowLayout(FlowLayout.LEFT, 6, 2));
+        this.editor = editor;
+
+        JButton previous = new JButton("Назад");
+        previous.addActionListener(e -> findNext(false));
+        JButton next = new JButton("Далее");
+        next.addActionListener(e -> findNext(true));
+        JButton replace = new JButton("Заменить");
+        replace.addActionListener(e -> replace());
+        JButton replaceAll = new JButton("Заменить все");
+        replaceAll.addActionListener(e -> replaceAll());
+        JButton close = new JButton("Закрыть");
+        close.addActionListener(e -> close());
+
+        add(new JLabel("Найти:"));
+        add(findField);
+        add(previous);
+        add(next);
+        add(new JLabel("Заменить на:"));
+        add(replaceField);
+        add(replace);
+        add(replaceAll);
+        add(matchCase);
+        add(status);
+        add(close);
+        setVisible(false);
+
+        findField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                queryChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                queryChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        matchCase.addActionListener(e -> queryChanged());
+        findField.addActionListener(e -> findNext(true));
+        replaceField.addActionListener(e -> replace());
+        registerKeyboardAction(e -> close(), KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0),
+                WHEN_ANCESTOR_OF_FOCUSED_COMPONENT);
+
+        index.addChangeListener(e -> {
+            if (jumpPending && index.isReady()) {
+                jumpPending = false;
+                select(index.indexFrom(editor.getSelectionStart()));
+            }
+            updateStatus();
+            scheduleHighlight();
+        });
+    }
+
+    /**
+     * Подключает панель к документу редактора (после его замены).
+     *
+     * @param doc документ
+     */
+    public void setDocument(Document doc) {
+        clearHighlights();
+        index.setDocument(isVisible() ? doc : null);
+    }
+
+    /**
+     * Показывает панель и переводит фокус в строку поиска. Выделенный текст
+     * (в пределах строки) становится строкой поиска.
+     */
+    public void open() {
+        String selected = editor.getSelectedText();
+        if (selected != null && !selected.isEmpty() && selected.indexOf('\n') < 0) {
+            findField.setText(selected);
+        }
+        if (!isVisible()) {
+            setVisible(true);
+            index.setDocument(editor.getDocument());
+            JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, editor);
+            if (viewport != null) {
+                viewport.addChangeListener(scrolled);
+            }
+            revalidate();
+        }
+        findField.selectAll();
+        findField.requestFocusInWindow();
+    }
+
+    /**
+     * Скрывает панель и снимает подсветку.
+     */
+    public void close() {
+        if (!isVisible()) {
+            return;
+        }
+        setVisible(false);
+        index.setDocument(null);
+        JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, editor);
+        if (viewport != null) {
+            viewport.removeChangeListener(scrolled);
+        }
+        clearHighlights();
+        revalidate();
+        editor.requestFocusInWindow();
+    }
+
+    private void queryChanged() {
+        index.setQuery(findField.getText(), matchCase.isSelected());
+        // Поиск по мере ввода: ближайшее вхождение от начала выделения
+        if (index.isReady()) {
+            select(index.indexFrom(editor.getSelectionStart()));
+        } else {
+            jumpPending = true;
+        }
+    }
+
+    /**
+     * Переходит к следующему (или предыдущему) вхождению, по кругу.
+     *
+     * @param forward вперёд
+     */
+    private void findNext(boolean forward) {
+        int count = index.size();
+        if (count == 0) {
+            UIManager.getLookAndFeel().provideErrorFeedback(editor);
+            return;
+        }
+        int i;
+        if (forward) {
+            i = index.indexFrom(editor.getSelectionStart() + 1);
+            if (i == count) {
+                i = 0;
+            }
+        } else {
+            i = index.indexFrom(editor.getSelectionStart()) - 1;
+            if (i < 0) {
+                i = count - 1;
+            }
+        }
+        select(i);
+    }
+
+    private void select(int i) {
+        if (i < index.size()) {
+            int offset = index.get(i);
+            editor.select(offset, offset + index.getQuery().length());
+        }
+        updateStatus();
+    }
+
+    /**
+     * Заменяет выделенное вхождение и переходит к следующему.
+     */
+    private void replace() {
+        int start = editor.getSelectionStart();
+        int i = index.indexFrom(start);
+        if (i < index.size() && index.get(i) == start && editor.getSelectionEnd() - start == index.getQuery().length()) {
+            editor.replaceSelection(replaceField.getText());
+        }
+        findNext(true);
+    }
+
+    /**
+     * Заменяет все вхождения одной правкой.
+     */
+    private void replaceAll() {
+        if (!index.isReady() || index.size() == 0) {
+            UIManager.getLookAndFeel().provideErrorFeedback(editor);
+            return;
+        }
+        int length = index.getQuery().length();
+        String replacement = replaceField.getText();
+        int[] offsets = index.toArray();
+        Document doc = editor.getDocument();
+        try {
+            int replaced;
+            if (doc instanceof WordProcessorDocument) {
+                replaced = ((WordProcessorDocument) doc).replaceAll(offsets, offsets.length, length, replacement);
+            } else {
+                // Чужой документ: обычные правки с конца
+                replaced = 0;
+                int end = Integer.MAX_VALUE;
+                for (int i = offsets.length - 1; i >= 0; i--) {
+                    if (offsets[i] + length <= end) {
+                        doc.remove(offsets[i], length);
+                        doc.insertString(offsets[i], replacement, null);
+                        end = offsets[i];
+                        replaced++;
+                    }
+                }
+            }
+            status.setText("Заменено: " + replaced);
+        } catch (BadLocationException e) {
+            status.setText("Ошибка замены: " + e.getMessage());
+        }
+    }
+
+    private void updateStatus() {
+        if (index.getQuery().isEmpty()) {
+            status.setText(" ");
+        } else if (!index.isReady()) {
+            status.setText("Поиск...");
+        } else if (index.size() == 0) {
+            status.setText("Не найдено");
+        } else {
+            int i = index.indexFrom(editor.getSelectionStart());
+            boolean current = i < index.size() && index.get(i) == editor.getSelectionStart();
+            status.setText(current ? (i + 1) + " из " + index.size() : "Найдено: " + index.size());
+        }
+    }
+
+    /**
+     * Планирует пересчёт подсветки на конец цикла событий: прокрутка и правки
+     * подряд пересчитывают её один раз.
+     */
+    private void scheduleHighlight() {
+        if (!highlightPending && isVisible()) {
+            highlightPending = true;
+            SwingUtilities.invokeLater(this::highlightVisible);
+        }
+    }
+
+    /**
+     * Подсвечивает вхождения в видимой части редактора.
+     */
+    private void highlightVisible() {
+        highlightPending = false;
+        clearHighlights();
+        if (!isVisible() || !index.isReady() || index.size() == 0) {
+            return;
+        }
+        Rectangle visible = editor.getVisibleRect();
+        int from = offsetAt(visible.x, visible.y);
+        int to = offsetAt(visible.x + visible.width, visible.y + visible.height);
+        if (from < 0 || to < 0) {
+            return;
+        }
+        int length = index.getQuery().length();
+        Highlighter highlighter = editor.getHighlighter();
+        for (int i = index.indexFrom(from - length + 1); i < index.size() && highlights.size() < MAX_HIGHLIGHTS; i++) {
+            int offset = index.get(i);
+            if (offset > to) {
+                break;
+            }
+            try {
+                highlights.add(highlighter.addHighlight(offset, offset + length, PAINTER));
+            } catch (BadLocationException e) {
+                break; // индекс отстал от документа; пересчитаем по его событию
+            }
+        }
+    }
+
+    /**
+     * Смещение в документе для точки редактора или -1, если раскладки ещё нет.
+     */
+    private int offsetAt(int x, int y) {
+        View root = editor.getUI().getRootView(editor);
+        Insets insets = editor.getInsets();
+        Rectangle alloc = new Rectangle(insets.left, insets.top,
+                editor.getWidth() - insets.left - insets.right, editor.getHeight() - insets.top - insets.bottom);
+        if (alloc.width <= 0 || alloc.height <= 0) {
+            return -1;
+        }
+        return root.viewToModel(x, y, alloc, new Position.Bias[1]);
+    }
+
+    private void clearHighlights() {
+        Highlighter highlighter = editor.getHighlighter();
+        for (Object tag : highlights) {
+            highlighter.removeHighlight(tag);
+        }
+        highlights.clear();
+    }
+}
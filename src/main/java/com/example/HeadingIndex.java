@@ -0,0 +1,312 @@
+package com.example;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.EventListenerList;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.html.HTML;
+import java.util.ArrayList;
+import java.util.EventListener;
+import java.util.List;
+
+/**
+ * Индекс заголовков {@code <h1>}–{@code <h6>} документа в порядке следования.
+ *
+ * <p>Хранятся сами элементы заголовков: их смещения всегда текущие, и при правках
+ * их не нужно сдвигать. Индекс строится один раз при подключении к документу,
+ * дальше он поддерживается по событиям. Правка текста стоит спуска от корня до абзаца;
+ * если дерево элементов изменилось, заголовки в окне правки заменяются текущими
+ * ({@link ElementChanges}). Весь документ заново не обходится.</p>
+ *
+ * <p>Используется в потоке, где правится документ (в редакторе — в потоке событий);
+ * слушатели вызываются в нём же.</p>
+ */
+public class HeadingIndex implements DocumentListener {
+
+    /**
+     * Слушатель изменений индекса.
+     */
+    public interface Listener extends EventListener {
+
+        /**
+         * Заголовки добавлены или удалены, либо индекс перестроен.
+         */
+        void headingsChanged();
+
+        /**
+         * Изменился текст заголовка.
+         *
+         * @param index номер заголовка
+         */
+        void headingTextChanged(int index);
+    }
+
+    private final EventListenerList listeners = new EventListenerList();
+
+    /**
+     * Элементы заголовков по возрастанию смещения.
+     */
+    private final List<Element> headings = new ArrayList<>();
+
+    private Document document;
+
+    /**
+     * Подключает индекс к документу и строит его.
+     *
+     * @param doc документ; null — только отключить
+     */
+    public void setDocument(Document doc) {
+        if (document != null) {
+            document.removeDocumentListener(this);
+        }
+        document = doc;
+        if (doc != null) {
+            doc.addDocumentListener(this);
+        }
+        rebuild();
+    }
+
+    /**
+     * Возвращает документ индекса.
+     *
+     * @return документ или null
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * Возвращает число заголовков.
+     *
+     * @return число заголовков
+     */
+    public int size() {
+        return headings.size();
+    }
+
+    /**
+     * Возвращает элемент заголовка.
+     *
+     * @param index номер заголовка
+     * @return элемент
+     */
+    public Element get(int index) {
+        return headings.get(index);
+    }
+
+    /**
+     * Возвращает уровень заголовка.
+     *
+     * @param index номер заголовка
+     * @return 1–6
+     */
+    public int getLevel(int index) {
+        return level(headings.get(index));
+    }
+
+    /**
+     * Находит последний заголовок, начинающийся не позже смещения, — раздел, в котором
+     * находится смещение.
+     *
+     * @param offset смещение в документе
+     * @return номер заголовка или -1, если до смещения заголовков нет
+     */
+    public int indexAt(int offset) {
+        return lowerBound(offset + 1) - 1;
+    }
+
+    /**
+     * Добавляет слушателя изменений.
+     *
+     * @param l слушатель
+     */
+    public void addListener(Listener l) {
+        listeners.add(Listener.class, l);
+    }
+
+    /**
+     * Удаляет слушателя изменений.
+     *
+     * @param l слушатель
+     */
+    public void removeListener(Listener l) {
+        listeners.remove(Listener.class, l);
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        update(e);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        update(e);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // Смена атрибутов (например, абзац стал заголовком) не меняет элементов:
+        // сверяем с индексом абзацы диапазона
+        List<Element> paragraphs = ElementChanges.paragraphs(document, e.getOffset(), e.getOffset() + e.getLength());
+        if (replace(paragraphs, Integer.MAX_VALUE, 0)) {
+            fireHeadingsChanged();
+        } else {
+            fireTextChanged(e.getOffset());
+        }
+    }
+
+    /**
+     * Применяет к индексу правку: если дерево элементов изменилось, заголовки окна
+     * правки заменяются текущими.
+     *
+     * @param e событие вставки или удаления
+     */
+    private void update(DocumentEvent e) {
+        ElementChanges changes = ElementChanges.of(e, document);
+        if (changes.structural && replace(changes.paragraphs, changes.start, changes.end)) {
+            fireHeadingsChanged();
+        } else {
+            fireTextChanged(e.getOffset());
+        }
+    }
+
+    /**
+     * Заменяет заголовки, начинающиеся в окне, заголовками среди абзацев окна. Окно —
+     * диапазон {@code start}–{@code end}, расширенный до абзацев и заголовков, в которых
+     * они лежат (заголовок с вложенными блоками индексируется целиком).
+     *
+     * @param paragraphs абзацы окна по порядку
+     * @return true, если индекс изменился
+     */
+    private boolean replace(List<Element> paragraphs, int start, int end) {
+        if (paragraphs.isEmpty()) {
+            return false;
+        }
+        List<Element> current = new ArrayList<>();
+        for (Element paragraph : paragraphs) {
+            Element unit = outermostHeading(paragraph);
+            start = Math.min(start, unit.getStartOffset());
+            end = Math.max(end, unit.getEndOffset());
+            if (isHeading(unit) && (current.isEmpty() || current.get(current.size() - 1) != unit)) {
+                current.add(unit);
+            }
+        }
+        List<Element> window = headings.subList(lowerBound(start), lowerBound(end));
+        if (window.equals(current)) {
+            return false;
+        }
+        window.clear();
+        window.addAll(current);
+        return true;
+    }
+
+    /**
+     * Внешний заголовок, содержащий элемент, или сам элемент.
+     */
+    private static Element outermostHeading(Element element) {
+        Element unit = element;
+        for (Element e = element.getParentElement(); e != null; e = e.getParentElement()) {
+            if (isHeading(e)) {
+                unit = e;
+            }
+        }
+        return unit;
+    }
+
+    private void rebuild() {
+        headings.clear();
+        if (document != null) {
+            collect(document.getDefaultRootElement(), headings);
+        }
+        fireHeadingsChanged();
+    }
+
+    /**
+     * Номер первого заголовка, начинающегося не раньше смещения.
+     */
+    private int lowerBound(int offset) {
+        int low = 0;
+        int high = headings.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (headings.get(mid).getStartOffset() < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Собирает заголовки поддерева в порядке следования.
+     */
+    private static void collect(Element element, List<Element> out) {
+        if (isHeading(element)) {
+            out.add(element);
+        } else if (ElementChanges.hasBlocks(element)) {
+            for (int i = 0, n = element.getElementCount(); i < n; i++) {
+                collect(element.getElement(i), out);
+            }
+        }
+    }
+
+    /**
+     * Является ли элемент заголовком.
+     *
+     * @param element элемент
+     * @return true для {@code <h1>}–{@code <h6>}
+     */
+    static boolean isHeading(Element element) {
+        return level(element) > 0;
+    }
+
+    /**
+     * Уровень заголовка.
+     *
+     * @param element элемент
+     * @return 1–6 или 0, если это не заголовок
+     */
+    static int level(Element element) {
+        if (element.isLeaf()) {
+            return 0;
+        }
+        AttributeSet attributes = element.getAttributes();
+        Object tag = attributes.getAttribute(StyleConstants.NameAttribute);
+        if (tag == HTML.Tag.H1) {
+            return 1;
+        } else if (tag == HTML.Tag.H2) {
+            return 2;
+        } else if (tag == HTML.Tag.H3) {
+            return 3;
+        } else if (tag == HTML.Tag.H4) {
+            return 4;
+        } else if (tag == HTML.Tag.H5) {
+            return 5;
+        } else if (tag == HTML.Tag.H6) {
+            return 6;
+        }
+        return 0;
+    }
+
+    private void fireHeadingsChanged() {
+        for (Listener l : listeners.getListeners(Listener.class)) {
+            l.headingsChanged();
+        }
+    }
+
+    /**
+     * Сообщает об изменении текста заголовка, в котором лежит смещение.
+     */
+    private void fireTextChanged(int offset) {
+        int i = indexAt(offset);
+        if (i >= 0 && offset < headings.get(i).getEndOffset()) {
+            for (Listener l : listeners.getListeners(Listener.class)) {
+                l.headingTextChanged(i);
+            }
+        }
+    }
+}
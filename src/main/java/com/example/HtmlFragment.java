@@ -0,0 +1,275 @@
+package com.example;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.DefaultStyledDocument.ElementSpec;
+import javax.swing.text.MutableAttributeSet;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.html.CSS;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.StyleSheet;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Заранее собранный HTML-фрагмент: заголовок, абзац, список или ссылка.
+ *
+ * <p>{@link javax.swing.text.html.HTMLEditorKit#insertHTML} ради пары тегов запускает
+ * полный разбор HTML: парсер, DTD, {@code HTMLReader}. Фрагмент известной структуры
+ * сразу хранится готовыми {@link ElementSpec} — такими же, какие построил бы
+ * {@code HTMLReader}, — и вставляется {@link WordProcessorDocument#insertFragment}
+ * одним вызовом {@code HTMLDocument.insert}. Фрагмент неизменяем, его можно
+ * вставлять сколько угодно раз.</p>
+ *
+ * <p>Переводы строк в тексте заменяются пробелами: они разбили бы элементы фрагмента.</p>
+ */
+public final class HtmlFragment {
+
+    /**
+     * Атрибут неявного перевода строки в конце абзаца (как {@code SwingUtilities2.IMPLIED_CR},
+     * который нельзя использовать напрямую).
+     */
+    private static final String IMPLIED_CR = "CR";
+
+    /**
+     * Атрибуты обычного текста.
+     */
+    private static final AttributeSet CONTENT = tag(HTML.Tag.CONTENT);
+
+    /**
+     * Атрибуты перевода строки в конце абзаца.
+     */
+    static final AttributeSet END_OF_PARAGRAPH;
+
+    /**
+     * CSS-стиль ссылки: синий подчёркнутый текст.
+     */
+    private static final AttributeSet LINK_STYLE;
+
+    static {
+        SimpleAttributeSet cr = new SimpleAttributeSet(CONTENT);
+        cr.addAttribute(IMPLIED_CR, Boolean.TRUE);
+        END_OF_PARAGRAPH = cr;
+
+        StyleSheet css = new StyleSheet();
+        SimpleAttributeSet style = new SimpleAttributeSet();
+        css.addCSSAttribute(style, CSS.Attribute.COLOR, "blue");
+        css.addCSSAttribute(style, CSS.Attribute.TEXT_DECORATION, "underline");
+        LINK_STYLE = style;
+    }
+
+    /**
+     * Элементы фрагмента в порядке вставки.
+     */
+    private final ElementSpec[] specs;
+
+    /**
+     * Блочный ли фрагмент (иначе — строчный, вставляется внутрь абзаца).
+     */
+    private final boolean block;
+
+    /**
+     * HTML-код фрагмента.
+     */
+    private final String html;
+
+    private HtmlFragment(ElementSpec[] specs, boolean block, String html) {
+        this.specs = specs;
+        this.block = block;
+        this.html = html;
+    }
+
+    /**
+     * Создаёт заголовок {@code <h1>}…{@code <h6>}.
+     *
+     * @param level уровень заголовка от 1 до 6
+     * @param text  текст заголовка
+     * @return фрагмент
+     * @throws IllegalArgumentException если уровень вне диапазона 1…6
+     */
+    public static HtmlFragment heading(int level, String text) {
+        HTML.Tag[] tags = {HTML.Tag.H1, HTML.Tag.H2, HTML.Tag.H3, HTML.Tag.H4, HTML.Tag.H5, HTML.Tag.H6};
+        if (level < 1 || level > tags.length) {
+            throw new IllegalArgumentException("Heading level must be 1..6: " + level);
+        }
+        return block(tags[level - 1], text);
+    }
+
+    /**
+     * Создаёт абзац {@code <p>}.
+     *
+     * @param text текст абзаца
+     * @return фрагмент
+     */
+    public static HtmlFragment paragraph(String text) {
+        return block(HTML.Tag.P, text);
+    }
+
+    /**
+     * Создаёт маркированный ({@code <ul>}) или нумерованный ({@code <ol>}) список.
+     *
+     * @param ordered true для нумерованного списка
+     * @param items   тексты пунктов (хотя бы один)
+     * @return фрагмент
+     * @throws IllegalArgumentException если пунктов нет
+     */
+    public static HtmlFragment list(boolean ordered, List<String> items) {
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException("List must have at least one item");
+        }
+        HTML.Tag tag = ordered ? HTML.Tag.OL : HTML.Tag.UL;
+        List<ElementSpec> specs = new ArrayList<>();
+        StringBuilder html = new StringBuilder("<").append(tag).append('>');
+        specs.add(new ElementSpec(tag(tag), ElementSpec.StartTagType));
+        AttributeSet li = tag(HTML.Tag.LI);
+        AttributeSet implied = tag(HTML.Tag.IMPLIED);
+        for (String item : items) {
+            String text = singleLine(item);
+            specs.add(new ElementSpec(li, ElementSpec.StartTagType));
+            specs.add(new ElementSpec(implied, ElementSpec.StartTagType));
+            addParagraphText(specs, text);
+            specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+            specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+            html.append("<li>").append(escape(text)).append("</li>");
+        }
+        specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+        html.append("</").append(tag).append('>');
+        return new HtmlFragment(specs.toArray(new ElementSpec[0]), true, html.toString());
+    }
+
+    /**
+     * Создаёт гиперссылку. Ссылка вставляется внутрь текущего абзаца.
+     *
+     * @param href адрес ссылки
+     * @param text текст ссылки
+     * @return фрагмент
+     */
+    public static HtmlFragment link(String href, String text) {
+        String line = singleLine(text);
+        SimpleAttributeSet attrs = new SimpleAttributeSet();
+        attrs.addAttribute(StyleConstants.NameAttribute, HTML.Tag.CONTENT);
+        char[] chars = line.toCharArray();
+        ElementSpec[] specs = {new ElementSpec(linkAttributes(attrs, href), ElementSpec.ContentType, chars, 0, chars.length)};
+        String html = "<a href=\"" + escape(href) + "\" style=\"color: blue; text-decoration: underline;\">"
+                + escape(line) + "</a>";
+        return new HtmlFragment(specs, false, html);
+    }
+
+    /**
+     * Атрибуты текста ссылки: атрибуты текста с оформлением ссылки и адресом,
+     * как у ссылки, вставленной {@link #link}.
+     *
+     * @param text атрибуты текста
+     * @param href адрес ссылки
+     * @return новый набор атрибутов
+     */
+    static AttributeSet linkAttributes(AttributeSet text, String href) {
+        SimpleAttributeSet anchor = new SimpleAttributeSet(LINK_STYLE);
+        anchor.addAttribute(HTML.Attribute.HREF, href);
+        SimpleAttributeSet attrs = new SimpleAttributeSet(text);
+        attrs.addAttributes(LINK_STYLE);
+        attrs.addAttribute(HTML.Tag.A, anchor);
+        return attrs;
+    }
+
+    /**
+     * Проверяет, блочный ли фрагмент. Блочный фрагмент вставляется между абзацами
+     * (абзац в точке вставки при необходимости делится), строчный — внутрь абзаца.
+     *
+     * @return true для заголовка, абзаца и списка
+     */
+    public boolean isBlock() {
+        return block;
+    }
+
+    /**
+     * Возвращает HTML-код фрагмента, например для вставки через {@code HTMLEditorKit.insertHTML}.
+     *
+     * @return HTML-код
+     */
+    public String toHtml() {
+        return html;
+    }
+
+    @Override
+    public String toString() {
+        return html;
+    }
+
+    /**
+     * Возвращает элементы фрагмента. Описания элементов не изменяются при вставке,
+     * поэтому отдаются без копирования.
+     *
+     * @return элементы в порядке вставки
+     */
+    ElementSpec[] specs() {
+        return specs;
+    }
+
+    /**
+     * Собирает блок из одного абзаца текста.
+     */
+    private static HtmlFragment block(HTML.Tag tag, String text) {
+        String line = singleLine(text);
+        List<ElementSpec> specs = new ArrayList<>(4);
+        specs.add(new ElementSpec(tag(tag), ElementSpec.StartTagType));
+        addParagraphText(specs, line);
+        specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+        String html = "<" + tag + ">" + escape(line) + "</" + tag + ">";
+        return new HtmlFragment(specs.toArray(new ElementSpec[0]), true, html);
+    }
+
+    /**
+     * Добавляет текст абзаца и завершающий его перевод строки.
+     */
+    private static void addParagraphText(List<ElementSpec> specs, String text) {
+        if (!text.isEmpty()) {
+            char[] chars = text.toCharArray();
+            specs.add(new ElementSpec(CONTENT, ElementSpec.ContentType, chars, 0, chars.length));
+        }
+        specs.add(new ElementSpec(END_OF_PARAGRAPH, ElementSpec.ContentType, new char[] {'\n'}, 0, 1));
+    }
+
+    /**
+     * Атрибуты элемента с заданным тегом.
+     */
+    static AttributeSet tag(HTML.Tag tag) {
+        MutableAttributeSet attrs = new SimpleAttributeSet();
+        attrs.addAttribute(StyleConstants.NameAttribute, tag);
+        return attrs;
+    }
+
+    /**
+     * Заменяет переводы строк пробелами.
+     */
+    private static String singleLine(String text) {
+        return text.replace("\r\n", " ").replace('\r', ' ').replace('\n', ' ');
+    }
+
+    /**
+     * Экранирует специальные символы HTML.
+     */
+    static String escape(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
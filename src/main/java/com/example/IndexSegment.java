@@ -0,0 +1,477 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Неизменяемый сегмент индекса библиотеки на диске, отображённый в память.
+ *
+ * <p>Сегмент хранит словарь (отсортированные термины) и списки вхождений для
+ * документов с локальными номерами {@code 0..getDocCount()-1}. Устройство файла:</p>
+ * <pre>
+ * заголовок: сигнатура, число документов, число терминов,
+ *            смещения словаря, строк терминов и размер списков вхождений
+ * списки вхождений: для каждого документа с термином —
+ *            varint приращения номера документа, varint числа вхождений,
+ *            varint длины пар в байтах, пары (приращение порядкового номера слова,
+ *            приращение смещения в тексте) в varint
+ * строки терминов: символы UTF-16 подряд
+ * словарь: для каждого термина — начало и длина строки, смещение и длина
+ *            списка вхождений, число документов
+ * </pre>
+ *
+ * <p>Читается всё абсолютными обращениями к общему буферу, поэтому сегментом можно
+ * пользоваться из нескольких потоков без блокировок. Сегмент ограничен 2 ГБ —
+ * индекс следит за этим при сбросе и слиянии.</p>
+ */
+final class IndexSegment {
+
+    /**
+     * Сигнатура файла сегмента ("SWS1").
+     */
+    static final int MAGIC = 0x53575331;
+
+    /**
+     * Размер заголовка в байтах.
+     */
+    static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 8 + 8;
+
+    /**
+     * Размер записи словаря в байтах.
+     */
+    private static final int ENTRY_SIZE = 4 + 4 + 8 + 4 + 4;
+
+    /**
+     * Файл сегмента.
+     */
+    private final Path file;
+
+    /**
+     * Отображённое содержимое файла.
+     */
+    private final ByteBuffer buffer;
+
+    private final int docCount;
+
+    private final int termCount;
+
+    /**
+     * Начало словаря в файле.
+     */
+    private final int dictionary;
+
+    /**
+     * Начало строк терминов в файле.
+     */
+    private final int strings;
+
+    private IndexSegment(Path file, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + ": not an index segment");
+        }
+        docCount = buffer.getInt(4);
+        termCount = buffer.getInt(8);
+        long dictionaryOffset = buffer.getLong(12);
+        long stringsOffset = buffer.getLong(20);
+        if (docCount < 0 || termCount < 0 || stringsOffset < HEADER_SIZE || dictionaryOffset < stringsOffset
+                || dictionaryOffset + (long) termCount * ENTRY_SIZE != buffer.capacity()) {
+            throw new IOException(file + ": corrupt index segment");
+        }
+        dictionary = (int) dictionaryOffset;
+        strings = (int) stringsOffset;
+    }
+
+    /**
+     * Открывает сегмент и отображает его в память. Канал закрывается сразу:
+     * отображение остаётся действительным.
+     *
+     * @param file файл сегмента
+     * @return сегмент
+     * @throws IOException если файл не читается или повреждён
+     */
+    static IndexSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + ": index segment too large");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new IndexSegment(file, mapped.order(ByteOrder.BIG_ENDIAN));
+        }
+    }
+
+    /**
+     * Возвращает файл сегмента.
+     *
+     * @return путь к файлу
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Возвращает число документов сегмента (включая удалённые позже).
+     *
+     * @return число документов
+     */
+    int getDocCount() {
+        return docCount;
+    }
+
+    /**
+     * Возвращает размер файла сегмента.
+     *
+     * @return размер в байтах
+     */
+    long size() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Возвращает число терминов словаря.
+     *
+     * @return число терминов
+     */
+    int getTermCount() {
+        return termCount;
+    }
+
+    /**
+     * Возвращает термин словаря по номеру.
+     *
+     * @param i номер термина
+     * @return термин
+     */
+    String term(int i) {
+        int entry = dictionary + i * ENTRY_SIZE;
+        int start = strings + 2 * buffer.getInt(entry);
+        char[] chars = new char[buffer.getInt(entry + 4)];
+        for (int k = 0; k < chars.length; k++) {
+            chars[k] = buffer.getChar(start + 2 * k);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Ищет термин в словаре двоичным поиском.
+     *
+     * @param term термин
+     * @return номер термина или -1
+     */
+    int find(String term) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = compare(mid, term);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int i, String term) {
+        int entry = dictionary + i * ENTRY_SIZE;
+        int start = strings + 2 * buffer.getInt(entry);
+        int length = buffer.getInt(entry + 4);
+        int n = Math.min(length, term.length());
+        for (int k = 0; k < n; k++) {
+            char c = buffer.getChar(start + 2 * k);
+            if (c != term.charAt(k)) {
+                return c - term.charAt(k);
+            }
+        }
+        return length - term.length();
+    }
+
+    /**
+     * Возвращает число документов с термином.
+     *
+     * @param i номер термина
+     * @return число документов
+     */
+    int docFreq(int i) {
+        return buffer.getInt(dictionary + i * ENTRY_SIZE + 20);
+    }
+
+    /**
+     * Открывает список вхождений термина.
+     *
+     * @param i номер термина
+     * @return курсор, ещё не стоящий ни на одном документе
+     */
+    Postings postings(int i) {
+        int entry = dictionary + i * ENTRY_SIZE;
+        long start = HEADER_SIZE + buffer.getLong(entry + 8);
+        return new Postings((int) start, (int) start + buffer.getInt(entry + 16));
+    }
+
+    /**
+     * Курсор по списку вхождений одного термина.
+     */
+    final class Postings {
+
+        private int position;
+
+        private final int end;
+
+        private int doc = -1;
+
+        private int count;
+
+        /**
+         * Начало пар текущего документа.
+         */
+        private int pairs;
+
+        private int pairsLength;
+
+        private Postings(int position, int end) {
+            this.position = position;
+            this.end = end;
+        }
+
+        /**
+         * Переходит к следующему документу.
+         *
+         * @return false, если документы кончились
+         */
+        boolean next() {
+            if (position >= end) {
+                return false;
+            }
+            doc += readVarInt();
+            count = readVarInt();
+            pairsLength = readVarInt();
+            pairs = position;
+            position += pairsLength;
+            return true;
+        }
+
+        /**
+         * Переходит к первому документу с номером не меньше заданного.
+         *
+         * @param target номер документа
+         * @return false, если такого документа нет
+         */
+        boolean advance(int target) {
+            while (doc < target) {
+                if (!next()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Номер текущего документа в сегменте.
+         */
+        int doc() {
+            return doc;
+        }
+
+        /**
+         * Число вхождений в текущем документе.
+         */
+        int count() {
+            return count;
+        }
+
+        /**
+         * Раскодирует вхождения текущего документа.
+         *
+         * @param ordinals порядковые номера слов (не короче {@link #count()})
+         * @param offsets  смещения слов в тексте документа (не короче {@link #count()})
+         */
+        void read(int[] ordinals, int[] offsets) {
+            int saved = position;
+            position = pairs;
+            int ordinal = 0;
+            int offset = 0;
+            for (int k = 0; k < count; k++) {
+                ordinal += readVarInt();
+                offset += readVarInt();
+                ordinals[k] = ordinal;
+                offsets[k] = offset;
+            }
+            position = saved;
+        }
+
+        /**
+         * Копирует закодированные пары текущего документа (для слияния сегментов).
+         *
+         * @param out приёмник
+         */
+        void copyPairs(ByteSink out) {
+            out.ensure(pairsLength);
+            for (int k = 0; k < pairsLength; k++) {
+                out.bytes[out.length++] = buffer.get(pairs + k);
+            }
+        }
+
+        /**
+         * Длина пар текущего документа в байтах.
+         */
+        int pairsLength() {
+            return pairsLength;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            for (;;) {
+                byte b = buffer.get(position++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+                shift += 7;
+            }
+        }
+    }
+
+    /**
+     * Растущий массив байт для кодирования списков вхождений.
+     */
+    static final class ByteSink {
+
+        byte[] bytes = new byte[16];
+
+        int length;
+
+        void ensure(int n) {
+            if (length + n > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + n));
+            }
+        }
+
+        void writeVarInt(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void write(ByteSink other) {
+            ensure(other.length);
+            System.arraycopy(other.bytes, 0, bytes, length, other.length);
+            length += other.length;
+        }
+    }
+
+    /**
+     * Запись сегмента: термины подаются по возрастанию, списки вхождений сразу пишутся
+     * в канал, словарь собирается в памяти и дописывается в конце.
+     */
+    static final class Writer {
+
+        private final FileChannel channel;
+
+        private final List<String> terms = new ArrayList<>();
+
+        private final ByteSink entries = new ByteSink();
+
+        private long postings;
+
+        private String last;
+
+        /**
+         * Начинает запись сегмента в канал (с начала канала).
+         *
+         * @param channel канал нового файла
+         * @throws IOException при ошибке записи
+         */
+        Writer(FileChannel channel) throws IOException {
+            this.channel = channel;
+            channel.position(HEADER_SIZE);
+        }
+
+        /**
+         * Добавляет термин со списком вхождений.
+         *
+         * @param term     термин, больше предыдущего
+         * @param list     закодированный список вхождений
+         * @param docFreq  число документов в списке
+         * @throws IOException при ошибке записи
+         */
+        void add(String term, ByteSink list, int docFreq) throws IOException {
+            if (last != null && last.compareTo(term) >= 0) {
+                throw new IllegalArgumentException("Terms out of order: " + last + ", " + term);
+            }
+            last = term;
+            writeFully(ByteBuffer.wrap(list.bytes, 0, list.length));
+            terms.add(term);
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            entry.putInt(0).putInt(term.length()).putLong(postings).putInt(list.length).putInt(docFreq);
+            entries.ensure(ENTRY_SIZE);
+            System.arraycopy(entry.array(), 0, entries.bytes, entries.length, ENTRY_SIZE);
+            entries.length += ENTRY_SIZE;
+            postings += list.length;
+            if (HEADER_SIZE + postings > Integer.MAX_VALUE) {
+                throw new IOException("Index segment too large");
+            }
+        }
+
+        /**
+         * Дописывает строки терминов, словарь и заголовок.
+         *
+         * @param docCount число документов сегмента
+         * @throws IOException при ошибке записи
+         */
+        void finish(int docCount) throws IOException {
+            long stringsOffset = HEADER_SIZE + postings;
+            ByteBuffer chars = ByteBuffer.allocate(64 * 1024);
+            int start = 0;
+            for (int i = 0; i < terms.size(); i++) {
+                String term = terms.get(i);
+                ByteBuffer.wrap(entries.bytes, i * ENTRY_SIZE, 4).putInt(start);
+                start += term.length();
+                for (int k = 0; k < term.length(); k++) {
+                    if (!chars.hasRemaining()) {
+                        chars.flip();
+                        writeFully(chars);
+                        chars.clear();
+                    }
+                    chars.putChar(term.charAt(k));
+                }
+            }
+            chars.flip();
+            writeFully(chars);
+            long dictionaryOffset = stringsOffset + 2L * start;
+            if (dictionaryOffset + entries.length > Integer.MAX_VALUE) {
+                throw new IOException("Index segment too large");
+            }
+            writeFully(ByteBuffer.wrap(entries.bytes, 0, entries.length));
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(docCount).putInt(terms.size())
+                    .putLong(dictionaryOffset).putLong(stringsOffset).putLong(postings);
+            header.flip();
+            channel.position(0);
+            writeFully(header);
+        }
+
+        private void writeFully(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
+}
@@ -0,0 +1,1111 @@
+package com.example;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+import javax.swing.text.html.HTMLDocument;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Индекс библиотеки документов: поиск фраз сразу по всем {@code .doc}/{@code .html}
+ * файлам каталога.
+ *
+ * <p>Каждый файл разбирается тем же набором редактора, что и при «Открыть»
+ * ({@link DocumentLoadWorker#read}), и видимый текст документа делится на слова.
+ * Для каждого слова хранятся номер слова в документе и его смещение в тексте — то самое,
+ * по которому найденное место выделяется в редакторе после открытия файла.</p>
+ *
+ * <p>Обратный индекс лежит на диске в неизменяемых сегментах ({@link IndexSegment}),
+ * отображённых в память; список файлов с размером и временем изменения — в файле
+ * {@code manifest}. {@link #update} заново разбирает только новые и изменённые файлы
+ * (параллельно, по числу ядер): их слова копятся в памяти и сбрасываются новым сегментом,
+ * прежние записи изменённых и удалённых файлов просто перестают учитываться. Когда сегментов
+ * становится много, мелкие сливаются в один без повторного разбора.</p>
+ *
+ * <p>Поиск ({@link #search}) идёт по снимку индекса и не ждёт обновления: слова фразы
+ * находятся двоичным поиском в словаре каждого сегмента, документы перебираются по самому
+ * редкому слову, и только у общих документов раскодируются позиции.</p>
+ */
+public class LibraryIndex {
+
+    /**
+     * Сигнатура файла списка документов ("SWM1").
+     */
+    static final int MANIFEST_MAGIC = 0x53574D31;
+
+    /**
+     * Слова длиннее этого не индексируются (но учитываются в нумерации).
+     */
+    static final int MAX_TERM_LENGTH = 64;
+
+    /**
+     * Объём закодированных вхождений в памяти, после которого пишется новый сегмент.
+     */
+    private static final long FLUSH_BYTES = 32L << 20;
+
+    /**
+     * Сколько сегментов допускается до слияния.
+     */
+    private static final int MAX_SEGMENTS = 8;
+
+    /**
+     * Наибольший суммарный размер сливаемых сегментов.
+     */
+    private static final long MAX_MERGED_SIZE = 1L << 30;
+
+    /**
+     * Обработчик хода обновления.
+     */
+    public interface Listener {
+
+        /**
+         * Сообщает, сколько файлов разобрано. Вызывается в потоке обновления.
+         *
+         * @param done  разобрано файлов
+         * @param total всего файлов для разбора
+         */
+        void progress(int done, int total);
+    }
+
+    /**
+     * Найденное место: файл и диапазон фразы в тексте его документа.
+     */
+    public static final class Hit {
+
+        private final Path file;
+
+        private final int start;
+
+        private final int end;
+
+        Hit(Path file, int start, int end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Файл с найденной фразой.
+         *
+         * @return путь к файлу
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * Начало фразы в тексте документа.
+         *
+         * @return смещение начала
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * Конец фразы в тексте документа.
+         *
+         * @return смещение конца
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        @Override
+        public String toString() {
+            return file + ":" + start;
+        }
+    }
+
+    /**
+     * Итоги обновления индекса.
+     */
+    public static final class Report {
+
+        int indexed;
+
+        int unchanged;
+
+        int removed;
+
+        /**
+         * Файлы, которые не удалось разобрать, и причины, в порядке обнаружения.
+         */
+        final Map<Path, Throwable> failures = new LinkedHashMap<>();
+
+        long nanos;
+
+        /**
+         * Число файлов с ошибками разбора.
+         *
+         * @return число ошибок
+         */
+        public int getFailed() {
+            return failures.size();
+        }
+
+        /**
+         * Файлы с ошибками разбора.
+         *
+         * @return файл и причина ошибки
+         */
+        public Map<Path, Throwable> getFailures() {
+            return Collections.unmodifiableMap(failures);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "Проиндексировано: %d, без изменений: %d, удалено: %d, ошибок: %d за %.2f с",
+                    indexed, unchanged, removed, failures.size(), nanos / 1e9);
+        }
+    }
+
+    /**
+     * Корень библиотеки.
+     */
+    private final Path root;
+
+    /**
+     * Каталог файлов индекса.
+     */
+    private final Path directory;
+
+    /**
+     * Число потоков разбора.
+     */
+    private final int threads;
+
+    /**
+     * Обновления выполняются по одному.
+     */
+    private final Object updateLock = new Object();
+
+    /**
+     * Текущий снимок индекса; заменяется целиком после обновления.
+     */
+    private volatile State state;
+
+    /**
+     * Открывает индекс библиотеки в каталоге по умолчанию ({@link #defaultDirectory}).
+     *
+     * @param root корень библиотеки
+     */
+    public LibraryIndex(Path root) {
+        this(root, defaultDirectory(root), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Открывает индекс библиотеки. Если сохранённый индекс не читается, индекс
+     * начинается пустым и полностью строится при первом {@link #update}.
+     *
+     * @param root      корень библиотеки
+     * @param directory каталог файлов индекса
+     * @param threads   число потоков разбора
+     */
+    public LibraryIndex(Path root, Path directory, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        this.root = root.toAbsolutePath().normalize();
+        this.directory = directory;
+        this.threads = threads;
+        State loaded;
+        try {
+            loaded = load();
+        } catch (IOException e) {
+            e.printStackTrace(); // Индекс будет построен заново
+            loaded = null;
+        }
+        state = loaded != null ? loaded : State.EMPTY;
+    }
+
+    /**
+     * Каталог индекса библиотеки по умолчанию: свой для каждого корня.
+     *
+     * @param root корень библиотеки
+     * @return путь в каталоге ~/.simple-word-processor/library
+     */
+    public static Path defaultDirectory(Path root) {
+        String key = root.toAbsolutePath().normalize().toString();
+        return serviceDirectory().resolve("library")
+                .resolve(UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString());
+    }
+
+    private static Path serviceDirectory() {
+        return EditJournal.untitledTarget().getParent();
+    }
+
+    /**
+     * Возвращает корень библиотеки.
+     *
+     * @return корень
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Возвращает число проиндексированных файлов.
+     *
+     * @return число файлов
+     */
+    public int size() {
+        return state.entries.size();
+    }
+
+    /**
+     * Ищет фразу во всех файлах библиотеки. Регистр не учитывается, знаки препинания
+     * и пробелы между словами — тоже: фраза совпадает со словами, идущими подряд.
+     *
+     * @param phrase фраза
+     * @param limit  наибольшее число результатов
+     * @return найденные места, упорядоченные по файлу и смещению
+     */
+    public List<Hit> search(String phrase, int limit) {
+        List<String> terms = terms(phrase);
+        List<Hit> hits = new ArrayList<>();
+        if (terms.isEmpty() || limit <= 0) {
+            return hits;
+        }
+        State current = state;
+        int n = terms.size();
+        int[][] ordinals = new int[n][16];
+        int[][] offsets = new int[n][16];
+        for (int s = 0; s < current.segments.size() && hits.size() < limit; s++) {
+            IndexSegment segment = current.segments.get(s);
+            int[] live = current.live[s];
+            IndexSegment.Postings[] postings = new IndexSegment.Postings[n];
+            int rarest = -1;
+            int rarestFreq = Integer.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                int term = segment.find(terms.get(i));
+                if (term < 0) {
+                    rarest = -1;
+                    break;
+                }
+                postings[i] = segment.postings(term);
+                if (segment.docFreq(term) < rarestFreq) {
+                    rarestFreq = segment.docFreq(term);
+                    rarest = i;
+                }
+            }
+            if (rarest < 0) {
+                continue;
+            }
+            IndexSegment.Postings lead = postings[rarest];
+            candidates:
+            while (hits.size() < limit && lead.next()) {
+                int doc = lead.doc();
+                if (live[doc] < 0) {
+                    continue;
+                }
+                for (int i = 0; i < n; i++) {
+                    if (!postings[i].advance(doc)) {
+                        break candidates;
+                    }
+                    if (postings[i].doc() != doc) {
+                        continue candidates;
+                    }
+                }
+                for (int i = 0; i < n; i++) {
+                    int count = postings[i].count();
+                    if (ordinals[i].length < count) {
+                        ordinals[i] = new int[count];
+                        offsets[i] = new int[count];
+                    }
+                    postings[i].read(ordinals[i], offsets[i]);
+                }
+                collect(current.entries.get(live[doc]), terms, postings, ordinals, offsets, hits, limit);
+            }
+        }
+        hits.sort(Comparator.comparing(Hit::getFile).thenComparingInt(Hit::getStart));
+        return hits;
+    }
+
+    /**
+     * Находит в документе места, где слова фразы идут подряд.
+     */
+    private void collect(Entry entry, List<String> terms, IndexSegment.Postings[] postings,
+                         int[][] ordinals, int[][] offsets, List<Hit> hits, int limit) {
+        int n = terms.size();
+        int last = n - 1;
+        Path file = root.resolve(entry.path);
+        for (int k = 0; k < postings[0].count() && hits.size() < limit; k++) {
+            int ordinal = ordinals[0][k];
+            int at = k;
+            for (int i = 1; i < n && at >= 0; i++) {
+                at = Arrays.binarySearch(ordinals[i], 0, postings[i].count(), ordinal + i);
+            }
+            if (at >= 0) {
+                hits.add(new Hit(file, offsets[0][k], offsets[last][at] + terms.get(last).length()));
+            }
+        }
+    }
+
+    /**
+     * Обновляет индекс: разбирает новые и изменённые файлы библиотеки, забывает удалённые.
+     * Поиск во время обновления идёт по прежнему снимку.
+     *
+     * @param listener обработчик хода или null
+     * @return итоги
+     * @throws IOException          если не удалось записать индекс
+     * @throws InterruptedException если поток прерван
+     */
+    public Report update(Listener listener) throws IOException, InterruptedException {
+        synchronized (updateLock) {
+            long started = System.nanoTime();
+            Report report = new Report();
+            State old = state;
+            Files.createDirectories(directory);
+            deleteUnused(old);
+
+            // Какие файлы разбирать заново
+            Map<String, Entry> known = new HashMap<>();
+            for (Entry entry : old.entries) {
+                known.put(entry.path, entry);
+            }
+            Builder builder = new Builder(old);
+            List<Source> changed = new ArrayList<>();
+            for (Source source : scan()) {
+                Entry entry = known.remove(source.path);
+                if (entry != null && entry.size == source.size && entry.modified == source.modified) {
+                    // Копия: номера сегментов меняются при слиянии, а прежний снимок ещё в ходу
+                    builder.entries.add(new Entry(entry.path, entry.size, entry.modified, entry.segment, entry.local));
+                    report.unchanged++;
+                } else {
+                    changed.add(source);
+                }
+            }
+            report.removed = known.size();
+
+            parse(changed, builder, report, listener);
+            builder.compact();
+            State updated = builder.build();
+            writeManifest(updated);
+            state = updated;
+            deleteUnused(updated);
+            report.nanos = System.nanoTime() - started;
+            return report;
+        }
+    }
+
+    /**
+     * Обходит библиотеку. Недоступные каталоги пропускаются, служебный каталог редактора — тоже.
+     */
+    private List<Source> scan() throws IOException {
+        List<Source> sources = new ArrayList<>();
+        Path service = serviceDirectory().toAbsolutePath().normalize();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return dir.startsWith(service) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && BatchConverter.isDocument(file)) {
+                    sources.add(new Source(file, root.relativize(file).toString().replace(File.separatorChar, '/'),
+                            attrs.size(), attrs.lastModifiedTime().toMillis()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return sources;
+    }
+
+    /**
+     * Разбирает файлы в пуле потоков; не больше нескольких разобранных файлов на поток
+     * ждут записи, так что память ограничена независимо от размера библиотеки.
+     */
+    private void parse(List<Source> sources, Builder builder, Report report, Listener listener)
+            throws IOException, InterruptedException {
+        if (sources.isEmpty()) {
+            return;
+        }
+        ExecutorService pool = BulkExecutors.newPlatformExecutor("library-index", threads);
+        CompletionService<Parsed> done = new ExecutorCompletionService<>(pool);
+        Map<Future<Parsed>, Source> pending = new HashMap<>();
+        try {
+            int submitted = 0;
+            for (; submitted < sources.size() && submitted < 4 * threads; submitted++) {
+                Source source = sources.get(submitted);
+                pending.put(done.submit(() -> parse(source)), source);
+            }
+            for (int completed = 0; completed < sources.size(); ) {
+                Future<Parsed> future = done.take();
+                Source parsed = pending.remove(future);
+                completed++;
+                if (submitted < sources.size()) {
+                    Source source = sources.get(submitted++);
+                    pending.put(done.submit(() -> parse(source)), source);
+                }
+                try {
+                    builder.add(future.get());
+                    report.indexed++;
+                } catch (ExecutionException e) {
+                    report.failures.put(parsed.file, e.getCause());
+                }
+                if (listener != null) {
+                    listener.progress(completed, sources.size());
+                }
+            }
+            builder.flush();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Разбирает файл набором редактора и собирает вхождения слов.
+     */
+    private static Parsed parse(Source source) throws IOException {
+        HTMLDocument doc;
+        try (MappedFileReader in = new MappedFileReader(source.file, Charset.defaultCharset())) {
+            doc = DocumentLoadWorker.read(new WordProcessorEditorKit(), in);
+        } catch (BadLocationException | RuntimeException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        Parsed parsed = new Parsed(source);
+        Tokenizer tokenizer = new Tokenizer((term, ordinal, offset) ->
+                parsed.terms.computeIfAbsent(term, t -> new Occurrences()).add(ordinal, offset));
+        Segment text = new Segment();
+        text.setPartialReturn(true);
+        try {
+            for (int offset = 0, length = doc.getLength(); offset < length; offset += text.count) {
+                doc.getText(offset, length - offset, text);
+                tokenizer.feed(text.array, text.offset, text.count, offset);
+            }
+        } catch (BadLocationException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        tokenizer.finish();
+        return parsed;
+    }
+
+    /**
+     * Делит строку запроса на слова так же, как текст документов.
+     *
+     * @param phrase фраза
+     * @return слова в приведённом виде
+     */
+    static List<String> terms(String phrase) {
+        List<String> terms = new ArrayList<>();
+        Tokenizer tokenizer = new Tokenizer((term, ordinal, offset) -> terms.add(term));
+        tokenizer.feed(phrase.toCharArray(), 0, phrase.length(), 0);
+        tokenizer.finish();
+        return terms;
+    }
+
+    private State load() throws IOException {
+        Path manifest = directory.resolve("manifest");
+        if (!Files.exists(manifest)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest)))) {
+            if (in.readInt() != MANIFEST_MAGIC || !root.toString().equals(in.readUTF())) {
+                return null;
+            }
+            int nextId = in.readInt();
+            int segmentCount = in.readInt();
+            List<IndexSegment> segments = new ArrayList<>(segmentCount);
+            int[] ids = new int[segmentCount];
+            for (int s = 0; s < segmentCount; s++) {
+                ids[s] = in.readInt();
+                segments.add(IndexSegment.open(segmentFile(ids[s])));
+            }
+            int entryCount = in.readInt();
+            List<Entry> entries = new ArrayList<>(entryCount);
+            for (int i = 0; i < entryCount; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readInt(), in.readInt());
+                if (entry.segment < 0 || entry.segment >= segmentCount
+                        || entry.local < 0 || entry.local >= segments.get(entry.segment).getDocCount()) {
+                    throw new IOException(manifest + ": corrupt manifest");
+                }
+                entries.add(entry);
+            }
+            return new State(segments, ids, entries, nextId);
+        }
+    }
+
+    private void writeManifest(State state) throws IOException {
+        new AtomicFileSaver().save(directory.resolve("manifest"), channel -> {
+            // Канал закрывает AtomicFileSaver, поэтому поток только сбрасывается
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeUTF(root.toString());
+            out.writeInt(state.nextId);
+            out.writeInt(state.segments.size());
+            for (int id : state.ids) {
+                out.writeInt(id);
+            }
+            out.writeInt(state.entries.size());
+            for (Entry entry : state.entries) {
+                out.writeUTF(entry.path);
+                out.writeLong(entry.size);
+                out.writeLong(entry.modified);
+                out.writeInt(entry.segment);
+                out.writeInt(entry.local);
+            }
+            out.flush();
+        });
+    }
+
+    /**
+     * Удаляет файлы сегментов, на которые снимок не ссылается. Файл, ещё отображённый
+     * в память (в Windows его не удалить), удаляется при следующем обновлении.
+     */
+    private void deleteUnused(State state) {
+        Set<Path> used = new HashSet<>();
+        for (IndexSegment segment : state.segments) {
+            used.add(segment.getFile().getFileName());
+        }
+        File[] files = directory.toFile().listFiles((dir, name) -> name.startsWith("segment-"));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!used.contains(Paths.get(file.getName()))) {
+                try {
+                    Files.deleteIfExists(file.toPath());
+                } catch (IOException e) {
+                    // Повторим в следующий раз
+                }
+            }
+        }
+    }
+
+    private Path segmentFile(int id) {
+        return directory.resolve("segment-" + id + ".idx");
+    }
+
+    /**
+     * Снимок индекса: сегменты и проиндексированные файлы.
+     */
+    private static final class State {
+
+        static final State EMPTY = new State(Collections.emptyList(), new int[0], Collections.emptyList(), 1);
+
+        final List<IndexSegment> segments;
+
+        /**
+         * Номера файлов сегментов.
+         */
+        final int[] ids;
+
+        final List<Entry> entries;
+
+        /**
+         * Для каждого сегмента: номер записи файла по локальному номеру документа или -1,
+         * если документ удалён или заменён.
+         */
+        final int[][] live;
+
+        final int nextId;
+
+        State(List<IndexSegment> segments, int[] ids, List<Entry> entries, int nextId) {
+            this.segments = segments;
+            this.ids = ids;
+            this.entries = entries;
+            this.nextId = nextId;
+            live = new int[segments.size()][];
+            for (int s = 0; s < live.length; s++) {
+                live[s] = new int[segments.get(s).getDocCount()];
+                Arrays.fill(live[s], -1);
+            }
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                live[entry.segment][entry.local] = i;
+            }
+        }
+    }
+
+    /**
+     * Проиндексированный файл.
+     */
+    private static final class Entry {
+
+        /**
+         * Путь относительно корня, через '/'.
+         */
+        final String path;
+
+        final long size;
+
+        final long modified;
+
+        /**
+         * Номер сегмента в снимке.
+         */
+        int segment;
+
+        /**
+         * Номер документа в сегменте.
+         */
+        int local;
+
+        Entry(String path, long size, long modified, int segment, int local) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.segment = segment;
+            this.local = local;
+        }
+    }
+
+    /**
+     * Файл библиотеки, найденный при обходе.
+     */
+    private static final class Source {
+
+        final Path file;
+
+        final String path;
+
+        final long size;
+
+        final long modified;
+
+        Source(Path file, String path, long size, long modified) {
+            this.file = file;
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * Разобранный файл: вхождения каждого слова.
+     */
+    private static final class Parsed {
+
+        final Source source;
+
+        final Map<String, Occurrences> terms = new HashMap<>();
+
+        Parsed(Source source) {
+            this.source = source;
+        }
+    }
+
+    /**
+     * Пары (номер слова, смещение) одного слова в документе, по возрастанию.
+     */
+    private static final class Occurrences {
+
+        int[] pairs = new int[4];
+
+        int size;
+
+        void add(int ordinal, int offset) {
+            if (size + 2 > pairs.length) {
+                pairs = Arrays.copyOf(pairs, pairs.length * 2);
+            }
+            pairs[size++] = ordinal;
+            pairs[size++] = offset;
+        }
+    }
+
+    /**
+     * Новый снимок индекса: прежние сегменты, новые сегменты из разобранных файлов
+     * и слитые сегменты.
+     */
+    private final class Builder {
+
+        final List<IndexSegment> segments;
+
+        final List<Integer> ids = new ArrayList<>();
+
+        final List<Entry> entries = new ArrayList<>();
+
+        int nextId;
+
+        /**
+         * Вхождения разобранных, но ещё не записанных файлов по словам.
+         */
+        private final Map<String, Pending> pending = new HashMap<>();
+
+        private final List<Entry> pendingEntries = new ArrayList<>();
+
+        private long pendingBytes;
+
+        private final IndexSegment.ByteSink pairs = new IndexSegment.ByteSink();
+
+        Builder(State old) {
+            segments = new ArrayList<>(old.segments);
+            for (int id : old.ids) {
+                ids.add(id);
+            }
+            nextId = old.nextId;
+        }
+
+        /**
+         * Добавляет разобранный файл; при переполнении памяти пишет сегмент.
+         */
+        void add(Parsed parsed) throws IOException {
+            int local = pendingEntries.size();
+            Source source = parsed.source;
+            pendingEntries.add(new Entry(source.path, source.size, source.modified, -1, local));
+            for (Map.Entry<String, Occurrences> term : parsed.terms.entrySet()) {
+                Occurrences occurrences = term.getValue();
+                pairs.length = 0;
+                int ordinal = 0;
+                int offset = 0;
+                for (int k = 0; k < occurrences.size; k += 2) {
+                    pairs.writeVarInt(occurrences.pairs[k] - ordinal);
+                    pairs.writeVarInt(occurrences.pairs[k + 1] - offset);
+                    ordinal = occurrences.pairs[k];
+                    offset = occurrences.pairs[k + 1];
+                }
+                Pending list = pending.computeIfAbsent(term.getKey(), t -> new Pending());
+                int before = list.postings.length;
+                list.postings.writeVarInt(local - list.lastDoc);
+                list.postings.writeVarInt(occurrences.size / 2);
+                list.postings.writeVarInt(pairs.length);
+                list.postings.write(pairs);
+                list.lastDoc = local;
+                list.docFreq++;
+                pendingBytes += list.postings.length - before;
+            }
+            if (pendingBytes >= FLUSH_BYTES) {
+                flush();
+            }
+        }
+
+        /**
+         * Пишет накопленные файлы новым сегментом.
+         */
+        void flush() throws IOException {
+            if (pendingEntries.isEmpty()) {
+                return;
+            }
+            List<String> terms = new ArrayList<>(pending.keySet());
+            Collections.sort(terms);
+            int id = nextId++;
+            IndexSegment segment = write(id, writer -> {
+                for (String term : terms) {
+                    Pending list = pending.get(term);
+                    writer.add(term, list.postings, list.docFreq);
+                }
+            }, pendingEntries.size());
+            for (Entry entry : pendingEntries) {
+                entry.segment = segments.size();
+                entries.add(entry);
+            }
+            segments.add(segment);
+            ids.add(id);
+            pending.clear();
+            pendingEntries.clear();
+            pendingBytes = 0;
+        }
+
+        /**
+         * Убирает сегменты без живых документов и сливает в один: мелкие, пока сегментов
+         * больше {@link #MAX_SEGMENTS}, и те, где удалённых документов больше половины.
+         */
+        void compact() throws IOException {
+            int[] liveCount = new int[segments.size()];
+            for (Entry entry : entries) {
+                liveCount[entry.segment]++;
+            }
+            List<Integer> order = new ArrayList<>();
+            for (int s = 0; s < segments.size(); s++) {
+                if (liveCount[s] > 0) {
+                    order.add(s);
+                }
+            }
+            order.sort(Comparator.comparingLong(s -> segments.get(s).size()));
+            int required = order.size() > MAX_SEGMENTS ? order.size() - MAX_SEGMENTS + 1 : 0;
+            List<Integer> merged = new ArrayList<>();
+            long mergedSize = 0;
+            for (int s : order) {
+                long size = segments.get(s).size();
+                boolean sparse = 2 * liveCount[s] < segments.get(s).getDocCount();
+                // Кроме обязательных, добираем сегменты не крупнее уже набранного — так
+                // каждый документ переписывается логарифмическое число раз
+                if (sparse || merged.size() < required || size <= mergedSize && mergedSize + size <= MAX_MERGED_SIZE) {
+                    merged.add(s);
+                    mergedSize += size;
+                }
+            }
+            if (merged.size() == 1 && 2 * liveCount[merged.get(0)] >= segments.get(merged.get(0)).getDocCount()) {
+                merged.clear();
+            }
+            Collections.sort(merged);
+
+            // Новые локальные номера документов слитого сегмента — по порядку сегментов
+            int[][] renumber = new int[segments.size()][];
+            int docCount = 0;
+            for (int s : merged) {
+                renumber[s] = new int[segments.get(s).getDocCount()];
+                Arrays.fill(renumber[s], -1);
+            }
+            List<Entry> sorted = new ArrayList<>(entries);
+            sorted.sort(Comparator.<Entry>comparingInt(e -> e.segment).thenComparingInt(e -> e.local));
+            for (Entry entry : sorted) {
+                if (renumber[entry.segment] != null) {
+                    renumber[entry.segment][entry.local] = docCount++;
+                }
+            }
+            int mergedIndex = -1;
+            if (!merged.isEmpty()) {
+                int id = nextId++;
+                int count = docCount;
+                IndexSegment segment = write(id, writer -> merge(merged, renumber, writer), count);
+                mergedIndex = segments.size();
+                segments.add(segment);
+                ids.add(id);
+            }
+
+            // Оставляем сегменты с живыми документами, кроме слитых
+            int[] index = new int[segments.size()];
+            List<IndexSegment> keptSegments = new ArrayList<>();
+            List<Integer> keptIds = new ArrayList<>();
+            for (int s = 0; s < segments.size(); s++) {
+                boolean live = s == mergedIndex || s < liveCount.length && liveCount[s] > 0 && renumber[s] == null;
+                index[s] = live ? keptSegments.size() : -1;
+                if (live) {
+                    keptSegments.add(segments.get(s));
+                    keptIds.add(ids.get(s));
+                }
+            }
+            for (Entry entry : entries) {
+                if (renumber[entry.segment] != null) {
+                    entry.local = renumber[entry.segment][entry.local];
+                    entry.segment = mergedIndex;
+                }
+                entry.segment = index[entry.segment];
+            }
+            segments.clear();
+            segments.addAll(keptSegments);
+            ids.clear();
+            ids.addAll(keptIds);
+        }
+
+        /**
+         * Сливает списки вхождений сегментов по словам в порядке возрастания.
+         */
+        private void merge(List<Integer> merged, int[][] renumber, IndexSegment.Writer writer) throws IOException {
+            PriorityQueue<TermCursor> queue = new PriorityQueue<>(
+                    Comparator.<TermCursor, String>comparing(c -> c.term).thenComparingInt(c -> c.segment));
+            for (int s : merged) {
+                TermCursor cursor = new TermCursor(s, segments.get(s));
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+            IndexSegment.ByteSink list = new IndexSegment.ByteSink();
+            List<TermCursor> same = new ArrayList<>();
+            while (!queue.isEmpty()) {
+                String term = queue.peek().term;
+                same.clear();
+                while (!queue.isEmpty() && queue.peek().term.equals(term)) {
+                    same.add(queue.poll());
+                }
+                list.length = 0;
+                int lastDoc = -1;
+                int docFreq = 0;
+                for (TermCursor cursor : same) {
+                    IndexSegment.Postings postings = cursor.source.postings(cursor.index);
+                    int[] map = renumber[cursor.segment];
+                    while (postings.next()) {
+                        int doc = map[postings.doc()];
+                        if (doc < 0) {
+                            continue;
+                        }
+                        list.writeVarInt(doc - lastDoc);
+                        list.writeVarInt(postings.count());
+                        list.writeVarInt(postings.pairsLength());
+                        postings.copyPairs(list);
+                        lastDoc = doc;
+                        docFreq++;
+                    }
+                    if (cursor.next()) {
+                        queue.add(cursor);
+                    }
+                }
+                if (docFreq > 0) {
+                    writer.add(term, list, docFreq);
+                }
+            }
+        }
+
+        State build() {
+            int[] array = new int[ids.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = ids.get(i);
+            }
+            return new State(new ArrayList<>(segments), array, new ArrayList<>(entries), nextId);
+        }
+    }
+
+    /**
+     * Пишет сегмент в новый файл и открывает его.
+     */
+    private IndexSegment write(int id, SegmentContent content, int docCount) throws IOException {
+        Path file = segmentFile(id);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            IndexSegment.Writer writer = new IndexSegment.Writer(channel);
+            content.writeTo(writer);
+            writer.finish(docCount);
+            channel.force(true);
+        }
+        return IndexSegment.open(file);
+    }
+
+    /**
+     * Содержимое нового сегмента.
+     */
+    private interface SegmentContent {
+
+        void writeTo(IndexSegment.Writer writer) throws IOException;
+    }
+
+    /**
+     * Накопленный список вхождений одного слова.
+     */
+    private static final class Pending {
+
+        final IndexSegment.ByteSink postings = new IndexSegment.ByteSink();
+
+        int lastDoc = -1;
+
+        int docFreq;
+    }
+
+    /**
+     * Перебор слов сегмента при слиянии.
+     */
+    private static final class TermCursor {
+
+        final int segment;
+
+        final IndexSegment source;
+
+        int index = -1;
+
+        String term;
+
+        TermCursor(int segment, IndexSegment source) {
+            this.segment = segment;
+            this.source = source;
+        }
+
+        boolean next() {
+            if (++index >= source.getTermCount()) {
+                return false;
+            }
+            term = source.term(index);
+            return true;
+        }
+    }
+
+    /**
+     * Получатель слов из {@link Tokenizer}.
+     */
+    interface TokenSink {
+
+        /**
+         * Очередное слово.
+         *
+         * @param term    слово в приведённом виде
+         * @param ordinal номер слова в тексте, с нуля
+         * @param offset  смещение слова в тексте
+         */
+        void token(String term, int ordinal, int offset);
+    }
+
+    /**
+     * Делит текст на слова — непрерывные последовательности букв и цифр — и приводит
+     * их регистр так же, как поиск без учёта регистра в редакторе ({@link MatchIndex#fold}).
+     * Текст подаётся кусками: слово может продолжаться в следующем куске.
+     */
+    static final class Tokenizer {
+
+        private final TokenSink sink;
+
+        private final StringBuilder word = new StringBuilder();
+
+        private int start;
+
+        private int ordinal;
+
+        Tokenizer(TokenSink sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * Подаёт очередной кусок текста.
+         *
+         * @param chars  массив символов
+         * @param from   начало куска в массиве
+         * @param count  длина куска
+         * @param offset смещение куска в тексте
+         */
+        void feed(char[] chars, int from, int count, int offset) {
+            for (int i = 0; i < count; i++) {
+                char c = chars[from + i];
+                if (Character.isLetterOrDigit(c)) {
+                    if (word.length() == 0) {
+                        start = offset + i;
+                    }
+                    word.append(MatchIndex.fold(c, false));
+                } else if (word.length() > 0) {
+                    finish();
+                }
+            }
+        }
+
+        /**
+         * Завершает последнее слово.
+         */
+        void finish() {
+            if (word.length() > 0) {
+                if (word.length() <= MAX_TERM_LENGTH) {
+                    sink.token(word.toString(), ordinal, start);
+                }
+                ordinal++;
+                word.setLength(0);
+            }
+        }
+    }
+}
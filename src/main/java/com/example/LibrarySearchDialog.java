@@ -0,0 +1,278 @@
+package com.example;
+
+import javax.swing.*;
+import javax.swing.filechooser.FileSystemView;
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Окно поиска фразы по всем документам каталога-библиотеки.
+ *
+ * <p>При выборе каталога и при каждом открытии окна индекс {@link LibraryIndex}
+ * обновляется в фоне (разбираются только изменённые файлы); сам поиск занимает миллисекунды
+ * и выполняется сразу в потоке событий. Двойной щелчок или Enter по результату
+ * открывает файл в редакторе с выделенной фразой.</p>
+ */
+public class LibrarySearchDialog extends JDialog {
+
+    /**
+     * Наибольшее число показываемых результатов.
+     */
+    private static final int MAX_HITS = 1000;
+
+    /**
+     * Наибольшее число файлов с ошибками в подсказке строки состояния.
+     */
+    private static final int MAX_FAILURES = 20;
+
+    private final JTextField folderField = new JTextField(30);
+
+    private final JTextField queryField = new JTextField(30);
+
+    private final JLabel status = new JLabel(" ");
+
+    private final DefaultListModel<LibraryIndex.Hit> hits = new DefaultListModel<>();
+
+    private final JList<LibraryIndex.Hit> hitList = new JList<>(hits);
+
+    /**
+     * Открывает найденное место в редакторе.
+     */
+    private final Consumer<LibraryIndex.Hit> opener;
+
+    /**
+     * Индекс выбранной библиотеки.
+     */
+    private LibraryIndex index;
+
+    /**
+     * Идущее обновление индекса или null.
+     */
+    private SwingWorker<LibraryIndex.Report, Integer> currentUpdate;
+
+    /**
+     * Искать ли по окончании обновления.
+     */
+    private boolean searchPending;
+
+    /**
+     * Создаёт окно поиска.
+     *
+     * @param owner  главное окно
+     * @param opener открывает найденное место в редакторе
+     */
+    public LibrarySearchDialog(Frame owner, Consumer<LibraryIndex.Hit> opener) {
+        super(owner, "Поиск по библиотеке", false);
+        this.opener = opener;
+
+        JButton choose = new JButton("Выбрать...");
+        choose.addActionListener(e -> chooseFolder());
+        JButton search = new JButton("Найти");
+        search.addActionListener(e -> search());
+        folderField.setEditable(false);
+        queryField.addActionListener(e -> search());
+
+        JPanel fields = new JPanel(new GridBagLayout());
+        GridBagConstraints c = new GridBagConstraints();
+        c.insets = new Insets(2, 2, 2, 2);
+        c.fill = GridBagConstraints.HORIZONTAL;
+        c.gridy = 0;
+        fields.add(new JLabel("Папка:"), c);
+        c.weightx = 1;
+        fields.add(folderField, c);
+        c.weightx = 0;
+        fields.add(choose, c);
+        c.gridy = 1;
+        fields.add(new JLabel("Фраза:"), c);
+        c.weightx = 1;
+        fields.add(queryField, c);
+        c.weightx = 0;
+        fields.add(search, c);
+
+        hitList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        hitList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int i,
+                                                          boolean selected, boolean focused) {
+                LibraryIndex.Hit hit = (LibraryIndex.Hit) value;
+                String text = index.getRoot().relativize(hit.getFile()) + " — символ " + hit.getStart();
+                return super.getListCellRendererComponent(list, text, i, selected, focused);
+            }
+        });
+        hitList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    openSelected();
+                }
+            }
+        });
+        hitList.registerKeyboardAction(e -> openSelected(), KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0),
+                JComponent.WHEN_FOCUSED);
+
+        JPanel panel = new JPanel(new BorderLayout(8, 8));
+        panel.setBorder(BorderFactory.createEmptyBorder(12, 12, 12, 12));
+        panel.add(fields, BorderLayout.NORTH);
+        panel.add(new JScrollPane(hitList), BorderLayout.CENTER);
+        panel.add(status, BorderLayout.SOUTH);
+        setContentPane(panel);
+        getRootPane().registerKeyboardAction(e -> setVisible(false), KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0),
+                JComponent.WHEN_IN_FOCUSED_WINDOW);
+        setDefaultCloseOperation(HIDE_ON_CLOSE);
+        setSize(560, 420);
+        setLocationRelativeTo(owner);
+
+        setFolder(FileSystemView.getFileSystemView().getDefaultDirectory().toPath());
+    }
+
+    /**
+     * Показывает окно; индекс обновляется, чтобы учесть файлы, изменённые с прошлого раза.
+     */
+    public void open() {
+        if (!isVisible()) {
+            setVisible(true);
+            update();
+        }
+        queryField.selectAll();
+        queryField.requestFocusInWindow();
+    }
+
+    private void chooseFolder() {
+        JFileChooser chooser = new JFileChooser(folderField.getText());
+        chooser.setDialogTitle("Папка библиотеки");
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            setFolder(chooser.getSelectedFile().toPath());
+            update();
+        }
+    }
+
+    private void setFolder(Path folder) {
+        if (currentUpdate != null) {
+            currentUpdate.cancel(true);
+            currentUpdate = null;
+        }
+        folderField.setText(folder.toString());
+        index = new LibraryIndex(folder);
+        hits.clear();
+    }
+
+    /**
+     * Обновляет индекс в фоне; ход показывается в строке состояния.
+     */
+    private void update() {
+        if (currentUpdate != null) {
+            return;
+        }
+        LibraryIndex target = index;
+        SwingWorker<LibraryIndex.Report, Integer> worker = new SwingWorker<LibraryIndex.Report, Integer>() {
+            @Override
+            protected LibraryIndex.Report doInBackground() throws Exception {
+                return target.update((done, total) -> publish(done, total));
+            }
+
+            @Override
+            protected void process(List<Integer> chunks) {
+                if (currentUpdate == this) {
+                    int n = chunks.size();
+                    status.setText("Индексация: " + chunks.get(n - 2) + " из " + chunks.get(n - 1));
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (currentUpdate != this) {
+                    return;
+                }
+                currentUpdate = null;
+                status.setToolTipText(null);
+                try {
+                    showReport(get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    status.setText("Ошибка индексации: " + e.getCause().getMessage());
+                }
+                if (searchPending) {
+                    searchPending = false;
+                    search();
+                }
+            }
+        };
+        currentUpdate = worker;
+        status.setText("Индексация...");
+        worker.execute();
+    }
+
+    /**
+     * Показывает итоги обновления в строке состояния; файлы, которые не удалось
+     * разобрать, перечисляются в её подсказке.
+     *
+     * @param report итоги обновления индекса
+     */
+    private void showReport(LibraryIndex.Report report) {
+        Map<Path, Throwable> failures = report.getFailures();
+        if (failures.isEmpty()) {
+            status.setText(report.toString());
+            return;
+        }
+        StringBuilder tip = new StringBuilder("<html>Не удалось разобрать:");
+        int shown = 0;
+        for (Map.Entry<Path, Throwable> failure : failures.entrySet()) {
+            if (shown++ == MAX_FAILURES) {
+                tip.append("<br>… и ещё ").append(failures.size() - MAX_FAILURES);
+                break;
+            }
+            Throwable cause = failure.getValue();
+            tip.append("<br>").append(HtmlFragment.escape(failure.getKey().toString())).append(" — ")
+                    .append(HtmlFragment.escape(cause.getMessage() != null ? cause.getMessage() : cause.toString()));
+        }
+        status.setText(report + " (наведите, чтобы увидеть файлы)");
+        status.setToolTipText(tip.append("</html>").toString());
+    }
+
+    /**
+     * Ищет фразу; если индекс ещё обновляется — по окончании обновления.
+     */
+    private void search() {
+        String phrase = queryField.getText();
+        if (LibraryIndex.terms(phrase).isEmpty()) {
+            UIManager.getLookAndFeel().provideErrorFeedback(queryField);
+            return;
+        }
+        if (currentUpdate != null) {
+            searchPending = true;
+            return;
+        }
+        long started = System.nanoTime();
+        List<LibraryIndex.Hit> found = index.search(phrase, MAX_HITS);
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        hits.clear();
+        for (LibraryIndex.Hit hit : found) {
+            hits.addElement(hit);
+        }
+        status.setText("Найдено: " + (found.size() < MAX_HITS ? found.size() : MAX_HITS + "+")
+                + " (" + millis + " мс)");
+        if (!found.isEmpty()) {
+            hitList.setSelectedIndex(0);
+        }
+    }
+
+    private void openSelected() {
+        LibraryIndex.Hit hit = hitList.getSelectedValue();
+        if (hit != null) {
+            if (hit.getFile().toFile().isFile()) {
+                opener.accept(hit);
+            } else {
+                status.setText("Файл удалён: " + hit.getFile().getFileName());
+            }
+        }
+    }
+}
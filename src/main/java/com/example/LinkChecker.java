@@ -0,0 +1,226 @@
+package com.example;
+
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.EventListenerList;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Проверка локальных ссылок ({@code file:} и относительных) по файловой системе.
+ *
+ * <p>Ссылка сводится к пути ({@link #resolve}); существование путей проверяется
+ * параллельно в фоновых потоках, результаты кешируются по пути — одинаковые ссылки
+ * проверяются один раз, а повторные запросы отвечают сразу. Кеш сбрасывается
+ * {@link #invalidate}. Внешние адреса (http, mailto и т. п.) не проверяются.</p>
+ *
+ * <p>{@link #getStatus} вызывается в потоке событий; о готовых результатах
+ * слушатели узнают в нём же.</p>
+ */
+public class LinkChecker {
+
+    /**
+     * Число потоков проверки: проверка упирается в диск и сеть (сетевые папки), а не в процессор.
+     */
+    private static final int THREADS = 4;
+
+    /**
+     * Состояние ссылки.
+     */
+    public enum Status {
+        /**
+         * Файл существует.
+         */
+        OK("найден"),
+        /**
+         * Файла нет.
+         */
+        MISSING("файл не найден"),
+        /**
+         * Проверка ещё идёт.
+         */
+        PENDING("проверяется"),
+        /**
+         * Относительная ссылка в несохранённом документе: её не от чего отсчитывать.
+         */
+        UNRESOLVED("документ не сохранён"),
+        /**
+         * Ссылка внутри документа или внешний адрес — не проверяется.
+         */
+        EXTERNAL("не проверяется"),
+        /**
+         * Адрес записан с ошибкой.
+         */
+        INVALID("некорректный адрес");
+
+        private final String description;
+
+        Status(String description) {
+            this.description = description;
+        }
+
+        /**
+         * Описание для пользователя.
+         *
+         * @return текст состояния
+         */
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private final EventListenerList listeners = new EventListenerList();
+
+    /**
+     * Результаты проверки по путям; пока путь проверяется, в нём {@link Status#PENDING}.
+     */
+    private final Map<Path, Status> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Запланировано ли оповещение слушателей: готовые результаты сообщаются пачкой.
+     */
+    private final AtomicBoolean notifyPending = new AtomicBoolean();
+
+    /**
+     * Потоки проверки; создаются при первой проверке.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Приводит ссылку к локальному пути.
+     *
+     * @param href   адрес ссылки
+     * @param folder папка документа для относительных ссылок или null, если документ не сохранён
+     * @return путь; null, если ссылка не локальная или её не от чего отсчитывать
+     * @throws URISyntaxException если адрес записан с ошибкой
+     */
+    public static Path resolve(String href, Path folder) throws URISyntaxException {
+        String trimmed = href.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return null;
+        }
+        URI uri;
+        try {
+            uri = new URI(trimmed.replace(" ", "%20").replace('\\', '/'));
+        } catch (URISyntaxException e) {
+            // Word пишет имена файлов как есть, без кодирования: "Отчёт [1].doc"
+            if (trimmed.contains(":")) {
+                throw e;
+            }
+            if (folder == null) {
+                return null;
+            }
+            try {
+                return folder.resolve(trimmed.replaceFirst("[#?].*", "")).normalize();
+            } catch (InvalidPathException ex) {
+                throw e;
+            }
+        }
+        String scheme = uri.getScheme();
+        try {
+            if (scheme == null) {
+                String path = uri.getPath();
+                if (folder == null || path == null || path.isEmpty()) {
+                    return null;
+                }
+                return folder.resolve(path).normalize();
+            } else if (scheme.equalsIgnoreCase("file")) {
+                return Paths.get(new URI("file", uri.getSchemeSpecificPart(), null)).normalize();
+            }
+        } catch (IllegalArgumentException e) {
+            throw new URISyntaxException(href, e.getMessage());
+        }
+        // Однобуквенная «схема» — это диск Windows: C:\docs\a.doc
+        if (scheme.length() == 1) {
+            try {
+                return Paths.get(trimmed).normalize();
+            } catch (InvalidPathException e) {
+                throw new URISyntaxException(href, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Возвращает состояние ссылки; если локальный путь ещё не проверялся, ставит
+     * его в очередь проверки.
+     *
+     * @param href   адрес ссылки
+     * @param folder папка документа или null
+     * @return состояние
+     */
+    public Status getStatus(String href, Path folder) {
+        Path path;
+        try {
+            path = resolve(href, folder);
+        } catch (URISyntaxException e) {
+            return Status.INVALID;
+        }
+        if (path == null) {
+            String trimmed = href.trim();
+            return folder == null && !trimmed.startsWith("#") && !trimmed.contains(":")
+                    ? Status.UNRESOLVED : Status.EXTERNAL;
+        }
+        Status status = cache.putIfAbsent(path, Status.PENDING);
+        if (status == null) {
+            submit(path);
+            return Status.PENDING;
+        }
+        return status;
+    }
+
+    /**
+     * Сбрасывает кеш: следующие запросы проверят файлы заново.
+     */
+    public void invalidate() {
+        cache.clear();
+    }
+
+    /**
+     * Добавляет слушателя готовых результатов.
+     *
+     * @param l слушатель
+     */
+    public void addChangeListener(ChangeListener l) {
+        listeners.add(ChangeListener.class, l);
+    }
+
+    /**
+     * Удаляет слушателя готовых результатов.
+     *
+     * @param l слушатель
+     */
+    public void removeChangeListener(ChangeListener l) {
+        listeners.remove(ChangeListener.class, l);
+    }
+
+    private void submit(Path path) {
+        if (executor == null) {
+            executor = BulkExecutors.newPlatformExecutor("link-check", THREADS);
+        }
+        executor.execute(() -> {
+            Status status = Files.exists(path) ? Status.OK : Status.MISSING;
+            // Кеш могли сбросить, пока шла проверка: тогда результат уже не нужен
+            if (cache.replace(path, Status.PENDING, status) && notifyPending.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(this::fireStateChanged);
+            }
+        });
+    }
+
+    private void fireStateChanged() {
+        notifyPending.set(false);
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener l : listeners.getListeners(ChangeListener.class)) {
+            l.stateChanged(event);
+        }
+    }
+}
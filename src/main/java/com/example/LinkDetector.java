@@ -0,0 +1,320 @@
+package com.example;
+
+import java.util.Arrays;
+
+/**
+ * Поиск адресов в тексте: URL ({@code http://}, {@code https://}, {@code ftp://},
+ * {@code file:}, {@code www.}), адресов почты и путей к файлам Windows
+ * ({@code C:\…}, {@code \\сервер\…}).
+ *
+ * <p>Текст проходится один раз. Слова (участки без пробелов) проверяются конечным
+ * автоматом: начала адресов собраны при загрузке класса в таблицу переходов, символы
+ * классифицируются по таблице, и на каждый символ приходится один переход — без
+ * регулярных выражений и возвратов.</p>
+ */
+final class LinkDetector {
+
+    /**
+     * Получатель найденных адресов.
+     */
+    interface Sink {
+
+        /**
+         * Найден адрес.
+         *
+         * @param start начало в тексте
+         * @param end   конец в тексте (не включая)
+         * @param href  адрес для ссылки
+         */
+        void found(int start, int end, String href);
+    }
+
+    /**
+     * Символ может стоять внутри URL.
+     */
+    private static final int URL = 1;
+
+    /**
+     * Символ может стоять в имени ящика почты.
+     */
+    private static final int LOCAL = 2;
+
+    /**
+     * Символ может стоять в имени домена.
+     */
+    private static final int DOMAIN = 4;
+
+    /**
+     * Знак, которым адрес не заканчивается (точка в конце предложения и т. п.).
+     */
+    private static final int TRAILING = 8;
+
+    /**
+     * Открывающий знак перед адресом: скобка, кавычка.
+     */
+    private static final int OPENER = 16;
+
+    /**
+     * Символ заканчивает слово.
+     */
+    private static final int SPACE = 32;
+
+    /**
+     * Классы символов ASCII; остальные символы — буквы и цифры, если это они.
+     */
+    private static final byte[] CLASSES = new byte[128];
+
+    /**
+     * Начало адреса сайта без схемы: к ссылке добавляется {@code http://}.
+     */
+    private static final String WWW = "www.";
+
+    /**
+     * Начала адресов.
+     */
+    private static final String[] PREFIXES = {"http://", "https://", "ftp://", "file:/", "mailto:", WWW};
+
+    /**
+     * Переходы автомата начал: состояние × символ ASCII в нижнем регистре → состояние, 0 — нет перехода.
+     */
+    private static final int[][] TRANSITIONS;
+
+    /**
+     * Для каждого состояния — номер распознанного начала в {@link #PREFIXES} или -1.
+     */
+    private static final int[] ACCEPTS;
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            int classes = 0;
+            if (c <= ' ' || c == 127 || c == '"' || c == '<' || c == '>' || c == '`') {
+                classes |= SPACE;
+            } else {
+                classes |= URL;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                classes |= LOCAL | DOMAIN;
+            }
+            if (c == '.' || c == '_' || c == '%' || c == '+' || c == '-') {
+                classes |= LOCAL;
+            }
+            if (c == '.' || c == '-') {
+                classes |= DOMAIN;
+            }
+            if (c == '.' || c == ',' || c == ';' || c == ':' || c == '!' || c == '?' || c == '\''
+                    || c == ')' || c == ']' || c == '}') {
+                classes |= TRAILING;
+            }
+            if (c == '(' || c == '[' || c == '{' || c == '\'') {
+                classes |= OPENER;
+            }
+            CLASSES[c] = (byte) classes;
+        }
+
+        int states = 1;
+        for (String prefix : PREFIXES) {
+            states += prefix.length();
+        }
+        int[][] transitions = new int[states][128];
+        int[] accepts = new int[states];
+        Arrays.fill(accepts, -1);
+        int next = 1;
+        for (int p = 0; p < PREFIXES.length; p++) {
+            int state = 0;
+            for (char c : PREFIXES[p].toCharArray()) {
+                if (transitions[state][c] == 0) {
+                    transitions[state][c] = next++;
+                }
+                state = transitions[state][c];
+            }
+            accepts[state] = p;
+        }
+        TRANSITIONS = transitions;
+        ACCEPTS = accepts;
+    }
+
+    private LinkDetector() {
+    }
+
+    /**
+     * Ищет адреса в участке текста.
+     *
+     * @param text текст
+     * @param from начало участка
+     * @param to   конец участка
+     * @param sink получатель найденного (смещения — в массиве text)
+     */
+    static void scan(char[] text, int from, int to, Sink sink) {
+        int start = -1;
+        int at = -1;
+        for (int i = from; i <= to; i++) {
+            char c = i < to ? text[i] : ' ';
+            if (isSpace(c)) {
+                if (start >= 0) {
+                    word(text, start, i, at, sink);
+                    start = -1;
+                    at = -1;
+                }
+            } else if (start < 0) {
+                start = i;
+            } else if (c == '@' && at < 0) {
+                at = i;
+            }
+        }
+    }
+
+    /**
+     * Проверяет одно слово.
+     *
+     * @param at первый {@code @} слова (не в начале) или -1
+     */
+    private static void word(char[] text, int start, int end, int at, Sink sink) {
+        while (start < end && is(text[start], OPENER)) {
+            start++;
+        }
+        if (end - start < 4) {
+            return;
+        }
+        int prefix = prefix(text, start, end);
+        if (prefix >= 0) {
+            int bodyStart = start + PREFIXES[prefix].length();
+            int last = trim(text, bodyStart, end);
+            if (last > bodyStart && hasLetterOrDigit(text, bodyStart, last)) {
+                String address = new String(text, start, last - start);
+                String href = PREFIXES[prefix].equals(WWW) ? "http://" + address : address;
+                sink.found(start, last, href);
+            }
+        } else if (isLetter(text[start]) && text[start + 1] == ':' && (text[start + 2] == '\\' || text[start + 2] == '/')
+                && hasLetterOrDigit(text, start + 3, end)) {
+            // Путь с буквой диска
+            int last = trim(text, start + 3, end);
+            String path = new String(text, start, last - start);
+            sink.found(start, last, "file:///" + path.replace('\\', '/'));
+        } else if (text[start] == '\\' && text[start + 1] == '\\' && hasLetterOrDigit(text, start + 2, end)) {
+            // Сетевой путь
+            int last = trim(text, start + 2, end);
+            String path = new String(text, start + 2, last - start - 2);
+            sink.found(start, last, "file://" + path.replace('\\', '/'));
+        } else if (at > start) {
+            email(text, start, end, at, sink);
+        }
+    }
+
+    /**
+     * Номер начала адреса, с которого начинается слово, или -1.
+     */
+    private static int prefix(char[] text, int start, int end) {
+        int state = 0;
+        for (int i = start; i < end; i++) {
+            char c = text[i];
+            if (c >= 128) {
+                return -1;
+            }
+            state = TRANSITIONS[state][Character.toLowerCase(c)];
+            if (state == 0) {
+                return -1;
+            }
+            if (ACCEPTS[state] >= 0) {
+                return ACCEPTS[state];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Ищет адрес почты вокруг первого {@code @} слова.
+     */
+    private static void email(char[] text, int start, int end, int at, Sink sink) {
+        int first = at;
+        while (first > start && is(text[first - 1], LOCAL)) {
+            first--;
+        }
+        int last = at + 1;
+        while (last < end && is(text[last], DOMAIN)) {
+            last++;
+        }
+        // Точка и дефис в конце — не часть домена
+        while (last > at + 1 && (text[last - 1] == '.' || text[last - 1] == '-')) {
+            last--;
+        }
+        int dot = last - 1;
+        while (dot > at && text[dot] != '.') {
+            dot--;
+        }
+        if (first == at || dot <= at + 1 || dot >= last - 2) {
+            return;
+        }
+        for (int i = dot + 1; i < last; i++) {
+            if (!isLetter(text[i])) {
+                return;
+            }
+        }
+        sink.found(first, last, "mailto:" + new String(text, first, last - first));
+    }
+
+    /**
+     * Отбрасывает знаки препинания в конце адреса; закрывающая скобка остаётся,
+     * если в адресе есть парная открывающая.
+     *
+     * @return новый конец
+     */
+    private static int trim(char[] text, int bodyStart, int end) {
+        int last = end;
+        while (last > bodyStart && is(text[last - 1], TRAILING)) {
+            char c = text[last - 1];
+            if ((c == ')' || c == ']' || c == '}') && balanced(text, bodyStart, last - 1, c)) {
+                break;
+            }
+            last--;
+        }
+        return last;
+    }
+
+    /**
+     * Есть ли перед закрывающей скобкой парная открывающая.
+     */
+    private static boolean balanced(char[] text, int start, int end, char close) {
+        char open = close == ')' ? '(' : close == ']' ? '[' : '{';
+        int depth = 0;
+        for (int i = start; i < end; i++) {
+            if (text[i] == open) {
+                depth++;
+            } else if (text[i] == close) {
+                depth--;
+            }
+        }
+        return depth > 0;
+    }
+
+    private static boolean hasLetterOrDigit(char[] text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (Character.isLetterOrDigit(text[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean is(char c, int classes) {
+        if (c < 128) {
+            return (CLASSES[c] & classes) != 0;
+        }
+        // Буквы и цифры других алфавитов допустимы в адресах и доменах
+        return (classes & (URL | LOCAL | DOMAIN)) != 0 && Character.isLetterOrDigit(c);
+    }
+
+    /**
+     * Проверяет, разделяет ли символ слова (адрес не может его содержать).
+     *
+     * @param c символ
+     * @return true для пробелов, кавычек и угловых скобок
+     */
+    static boolean isSpace(char c) {
+        return c < 128 ? (CLASSES[c] & SPACE) != 0 : Character.isWhitespace(c) || Character.isSpaceChar(c)
+                || c == '«' || c == '»';
+    }
+
+    private static boolean isLetter(char c) {
+        return c < 128 ? (c | 0x20) >= 'a' && (c | 0x20) <= 'z' : Character.isLetter(c);
+    }
+}
@@ -0,0 +1,313 @@
+package com.example;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.EventListenerList;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.html.HTML;
+import java.util.ArrayList;
+import java.util.EventListener;
+import java.util.List;
+
+/**
+ * Индекс гиперссылок {@code <a href>} документа в порядке следования.
+ *
+ * <p>Ссылка — цепочка соседних листьев абзаца с одним и тем же атрибутом
+ * {@link HTML.Tag#A}; хранятся её первый и последний листья, так что смещения всегда
+ * текущие. Как и {@link HeadingIndex}, индекс строится при подключении, а дальше при
+ * изменении дерева элементов заменяет ссылки окна правки текущими ({@link ElementChanges});
+ * набор текста внутри листьев индекс не трогает.</p>
+ *
+ * <p>Используется в потоке событий; слушатели вызываются в нём же.</p>
+ */
+public class LinkIndex implements DocumentListener {
+
+    /**
+     * Слушатель изменений индекса.
+     */
+    public interface Listener extends EventListener {
+
+        /**
+         * Ссылки добавлены, удалены или изменены, либо индекс перестроен.
+         */
+        void linksChanged();
+    }
+
+    /**
+     * Гиперссылка документа.
+     */
+    public static final class Link {
+
+        private final Element first;
+
+        private final Element last;
+
+        private final String href;
+
+        Link(Element first, Element last, String href) {
+            this.first = first;
+            this.last = last;
+            this.href = href;
+        }
+
+        /**
+         * Адрес ссылки, как он записан в документе.
+         *
+         * @return значение href
+         */
+        public String getHref() {
+            return href;
+        }
+
+        /**
+         * Начало текста ссылки.
+         *
+         * @return смещение в документе
+         */
+        public int getStart() {
+            return first.getStartOffset();
+        }
+
+        /**
+         * Конец текста ссылки.
+         *
+         * @return смещение в документе (не включая)
+         */
+        public int getEnd() {
+            return last.getEndOffset();
+        }
+
+        /**
+         * Текст ссылки.
+         *
+         * @return текст без переводов строк по краям
+         */
+        public String getText() {
+            Document doc = first.getDocument();
+            int start = getStart();
+            int end = Math.min(getEnd(), doc.getLength());
+            try {
+                return doc.getText(start, Math.max(0, end - start)).trim();
+            } catch (BadLocationException e) {
+                return "";
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Link)) {
+                return false;
+            }
+            Link other = (Link) o;
+            return first == other.first && last == other.last && href.equals(other.href);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(first) * 31 + href.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return href + " @" + getStart();
+        }
+    }
+
+    private final EventListenerList listeners = new EventListenerList();
+
+    /**
+     * Ссылки по возрастанию смещения.
+     */
+    private final List<Link> links = new ArrayList<>();
+
+    private Document document;
+
+    /**
+     * Подключает индекс к документу и строит его.
+     *
+     * @param doc документ; null — только отключить
+     */
+    public void setDocument(Document doc) {
+        if (document != null) {
+            document.removeDocumentListener(this);
+        }
+        document = doc;
+        links.clear();
+        if (doc != null) {
+            doc.addDocumentListener(this);
+            collect(ElementChanges.paragraphs(doc, 0, doc.getLength()), links);
+        }
+        fireLinksChanged();
+    }
+
+    /**
+     * Возвращает документ индекса.
+     *
+     * @return документ или null
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * Возвращает число ссылок.
+     *
+     * @return число ссылок
+     */
+    public int size() {
+        return links.size();
+    }
+
+    /**
+     * Возвращает ссылку.
+     *
+     * @param index номер ссылки
+     * @return ссылка
+     */
+    public Link get(int index) {
+        return links.get(index);
+    }
+
+    /**
+     * Находит ссылку, в тексте которой лежит смещение.
+     *
+     * @param offset смещение в документе
+     * @return номер ссылки или -1
+     */
+    public int indexAt(int offset) {
+        int i = lowerBound(offset + 1) - 1;
+        return i >= 0 && offset < links.get(i).getEnd() ? i : -1;
+    }
+
+    /**
+     * Добавляет слушателя изменений.
+     *
+     * @param l слушатель
+     */
+    public void addListener(Listener l) {
+        listeners.add(Listener.class, l);
+    }
+
+    /**
+     * Удаляет слушателя изменений.
+     *
+     * @param l слушатель
+     */
+    public void removeListener(Listener l) {
+        listeners.remove(Listener.class, l);
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        update(e);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        update(e);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // Ссылку можно поставить или снять сменой атрибутов текста
+        List<Element> paragraphs = ElementChanges.paragraphs(document, e.getOffset(), e.getOffset() + e.getLength());
+        if (replace(paragraphs, Integer.MAX_VALUE, 0)) {
+            fireLinksChanged();
+        }
+    }
+
+    private void update(DocumentEvent e) {
+        ElementChanges changes = ElementChanges.of(e, document);
+        if (changes.structural && replace(changes.paragraphs, changes.start, changes.end)) {
+            fireLinksChanged();
+        }
+    }
+
+    /**
+     * Заменяет ссылки, начинающиеся в окне, ссылками абзацев окна.
+     *
+     * @param paragraphs абзацы окна по порядку
+     * @return true, если индекс изменился
+     */
+    private boolean replace(List<Element> paragraphs, int start, int end) {
+        if (paragraphs.isEmpty()) {
+            return false;
+        }
+        for (Element paragraph : paragraphs) {
+            start = Math.min(start, paragraph.getStartOffset());
+            end = Math.max(end, paragraph.getEndOffset());
+        }
+        List<Link> current = new ArrayList<>();
+        collect(paragraphs, current);
+        List<Link> window = links.subList(lowerBound(start), lowerBound(end));
+        if (window.equals(current)) {
+            return false;
+        }
+        window.clear();
+        window.addAll(current);
+        return true;
+    }
+
+    /**
+     * Номер первой ссылки, начинающейся не раньше смещения.
+     */
+    private int lowerBound(int offset) {
+        int low = 0;
+        int high = links.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (links.get(mid).getStart() < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Собирает ссылки абзацев: соседние листья с одинаковым атрибутом ссылки — одна ссылка.
+     */
+    private static void collect(List<Element> paragraphs, List<Link> out) {
+        for (Element paragraph : paragraphs) {
+            Element first = null;
+            Element last = null;
+            Object anchor = null;
+            for (int i = 0, n = paragraph.isLeaf() ? 1 : paragraph.getElementCount(); i <= n; i++) {
+                Element leaf = i == n ? null : paragraph.isLeaf() ? paragraph : paragraph.getElement(i);
+                Object a = leaf == null ? null : leaf.getAttributes().getAttribute(HTML.Tag.A);
+                if (first != null && (a == null || !a.equals(anchor))) {
+                    out.add(new Link(first, last, href(anchor)));
+                    first = null;
+                }
+                if (a != null && href(a) != null) {
+                    if (first == null) {
+                        first = leaf;
+                        anchor = a;
+                    }
+                    last = leaf;
+                }
+            }
+        }
+    }
+
+    /**
+     * Адрес из атрибута ссылки или null, если это якорь без href.
+     */
+    private static String href(Object anchor) {
+        if (anchor instanceof AttributeSet) {
+            Object href = ((AttributeSet) anchor).getAttribute(HTML.Attribute.HREF);
+            return href != null ? href.toString() : null;
+        }
+        return null;
+    }
+
+    private void fireLinksChanged() {
+        for (Listener l : listeners.getListeners(Listener.class)) {
+            l.linksChanged();
+        }
+    }
+}
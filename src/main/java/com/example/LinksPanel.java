@@ -0,0 +1,438 @@
+package com.example;
+
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.LayeredHighlighter;
+import javax.swing.text.Position;
+import javax.swing.text.StyledDocument;
+import javax.swing.text.View;
+import javax.swing.text.html.HTML;
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Панель ссылок справа от редактора: все {@code <a href>} документа с состоянием
+ * локальных ссылок; битые ссылки подчёркиваются в тексте красной волной.
+ *
+ * <p>Ссылки берёт {@link LinkIndex}, файлы проверяет {@link LinkChecker} в фоне;
+ * список и подчёркивания обновляются не чаще раза за цикл событий. Скрытая панель
+ * не следит за документом.</p>
+ *
+ * <p>Независимо от панели над ссылкой в редакторе показывается подсказка с адресом
+ * и состоянием, а Ctrl+щелчок открывает ссылку: редактируемый {@link JEditorPane}
+ * событий гиперссылок не посылает.</p>
+ */
+public class LinksPanel extends JPanel {
+
+    /**
+     * Наибольшее число подчёркнутых битых ссылок.
+     */
+    private static final int MAX_MARKERS = 1000;
+
+    private static final Highlighter.HighlightPainter BROKEN = new WavyUnderlinePainter(new Color(220, 30, 30));
+
+    private final JTextComponent editor;
+
+    private final LinkChecker checker;
+
+    /**
+     * Папка текущего документа для относительных ссылок; null, если документ не сохранён.
+     */
+    private final Supplier<Path> folder;
+
+    private final LinkIndex index = new LinkIndex();
+
+    private final LinkListModel model = new LinkListModel();
+
+    private final JList<LinkIndex.Link> list = new JList<>(model);
+
+    private final JLabel summary = new JLabel(" ");
+
+    /**
+     * Текущие метки подчёркивания.
+     */
+    private final List<Object> markers = new ArrayList<>();
+
+    /**
+     * Обновляет список и подсказку по готовым результатам проверки.
+     */
+    private final ChangeListener checked = e -> {
+        scheduleRefresh();
+        updateToolTip();
+    };
+
+    /**
+     * Запланировано ли обновление списка и подчёркиваний.
+     */
+    private boolean refreshPending;
+
+    /**
+     * Адрес ссылки под указателем мыши или null.
+     */
+    private String hovered;
+
+    /**
+     * Создаёт панель для редактора. Панель изначально скрыта.
+     *
+     * @param editor  редактор
+     * @param checker проверка ссылок
+     * @param folder  папка текущего документа или null, если документ не сохранён
+     */
+    public LinksPanel(JTextComponent editor, LinkChecker checker, Supplier<Path> folder) {
+        super(new BorderLayout());
+        this.editor = editor;
+        this.checker = checker;
+        this.folder = folder;
+
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // Тысячи строк: высота задаётся сразу, а не измерением каждой
+        list.setFixedCellHeight(list.getFontMetrics(list.getFont()).getHeight() + 4);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> l, Object value, int i,
+                                                          boolean selected, boolean focused) {
+                LinkIndex.Link link = (LinkIndex.Link) value;
+                LinkChecker.Status status = checker.getStatus(link.getHref(), folder.get());
+                super.getListCellRendererComponent(l, link.getText() + " — " + link.getHref(), i, selected, focused);
+                setToolTipText(link.getHref() + " (" + status.getDescription() + ")");
+                if (isBroken(status) && !selected) {
+                    setForeground(Color.RED.darker());
+                }
+                return this;
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    jumpToSelected();
+                }
+            }
+        });
+        list.registerKeyboardAction(e -> jumpToSelected(), KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0),
+                JComponent.WHEN_FOCUSED);
+
+        JButton recheck = new JButton("Проверить заново");
+        recheck.addActionListener(e -> {
+            checker.invalidate();
+            scheduleRefresh();
+        });
+        JPanel header = new JPanel(new BorderLayout());
+        header.setBorder(BorderFactory.createEmptyBorder(4, 6, 4, 6));
+        header.add(new JLabel("Ссылки"), BorderLayout.NORTH);
+        header.add(summary, BorderLayout.CENTER);
+        header.add(recheck, BorderLayout.SOUTH);
+        add(header, BorderLayout.NORTH);
+        add(new JScrollPane(list), BorderLayout.CENTER);
+        setPreferredSize(new Dimension(260, 0));
+        setVisible(false);
+
+        index.addListener(this::scheduleRefresh);
+        checker.addChangeListener(checked);
+
+        MouseAdapter links = new MouseAdapter() {
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                hover(hrefAt(e.getPoint()));
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                hover(null);
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.isControlDown() && SwingUtilities.isLeftMouseButton(e)) {
+                    String href = hrefAt(e.getPoint());
+                    if (href != null) {
+                        open(href);
+                    }
+                }
+            }
+        };
+        editor.addMouseListener(links);
+        editor.addMouseMotionListener(links);
+    }
+
+    /**
+     * Подключает панель к документу редактора (после его замены).
+     *
+     * @param doc документ
+     */
+    public void setDocument(Document doc) {
+        clearMarkers();
+        index.setDocument(isVisible() ? doc : null);
+    }
+
+    /**
+     * Сообщает, что документ сохранён в другую папку: относительные ссылки
+     * теперь указывают на другие файлы.
+     */
+    public void folderChanged() {
+        if (isVisible()) {
+            scheduleRefresh();
+        }
+    }
+
+    /**
+     * Показывает или скрывает панель. Скрытая панель не следит за документом.
+     *
+     * @param shown показать ли панель
+     */
+    public void setShown(boolean shown) {
+        if (shown == isVisible()) {
+            return;
+        }
+        setVisible(shown);
+        if (shown) {
+            // Файлы могли появиться или пропасть, пока панель была скрыта
+            checker.invalidate();
+            index.setDocument(editor.getDocument());
+        } else {
+            index.setDocument(null);
+            clearMarkers();
+        }
+        revalidate();
+    }
+
+    private void scheduleRefresh() {
+        if (!refreshPending) {
+            refreshPending = true;
+            SwingUtilities.invokeLater(this::refresh);
+        }
+    }
+
+    /**
+     * Приводит список, сводку и подчёркивания к индексу и результатам проверки.
+     */
+    private void refresh() {
+        refreshPending = false;
+        clearMarkers();
+        if (index.getDocument() == null) {
+            model.changed(0);
+            summary.setText(" ");
+            return;
+        }
+        Path base = folder.get();
+        int broken = 0;
+        int pending = 0;
+        Highlighter highlighter = editor.getHighlighter();
+        for (int i = 0, n = index.size(); i < n; i++) {
+            LinkIndex.Link link = index.get(i);
+            LinkChecker.Status status = checker.getStatus(link.getHref(), base);
+            if (status == LinkChecker.Status.PENDING) {
+                pending++;
+            } else if (isBroken(status)) {
+                broken++;
+                if (markers.size() < MAX_MARKERS) {
+                    try {
+                        markers.add(highlighter.addHighlight(link.getStart(), link.getEnd(), BROKEN));
+                    } catch (BadLocationException e) {
+                        // Ссылка уже удалена: индекс обновится по событию документа
+                    }
+                }
+            }
+        }
+        model.changed(index.size());
+        summary.setText("Всего: " + index.size() + ", битых: " + broken + (pending > 0 ? ", проверяется: " + pending : ""));
+    }
+
+    private void clearMarkers() {
+        Highlighter highlighter = editor.getHighlighter();
+        for (Object marker : markers) {
+            highlighter.removeHighlight(marker);
+        }
+        markers.clear();
+    }
+
+    private static boolean isBroken(LinkChecker.Status status) {
+        return status == LinkChecker.Status.MISSING || status == LinkChecker.Status.INVALID;
+    }
+
+    private void jumpToSelected() {
+        LinkIndex.Link link = list.getSelectedValue();
+        if (link == null) {
+            return;
+        }
+        editor.select(link.getStart(), Math.min(link.getEnd(), editor.getDocument().getLength()));
+        editor.requestFocusInWindow();
+    }
+
+    /**
+     * Адрес ссылки под точкой редактора или null.
+     */
+    private String hrefAt(Point point) {
+        if (!(editor.getDocument() instanceof StyledDocument)) {
+            return null;
+        }
+        Position.Bias[] bias = new Position.Bias[1];
+        int offset = editor.getUI().viewToModel(editor, point, bias);
+        if (offset < 0) {
+            return null;
+        }
+        if (bias[0] == Position.Bias.Backward && offset > 0) {
+            offset--;
+        }
+        // Справа от конца строки ближайший символ — последний в строке, но указатель не над ним
+        try {
+            Rectangle from = editor.modelToView(offset);
+            Rectangle to = editor.modelToView(offset + 1);
+            if (from == null || to == null || (to.y == from.y && (point.x < from.x || point.x > to.x))) {
+                return null;
+            }
+        } catch (BadLocationException e) {
+            return null;
+        }
+        Element leaf = ((StyledDocument) editor.getDocument()).getCharacterElement(offset);
+        Object anchor = leaf.getAttributes().getAttribute(HTML.Tag.A);
+        if (anchor instanceof AttributeSet) {
+            Object href = ((AttributeSet) anchor).getAttribute(HTML.Attribute.HREF);
+            return href != null ? href.toString() : null;
+        }
+        return null;
+    }
+
+    private void hover(String href) {
+        if (href == null ? hovered != null : !href.equals(hovered)) {
+            hovered = href;
+            updateToolTip();
+        }
+    }
+
+    /**
+     * Подсказка над ссылкой: адрес и состояние; обновляется, когда готова проверка.
+     */
+    private void updateToolTip() {
+        if (hovered == null) {
+            editor.setToolTipText(null);
+            return;
+        }
+        LinkChecker.Status status = checker.getStatus(hovered, folder.get());
+        String state = status == LinkChecker.Status.EXTERNAL ? "" : " (" + status.getDescription() + ")";
+        editor.setToolTipText(hovered + state + " — Ctrl+щелчок, чтобы открыть");
+    }
+
+    /**
+     * Открывает ссылку: локальный файл — программой по умолчанию, адрес — в браузере.
+     */
+    private void open(String href) {
+        try {
+            Path path = LinkChecker.resolve(href, folder.get());
+            Desktop desktop = Desktop.isDesktopSupported() ? Desktop.getDesktop() : null;
+            if (path != null) {
+                if (!Files.exists(path)) {
+                    JOptionPane.showMessageDialog(editor, "Файл не найден: " + path);
+                } else if (desktop != null && desktop.isSupported(Desktop.Action.OPEN)) {
+                    desktop.open(path.toFile());
+                } else {
+                    JOptionPane.showMessageDialog(editor, "Не удалось открыть файл: " + path);
+                }
+            } else if (checker.getStatus(href, folder.get()) == LinkChecker.Status.UNRESOLVED) {
+                JOptionPane.showMessageDialog(editor,
+                        "Сохраните документ: относительная ссылка отсчитывается от его папки.");
+            } else if (!href.trim().startsWith("#")) {
+                if (desktop != null && desktop.isSupported(Desktop.Action.BROWSE)) {
+                    desktop.browse(new URI(href.trim()));
+                } else {
+                    JOptionPane.showMessageDialog(editor,
+                            "Не удалось открыть ссылку. Попробуйте скопировать URL в браузер.");
+                }
+            }
+        } catch (URISyntaxException ex) {
+            JOptionPane.showMessageDialog(editor, "Некорректный URL: " + ex.getMessage());
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(editor, "Ошибка при открытии ссылки: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Модель списка поверх индекса: строки берутся из индекса при отрисовке,
+     * поэтому обновление списка не копирует ссылки.
+     */
+    private class LinkListModel extends AbstractListModel<LinkIndex.Link> {
+
+        /**
+         * Размер, о котором знает список.
+         */
+        private int size;
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public LinkIndex.Link getElementAt(int i) {
+            return index.get(i);
+        }
+
+        void changed(int newSize) {
+            int old = size;
+            size = newSize;
+            if (old > newSize) {
+                fireIntervalRemoved(this, newSize, old - 1);
+            } else if (newSize > old) {
+                fireIntervalAdded(this, old, newSize - 1);
+            }
+            if (newSize > 0) {
+                fireContentsChanged(this, 0, newSize - 1);
+            }
+        }
+    }
+
+    /**
+     * Подчёркивание волнистой линией, как у проверки орфографии.
+     */
+    private static final class WavyUnderlinePainter extends LayeredHighlighter.LayerPainter {
+
+        private final Color color;
+
+        WavyUnderlinePainter(Color color) {
+            this.color = color;
+        }
+
+        @Override
+        public void paint(Graphics g, int p0, int p1, Shape bounds, JTextComponent c) {
+            // Рисуется по слоям: paintLayer
+        }
+
+        @Override
+        public Shape paintLayer(Graphics g, int p0, int p1, Shape bounds, JTextComponent c, View view) {
+            Rectangle r;
+            if (p0 == view.getStartOffset() && p1 == view.getEndOffset()) {
+                r = bounds instanceof Rectangle ? (Rectangle) bounds : bounds.getBounds();
+            } else {
+                try {
+                    r = view.modelToView(p0, Position.Bias.Forward, p1, Position.Bias.Backward, bounds).getBounds();
+                } catch (BadLocationException e) {
+                    return null;
+                }
+            }
+            g.setColor(color);
+            int y = r.y + r.height - 2;
+            int right = r.x + r.width;
+            for (int x = r.x; x < right; x += 4) {
+                g.drawLine(x, y + 1, Math.min(x + 2, right), y - 1);
+                g.drawLine(x + 2, y - 1, Math.min(x + 4, right), y + 1);
+            }
+            return r;
+        }
+    }
+}
@@ -26,16 +26,25 @@
 package com.example;
 
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
 import javax.swing.text.html.HTMLDocument;
 import javax.swing.text.html.HTMLEditorKit;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.io.*;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class Main extends JFrame {
 
@@ -54,21 +63,111 @@ public class Main extends JFrame {
      */
     private HTMLDocument document;
 
+    /**
+     * Панель поиска и замены под редактором.
+     */
+    private FindReplaceBar findBar;
+
+    /**
+     * Строка состояния со счётчиками слов под редактором.
+     */
+    private StatisticsBar statisticsBar;
+
+    /**
+     * Панель структуры документа слева от редактора.
+     */
+    private OutlinePanel outline;
+
+    /**
+     * Панель ссылок справа от редактора; она же показывает подсказки над ссылками
+     * и открывает их по Ctrl+щелчку.
+     */
+    private LinksPanel links;
+
+    /**
+     * Проверка локальных ссылок документа; результаты кешируются между документами.
+     */
+    private final LinkChecker linkChecker = new LinkChecker();
+
+    /**
+     * Окно поиска по библиотеке; создаётся при первом открытии.
+     */
+    private LibrarySearchDialog librarySearch;
+
     /**
      * Путь к текущему открытому файлу. null, если файл не сохранялся.
      */
     private String currentFilePath;
 
+    /**
+     * Файл DOCX, из которого импортирован текущий несохранённый документ, или null.
+     */
+    private File importedFrom;
+
+    /**
+     * Текущая фоновая загрузка файла. null, если загрузка не идёт.
+     */
+    private DocumentLoadWorker currentLoad;
+
+    /**
+     * Атомарное сохранение файлов. Число хранимых резервных копий (.bak1 … .bakN)
+     * задаётся системным свойством swp.backups, по умолчанию копии не создаются.
+     */
+    private final AtomicFileSaver fileSaver = new AtomicFileSaver(Integer.getInteger("swp.backups", 0));
+
+    /**
+     * История отмены правок текущего документа. Бюджет истории в байтах задаётся
+     * системным свойством swp.undo.budget, по умолчанию 16 МБ.
+     */
+    private final UndoHistory undoHistory = new UndoHistory(Long.getLong("swp.undo.budget", UndoHistory.DEFAULT_BUDGET));
+
+    /**
+     * Автоссылки на набранные и вставленные адреса; текст, возвращённый отменой, не трогают.
+     */
+    private final AutoLinker autoLinker = new AutoLinker(undoHistory::isApplying);
+
+    /**
+     * Раскладка текущего документа для экспорта в PDF: повторный экспорт после правки
+     * раскладывает заново только изменённые абзацы.
+     */
+    private final PdfLayoutCache pdfLayout = new PdfLayoutCache();
+
+    /**
+     * Журнал правок текущего документа для автосохранения и восстановления.
+     * null, если журнал недоступен.
+     */
+    private volatile EditJournal journal;
+
+    /**
+     * Номер последнего запуска журнала ({@link #startJournal}): прочитанный в фоне журнал
+     * прошлого сеанса применяется, только если за это время журнал не начали заново.
+     */
+    private int journalStarts;
+
+    /**
+     * Идёт ли сейчас сохранение (ручное или автоматическое).
+     */
+    private boolean saving;
+
+    /**
+     * Сохранение, запрошенное во время другого сохранения; выполняется после него.
+     */
+    private Runnable queuedSave;
+
     /**
      * Точка входа в приложение.
      *
-     * @param args аргументы командной строки (не используются)
+     * @param args аргументы командной строки; {@code --batch …} запускает пакетное
+     *             преобразование без окна (см. {@link BatchConverter})
      */
     public static void main(String[] args) {
+        if (args.length > 0 && "--batch".equals(args[0])) {
+            System.exit(BatchConverter.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
         SwingUtilities.invokeLater(() -> {
             try {
                 // Устанавливаем системный внешний вид (Windows, если доступен)
-                UIManager.setLookAndFeel(UIManager.getSystemLookAndFeel());
+                UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
             } catch (Exception e) {
                 e.printStackTrace(); // Игнорируем, если не удалось
             }
@@ -89,6 +188,15 @@ public class Main extends JFrame {
         setSize(900, 700);
         setLocationRelativeTo(null); // Центрируем окно
         setIconImage(createIcon());
+
+        // При выходе дописываем журнал на диск, чтобы несохранённые правки можно было восстановить
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            EditJournal j = journal;
+            if (j != null) {
+                j.close();
+            }
+        }));
+        recoverUntitled();
     }
 
     /**
@@ -113,27 +221,6 @@ public class Main extends JFrame {
         editorPane = new JEditorPane();
         editorPane.setContentType("text/html");
         editorPane.setEditable(true);
-        editorPane.setText("<html><body style='font-family: Arial, sans-serif; font-size: 14px;'>"
-                + "<p>Начните вводить текст...</p></body></html>");
-
-        // Обработка кликов по гиперссылкам
-        editorPane.addHyperlinkListener(e -> {
-            if (e.getEventType() == javax.swing.event.HyperlinkEvent.EventType.ACTIVATED) {
-                try {
-                    URI uri = e.getURL().toURI();
-                    if (Desktop.isDesktopSupported() && Desktop.getDesktop().isSupported(Desktop.Action.BROWSE)) {
-                        Desktop.getDesktop().browse(uri);
-                    } else {
-                        JOptionPane.showMessageDialog(this,
-                                "Не удалось открыть ссылку. Попробуйте скопировать URL в браузер.");
-                    }
-                } catch (URISyntaxException ex) {
-                    JOptionPane.showMessageDialog(this, "Некорректный URL: " + ex.getMessage());
-                } catch (IOException ex) {
-                    JOptionPane.showMessageDialog(this, "Ошибка при открытии ссылки: " + ex.getMessage());
-                }
-            }
-        });
 
         // Добавляем возможность вставки через Ctrl+V
         editorPane.addKeyListener(new KeyListener() {
@@ -147,23 +234,71 @@ public class Main extends JFrame {
             public void keyReleased(KeyEvent e) {}
         });
 
-        // Добавляем редактор в прокручиваемую панель
+        // Добавляем редактор в прокручиваемую панель, под ним — панель поиска и строку состояния
         add(new JScrollPane(editorPane), BorderLayout.CENTER);
+        findBar = new FindReplaceBar(editorPane);
+        statisticsBar = new StatisticsBar();
+        JPanel south = new JPanel(new BorderLayout());
+        south.add(findBar, BorderLayout.NORTH);
+        south.add(statisticsBar, BorderLayout.SOUTH);
+        add(south, BorderLayout.SOUTH);
+        outline = new OutlinePanel(editorPane);
+        add(outline, BorderLayout.WEST);
+        links = new LinksPanel(editorPane, linkChecker, this::documentFolder);
+        add(links, BorderLayout.EAST);
+    }
+
+    /**
+     * Папка текущего документа, от которой отсчитываются относительные ссылки.
+     *
+     * @return папка или null, если документ не сохранён
+     */
+    private Path documentFolder() {
+        return currentFilePath != null ? Paths.get(currentFilePath).toAbsolutePath().getParent() : null;
     }
 
     /**
      * Настраивает HTML-редактор и получает доступ к документу.
+     * Документ берётся после установки набора: setEditorKit создаёт новый документ
+     * (с содержимым на таблице фрагментов, см. {@link WordProcessorEditorKit}).
      */
     private void setupEditor() {
-        editorKit = new HTMLEditorKit();
-        document = (HTMLDocument) editorPane.getDocument();
+        editorKit = new WordProcessorEditorKit();
         editorPane.setEditorKit(editorKit);
+        editorPane.setText("<html><body style='font-family: Arial, sans-serif; font-size: 14px;'>"
+                + "<p>Начните вводить текст...</p></body></html>");
+        document = (HTMLDocument) editorPane.getDocument();
+        undoHistory.attach(document);
+        autoLinker.setDocument(document);
+        pdfLayout.setDocument(document);
+        statisticsBar.setDocument(document, null);
+    }
+
+    /**
+     * Подставляет документ в редактор одним действием и делает его текущим.
+     *
+     * @param doc        полностью загруженный документ
+     * @param statistics счётчики документа, посчитанные при загрузке
+     */
+    private void installDocument(HTMLDocument doc, DocumentStatistics.Tally statistics) {
+        editorPane.setDocument(doc);
+        document = doc;
+        undoHistory.attach(doc);
+        autoLinker.setDocument(doc);
+        pdfLayout.setDocument(doc);
+        findBar.setDocument(doc);
+        outline.setDocument(doc);
+        links.setDocument(doc);
+        statisticsBar.setDocument(doc, statistics);
+        editorPane.setCaretPosition(0);
     }
 
     /**
-     * Создаёт меню "Файл" и "Формат" с пунктами:
-     * - Новый, Открыть, Сохранить, Сохранить как, Выход
-     * - Вставить заголовок, Вставить ссылку
+     * Создаёт меню "Файл", "Правка", "Вид" и "Формат" с пунктами:
+     * - Новый, Открыть, Сохранить, Сохранить как, Экспорт в DOCX, Экспорт в RTF, Экспорт в PDF, Поиск по библиотеке, Выход
+     * - Отменить, Повторить, Найти и заменить
+     * - Структура документа, Ссылки
+     * - Вставить заголовок, Вставить ссылку, Автоссылки
      */
     private void setupMenu() {
         JMenuBar menuBar = new JMenuBar();
@@ -187,6 +322,21 @@ public class Main extends JFrame {
         JMenuItem saveAsFile = new JMenuItem("Сохранить как...");
         saveAsFile.addActionListener(e -> saveFile(true));
 
+        JMenuItem exportDocx = new JMenuItem("Экспорт в DOCX...");
+        exportDocx.addActionListener(e -> export("DOCX", "Документ Word (.docx)", "docx", DocxWriter::save));
+
+        JMenuItem exportRtf = new JMenuItem("Экспорт в RTF...");
+        exportRtf.addActionListener(e -> export("RTF", "Документ RTF (.rtf)", "rtf", RtfWriter::save));
+
+        JMenuItem exportPdf = new JMenuItem("Экспорт в PDF...");
+        exportPdf.addActionListener(e -> export("PDF", "Документ PDF (.pdf)", "pdf",
+                (doc, target, saver) -> PdfWriter.save(doc, target, saver, pdfLayout)));
+
+        JMenuItem searchLibrary = new JMenuItem("Поиск по библиотеке...");
+        searchLibrary.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F,
+                InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK));
+        searchLibrary.addActionListener(e -> searchLibrary());
+
         JMenuItem exit = new JMenuItem("Выход");
         exit.setMnemonic(KeyEvent.VK_X);
         exit.addActionListener(e -> System.exit(0));
@@ -196,23 +346,80 @@ public class Main extends JFrame {
         fileMenu.addSeparator();
         fileMenu.add(saveFile);
         fileMenu.add(saveAsFile);
+        fileMenu.add(exportDocx);
+        fileMenu.add(exportRtf);
+        fileMenu.add(exportPdf);
+        fileMenu.addSeparator();
+        fileMenu.add(searchLibrary);
         fileMenu.addSeparator();
         fileMenu.add(exit);
 
+        // Меню "Правка"
+        JMenu editMenu = new JMenu("Правка");
+        editMenu.setMnemonic(KeyEvent.VK_E);
+
+        JMenuItem undo = new JMenuItem("Отменить");
+        undo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+        undo.addActionListener(e -> undo());
+
+        JMenuItem redo = new JMenuItem("Повторить");
+        redo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+        redo.addActionListener(e -> redo());
+
+        undo.setEnabled(false);
+        redo.setEnabled(false);
+        undoHistory.addChangeListener(e -> {
+            undo.setEnabled(undoHistory.canUndo());
+            redo.setEnabled(undoHistory.canRedo());
+        });
+
+        JMenuItem find = new JMenuItem("Найти и заменить...");
+        find.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, InputEvent.CTRL_DOWN_MASK));
+        find.addActionListener(e -> findBar.open());
+
+        editMenu.add(undo);
+        editMenu.add(redo);
+        editMenu.addSeparator();
+        editMenu.add(find);
+
+        // Меню "Вид"
+        JMenu viewMenu = new JMenu("Вид");
+        viewMenu.setMnemonic(KeyEvent.VK_V);
+
+        JCheckBoxMenuItem showOutline = new JCheckBoxMenuItem("Структура документа");
+        showOutline.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_O,
+                InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK));
+        showOutline.addActionListener(e -> outline.setShown(showOutline.isSelected()));
+
+        JCheckBoxMenuItem showLinks = new JCheckBoxMenuItem("Ссылки");
+        showLinks.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_L,
+                InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK));
+        showLinks.addActionListener(e -> links.setShown(showLinks.isSelected()));
+
+        viewMenu.add(showOutline);
+        viewMenu.add(showLinks);
+
         // Меню "Формат"
         JMenu formatMenu = new JMenu("Формат");
         formatMenu.setMnemonic(KeyEvent.VK_R);
 
         JMenuItem insertHeader = new JMenuItem("Вставить заголовок");
-        insertHeader.addActionListener(e -> insertHTML("<h1>Заголовок</h1>"));
+        insertHeader.addActionListener(e -> insertFragment(HtmlFragment.heading(1, "Заголовок")));
 
         JMenuItem insertLink = new JMenuItem("Вставить ссылку...");
         insertLink.addActionListener(e -> insertLink());
 
+        JCheckBoxMenuItem autoLinks = new JCheckBoxMenuItem("Автоссылки", autoLinker.isEnabled());
+        autoLinks.addActionListener(e -> autoLinker.setEnabled(autoLinks.isSelected()));
+
         formatMenu.add(insertHeader);
         formatMenu.add(insertLink);
+        formatMenu.addSeparator();
+        formatMenu.add(autoLinks);
 
         menuBar.add(fileMenu);
+        menuBar.add(editMenu);
+        menuBar.add(viewMenu);
         menuBar.add(formatMenu);
 
         setJMenuBar(menuBar);
@@ -222,39 +429,328 @@ public class Main extends JFrame {
      * Создаёт новый пустой документ.
      */
     private void newFile() {
+        closeJournal();
         editorPane.setText("<html><body style='font-family: Arial, sans-serif; font-size: 14px;'>" +
                 "<p></p></body></html>");
+        undoHistory.discardAllEdits();
         currentFilePath = null;
+        importedFrom = null;
         setTitle("Новый документ — Простой текстовый редактор");
+        startJournal(EditJournal.untitledTarget(), true, false);
+    }
+
+    /**
+     * Отменяет последнюю правку.
+     */
+    private void undo() {
+        try {
+            undoHistory.undo();
+        } catch (CannotUndoException e) {
+            UIManager.getLookAndFeel().provideErrorFeedback(editorPane);
+        }
+    }
+
+    /**
+     * Повторяет отменённую правку.
+     */
+    private void redo() {
+        try {
+            undoHistory.redo();
+        } catch (CannotRedoException e) {
+            UIManager.getLookAndFeel().provideErrorFeedback(editorPane);
+        }
+    }
+
+    /**
+     * При запуске предлагает восстановить безымянный документ, правки которого
+     * не были сохранены в прошлый раз (например, из-за сбоя), и начинает журнал.
+     * Журнал читается в фоне.
+     */
+    private void recoverUntitled() {
+        Path target = EditJournal.untitledTarget();
+        Future<EditJournal.Recovery> reading = EditJournal.readLater(target);
+        new SwingWorker<EditJournal.Recovery, Void>() {
+            @Override
+            protected EditJournal.Recovery doInBackground() throws Exception {
+                return reading.get();
+            }
+
+            @Override
+            protected void done() {
+                boolean found = false;
+                try {
+                    found = Files.exists(target) && !get().isEmpty();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                }
+                if (found) {
+                    int answer = JOptionPane.showConfirmDialog(Main.this,
+                            "Найден несохранённый документ с прошлого сеанса. Восстановить его?",
+                            "Восстановление", JOptionPane.YES_NO_OPTION);
+                    if (answer == JOptionPane.YES_OPTION) {
+                        loadDocument(target.toFile(), true, null);
+                        return;
+                    }
+                    EditJournal.discardLater(target);
+                }
+                startJournal(target, true, false);
+            }
+        }.execute();
+    }
+
+    /**
+     * Начинает журнал правок текущего документа. Журнал прошлого сеанса читается в фоне,
+     * а документ тем временем не редактируется; если в журнале остались правки, они
+     * применяются к документу (с вопросом пользователю или без; если файл изменился
+     * после записи журнала — всегда с вопросом).
+     * Для безымянного документа журнал открывается без снимка, а текущее состояние документа
+     * сохраняется служебным снимком в фоне ({@link #saveInBackground}); правки, сделанные
+     * во время записи, остаются в журнале после метки снимка.
+     *
+     * @param target   файл, поверх которого ведётся журнал
+     * @param untitled документ ещё не сохранён пользователем
+     * @param ask      спрашивать ли перед восстановлением правок
+     */
+    private void startJournal(Path target, boolean untitled, boolean ask) {
+        closeJournal();
+        int start = ++journalStarts;
+        editorPane.setEditable(false);
+        Future<EditJournal.Recovery> reading = EditJournal.readLater(target);
+        new SwingWorker<EditJournal.Recovery, Void>() {
+            @Override
+            protected EditJournal.Recovery doInBackground() throws Exception {
+                return reading.get();
+            }
+
+            @Override
+            protected void done() {
+                if (start != journalStarts) {
+                    return; // журнал уже начат заново для другого документа
+                }
+                editorPane.setEditable(true);
+                EditJournal.Recovery recovery = null;
+                try {
+                    recovery = get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace(); // Журнал не прочитан: начинаем новый
+                }
+                openJournal(target, untitled, ask, recovery);
+            }
+        }.execute();
+    }
+
+    /**
+     * Применяет прочитанные правки прошлого сеанса и подключает новый журнал к документу.
+     *
+     * @param target   файл, поверх которого ведётся журнал
+     * @param untitled документ ещё не сохранён пользователем
+     * @param ask      спрашивать ли перед восстановлением правок
+     * @param recovery журнал прошлого сеанса или null
+     */
+    private void openJournal(Path target, boolean untitled, boolean ask, EditJournal.Recovery recovery) {
+        boolean recover = false;
+        if (recovery != null && !recovery.isEmpty()) {
+            String question = recovery.isFileChanged()
+                    ? "Найдены несохранённые изменения этого файла, но сам файл изменился после того,\n"
+                    + "как они были записаны (например, сохранение было прервано). Восстановить их?"
+                    : "Найдены несохранённые изменения этого файла. Восстановить их?";
+            recover = !ask && !recovery.isFileChanged() || JOptionPane.showConfirmDialog(this,
+                    question, "Восстановление", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION;
+        }
+        if (recover) {
+            try {
+                EditJournal.replay(document, recovery);
+            } catch (IOException e) {
+                recover = false;
+                JOptionPane.showMessageDialog(this,
+                        "Несохранённые изменения не удалось восстановить: журнал не соответствует файлу.\n"
+                                + e.getMessage(),
+                        "Восстановление", JOptionPane.WARNING_MESSAGE);
+            }
+            // Восстановленные правки не отменяются
+            undoHistory.discardAllEdits();
+        }
+        boolean snapshot = !recover && untitled;
+        EditJournal j = EditJournal.open(target, recover || untitled ? null : document, recover, untitled,
+                this::autosave, this::journalFailed);
+        document.addDocumentListener(j);
+        journal = j;
+        if (snapshot) {
+            saveInBackground(document, target.toString(), true);
+        }
+    }
+
+    /**
+     * Отключает журнал текущего документа и удаляет его: правки документа,
+     * который закрывается без сохранения, не восстанавливаются.
+     */
+    private void closeJournal() {
+        EditJournal j = journal;
+        if (j != null) {
+            journal = null;
+            document.removeDocumentListener(j);
+            j.close(true);
+        }
+    }
+
+    /**
+     * Вызывается журналом, который не удалось записать на диск: журнал отключается,
+     * пользователь предупреждается, что правки не восстановятся после сбоя.
+     *
+     * @param e ошибка записи журнала
+     */
+    private void journalFailed(IOException e) {
+        EditJournal j = journal;
+        if (j == null || !j.isFailed()) {
+            return; // журнал уже закрыт или заменён
+        }
+        journal = null;
+        document.removeDocumentListener(j);
+        JOptionPane.showMessageDialog(this,
+                "Не удалось записать журнал правок: " + (e.getMessage() != null ? e.getMessage() : e)
+                        + "\nИзменения не будут восстановлены после сбоя. Сохраните документ.",
+                "Журнал правок", JOptionPane.WARNING_MESSAGE);
+    }
+
+    /**
+     * Автосохранение: вызывается журналом, когда он вырос больше порога, или после
+     * сохранения, во время которого был запрошен служебный снимок.
+     * Документ полностью сохраняется в файл журнала, после чего журнал сжимается.
+     */
+    private void autosave() {
+        EditJournal j = journal;
+        if (j != null && !saving) {
+            saveInBackground(document, j.getTarget().toString(), true);
+        }
     }
 
     /**
      * Открывает файл через диалоговое окно.
-     * Поддерживаются .doc, .html, .htm.
+     * Поддерживаются .doc, .html, .htm, .docx и .rtf (импорт в новый несохранённый документ).
      */
     private void openFile() {
         JFileChooser chooser = new JFileChooser();
         chooser.setDialogTitle("Открыть файл");
-        chooser.setFileFilter(new FileNameExtensionFilter("Документы (.doc, .html)", "doc", "html", "htm"));
+        chooser.setFileFilter(new FileNameExtensionFilter("Документы (.doc, .docx, .rtf, .html)", "doc", "docx", "rtf", "html", "htm"));
 
         int result = chooser.showOpenDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
-            File file = chooser.getSelectedFile();
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                StringBuilder content = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    content.append(line).append("\n");
+            loadDocument(chooser.getSelectedFile(), false, null);
+        }
+    }
+
+    /**
+     * Открывает окно поиска по библиотеке документов. Найденное место открывается
+     * в редакторе с выделенной фразой.
+     */
+    private void searchLibrary() {
+        if (librarySearch == null) {
+            librarySearch = new LibrarySearchDialog(this, hit -> loadDocument(hit.getFile().toFile(), false, () -> {
+                int length = document.getLength();
+                editorPane.select(Math.min(hit.getStart(), length), Math.min(hit.getEnd(), length));
+                editorPane.requestFocusInWindow();
+            }));
+        }
+        librarySearch.open();
+    }
+
+    /**
+     * Загружает файл в фоне и по готовности подставляет его в редактор.
+     * Пока идёт загрузка, показывается окно прогресса с кнопкой "Отмена";
+     * начатая ранее загрузка отменяется. Начало большого DOCX показывается
+     * для чтения ещё до конца загрузки.
+     *
+     * @param file     открываемый файл
+     * @param untitled файл — служебный снимок безымянного документа, восстанавливаемого после сбоя
+     * @param loaded   вызывается после подстановки документа в редактор, или null
+     */
+    private void loadDocument(File file, boolean untitled, Runnable loaded) {
+        if (currentLoad != null) {
+            currentLoad.cancel(false);
+        }
+
+        DocumentLoadWorker worker = new DocumentLoadWorker(file, editorKit) {
+            /**
+             * Счётчики слов, посчитанные в фоне сразу после разбора.
+             */
+            private DocumentStatistics.Tally statistics;
+
+            /**
+             * Показанное до конца загрузки начало документа, или null.
+             */
+            private HTMLDocument preview;
+
+            @Override
+            protected HTMLDocument doInBackground() throws Exception {
+                HTMLDocument doc = super.doInBackground();
+                statistics = DocumentStatistics.count(doc);
+                return doc;
+            }
+
+            @Override
+            protected void process(List<HTMLDocument> previews) {
+                if (currentLoad != this || isCancelled()) return;
+                preview = previews.get(previews.size() - 1);
+                editorPane.setDocument(preview);
+                editorPane.setEditable(false);
+                editorPane.setCaretPosition(0);
+            }
+
+            @Override
+            protected void done() {
+                if (currentLoad == this) {
+                    currentLoad = null;
+                }
+                if (preview != null && editorPane.getDocument() == preview) {
+                    // Если загрузка не удалась, редактор возвращается к прежнему документу
+                    editorPane.setDocument(document);
+                    editorPane.setEditable(true);
+                }
+                if (isCancelled()) return;
+                try {
+                    HTMLDocument doc = get();
+                    boolean imported = !untitled && DocumentLoadWorker.isImported(file);
+                    closeJournal();
+                    installDocument(doc, statistics);
+                    if (untitled) {
+                        currentFilePath = null;
+                        importedFrom = null;
+                        setTitle("Восстановленный документ — Простой текстовый редактор");
+                    } else if (imported) {
+                        // DOCX только читается: документ сохраняется в HTML под новым именем
+                        currentFilePath = null;
+                        importedFrom = file;
+                        setTitle(file.getName() + " — Простой текстовый редактор");
+                    } else {
+                        currentFilePath = file.getAbsolutePath();
+                        importedFrom = null;
+                        setTitle(file.getName() + " — Простой текстовый редактор");
+                    }
+                    if (imported) {
+                        startJournal(EditJournal.untitledTarget(), true, false);
+                    } else {
+                        startJournal(file.toPath(), untitled, !untitled);
+                    }
+                    if (loaded != null) {
+                        loaded.run();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(Main.this,
+                            "Не удалось открыть файл: " + e.getCause().getMessage(),
+                            "Ошибка", JOptionPane.ERROR_MESSAGE);
                 }
-                editorPane.setText(content.toString());
-                currentFilePath = file.getAbsolutePath();
-                setTitle(file.getName() + " — Простой текстовый редактор");
-            } catch (IOException e) {
-                JOptionPane.showMessageDialog(this,
-                        "Не удалось открыть файл: " + e.getMessage(),
-                        "Ошибка", JOptionPane.ERROR_MESSAGE);
             }
-        }
+        };
+        currentLoad = worker;
+
+        new ProgressDialog(this, "Открытие файла", "Загрузка " + file.getName() + "...", worker).setVisible(true);
+        worker.execute();
     }
 
     /**
@@ -267,7 +763,8 @@ public class Main extends JFrame {
             JFileChooser chooser = new JFileChooser();
             chooser.setDialogTitle("Сохранить как");
             chooser.setFileFilter(new FileNameExtensionFilter("DOC/HTML файлы", "doc", "html"));
-            chooser.setSelectedFile(new File("document.doc"));
+            chooser.setSelectedFile(importedFrom == null ? new File("document.doc")
+                    : new File(importedFrom.getParentFile(), importedFrom.getName().replaceFirst("(?i)\\.(docx|rtf)$", ".doc")));
 
             int result = chooser.showSaveDialog(this);
             if (result != JFileChooser.APPROVE_OPTION) return;
@@ -282,28 +779,144 @@ public class Main extends JFrame {
             }
 
             currentFilePath = filename;
+            importedFrom = null;
+            links.folderChanged();
         }
 
-        try (PrintWriter writer = new PrintWriter(new FileWriter(currentFilePath))) {
-            writer.print(editorPane.getText());
-            JOptionPane.showMessageDialog(this, "Файл сохранён как:\n" + currentFilePath);
-            setTitle(new File(currentFilePath).getName() + " — Простой текстовый редактор");
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this,
-                    "Ошибка при сохранении файла:\n" + e.getMessage(),
-                    "Ошибка", JOptionPane.ERROR_MESSAGE);
+        saveInBackground(document, currentFilePath, false);
+    }
+
+    /**
+     * Сохраняет документ в фоне: HTML потоково пишется в файл под блокировкой
+     * чтения документа, EDT при этом не блокируется. Сохранения выполняются по одному;
+     * запрошенное во время другого ставится в очередь.
+     *
+     * <p>Если файл — тот, поверх которого ведётся журнал, в момент снимка в журнале
+     * ставится метка, и после успешной записи правки до неё из журнала удаляются.
+     * При сохранении в другой файл журнал начинается заново для нового файла.</p>
+     *
+     * @param doc      сохраняемый документ
+     * @param path     путь к файлу
+     * @param autosave автосохранение: без сообщений пользователю
+     */
+    private void saveInBackground(HTMLDocument doc, String path, boolean autosave) {
+        if (saving) {
+            if (!autosave) {
+                queuedSave = () -> saveInBackground(doc, path, false);
+            } else if (queuedSave == null) {
+                queuedSave = this::autosave;
+            }
+            return;
         }
+        saving = true;
+
+        Path target = Paths.get(path).toAbsolutePath();
+        EditJournal j = journal;
+        boolean sameTarget = j != null && j.getTarget().equals(target);
+        EditJournal.Checkpoint[] checkpoint = new EditJournal.Checkpoint[1];
+
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException, InterruptedException {
+                if (sameTarget) {
+                    j.awaitOpen();
+                }
+                DocumentSaver.save(doc, target, autosave ? new AtomicFileSaver() : fileSaver,
+                        sameTarget ? () -> checkpoint[0] = j.checkpoint(doc) : null);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                saving = false;
+                try {
+                    get();
+                    if (sameTarget) {
+                        j.commit(checkpoint[0]);
+                    } else if (doc == document) {
+                        startJournal(target, false, false);
+                    }
+                    if (!autosave) {
+                        JOptionPane.showMessageDialog(Main.this, "Файл сохранён как:\n" + path);
+                        setTitle(new File(path).getName() + " — Простой текстовый редактор");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(Main.this,
+                            "Ошибка при сохранении файла:\n" + e.getCause().getMessage(),
+                            "Ошибка", JOptionPane.ERROR_MESSAGE);
+                }
+
+                Runnable next = queuedSave;
+                queuedSave = null;
+                if (next != null) {
+                    next.run();
+                }
+            }
+        }.execute();
     }
 
     /**
-     * Вставляет HTML-код в текущую позицию курсора.
+     * Экспортирует текущий документ в другой формат ({@link DocxWriter}, {@link RtfWriter}, {@link PdfWriter})
+     * в фоне. Текущий файл и журнал правок не меняются: документ по-прежнему сохраняется в HTML.
      *
-     * @param html HTML-фрагмент для вставки
+     * @param format      название формата для заголовка диалога
+     * @param description описание фильтра файлов
+     * @param extension   расширение файла без точки
+     * @param exporter    запись документа в файл
      */
-    private void insertHTML(String html) {
+    private void export(String format, String description, String extension, Exporter exporter) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Экспорт в " + format);
+        chooser.setFileFilter(new FileNameExtensionFilter(description, extension));
+        String name = currentFilePath == null ? "document" : new File(currentFilePath).getName();
+        int dot = name.lastIndexOf('.');
+        chooser.setSelectedFile(new File(currentFilePath == null ? null : new File(currentFilePath).getParent(),
+                (dot > 0 ? name.substring(0, dot) : name) + "." + extension));
+
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+
+        String chosen = chooser.getSelectedFile().getAbsolutePath();
+        String path = chosen.toLowerCase().endsWith("." + extension) ? chosen : chosen + "." + extension;
+        HTMLDocument doc = document;
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                exporter.save(doc, Paths.get(path), new AtomicFileSaver());
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    JOptionPane.showMessageDialog(Main.this, "Документ экспортирован:\n" + path);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(Main.this,
+                            "Ошибка при экспорте:\n" + e.getCause().getMessage(),
+                            "Ошибка", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Вставляет готовый фрагмент в текущую позицию курсора без разбора HTML.
+     * Для документа другого типа фрагмент вставляется как HTML-код.
+     *
+     * @param fragment фрагмент для вставки
+     */
+    private void insertFragment(HtmlFragment fragment) {
         try {
             int pos = editorPane.getCaretPosition();
-            editorKit.insertHTML(document, pos, html, 0, 0, null);
+            if (document instanceof WordProcessorDocument) {
+                ((WordProcessorDocument) document).insertFragment(pos, fragment);
+            } else {
+                editorKit.insertHTML(document, pos, fragment.toHtml(), 0, 0, null);
+            }
         } catch (Exception e) {
             JOptionPane.showMessageDialog(this,
                     "Ошибка при вставке HTML: " + e.getMessage(),
@@ -321,7 +934,13 @@ public class Main extends JFrame {
         String text = JOptionPane.showInputDialog(this, "Текст ссылки:", url);
         if (text == null || text.trim().isEmpty()) text = url;
 
-        String link = String.format("<a href=\"%s\" style=\"color: blue; text-decoration: underline;\">%s</a>", url, text);
-        insertHTML(link);
+        insertFragment(HtmlFragment.link(url, text));
+    }
+
+    /**
+     * Запись документа в файл другого формата.
+     */
+    private interface Exporter {
+        void save(HTMLDocument doc, Path target, AtomicFileSaver saver) throws IOException;
     }
 }
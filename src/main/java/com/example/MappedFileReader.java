@@ -0,0 +1,196 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reader поверх отображённого в память файла ({@link FileChannel#map}).
+ *
+ * <p>Байты декодируются прямо из отображённого буфера в массив, переданный
+ * в {@link #read(char[], int, int)}, — при разборе HTML это собственный буфер
+ * парсера. Промежуточных строк и {@code StringBuilder} нет, поэтому пиковое
+ * потребление кучи при открытии файла близко к одной копии текста (в самом документе).</p>
+ *
+ * <p>Файл отображается окнами по {@value #WINDOW_SIZE} байт, так что размер файла
+ * не ограничен 2 ГБ и не требует резервирования адресного пространства целиком.</p>
+ */
+public class MappedFileReader extends Reader {
+
+    /**
+     * Размер одного отображаемого окна в байтах.
+     */
+    static final long WINDOW_SIZE = 64L << 20;
+
+    /**
+     * Канал открытого файла.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Размер файла в байтах.
+     */
+    private final long size;
+
+    /**
+     * Декодер выбранной кодировки; ошибочные байты заменяются, как в InputStreamReader.
+     */
+    private final CharsetDecoder decoder;
+
+    /**
+     * Текущее отображённое окно (null до первого чтения).
+     */
+    private MappedByteBuffer window;
+
+    /**
+     * Смещение текущего окна от начала файла.
+     */
+    private long windowStart;
+
+    /**
+     * Второй символ суррогатной пары, не поместившийся в буфер вызывающего.
+     */
+    private int pending = -1;
+
+    /**
+     * Признак того, что декодер уже сброшен в конце файла.
+     */
+    private boolean flushed;
+
+    /**
+     * Открывает файл для чтения.
+     *
+     * @param path    путь к файлу
+     * @param charset кодировка содержимого
+     * @throws IOException если файл не удалось открыть
+     */
+    public MappedFileReader(Path path, Charset charset) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Возвращает размер файла в байтах.
+     *
+     * @return размер файла
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Возвращает число уже декодированных байт файла (для индикатора хода).
+     *
+     * @return позиция чтения в байтах
+     */
+    public long position() {
+        return window == null ? 0 : windowStart + window.position();
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("Поток закрыт");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (pending >= 0) {
+            cbuf[off] = (char) pending;
+            pending = -1;
+            return 1;
+        }
+
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        for (;;) {
+            if (window == null || !window.hasRemaining() && position() < size) {
+                if (!remap()) {
+                    return finish(out, off);
+                }
+            }
+
+            boolean last = windowStart + window.limit() >= size;
+            CoderResult result = decoder.decode(window, out, last);
+            int produced = out.position() - off;
+            if (produced > 0) {
+                return produced;
+            }
+
+            if (result.isOverflow()) {
+                // Буфер на один символ, а следующий символ — суррогатная пара
+                return readPair(cbuf, off);
+            }
+            if (last) {
+                return finish(out, off);
+            }
+            // В конце окна остался неполный многобайтовый символ: перечитываем с него
+            remap();
+        }
+    }
+
+    /**
+     * Отображает следующее окно файла, начиная с первого недекодированного байта.
+     *
+     * @return false, если файл прочитан до конца
+     * @throws IOException при ошибке отображения
+     */
+    private boolean remap() throws IOException {
+        long start = position();
+        if (start >= size && window != null) {
+            return false;
+        }
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+        return true;
+    }
+
+    /**
+     * Сбрасывает декодер в конце файла.
+     *
+     * @param out буфер вызывающего
+     * @param off начальное смещение в буфере
+     * @return число символов или -1 в конце файла
+     */
+    private int finish(CharBuffer out, int off) {
+        if (!flushed) {
+            flushed = true;
+            decoder.flush(out);
+        }
+        int produced = out.position() - off;
+        return produced > 0 ? produced : -1;
+    }
+
+    /**
+     * Декодирует суррогатную пару во временный буфер и отдаёт первый её символ.
+     *
+     * @param cbuf буфер вызывающего
+     * @param off  смещение в буфере
+     * @return всегда 1
+     */
+    private int readPair(char[] cbuf, int off) {
+        CharBuffer pair = CharBuffer.allocate(2);
+        decoder.decode(window, pair, windowStart + window.limit() >= size);
+        cbuf[off] = pair.get(0);
+        if (pair.position() > 1) {
+            pending = pair.get(1);
+        }
+        return 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
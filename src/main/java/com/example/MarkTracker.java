@@ -0,0 +1,303 @@
+package com.example;
+
+import javax.swing.text.Position;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Позиции ({@link Position}) для собственных реализаций {@code AbstractDocument.Content}.
+ *
+ * <p>Метки хранятся отсортированными по смещению и разделены точкой раздела:
+ * метки левее неё хранят абсолютное смещение, правее — расстояние до конца текста.
+ * Вставка или удаление сдвигает точку раздела к месту правки и после этого
+ * не трогает остальные метки — как разрыв в {@code GapContent}, поэтому правки
+ * рядом с предыдущей стоят O(1), а не O(число меток).</p>
+ *
+ * <p>Семантика совпадает с {@code GapContent}: вставка в позицию метки сдвигает её
+ * вперёд, кроме меток в позиции 0; метки внутри удалённого диапазона схлопываются
+ * к его началу. Метки, на позиции которых не осталось ссылок, удаляются лениво.</p>
+ */
+final class MarkTracker {
+
+    /**
+     * Отсортированные по смещению метки.
+     */
+    private final List<Mark> marks = new ArrayList<>();
+
+    /**
+     * Очередь меток, позиции которых собраны сборщиком мусора.
+     */
+    private final ReferenceQueue<StickyPosition> queue = new ReferenceQueue<>();
+
+    /**
+     * Число меток левее точки раздела (хранящих абсолютное смещение).
+     */
+    private int split;
+
+    /**
+     * Текущая длина содержимого.
+     */
+    private int length;
+
+    /**
+     * Число меток, позиции которых уже собраны, но ещё не удалены из списка.
+     */
+    private int unused;
+
+    /**
+     * Создаёт набор меток для содержимого заданной длины.
+     *
+     * @param length начальная длина содержимого
+     */
+    MarkTracker(int length) {
+        this.length = length;
+    }
+
+    /**
+     * Создаёт позицию, следящую за смещением при правках.
+     *
+     * @param offset смещение в содержимом
+     * @return позиция
+     */
+    Position createPosition(int offset) {
+        while (queue.poll() != null) {
+            unused++;
+        }
+        if (unused > Math.max(5, marks.size() / 10)) {
+            removeUnused();
+        }
+
+        int index = lowerBound(offset);
+        if (index < marks.size()) {
+            Mark m = marks.get(index);
+            StickyPosition existing = m.get();
+            if (m.offset() == offset && existing != null) {
+                return existing;
+            }
+        }
+
+        StickyPosition position = new StickyPosition();
+        Mark mark = new Mark(position, queue);
+        position.mark = mark;
+        if (index < split) {
+            mark.value = offset;
+            split++;
+        } else if (index > split) {
+            mark.value = length - offset;
+            mark.fromEnd = true;
+        } else {
+            // Ровно на точке раздела: кладём в левую группу
+            mark.value = offset;
+            split++;
+        }
+        marks.add(index, mark);
+        return position;
+    }
+
+    /**
+     * Учитывает вставку текста.
+     *
+     * @param where  смещение вставки
+     * @param length длина вставленного текста
+     */
+    void insertUpdate(int where, int length) {
+        // Метки в позиции 0 остаются на месте, как в GapContent
+        moveSplit(where == 0 ? 1 : where);
+        this.length += length;
+    }
+
+    /**
+     * Учитывает удаление текста: метки внутри диапазона схлопываются к его началу.
+     *
+     * @param where  начало удалённого диапазона
+     * @param length длина удалённого диапазона
+     */
+    void removeUpdate(int where, int length) {
+        moveSplit(where + length);
+        for (int i = split - 1; i >= 0; i--) {
+            Mark m = marks.get(i);
+            if (m.value <= where) {
+                break;
+            }
+            m.value = where;
+        }
+        this.length -= length;
+    }
+
+    /**
+     * Запоминает метки в диапазоне [where, where + length] вместе с их смещениями,
+     * чтобы восстановить их при отмене удаления.
+     *
+     * @param where  начало диапазона
+     * @param length длина диапазона
+     * @return снимок меток или null, если в диапазоне их нет
+     */
+    Snapshot snapshot(int where, int length) {
+        int from = where == 0 ? 0 : lowerBound(where);
+        int to = lowerBound(where + length + 1);
+        if (from == to) {
+            return null;
+        }
+        Mark[] taken = new Mark[to - from];
+        int[] offsets = new int[to - from];
+        for (int i = from; i < to; i++) {
+            taken[i - from] = marks.get(i);
+            offsets[i - from] = marks.get(i).offset();
+        }
+        return new Snapshot(taken, offsets);
+    }
+
+    /**
+     * Возвращает метки снимка на прежние смещения после повторной вставки текста.
+     *
+     * @param snapshot снимок из {@link #snapshot(int, int)}
+     * @param where    начало восстановленного диапазона
+     * @param length   длина восстановленного диапазона
+     */
+    void restore(Snapshot snapshot, int where, int length) {
+        restore(snapshot, where, length, IntUnaryOperator.identity());
+    }
+
+    /**
+     * Расставляет метки снимка по новым смещениям после замены текста диапазона:
+     * новое смещение метки — {@code map} от её смещения до удаления.
+     *
+     * @param snapshot снимок из {@link #snapshot(int, int)}
+     * @param where    начало нового текста
+     * @param length   длина нового текста
+     * @param map      новое смещение по прежнему; значения должны лежать в [where, where + length]
+     */
+    void restore(Snapshot snapshot, int where, int length, IntUnaryOperator map) {
+        int end = where + length;
+        moveSplit(end + 1);
+        int from = where == 0 ? 0 : lowerBound(where);
+        for (int i = 0; i < snapshot.marks.length; i++) {
+            Mark m = snapshot.marks[i];
+            if (!m.fromEnd) {
+                m.value = map.applyAsInt(snapshot.offsets[i]);
+            }
+        }
+        // Восстановленные метки перемешаны со схлопнутыми: упорядочиваем участок
+        marks.subList(from, split).sort(Comparator.comparingInt(m -> m.value));
+    }
+
+    /**
+     * Перемещает точку раздела так, чтобы левее неё оказались ровно метки со смещением меньше {@code offset}.
+     *
+     * @param offset граница
+     */
+    private void moveSplit(int offset) {
+        int target = lowerBound(offset);
+        while (split < target) {
+            Mark m = marks.get(split++);
+            m.value = length - m.value;
+            m.fromEnd = false;
+        }
+        while (split > target) {
+            Mark m = marks.get(--split);
+            m.value = length - m.value;
+            m.fromEnd = true;
+        }
+    }
+
+    /**
+     * Индекс первой метки со смещением не меньше заданного.
+     *
+     * @param offset смещение
+     * @return индекс в списке меток
+     */
+    private int lowerBound(int offset) {
+        int lo = 0;
+        int hi = marks.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (marks.get(mid).offset() < offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Удаляет метки, позиции которых собраны сборщиком мусора.
+     */
+    private void removeUnused() {
+        int kept = 0;
+        int keptLeft = 0;
+        for (int i = 0; i < marks.size(); i++) {
+            Mark m = marks.get(i);
+            if (m.get() != null) {
+                marks.set(kept++, m);
+                if (i < split) {
+                    keptLeft++;
+                }
+            }
+        }
+        marks.subList(kept, marks.size()).clear();
+        split = keptLeft;
+        unused = 0;
+    }
+
+    /**
+     * Метка смещения. Слабо ссылается на свою позицию, чтобы не удерживать её в памяти.
+     */
+    private final class Mark extends WeakReference<StickyPosition> {
+
+        /**
+         * Абсолютное смещение или расстояние до конца текста (если {@link #fromEnd}).
+         */
+        int value;
+
+        /**
+         * Хранится ли смещение относительно конца текста.
+         */
+        boolean fromEnd;
+
+        Mark(StickyPosition position, ReferenceQueue<StickyPosition> queue) {
+            super(position, queue);
+        }
+
+        int offset() {
+            return fromEnd ? length - value : value;
+        }
+    }
+
+    /**
+     * Позиция, видимая документу. Держит свою метку, пока на позицию есть ссылки.
+     */
+    private static final class StickyPosition implements Position {
+
+        Mark mark;
+
+        @Override
+        public int getOffset() {
+            return mark.offset();
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getOffset());
+        }
+    }
+
+    /**
+     * Метки удалённого диапазона и их смещения до удаления.
+     */
+    static final class Snapshot {
+
+        private final Mark[] marks;
+
+        private final int[] offsets;
+
+        private Snapshot(Mark[] marks, int[] offsets) {
+            this.marks = marks;
+            this.offsets = offsets;
+        }
+    }
+}
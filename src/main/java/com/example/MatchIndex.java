@@ -0,0 +1,629 @@
+package com.example;
+
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.EventListenerList;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Индекс вхождений строки поиска в документ.
+ *
+ * <p>Первый просмотр документа идёт в фоновом потоке кусками под блокировкой чтения
+ * ({@link Document#render}); текст читается через {@link Segment} с частичным возвратом,
+ * без копирования в строку. Дальше индекс поддерживается по событиям документа:
+ * вхождения после правки сдвигаются, а заново просматривается только окно вокруг неё.
+ * Правки, сделанные во время фонового просмотра, не прерывают его: они копятся
+ * в очереди и переносятся на найденное перед следующим куском.
+ * Если строка поиска дописывается, индекс не строится заново, а отфильтровывается.</p>
+ *
+ * <p>Вхождения ищутся алгоритмом Кнута — Морриса — Пратта и могут перекрываться.
+ * Используется в потоке событий; слушатели изменений вызываются в нём же.</p>
+ */
+public class MatchIndex implements DocumentListener {
+
+    /**
+     * Поток фонового поиска, общий для всех индексов.
+     */
+    private static final ExecutorService SCANNER = BulkExecutors.newPlatformExecutor("match-index", 1);
+
+    /**
+     * Сколько символов просматривается за одну блокировку чтения.
+     */
+    private static final int CHUNK = 1 << 20;
+
+    private final EventListenerList listeners = new EventListenerList();
+
+    /**
+     * Буфер для чтения текста в потоке событий.
+     */
+    private final Segment segment = new Segment();
+
+    private Document document;
+
+    /**
+     * Строка поиска как есть.
+     */
+    private String query = "";
+
+    /**
+     * Строка поиска, приведённая к регистру сравнения.
+     */
+    private char[] pattern = new char[0];
+
+    /**
+     * Функция префиксов образца для КМП.
+     */
+    private int[] failure = new int[0];
+
+    private boolean matchCase;
+
+    /**
+     * Вхождения по возрастанию смещений.
+     */
+    private Result found = new Result();
+
+    /**
+     * Построен ли индекс (иначе идёт фоновый поиск).
+     */
+    private boolean ready = true;
+
+    /**
+     * Номер поиска; меняется при смене документа и строки поиска.
+     * Фоновый поиск с устаревшим номером прерывается.
+     */
+    private volatile int generation;
+
+    /**
+     * Правки документа, которые ещё не перенесены на фоновый поиск: {смещение,
+     * вставлено, удалено}. Пишутся в потоке событий под блокировкой записи документа,
+     * читаются фоновым поиском под блокировкой чтения, поэтому порядок правок сохраняется.
+     */
+    private Queue<int[]> edits = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Подключает индекс к документу и перестраивает его.
+     *
+     * @param doc документ; null — только отключить
+     */
+    public void setDocument(Document doc) {
+        if (document != null) {
+            document.removeDocumentListener(this);
+        }
+        document = doc;
+        if (doc != null) {
+            doc.addDocumentListener(this);
+        }
+        rebuild();
+    }
+
+    /**
+     * Задаёт строку поиска. Если новая строка продолжает прежнюю, найденные
+     * вхождения фильтруются на месте; иначе документ просматривается заново в фоне.
+     *
+     * @param text      строка поиска; пустая — вхождений нет
+     * @param matchCase учитывать ли регистр
+     */
+    public void setQuery(String text, boolean matchCase) {
+        if (text.equals(query) && matchCase == this.matchCase) {
+            return;
+        }
+        boolean narrowing = ready && !query.isEmpty() && text.startsWith(query) && matchCase == this.matchCase;
+        query = text;
+        this.matchCase = matchCase;
+        pattern = new char[text.length()];
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = fold(text.charAt(i), matchCase);
+        }
+        failure = failure(pattern);
+        if (narrowing) {
+            narrow();
+        } else {
+            rebuild();
+        }
+    }
+
+    /**
+     * Возвращает строку поиска.
+     *
+     * @return строка поиска
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * Проверяет, построен ли индекс.
+     *
+     * @return false, пока идёт фоновый поиск
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Возвращает число вхождений.
+     *
+     * @return число вхождений (0, пока индекс не построен)
+     */
+    public int size() {
+        return found.size;
+    }
+
+    /**
+     * Возвращает смещение вхождения.
+     *
+     * @param i номер вхождения
+     * @return смещение
+     */
+    public int get(int i) {
+        if (i < 0 || i >= found.size) {
+            throw new IndexOutOfBoundsException("Match " + i + " of " + found.size);
+        }
+        return found.matches[i];
+    }
+
+    /**
+     * Возвращает копию смещений всех вхождений.
+     *
+     * @return смещения по возрастанию
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(found.matches, found.size);
+    }
+
+    /**
+     * Находит первое вхождение, начинающееся не раньше смещения.
+     *
+     * @param offset смещение
+     * @return номер вхождения или {@link #size()}, если таких нет
+     */
+    public int indexFrom(int offset) {
+        return found.indexFrom(offset);
+    }
+
+    /**
+     * Добавляет слушателя изменений набора вхождений.
+     *
+     * @param l слушатель
+     */
+    public void addChangeListener(ChangeListener l) {
+        listeners.add(ChangeListener.class, l);
+    }
+
+    /**
+     * Удаляет слушателя изменений.
+     *
+     * @param l слушатель
+     */
+    public void removeChangeListener(ChangeListener l) {
+        listeners.remove(ChangeListener.class, l);
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        edit(e.getOffset(), e.getLength(), 0);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        edit(e.getOffset(), 0, e.getLength());
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // Атрибуты на вхождения не влияют
+    }
+
+    /**
+     * Переносит правку на индекс; во время фонового поиска — откладывает её для него.
+     */
+    private void edit(int offset, int inserted, int removed) {
+        if (pattern.length == 0) {
+            return;
+        }
+        if (!ready) {
+            edits.add(new int[] {offset, inserted, removed});
+            return;
+        }
+        try {
+            update(document, found, offset, inserted, removed, segment);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+        fireStateChanged();
+    }
+
+    /**
+     * Удаляет вхождения, которые правка разрезала, сдвигает следующие и просматривает
+     * заново окно вокруг правки — там могли появиться новые вхождения.
+     */
+    private void update(Document doc, Result result, int offset, int inserted, int removed, Segment text)
+            throws BadLocationException {
+        result.cut(offset - pattern.length + 1, offset + removed, inserted - removed);
+        // Новые вхождения начинаются в [offset - m + 1, offset + inserted - 1]
+        rescan(doc, result, offset - pattern.length + 1, offset + inserted + pattern.length - 1, text);
+    }
+
+    /**
+     * Просматривает текст [from, to) и вставляет найденные в нём вхождения на место.
+     */
+    private void rescan(Document doc, Result result, int from, int to, Segment text) throws BadLocationException {
+        from = Math.max(0, from);
+        to = Math.min(doc.getLength(), to);
+        if (to - from < pattern.length) {
+            return;
+        }
+        Result window = new Result();
+        Matcher matcher = new Matcher(pattern, failure, matchCase);
+        text.setPartialReturn(true);
+        for (int position = from; position < to; position += text.count) {
+            doc.getText(position, to - position, text);
+            while (matcher.feed(text, position, window) >= 0) {
+                // Каждое вхождение уже добавлено в window
+            }
+        }
+        result.insert(result.indexFrom(from), window);
+    }
+
+    /**
+     * Оставляет вхождения, которые продолжаются дописанной строкой поиска.
+     */
+    private void narrow() {
+        int kept = 0;
+        int length = document.getLength();
+        int[] matches = found.matches;
+        segment.setPartialReturn(false);
+        try {
+            for (int i = 0; i < found.size; i++) {
+                int offset = matches[i];
+                if (offset + pattern.length > length) {
+                    break;
+                }
+                document.getText(offset, pattern.length, segment);
+                if (equal(segment)) {
+                    matches[kept++] = offset;
+                }
+            }
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+        found.size = kept;
+        fireStateChanged();
+    }
+
+    private boolean equal(Segment text) {
+        for (int i = 0; i < pattern.length; i++) {
+            if (fold(text.array[text.offset + i], matchCase) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Запускает фоновый поиск по всему документу.
+     */
+    private void rebuild() {
+        int current = ++generation;
+        found = new Result();
+        edits = new ConcurrentLinkedQueue<>();
+        if (document == null || pattern.length == 0) {
+            ready = true;
+            fireStateChanged();
+            return;
+        }
+        ready = false;
+        fireStateChanged();
+        scan(document, new Matcher(pattern, failure, matchCase), new Result(), edits, current);
+    }
+
+    /**
+     * Продолжает фоновый поиск с места, до которого он дошёл.
+     */
+    private void scan(Document doc, Matcher matcher, Result result, Queue<int[]> pending, int current) {
+        SCANNER.execute(() -> {
+            Segment text = new Segment();
+            text.setPartialReturn(true);
+            result.done = false;
+            while (!result.done && generation == current) {
+                doc.render(() -> scanChunk(doc, matcher, text, result, pending, current));
+            }
+            if (result.done) {
+                SwingUtilities.invokeLater(() -> publish(doc, matcher, result, pending, current));
+            }
+        });
+    }
+
+    /**
+     * Переносит отложенные правки и просматривает очередной кусок документа под блокировкой чтения.
+     */
+    private void scanChunk(Document doc, Matcher matcher, Segment text, Result result, Queue<int[]> pending,
+            int current) {
+        if (generation != current) {
+            return;
+        }
+        int length = doc.getLength();
+        try {
+            if (!pending.isEmpty()) {
+                // Документ уже содержит все отложенные правки: сначала переносятся смещения,
+                // потом окна вокруг правок просматриваются по нынешнему тексту
+                List<int[]> windows = new ArrayList<>();
+                for (int[] edit = pending.poll(); edit != null; edit = pending.poll()) {
+                    carry(matcher, result, edit[0], edit[1], edit[2], windows);
+                }
+                windows.sort(Comparator.comparingInt(window -> window[0]));
+                int[] merged = null;
+                for (int[] window : windows) {
+                    if (merged != null && window[0] <= merged[1]) {
+                        merged[1] = Math.max(merged[1], window[1]);
+                        continue;
+                    }
+                    if (merged != null) {
+                        rescan(doc, result, merged[0], merged[1], text);
+                    }
+                    merged = window;
+                }
+                if (merged != null) {
+                    rescan(doc, result, merged[0], merged[1], text);
+                }
+            }
+            int end = Math.min(length, result.position + CHUNK);
+            while (result.position < end) {
+                doc.getText(result.position, end - result.position, text);
+                int found = matcher.feed(text, result.position, result);
+                while (found >= 0) {
+                    found = matcher.feed(text, result.position, result);
+                }
+                result.position += text.count;
+            }
+        } catch (BadLocationException e) {
+            // Не бывает: правки перенесены, документ под блокировкой чтения
+            throw new IllegalStateException(e);
+        }
+        result.done = result.position >= length;
+    }
+
+    /**
+     * Переносит правку на незаконченный поиск. Правка после просмотренного места ничего
+     * не меняет. Правка далеко позади обрабатывается как в готовом индексе, только окно
+     * вокруг неё откладывается в {@code windows}; правка у самого места поиска сбивает
+     * состояние автомата, поэтому поиск отступает к её началу.
+     */
+    private void carry(Matcher matcher, Result result, int offset, int inserted, int removed, List<int[]> windows) {
+        if (offset >= result.position) {
+            return;
+        }
+        // Окна прежних правок — в координатах до этой правки
+        for (int[] window : windows) {
+            if (window[0] >= offset + removed) {
+                window[0] += inserted - removed;
+                window[1] += inserted - removed;
+            } else if (window[1] > offset) {
+                window[1] = Math.max(window[1], offset + removed) + inserted - removed;
+            }
+        }
+        int position = offset + removed <= result.position ? result.position + inserted - removed : offset;
+        if (offset + inserted + pattern.length - 1 <= position) {
+            result.cut(offset - pattern.length + 1, offset + removed, inserted - removed);
+            windows.add(new int[] {offset - pattern.length + 1, offset + inserted + pattern.length - 1});
+            result.position = position;
+        } else {
+            int from = Math.max(0, offset - pattern.length + 1);
+            result.size = result.indexFrom(from);
+            result.position = from;
+            matcher.reset();
+            // Вхождения от from найдёт сам поиск
+            for (int[] window : windows) {
+                window[1] = Math.min(window[1], from + pattern.length - 1);
+            }
+        }
+    }
+
+    private void publish(Document doc, Matcher matcher, Result result, Queue<int[]> pending, int current) {
+        if (generation != current) {
+            return;
+        }
+        if (!pending.isEmpty()) {
+            // Правки после последнего куска: переносит их тот же поиск
+            scan(doc, matcher, result, pending, current);
+            return;
+        }
+        found = result;
+        ready = true;
+        fireStateChanged();
+    }
+
+    private void fireStateChanged() {
+        ChangeEvent event = null;
+        for (ChangeListener l : listeners.getListeners(ChangeListener.class)) {
+            if (event == null) {
+                event = new ChangeEvent(this);
+            }
+            l.stateChanged(event);
+        }
+    }
+
+    /**
+     * Приводит символ к виду для сравнения без учёта регистра (как {@link String#equalsIgnoreCase}).
+     *
+     * @param c         символ
+     * @param matchCase учитывать регистр — символ не меняется
+     * @return символ для сравнения
+     */
+    static char fold(char c, boolean matchCase) {
+        return matchCase ? c : Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Функция префиксов: длина наибольшего собственного префикса, совпадающего с суффиксом.
+     */
+    private static int[] failure(char[] pattern) {
+        int[] f = new int[pattern.length];
+        for (int i = 1, k = 0; i < pattern.length; i++) {
+            while (k > 0 && pattern[i] != pattern[k]) {
+                k = f[k - 1];
+            }
+            if (pattern[i] == pattern[k]) {
+                k++;
+            }
+            f[i] = k;
+        }
+        return f;
+    }
+
+    /**
+     * Вхождения по возрастанию смещений; для фонового поиска — ещё и место, до которого он дошёл.
+     */
+    private static final class Result {
+
+        int[] matches = new int[16];
+
+        int size;
+
+        int position;
+
+        boolean done;
+
+        void add(int offset) {
+            if (size == matches.length) {
+                matches = Arrays.copyOf(matches, size * 2);
+            }
+            matches[size++] = offset;
+        }
+
+        int indexFrom(int offset) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (matches[mid] < offset) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Удаляет вхождения, начинающиеся в [from, to), и сдвигает следующие.
+         *
+         * @return индекс, с которого вставлять найденные заново вхождения
+         */
+        int cut(int from, int to, int shift) {
+            int lo = indexFrom(from);
+            int hi = indexFrom(to);
+            System.arraycopy(matches, hi, matches, lo, size - hi);
+            size -= hi - lo;
+            for (int i = lo; i < size; i++) {
+                matches[i] += shift;
+            }
+            return lo;
+        }
+
+        void insert(int at, Result found) {
+            int count = found.size;
+            if (count == 0) {
+                return;
+            }
+            if (size + count > matches.length) {
+                matches = Arrays.copyOf(matches, Math.max(matches.length * 2, size + count));
+            }
+            System.arraycopy(matches, at, matches, at + count, size - at);
+            System.arraycopy(found.matches, 0, matches, at, count);
+            size += count;
+        }
+    }
+
+    /**
+     * Автомат КМП, читающий текст кусками: состояние сохраняется между вызовами.
+     */
+    private static final class Matcher {
+
+        private final char[] pattern;
+
+        private final int[] failure;
+
+        private final boolean matchCase;
+
+        /**
+         * Число совпавших символов образца.
+         */
+        private int state;
+
+        /**
+         * Следующий непросмотренный символ текущего куска.
+         */
+        private int next;
+
+        /**
+         * Кусок, который сейчас читается.
+         */
+        private char[] array;
+
+        private int arrayOffset;
+
+        Matcher(char[] pattern, int[] failure, boolean matchCase) {
+            this.pattern = pattern;
+            this.failure = failure;
+            this.matchCase = matchCase;
+        }
+
+        /**
+         * Сбрасывает автомат, чтобы продолжить чтение с другого места текста.
+         */
+        void reset() {
+            state = 0;
+            array = null;
+        }
+
+        /**
+         * Читает кусок текста до следующего вхождения. Повторный вызов с тем же
+         * куском продолжает с места остановки.
+         *
+         * @param text     кусок текста
+         * @param position смещение куска в документе
+         * @param result   куда добавлять вхождения или null
+         * @return смещение последнего символа найденного вхождения или -1, если кусок кончился
+         */
+        int feed(Segment text, int position, Result result) {
+            if (array != text.array || arrayOffset != text.offset) {
+                array = text.array;
+                arrayOffset = text.offset;
+                next = 0;
+            }
+            while (next < text.count) {
+                char c = fold(array[arrayOffset + next], matchCase);
+                int i = next++;
+                while (state > 0 && pattern[state] != c) {
+                    state = failure[state - 1];
+                }
+                if (pattern[state] == c) {
+                    state++;
+                }
+                if (state == pattern.length) {
+                    state = failure[state - 1];
+                    if (result != null) {
+                        result.add(position + i - pattern.length + 1);
+                    }
+                    return position + i;
+                }
+            }
+            // Следующий кусок может прийти в том же массиве
+            array = null;
+            return -1;
+        }
+    }
+}
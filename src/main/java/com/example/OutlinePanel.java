@@ -0,0 +1,410 @@
+package com.example;
+
+import javax.swing.*;
+import javax.swing.event.CaretListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeCellRenderer;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeNode;
+import javax.swing.tree.TreePath;
+import javax.swing.tree.TreeSelectionModel;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Панель структуры документа слева от редактора: дерево заголовков
+ * {@code <h1>}–{@code <h6>}, вложенных по уровням.
+ *
+ * <p>Заголовки берёт {@link HeadingIndex}. Правка текста заголовка обновляет один узел;
+ * дерево перестраивается, только когда заголовки добавлены или удалены, и не чаще
+ * раза за цикл событий. Узлы хранят сами элементы заголовков, поэтому переход по щелчку
+ * не ищет заголовок в документе. Заголовок раздела, где стоит курсор, выделяется.</p>
+ */
+public class OutlinePanel extends JPanel {
+
+    /**
+     * Сколько символов заголовка показывается в дереве.
+     */
+    private static final int MAX_TITLE = 80;
+
+    private final JTextComponent editor;
+
+    private final HeadingIndex index = new HeadingIndex();
+
+    private final DefaultMutableTreeNode root = new DefaultMutableTreeNode();
+
+    private final DefaultTreeModel model = new DefaultTreeModel(root);
+
+    private final OutlineTree tree = new OutlineTree(model);
+
+    /**
+     * Узлы дерева по элементам заголовков.
+     */
+    private final Map<Element, DefaultMutableTreeNode> nodes = new IdentityHashMap<>();
+
+    /**
+     * Заголовки, показанные в дереве, по порядку.
+     */
+    private List<Element> shown = new ArrayList<>();
+
+    /**
+     * Уровни показанных заголовков.
+     */
+    private int[] shownLevels = new int[0];
+
+    /**
+     * Начала разделов верхнего уровня в {@link #shown} и, последним, его размер.
+     */
+    private int[] shownSections = {0};
+
+    /**
+     * Выделяет в дереве раздел, где стоит курсор.
+     */
+    private final CaretListener caretMoved = e -> selectSection(e.getDot());
+
+    /**
+     * Запланирована ли перестройка дерева.
+     */
+    private boolean rebuildPending;
+
+    /**
+     * Выделение меняется вслед за курсором, а не щелчком пользователя.
+     */
+    private boolean following;
+
+    /**
+     * Создаёт панель для редактора. Панель изначально скрыта.
+     *
+     * @param editor редактор
+     */
+    public OutlinePanel(JTextComponent editor) {
+        super(new BorderLayout());
+        this.editor = editor;
+
+        tree.setRootVisible(false);
+        tree.setShowsRootHandles(true);
+        // Дерево в тысячи строк: строки одной высоты раскладываются лениво
+        tree.setLargeModel(false);
+        tree.setRowHeight(tree.getFontMetrics(tree.getFont()).getHeight() + 2);
+        tree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
+        tree.setCellRenderer(new DefaultTreeCellRenderer() {
+            @Override
+            public Component getTreeCellRendererComponent(JTree tree, Object value, boolean selected,
+                                                          boolean expanded, boolean leaf, int row, boolean focused) {
+                Object element = ((DefaultMutableTreeNode) value).getUserObject();
+                String title = element instanceof Element ? title((Element) element) : "";
+                super.getTreeCellRendererComponent(tree, title, selected, expanded, leaf, row, focused);
+                setIcon(null);
+                return this;
+            }
+        });
+        tree.addTreeSelectionListener(e -> {
+            if (!following && e.isAddedPath()) {
+                Object element = ((DefaultMutableTreeNode) e.getPath().getLastPathComponent()).getUserObject();
+                if (element instanceof Element) {
+                    jumpTo((Element) element);
+                }
+            }
+        });
+
+        JLabel header = new JLabel("Структура");
+        header.setBorder(BorderFactory.createEmptyBorder(4, 6, 4, 6));
+        add(header, BorderLayout.NORTH);
+        add(new JScrollPane(tree), BorderLayout.CENTER);
+        setPreferredSize(new Dimension(220, 0));
+        setVisible(false);
+
+        index.addListener(new HeadingIndex.Listener() {
+            @Override
+            public void headingsChanged() {
+                scheduleRebuild();
+            }
+
+            @Override
+            public void headingTextChanged(int i) {
+                DefaultMutableTreeNode node = nodes.get(index.get(i));
+                if (node != null) {
+                    model.nodeChanged(node);
+                }
+            }
+        });
+    }
+
+    /**
+     * Подключает панель к документу редактора (после его замены).
+     *
+     * @param doc документ
+     */
+    public void setDocument(Document doc) {
+        index.setDocument(isVisible() ? doc : null);
+    }
+
+    /**
+     * Показывает или скрывает панель. Скрытая панель не следит за документом.
+     *
+     * @param shown показать ли панель
+     */
+    public void setShown(boolean shown) {
+        if (shown == isVisible()) {
+            return;
+        }
+        setVisible(shown);
+        if (shown) {
+            index.setDocument(editor.getDocument());
+            editor.addCaretListener(caretMoved);
+        } else {
+            editor.removeCaretListener(caretMoved);
+            index.setDocument(null);
+        }
+        revalidate();
+    }
+
+    private void scheduleRebuild() {
+        if (!rebuildPending) {
+            rebuildPending = true;
+            SwingUtilities.invokeLater(this::rebuild);
+        }
+    }
+
+    /**
+     * Приводит дерево к индексу: заголовок вкладывается в ближайший предшествующий
+     * заголовок более высокого уровня, все узлы раскрыты.
+     *
+     * <p>Дерево делится на разделы верхнего уровня. Разделы, чьи заголовки и их уровни
+     * не изменились, остаются как есть, заменяются только изменившиеся между ними —
+     * раскрытие тысяч узлов в {@link JTree} заметно дороже сравнения списков.</p>
+     */
+    private void rebuild() {
+        rebuildPending = false;
+        int n = index.size();
+        List<Element> headings = new ArrayList<>(n);
+        int[] levels = new int[n];
+        List<Integer> starts = new ArrayList<>();
+        int minLevel = Integer.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            headings.add(index.get(i));
+            levels[i] = index.getLevel(i);
+            if (levels[i] <= minLevel) {
+                // Уровень не больше, чем у всех предыдущих, — начало раздела верхнего уровня
+                starts.add(i);
+                minLevel = levels[i];
+            }
+        }
+        starts.add(n);
+        int[] sections = new int[starts.size()];
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = starts.get(i);
+        }
+
+        int oldCount = shownSections.length - 1;
+        int newCount = sections.length - 1;
+        int prefix = 0;
+        while (prefix < oldCount && prefix < newCount && sameSection(prefix, prefix, headings, levels, sections)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < oldCount - prefix && suffix < newCount - prefix
+                && sameSection(oldCount - 1 - suffix, newCount - 1 - suffix, headings, levels, sections)) {
+            suffix++;
+        }
+
+        List<TreeNode> inserted = new ArrayList<>();
+        if (prefix == 0 && suffix == 0) {
+            // Всё заново (новый документ): одна перезагрузка дешевле событий по разделам
+            root.removeAllChildren();
+            nodes.clear();
+            for (int s = 0; s < newCount; s++) {
+                root.add(section(sections[s], sections[s + 1], headings, levels));
+            }
+            model.reload();
+            for (int s = 0; s < newCount; s++) {
+                inserted.add(root.getChildAt(s));
+            }
+        } else {
+            if (prefix < oldCount - suffix) {
+                int[] removedIndices = new int[oldCount - suffix - prefix];
+                Object[] removedNodes = new Object[removedIndices.length];
+                for (int s = 0; s < removedIndices.length; s++) {
+                    removedIndices[s] = prefix + s;
+                    removedNodes[s] = root.getChildAt(prefix + s);
+                }
+                for (int i = shownSections[prefix]; i < shownSections[oldCount - suffix]; i++) {
+                    nodes.remove(shown.get(i));
+                }
+                for (int s = removedIndices.length - 1; s >= 0; s--) {
+                    root.remove(prefix + s);
+                }
+                model.nodesWereRemoved(root, removedIndices, removedNodes);
+            }
+            if (prefix < newCount - suffix) {
+                int[] insertedIndices = new int[newCount - suffix - prefix];
+                for (int s = 0; s < insertedIndices.length; s++) {
+                    insertedIndices[s] = prefix + s;
+                    root.insert(section(sections[prefix + s], sections[prefix + s + 1], headings, levels), prefix + s);
+                    inserted.add(root.getChildAt(prefix + s));
+                }
+                model.nodesWereInserted(root, insertedIndices);
+            }
+        }
+        tree.expanding = true;
+        try {
+            TreePath rootPath = new TreePath(root);
+            for (TreeNode node : inserted) {
+                expand((DefaultMutableTreeNode) node, rootPath);
+            }
+        } finally {
+            tree.expanding = false;
+        }
+        shown = headings;
+        shownLevels = levels;
+        shownSections = sections;
+        if (isVisible()) {
+            selectSection(editor.getCaretPosition());
+        }
+    }
+
+    /**
+     * Совпадает ли показанный раздел с новым: те же заголовки тех же уровней.
+     */
+    private boolean sameSection(int oldSection, int newSection, List<Element> headings, int[] levels, int[] sections) {
+        int from = shownSections[oldSection];
+        int length = shownSections[oldSection + 1] - from;
+        int start = sections[newSection];
+        if (sections[newSection + 1] - start != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (shown.get(from + i) != headings.get(start + i) || shownLevels[from + i] != levels[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Строит узлы раздела верхнего уровня.
+     */
+    private DefaultMutableTreeNode section(int from, int to, List<Element> headings, int[] levels) {
+        DefaultMutableTreeNode[] parents = new DefaultMutableTreeNode[7];
+        DefaultMutableTreeNode top = null;
+        for (int i = from; i < to; i++) {
+            int level = levels[i];
+            DefaultMutableTreeNode node = new DefaultMutableTreeNode(headings.get(i));
+            nodes.put(headings.get(i), node);
+            if (top == null) {
+                top = node;
+            } else {
+                for (int l = level - 1; l > 0; l--) {
+                    if (parents[l] != null) {
+                        parents[l].add(node);
+                        break;
+                    }
+                }
+            }
+            parents[level] = node;
+            for (int l = level + 1; l < parents.length; l++) {
+                parents[l] = null;
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Раскрывает узел и всех его потомков сверху вниз.
+     */
+    private void expand(DefaultMutableTreeNode node, TreePath parent) {
+        if (node.isLeaf()) {
+            return;
+        }
+        TreePath path = parent.pathByAddingChild(node);
+        tree.expandPath(path);
+        for (int i = 0; i < node.getChildCount(); i++) {
+            expand((DefaultMutableTreeNode) node.getChildAt(i), path);
+        }
+    }
+
+    /**
+     * Выделяет заголовок раздела, в котором лежит смещение.
+     */
+    private void selectSection(int offset) {
+        int i = index.indexAt(offset);
+        DefaultMutableTreeNode node = i >= 0 ? nodes.get(index.get(i)) : null;
+        following = true;
+        try {
+            if (node == null) {
+                tree.clearSelection();
+            } else {
+                TreePath path = new TreePath(node.getPath());
+                tree.setSelectionPath(path);
+                tree.scrollPathToVisible(path);
+            }
+        } finally {
+            following = false;
+        }
+    }
+
+    /**
+     * Ставит курсор в начало заголовка и прокручивает редактор так,
+     * чтобы заголовок оказался вверху.
+     */
+    private void jumpTo(Element heading) {
+        int offset = heading.getStartOffset();
+        editor.setCaretPosition(offset);
+        try {
+            Rectangle r = editor.modelToView(offset);
+            if (r != null) {
+                Rectangle visible = editor.getVisibleRect();
+                editor.scrollRectToVisible(new Rectangle(r.x, r.y, 1, visible.height));
+            }
+        } catch (BadLocationException e) {
+            // Элемент уже удалён: дерево перестроится по событию документа
+        }
+        editor.requestFocusInWindow();
+    }
+
+    /**
+     * Текст заголовка для дерева: первая строка, не длиннее {@link #MAX_TITLE}.
+     */
+    private String title(Element heading) {
+        int start = heading.getStartOffset();
+        int length = Math.min(heading.getEndOffset() - start, MAX_TITLE);
+        try {
+            String text = heading.getDocument().getText(start, length).trim();
+            return text.isEmpty() ? "(пустой заголовок)" : text;
+        } catch (BadLocationException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Дерево, которое раскрывает тысячи узлов подряд за линейное время.
+     *
+     * <p>После раскрытия узла {@link javax.swing.plaf.basic.BasicTreeUI} запрашивает его
+     * раскрытых потомков, и {@link JTree#getExpandedDescendants} перебирает все раскрытые
+     * пути дерева — раскрытие всех узлов становится квадратичным. При раскрытии сверху
+     * вниз после перестройки у нового узла раскрытых потомков ещё нет.</p>
+     */
+    private static final class OutlineTree extends JTree {
+
+        /**
+         * Идёт раскрытие узлов после перестройки.
+         */
+        boolean expanding;
+
+        OutlineTree(DefaultTreeModel model) {
+            super(model);
+        }
+
+        @Override
+        public java.util.Enumeration<TreePath> getExpandedDescendants(TreePath parent) {
+            return expanding ? null : super.getExpandedDescendants(parent);
+        }
+    }
+}
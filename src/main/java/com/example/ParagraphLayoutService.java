@@ -0,0 +1,239 @@
+package com.example;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.awt.font.TextAttribute;
+import java.text.AttributedString;
+import java.text.BreakIterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Фоновый перенос строк абзацев.
+ *
+ * <p>Раскладка {@code ParagraphView} возможна только в потоке событий: представления
+ * Swing не потокобезопасны. Поэтому высоту невидимых абзацев считают отдельно:
+ * в потоке событий под блокировкой чтения документа снимается неизменяемый
+ * {@link Request} — текст абзаца, шрифты его участков и ширина, — а пул рабочих потоков
+ * разбивает текст на строки {@link LineBreakMeasurer} и складывает высоты строк
+ * так же, как это сделал бы {@code ParagraphView}.</p>
+ *
+ * <p>Каждый запрос помечен версией содержимого и шириной; применять результат
+ * или отбросить его как устаревший, решает получатель.</p>
+ */
+final class ParagraphLayoutService {
+
+    /**
+     * Число рабочих потоков: все ядра, кроме одного (его оставляем потоку событий).
+     */
+    static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    /**
+     * Пул рабочих потоков раскладки, общий для всех редакторов.
+     */
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS, new ThreadFactory());
+
+    private ParagraphLayoutService() {
+    }
+
+    /**
+     * Отправляет пачку запросов в пул. Выполненные запросы (с заполненным
+     * {@link Request#height}) передаются {@code done} в рабочем потоке; получатель
+     * сам переносит их в поток событий.
+     *
+     * @param batch запросы
+     * @param done  получатель результатов
+     */
+    static void submit(List<Request> batch, Consumer<List<Request>> done) {
+        POOL.execute(() -> {
+            for (Request request : batch) {
+                request.height = layout(request);
+            }
+            done.accept(batch);
+        });
+    }
+
+    /**
+     * Переносит строки абзаца и возвращает его высоту.
+     *
+     * @param r запрос
+     * @return высота абзаца с полями
+     */
+    static float layout(Request r) {
+        String text = r.text;
+        float width = Math.max(1, r.contentWidth);
+        float height = r.top + r.bottom;
+
+        // Принудительные переносы (<br> и конец абзаца) делят текст на отрезки
+        int start = 0;
+        int end = text.indexOf('\n');
+        if (end < 0) {
+            end = text.length();
+        }
+        for (;;) {
+            boolean last = end >= text.length() - 1;
+            if (last && start > 0 && text.substring(start, end).trim().isEmpty()) {
+                // Пустая строка после последнего <br> в ParagraphView высоты не имеет
+                return height;
+            }
+            if (end == start) {
+                height += lineHeight(r, start, start + 1);
+            } else {
+                AttributedString as = new AttributedString(text.substring(start, end));
+                for (int i = 0; i < r.runStarts.length; i++) {
+                    int from = Math.max(r.runStarts[i], start);
+                    int to = Math.min(i + 1 < r.runStarts.length ? r.runStarts[i + 1] : text.length(), end);
+                    if (from < to) {
+                        as.addAttribute(TextAttribute.FONT, r.fonts[i], from - start, to - start);
+                    }
+                }
+                LineBreakMeasurer measurer = new LineBreakMeasurer(as.getIterator(),
+                        BreakIterator.getLineInstance(), r.frc);
+                int position = 0;
+                while (position < end - start) {
+                    int next = measurer.nextOffset(width);
+                    if (next <= position) {
+                        next = position + 1;
+                    } else if (next < end - start) {
+                        // ParagraphView переносит строку, если за край выходит и пробел после слова,
+                        // а LineBreakMeasurer позволяет пробелам свисать
+                        TextLayout line = measurer.nextLayout(width, next, false);
+                        if (line.getAdvance() > width) {
+                            measurer.setPosition(position);
+                            next = Math.max(position + 1, measurer.nextOffset(width - (line.getAdvance()
+                                    - line.getVisibleAdvance())));
+                        }
+                    }
+                    measurer.setPosition(next);
+                    height += lineHeight(r, start + position, start + next);
+                    position = next;
+                }
+            }
+            if (last) {
+                return height;
+            }
+            start = end + 1;
+            end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+        }
+    }
+
+    /**
+     * Высота строки: наибольшая высота шрифтов участков, попавших в строку.
+     */
+    private static float lineHeight(Request r, int from, int to) {
+        int height = 0;
+        for (int i = 0; i < r.runStarts.length; i++) {
+            int runEnd = i + 1 < r.runStarts.length ? r.runStarts[i + 1] : r.text.length();
+            if (r.runStarts[i] < to && runEnd > from) {
+                height = Math.max(height, r.lineHeights[i]);
+            }
+        }
+        return height;
+    }
+
+    /**
+     * Неизменяемый снимок абзаца для раскладки и её результат.
+     */
+    static final class Request {
+
+        /**
+         * Представление, для которого считается высота.
+         */
+        final VirtualBlockView view;
+
+        /**
+         * Версия содержимого представления на момент снимка.
+         */
+        final int version;
+
+        /**
+         * Ширина блока, для которой считается высота.
+         */
+        final int width;
+
+        /**
+         * Текст абзаца, включая завершающий перевод строки.
+         */
+        final String text;
+
+        /**
+         * Начала участков текста с разным шрифтом.
+         */
+        final int[] runStarts;
+
+        /**
+         * Шрифты участков.
+         */
+        final Font[] fonts;
+
+        /**
+         * Высоты строк шрифтов участков (по метрикам компонента).
+         */
+        final int[] lineHeights;
+
+        /**
+         * Контекст отрисовки шрифтов компонента.
+         */
+        final FontRenderContext frc;
+
+        /**
+         * Ширина текста без полей.
+         */
+        final float contentWidth;
+
+        /**
+         * Поле сверху.
+         */
+        final float top;
+
+        /**
+         * Поле снизу.
+         */
+        final float bottom;
+
+        /**
+         * Вычисленная высота (заполняется рабочим потоком).
+         */
+        volatile float height;
+
+        Request(VirtualBlockView view, int version, int width, String text, int[] runStarts, Font[] fonts,
+                int[] lineHeights, FontRenderContext frc, float contentWidth, float top, float bottom) {
+            this.view = view;
+            this.version = version;
+            this.width = width;
+            this.text = text;
+            this.runStarts = runStarts;
+            this.fonts = fonts;
+            this.lineHeights = lineHeights;
+            this.frc = frc;
+            this.contentWidth = contentWidth;
+            this.top = top;
+            this.bottom = bottom;
+        }
+    }
+
+    /**
+     * Фабрика фоновых потоков-демонов с пониженным приоритетом.
+     */
+    private static final class ThreadFactory implements java.util.concurrent.ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "paragraph-layout-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Шрифты для экспорта в PDF: файлы TrueType из системы.
+ *
+ * <p>Шрифты встраиваются в PDF, поэтому нужны сами файлы, а не {@link java.awt.Font}.
+ * Ищутся распространённые гарнитуры с кириллицей: DejaVu и Liberation в Linux, Arial
+ * и Courier New в Windows и macOS, Lucida из JDK 8. Недостающее начертание заменяется
+ * обычным: курсив — наклоном, полужирный — обводкой контуров ({@link #isSyntheticBold}).
+ * Шрифты читаются один раз за работу программы.</p>
+ */
+final class PdfFonts {
+
+    /**
+     * Начертание: обычное.
+     */
+    static final int REGULAR = 0;
+
+    static final int BOLD = 1;
+
+    static final int ITALIC = 2;
+
+    static final int BOLD_ITALIC = 3;
+
+    /**
+     * Моноширинный шрифт для преформатированного текста.
+     */
+    static final int MONO = 4;
+
+    private static final int FACES = 5;
+
+    /**
+     * Имена файлов начертаний по порядку {@link #REGULAR}–{@link #MONO}; первый найденный
+     * набор, в котором есть обычное начертание, используется целиком.
+     */
+    private static final String[][] FAMILIES = {
+        {"DejaVuSans.ttf", "DejaVuSans-Bold.ttf", "DejaVuSans-Oblique.ttf", "DejaVuSans-BoldOblique.ttf",
+            "DejaVuSansMono.ttf"},
+        {"LiberationSans-Regular.ttf", "LiberationSans-Bold.ttf", "LiberationSans-Italic.ttf",
+            "LiberationSans-BoldItalic.ttf", "LiberationMono-Regular.ttf"},
+        {"arial.ttf", "arialbd.ttf", "ariali.ttf", "arialbi.ttf", "cour.ttf"},
+        {"Arial.ttf", "Arial Bold.ttf", "Arial Italic.ttf", "Arial Bold Italic.ttf", "Courier New.ttf"},
+        {"LucidaSansRegular.ttf", "LucidaSansDemiBold.ttf", null, null, "LucidaTypewriterRegular.ttf"},
+    };
+
+    private static PdfFonts instance;
+
+    /**
+     * Разные файлы шрифтов; начертания ссылаются на них по номеру.
+     */
+    private final List<TrueTypeFont> fonts = new ArrayList<>();
+
+    private final int[] faces = new int[FACES];
+
+    private final boolean[] syntheticBold = new boolean[FACES];
+
+    private final boolean[] syntheticItalic = new boolean[FACES];
+
+    private PdfFonts(Path[] files) throws IOException {
+        Map<Path, Integer> loaded = new LinkedHashMap<>();
+        for (int face = 0; face < FACES; face++) {
+            Path file = files[face];
+            boolean bold = face == BOLD || face == BOLD_ITALIC;
+            boolean italic = face == ITALIC || face == BOLD_ITALIC;
+            if (file == null && face == BOLD_ITALIC && files[BOLD] != null) {
+                file = files[BOLD];
+                syntheticItalic[face] = true;
+            } else if (file == null) {
+                file = files[REGULAR];
+                syntheticBold[face] = bold;
+                syntheticItalic[face] = italic;
+            }
+            Integer index = loaded.get(file);
+            if (index == null) {
+                index = fonts.size();
+                fonts.add(TrueTypeFont.load(file));
+                loaded.put(file, index);
+            }
+            faces[face] = index;
+        }
+    }
+
+    /**
+     * Возвращает шрифты, при первом вызове найдя и прочитав их.
+     *
+     * @return шрифты
+     * @throws IOException если в системе нет ни одного подходящего шрифта
+     */
+    static synchronized PdfFonts get() throws IOException {
+        if (instance == null) {
+            instance = new PdfFonts(find());
+        }
+        return instance;
+    }
+
+    /**
+     * Шрифты по номеру; номер — имя ресурса шрифта на страницах PDF.
+     *
+     * @return шрифты
+     */
+    List<TrueTypeFont> fonts() {
+        return fonts;
+    }
+
+    /**
+     * Номер шрифта начертания.
+     *
+     * @param face начертание
+     * @return номер в {@link #fonts()}
+     */
+    int font(int face) {
+        return faces[face];
+    }
+
+    /**
+     * Полужирное начертание рисуется обводкой обычного: своего файла нет.
+     *
+     * @param face начертание
+     * @return true, если полужирность нужно имитировать
+     */
+    boolean isSyntheticBold(int face) {
+        return syntheticBold[face];
+    }
+
+    boolean isSyntheticItalic(int face) {
+        return syntheticItalic[face];
+    }
+
+    private static Path[] find() throws IOException {
+        List<Path> folders = new ArrayList<>();
+        String windows = System.getenv("WINDIR");
+        if (windows != null) {
+            folders.add(Paths.get(windows, "Fonts"));
+        }
+        for (String folder : new String[] {"/usr/share/fonts/truetype/dejavu", "/usr/share/fonts/dejavu",
+                "/usr/share/fonts/dejavu-sans-fonts", "/usr/share/fonts/dejavu-sans-mono-fonts",
+                "/usr/share/fonts/truetype/liberation", "/usr/share/fonts/liberation", "/usr/share/fonts/TTF",
+                "/usr/local/share/fonts", "/Library/Fonts", "/System/Library/Fonts/Supplemental",
+                System.getProperty("user.home") + "/Library/Fonts", System.getProperty("user.home") + "/.fonts",
+                System.getProperty("java.home") + "/lib/fonts"}) {
+            folders.add(Paths.get(folder));
+        }
+        for (String[] family : FAMILIES) {
+            Path[] files = new Path[FACES];
+            for (int face = 0; face < FACES; face++) {
+                files[face] = family[face] == null ? null : locate(folders, family[face]);
+            }
+            if (files[REGULAR] != null) {
+                if (files[MONO] == null) {
+                    files[MONO] = files[REGULAR];
+                }
+                return files;
+            }
+        }
+        throw new IOException("No TrueType font with Cyrillic found for PDF export (DejaVu, Liberation or Arial)");
+    }
+
+    private static Path locate(List<Path> folders, String name) {
+        for (Path folder : folders) {
+            Path file = folder.resolve(name);
+            if (Files.isRegularFile(file)) {
+                return file;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,645 @@
+package com.example;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.StyleSheet;
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Раскладка абзаца по строкам для экспорта в PDF ({@link PdfWriter}).
+ *
+ * <p>Ширины символов берутся из встраиваемых шрифтов ({@link TrueTypeFont}), а не из
+ * {@link java.awt.Font}: PDF отрисует текст ровно теми же ширинами, и строки не разъедутся.
+ * Места возможного переноса даёт {@link BreakIterator}; строки набираются жадно,
+ * пробелы в конце строки свисают за край. Слово шире строки делится по символам.</p>
+ *
+ * <p>Результат ({@link Paragraph}) не зависит от положения абзаца на странице: строки
+ * расставляются по страницам отдельно, поэтому раскладку можно хранить между экспортами
+ * ({@link PdfLayoutCache}) и пересчитывать только у изменённых абзацев.</p>
+ */
+final class PdfLayout {
+
+    /**
+     * Доля кегля, на которую уменьшаются индексы.
+     */
+    private static final float SCRIPT_SCALE = 0.7f;
+
+    /**
+     * Цвет ссылок, как в редакторе и в {@link RtfWriter}.
+     */
+    static final int LINK_COLOR = 0x0000FF;
+
+    /**
+     * Ширина табуляции в пробелах.
+     */
+    private static final int TAB_SPACES = 4;
+
+    private final PdfFonts fonts;
+
+    private final StyleSheet css;
+
+    private final Segment segment = new Segment();
+
+    private final BreakIterator breaks = BreakIterator.getLineInstance(new Locale("ru"));
+
+    /**
+     * Символы, глифы, шрифты, ширины и оформление текущего абзаца по номеру символа.
+     */
+    private char[] text = new char[256];
+
+    private int[] glyphs = new int[256];
+
+    private byte[] charFonts = new byte[256];
+
+    private float[] advances = new float[256];
+
+    private Run[] runs = new Run[256];
+
+    private int length;
+
+    private Style style;
+
+    private float width;
+
+    private String alignment;
+
+    private final List<Piece> pieces = new ArrayList<>();
+
+    private final List<float[]> lines = new ArrayList<>();
+
+    private final List<Integer> lineStarts = new ArrayList<>();
+
+    private char[] glyphOut = new char[256];
+
+    private int glyphCount;
+
+    /**
+     * Создаёт раскладчик; он переиспользует свои буферы от абзаца к абзацу и не потокобезопасен.
+     *
+     * @param fonts шрифты
+     * @param css   таблица стилей документа (цвета CSS)
+     */
+    PdfLayout(PdfFonts fonts, StyleSheet css) {
+        this.fonts = fonts;
+        this.css = css;
+    }
+
+    /**
+     * Раскладывает абзац по строкам заданной ширины.
+     *
+     * @param doc       документ (под блокировкой чтения)
+     * @param paragraph элемент абзаца
+     * @param style     оформление абзаца
+     * @param width     ширина строки в пунктах
+     * @return раскладка
+     * @throws BadLocationException если структура документа повреждена
+     */
+    Paragraph layout(Document doc, Element paragraph, Style style, float width) throws BadLocationException {
+        this.style = style;
+        this.width = width;
+        alignment = TextStyle.alignment(paragraph.getAttributes());
+        int start = paragraph.getStartOffset();
+        int end = Math.min(paragraph.getEndOffset() - 1, doc.getLength());
+        collect(doc, paragraph, start, end);
+        pieces.clear();
+        lines.clear();
+        lineStarts.clear();
+        glyphCount = 0;
+        breakLines();
+        return new Paragraph(this);
+    }
+
+    /**
+     * Раскладывает одну строку текста без переноса — маркер списка или номер страницы.
+     *
+     * @param text  текст
+     * @param face  начертание ({@link PdfFonts#REGULAR}…)
+     * @param size  кегль
+     * @param color цвет {@code 0xRRGGBB}
+     * @return раскладка из одной строки
+     */
+    Paragraph label(String text, int face, float size, int color) {
+        style = new Style(size, face == PdfFonts.BOLD || face == PdfFonts.BOLD_ITALIC,
+                face == PdfFonts.ITALIC || face == PdfFonts.BOLD_ITALIC, face == PdfFonts.MONO);
+        width = Float.MAX_VALUE;
+        alignment = null;
+        length = 0;
+        int flags = (fonts.isSyntheticBold(face) ? Piece.SYNTHETIC_BOLD : 0)
+                | (fonts.isSyntheticItalic(face) ? Piece.SYNTHETIC_ITALIC : 0);
+        Run run = new Run(face, size, 0, color, flags, null);
+        for (int i = 0; i < text.length(); i++) {
+            add(text.charAt(i), run);
+        }
+        map(0, length);
+        pieces.clear();
+        lines.clear();
+        lineStarts.clear();
+        glyphCount = 0;
+        line(0, length, true);
+        return new Paragraph(this);
+    }
+
+    /**
+     * Собирает текст абзаца и оформление его листьев.
+     */
+    private void collect(Document doc, Element paragraph, int start, int end) throws BadLocationException {
+        length = 0;
+        segment.setPartialReturn(true);
+        AttributeSet lastAttributes = null;
+        Run run = null;
+        for (int i = 0, n = paragraph.getElementCount(); i < n; i++) {
+            Element leaf = paragraph.getElement(i);
+            int from = Math.max(leaf.getStartOffset(), start);
+            int to = Math.min(leaf.getEndOffset(), end);
+            if (from >= to) {
+                continue;
+            }
+            AttributeSet attributes = leaf.getAttributes();
+            Object tag = attributes.getAttribute(StyleConstants.NameAttribute);
+            if (tag == HTML.Tag.BR) {
+                add('\n', run != null ? run : run(attributes));
+                continue;
+            }
+            if (tag != HTML.Tag.CONTENT) {
+                continue;
+            }
+            if (attributes != lastAttributes) {
+                lastAttributes = attributes;
+                run = run(attributes);
+            }
+            for (int offset = from; offset < to; offset += segment.count) {
+                doc.getText(offset, to - offset, segment);
+                ensure(segment.count);
+                System.arraycopy(segment.array, segment.offset, text, length, segment.count);
+                Arrays.fill(runs, length, length + segment.count, run);
+                length += segment.count;
+            }
+        }
+        map(0, length);
+    }
+
+    private void add(char c, Run run) {
+        ensure(1);
+        text[length] = c;
+        runs[length] = run;
+        length++;
+    }
+
+    /**
+     * Оформление листа.
+     */
+    private Run run(AttributeSet a) {
+        boolean link = TextStyle.link(a) != null;
+        boolean bold = style.bold || TextStyle.isBold(a);
+        boolean italic = style.italic || TextStyle.isItalic(a);
+        int face = style.mono ? PdfFonts.MONO
+                : bold && italic ? PdfFonts.BOLD_ITALIC : bold ? PdfFonts.BOLD : italic ? PdfFonts.ITALIC : PdfFonts.REGULAR;
+        int flags = 0;
+        if (style.mono && bold || fonts.isSyntheticBold(face)) {
+            flags |= Piece.SYNTHETIC_BOLD;
+        }
+        if (style.mono && italic || fonts.isSyntheticItalic(face)) {
+            flags |= Piece.SYNTHETIC_ITALIC;
+        }
+        if (link || TextStyle.isUnderline(a)) {
+            flags |= Piece.UNDERLINE;
+        }
+        if (TextStyle.isStrike(a)) {
+            flags |= Piece.STRIKE;
+        }
+        float size = style.size;
+        float rise = 0;
+        int position = TextStyle.position(a);
+        if (position != 0) {
+            size *= SCRIPT_SCALE;
+            rise = position > 0 ? style.size * 0.33f : -style.size * 0.15f;
+        }
+        int color = link ? LINK_COLOR : TextStyle.color(a, css);
+        String href = link ? TextStyle.link(a).getAttribute(HTML.Attribute.HREF).toString() : null;
+        return new Run(face, size, rise, color, flags, href);
+    }
+
+    /**
+     * Находит глифы и ширины символов; символ, которого нет в шрифте начертания,
+     * берётся из любого другого найденного шрифта.
+     */
+    private void map(int from, int to) {
+        List<TrueTypeFont> all = fonts.fonts();
+        for (int i = from; i < to; i++) {
+            char c = text[i];
+            Run run = runs[i];
+            int font = fonts.font(run.face);
+            int glyph;
+            float advance;
+            if (c == '\n' || c < ' ' && c != '\t' || c == '\u00AD' || c == '\u200B' || Character.isLowSurrogate(c)) {
+                glyph = -1;
+                advance = 0;
+            } else {
+                int codePoint = c == '\t' ? ' ' : c;
+                if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(text[i + 1])) {
+                    codePoint = Character.toCodePoint(c, text[i + 1]);
+                }
+                glyph = all.get(font).glyph(codePoint);
+                for (int f = 0; glyph == 0 && f < all.size(); f++) {
+                    int fallback = all.get(f).glyph(codePoint);
+                    if (fallback != 0) {
+                        font = f;
+                        glyph = fallback;
+                    }
+                }
+                TrueTypeFont ttf = all.get(font);
+                advance = ttf.advance(glyph) * run.size / ttf.getUnitsPerEm();
+                if (c == '\t') {
+                    advance *= TAB_SPACES;
+                }
+            }
+            glyphs[i] = glyph;
+            charFonts[i] = (byte) font;
+            advances[i] = advance;
+        }
+    }
+
+    /**
+     * Делит текст на строки: жадно, по местам переноса; {@code \n} (тег {@code <br>})
+     * заканчивает строку принудительно.
+     */
+    private void breakLines() {
+        if (length == 0) {
+            line(0, 0, true);
+            return;
+        }
+        segment.array = text;
+        segment.offset = 0;
+        segment.count = length;
+        segment.first();
+        breaks.setText(segment);
+        int lineStart = 0;
+        float lineWidth = 0;
+        int previous = 0;
+        for (int next = breaks.next(); next != BreakIterator.DONE; next = breaks.next()) {
+            float visible = 0;
+            float total = 0;
+            for (int i = previous; i < next; i++) {
+                total += advances[i];
+                if (!isSpace(text[i])) {
+                    visible = total;
+                }
+            }
+            if (lineStart < previous && lineWidth + visible > width) {
+                line(lineStart, previous, false);
+                lineStart = previous;
+                lineWidth = 0;
+            }
+            if (visible > width && lineStart == previous) {
+                // Слово шире строки: по символам, пока не уместится остаток
+                float w = 0;
+                for (int i = previous; i < next; i++) {
+                    if (w + advances[i] > width && i > lineStart && !Character.isLowSurrogate(text[i])) {
+                        line(lineStart, i, false);
+                        lineStart = i;
+                        w = 0;
+                    }
+                    w += advances[i];
+                }
+                lineWidth = w;
+            } else {
+                lineWidth += total;
+            }
+            if (text[next - 1] == '\n') {
+                line(lineStart, next, true);
+                lineStart = next;
+                lineWidth = 0;
+            }
+            previous = next;
+        }
+        // Пустая строка после последнего <br> высоты не имеет, как в редакторе
+        if (lineStart < length || lines.isEmpty()) {
+            line(lineStart, length, true);
+        }
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\n' || c == '\t';
+    }
+
+    /**
+     * Добавляет строку из символов {@code from}–{@code to}: делит её на куски одного
+     * оформления и шрифта и расставляет их с учётом выравнивания.
+     *
+     * @param last последняя строка абзаца или строка перед {@code <br>}: она не растягивается по ширине
+     */
+    private void line(int from, int to, boolean last) {
+        int visibleEnd = to;
+        while (visibleEnd > from && isSpace(text[visibleEnd - 1])) {
+            visibleEnd--;
+        }
+        float lineWidth = 0;
+        int spaces = 0;
+        for (int i = from; i < visibleEnd; i++) {
+            lineWidth += advances[i];
+            if (text[i] == ' ') {
+                spaces++;
+            }
+        }
+        float x = 0;
+        float justify = 0;
+        if ("center".equals(alignment)) {
+            x = Math.max(0, (width - lineWidth) / 2);
+        } else if ("right".equals(alignment)) {
+            x = Math.max(0, width - lineWidth);
+        } else if ("justify".equals(alignment) && !last && spaces > 0 && lineWidth < width) {
+            justify = (width - lineWidth) / spaces;
+        }
+        TrueTypeFont base = fonts.fonts().get(fonts.font(style.mono ? PdfFonts.MONO : PdfFonts.REGULAR));
+        float ascent = style.size * base.getAscent() / base.getUnitsPerEm();
+        float descent = style.size * base.getDescent() / base.getUnitsPerEm();
+        lineStarts.add(pieces.size());
+        int i = from;
+        while (i < visibleEnd) {
+            if (glyphs[i] < 0 || text[i] == '\t') {
+                x += advances[i];
+                i++;
+                continue;
+            }
+            Run run = runs[i];
+            int font = charFonts[i];
+            int pieceStart = glyphCount;
+            float pieceX = x;
+            while (i < visibleEnd && runs[i] == run && charFonts[i] == font && text[i] != '\t') {
+                if (glyphs[i] >= 0) {
+                    addGlyph(glyphs[i]);
+                    x += advances[i];
+                    if (text[i] == ' ') {
+                        x += justify;
+                    }
+                }
+                i++;
+            }
+            if (glyphCount > pieceStart) {
+                pieces.add(new Piece(run, font, pieceX, x - pieceX, pieceStart, glyphCount));
+                ascent = Math.max(ascent, run.size * ascent(font) + run.rise);
+                descent = Math.max(descent, run.size * descent(font) - run.rise);
+            }
+        }
+        float lineGap = style.size * base.getLineGap() / base.getUnitsPerEm();
+        lines.add(new float[] {ascent, descent + lineGap, justify});
+    }
+
+    private float ascent(int font) {
+        TrueTypeFont ttf = fonts.fonts().get(font);
+        return (float) ttf.getAscent() / ttf.getUnitsPerEm();
+    }
+
+    private float descent(int font) {
+        TrueTypeFont ttf = fonts.fonts().get(font);
+        return (float) ttf.getDescent() / ttf.getUnitsPerEm();
+    }
+
+    private void addGlyph(int glyph) {
+        if (glyphCount == glyphOut.length) {
+            glyphOut = Arrays.copyOf(glyphOut, glyphCount * 2);
+        }
+        glyphOut[glyphCount++] = (char) glyph;
+    }
+
+    private void ensure(int count) {
+        if (length + count > text.length) {
+            int capacity = Math.max(text.length * 2, length + count);
+            text = Arrays.copyOf(text, capacity);
+            glyphs = Arrays.copyOf(glyphs, capacity);
+            charFonts = Arrays.copyOf(charFonts, capacity);
+            advances = Arrays.copyOf(advances, capacity);
+            runs = Arrays.copyOf(runs, capacity);
+        }
+    }
+
+    /**
+     * Оформление абзаца, от которого зависит раскладка: кегль и начертание текста.
+     * Отступы и интервалы абзаца раскладку не меняют — их учитывает {@link PdfWriter}.
+     */
+    static final class Style {
+
+        final float size;
+
+        final boolean bold;
+
+        final boolean italic;
+
+        final boolean mono;
+
+        Style(float size, boolean bold, boolean italic, boolean mono) {
+            this.size = size;
+            this.bold = bold;
+            this.italic = italic;
+            this.mono = mono;
+        }
+    }
+
+    /**
+     * Оформление участка текста.
+     */
+    private static final class Run {
+
+        final int face;
+
+        final float size;
+
+        final float rise;
+
+        final int color;
+
+        final int flags;
+
+        final String href;
+
+        Run(int face, float size, float rise, int color, int flags, String href) {
+            this.face = face;
+            this.size = size;
+            this.rise = rise;
+            this.color = color;
+            this.flags = flags;
+            this.href = href;
+        }
+    }
+
+    /**
+     * Кусок строки одного шрифта и оформления.
+     */
+    static final class Piece {
+
+        static final int UNDERLINE = 1;
+
+        static final int STRIKE = 2;
+
+        static final int SYNTHETIC_BOLD = 4;
+
+        static final int SYNTHETIC_ITALIC = 8;
+
+        /**
+         * Номер шрифта в {@link PdfFonts#fonts()}.
+         */
+        final int font;
+
+        final float size;
+
+        /**
+         * Смещение базовой линии вверх (верхний индекс) или вниз.
+         */
+        final float rise;
+
+        /**
+         * Цвет {@code 0xRRGGBB} или -1 — цвет по умолчанию.
+         */
+        final int color;
+
+        final int flags;
+
+        /**
+         * Адрес ссылки или null.
+         */
+        final String href;
+
+        /**
+         * Начало куска от левого края строки.
+         */
+        final float x;
+
+        final float width;
+
+        /**
+         * Глифы куска в {@link Paragraph#glyphs}.
+         */
+        final int from;
+
+        final int to;
+
+        private Piece(Run run, int font, float x, float width, int from, int to) {
+            this.font = font;
+            this.size = run.size;
+            this.rise = run.rise;
+            this.color = run.color;
+            this.flags = run.flags;
+            this.href = run.href;
+            this.x = x;
+            this.width = width;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * Разложенный абзац: строки из кусков. Неизменяем.
+     */
+    static final class Paragraph {
+
+        /**
+         * Оформление и ширина, для которых абзац разложен.
+         */
+        final Style style;
+
+        final float width;
+
+        /**
+         * Глифы всех кусков подряд.
+         */
+        final char[] glyphs;
+
+        final Piece[] pieces;
+
+        /**
+         * Первый кусок каждой строки; последний элемент — число кусков.
+         */
+        private final int[] lineStarts;
+
+        private final float[] ascents;
+
+        private final float[] descents;
+
+        /**
+         * Добавка к каждому пробелу строки при выравнивании по ширине.
+         */
+        private final float[] justify;
+
+        private final float height;
+
+        private Paragraph(PdfLayout layout) {
+            style = layout.style;
+            width = layout.width;
+            glyphs = Arrays.copyOf(layout.glyphOut, layout.glyphCount);
+            pieces = layout.pieces.toArray(new Piece[0]);
+            int count = layout.lines.size();
+            lineStarts = new int[count + 1];
+            ascents = new float[count];
+            descents = new float[count];
+            justify = new float[count];
+            float total = 0;
+            for (int i = 0; i < count; i++) {
+                float[] line = layout.lines.get(i);
+                lineStarts[i] = layout.lineStarts.get(i);
+                ascents[i] = line[0];
+                descents[i] = line[1];
+                justify[i] = line[2];
+                total += line[0] + line[1];
+            }
+            lineStarts[count] = pieces.length;
+            height = total;
+        }
+
+        int lines() {
+            return ascents.length;
+        }
+
+        /**
+         * Куски строки: с {@code firstPiece(line)} до {@code firstPiece(line + 1)}.
+         *
+         * @param line номер строки
+         * @return номер первого куска
+         */
+        int firstPiece(int line) {
+            return lineStarts[line];
+        }
+
+        float ascent(int line) {
+            return ascents[line];
+        }
+
+        float lineHeight(int line) {
+            return ascents[line] + descents[line];
+        }
+
+        float justify(int line) {
+            return justify[line];
+        }
+
+        /**
+         * Высота всех строк.
+         *
+         * @return высота в пунктах
+         */
+        float height() {
+            return height;
+        }
+
+        /**
+         * Ширина самой длинной строки (для маркеров и номеров страниц).
+         *
+         * @return ширина в пунктах
+         */
+        float textWidth() {
+            float max = 0;
+            for (Piece piece : pieces) {
+                max = Math.max(max, piece.x + piece.width);
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Раскладка документа, сохраняемая между экспортами в PDF ({@link PdfWriter}).
+ *
+ * <p>Хранятся разложенные абзацы ({@link PdfLayout.Paragraph}) по элементам и готовые
+ * страницы прошлого экспорта. Кеш подключается к документу и по его событиям забывает
+ * только абзацы, задетые правкой ({@link ElementChanges}), — как {@link HeadingIndex}.
+ * Поэтому после небольшой правки повторный экспорт заново раскладывает один абзац,
+ * а страница, на которой остались те же строки тех же абзацев в тех же местах,
+ * берётся из прошлого экспорта готовой, без отрисовки и сжатия.</p>
+ *
+ * <p>Правки приходят в потоке событий, экспорт идёт в фоне под блокировкой чтения
+ * документа; методы кеша синхронизированы.</p>
+ */
+public final class PdfLayoutCache implements DocumentListener {
+
+    /**
+     * Абзацы по элементам; элементы, удалённые из документа, выпадают сами.
+     */
+    private final Map<Element, PdfLayout.Paragraph> paragraphs = new WeakHashMap<>();
+
+    /**
+     * Страницы прошлого экспорта по номеру.
+     */
+    private final List<Page> pages = new ArrayList<>();
+
+    private Document document;
+
+    /**
+     * Подключает кеш к документу; прежнее содержимое забывается.
+     *
+     * @param doc документ; null — только отключить
+     */
+    public synchronized void setDocument(Document doc) {
+        if (document != null) {
+            document.removeDocumentListener(this);
+        }
+        document = doc;
+        paragraphs.clear();
+        pages.clear();
+        if (doc != null) {
+            doc.addDocumentListener(this);
+        }
+    }
+
+    /**
+     * Возвращает документ кеша.
+     *
+     * @return документ или null
+     */
+    public synchronized Document getDocument() {
+        return document;
+    }
+
+    /**
+     * Разложенный абзац, если он не менялся с прошлой раскладки и разложен с тем же
+     * оформлением и шириной.
+     *
+     * @param paragraph элемент абзаца
+     * @param style     оформление
+     * @param width     ширина строки
+     * @return раскладка или null
+     */
+    synchronized PdfLayout.Paragraph get(Element paragraph, PdfLayout.Style style, float width) {
+        PdfLayout.Paragraph layout = paragraphs.get(paragraph);
+        return layout != null && layout.style == style && layout.width == width ? layout : null;
+    }
+
+    synchronized void put(Element paragraph, PdfLayout.Paragraph layout) {
+        paragraphs.put(paragraph, layout);
+    }
+
+    /**
+     * Страница прошлого экспорта.
+     *
+     * @param index номер страницы с нуля
+     * @return страница или null
+     */
+    synchronized Page page(int index) {
+        return index < pages.size() ? pages.get(index) : null;
+    }
+
+    synchronized void setPage(int index, Page page) {
+        while (pages.size() <= index) {
+            pages.add(null);
+        }
+        pages.set(index, page);
+    }
+
+    /**
+     * Забывает страницы после последней страницы экспорта.
+     *
+     * @param count число страниц
+     */
+    synchronized void setPageCount(int count) {
+        while (pages.size() > count) {
+            pages.remove(pages.size() - 1);
+        }
+    }
+
+    @Override
+    public synchronized void insertUpdate(DocumentEvent e) {
+        forget(ElementChanges.of(e, document).paragraphs);
+    }
+
+    @Override
+    public synchronized void removeUpdate(DocumentEvent e) {
+        forget(ElementChanges.of(e, document).paragraphs);
+    }
+
+    @Override
+    public synchronized void changedUpdate(DocumentEvent e) {
+        forget(ElementChanges.paragraphs(document, e.getOffset(), e.getOffset() + e.getLength()));
+    }
+
+    private void forget(List<Element> changed) {
+        for (Element paragraph : changed) {
+            paragraphs.remove(paragraph);
+        }
+    }
+
+    /**
+     * Отрисованная страница: что на ней стоит и готовый сжатый поток её содержимого.
+     */
+    static final class Page {
+
+        /**
+         * Что стоит на странице ({@link PdfWriter}); страница годится повторно, если
+         * при новом экспорте на ней стоит то же самое.
+         */
+        final List<Object> placements;
+
+        /**
+         * Поток содержимого, сжатый Deflate.
+         */
+        final byte[] content;
+
+        /**
+         * Области ссылок: по четыре числа (x1, y1, x2, y2) на адрес из {@link #links}.
+         */
+        final float[] linkAreas;
+
+        final String[] links;
+
+        Page(List<Object> placements, byte[] content, float[] linkAreas, String[] links) {
+            this.placements = placements;
+            this.content = content;
+            this.linkAreas = linkAreas;
+            this.links = links;
+        }
+    }
+}
@@ -0,0 +1,1425 @@
+package com.example;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLDocument;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.Deflater;
+
+/**
+ * Экспорт документа в PDF со своей вёрсткой страниц, без драйвера принтера и сторонних библиотек.
+ *
+ * <p>Абзацы раскладываются по строкам ({@link PdfLayout}) и расставляются по страницам A4
+ * с теми же полями, что у {@link RtfWriter}. Каждая страница пишется в файл, как только
+ * заполнена: поток её содержимого, ссылки, сама страница. В конце файла — встроенные
+ * шрифты: из каждого {@link TrueTypeFont} остаются только использованные глифы, текст
+ * кодируется номерами глифов ({@code Identity-H}), а таблица {@code ToUnicode} позволяет
+ * искать и копировать текст. Заголовки попадают в закладки PDF.</p>
+ *
+ * <p>Раскладка абзацев и готовые страницы хранятся в {@link PdfLayoutCache} между
+ * экспортами одного документа: после правки заново раскладываются только изменённые
+ * абзацы, а страницы, содержимое которых не сдвинулось, переносятся в новый файл
+ * без отрисовки и сжатия.</p>
+ *
+ * <p>Переносятся абзацы, заголовки H1–H6, списки, цитаты, преформатированный текст,
+ * таблицы (вложенные таблицы сливаются с внешней), выравнивание, ссылки с адресом
+ * и оформление текста: полужирный, курсив, подчёркивание, зачёркивание, индексы, цвет.</p>
+ */
+public final class PdfWriter {
+
+    /**
+     * Размер страницы A4 в пунктах.
+     */
+    private static final float PAGE_WIDTH = 595.28f;
+
+    private static final float PAGE_HEIGHT = 841.89f;
+
+    /**
+     * Поля страницы: 3 и 1,5 см слева и справа, 2 см сверху и снизу, как в {@link RtfWriter}.
+     */
+    private static final float LEFT = 85.05f;
+
+    private static final float RIGHT = 42.5f;
+
+    private static final float TOP = 56.7f;
+
+    private static final float BOTTOM = 56.7f;
+
+    private static final float TEXT_WIDTH = PAGE_WIDTH - LEFT - RIGHT;
+
+    private static final float TEXT_HEIGHT = PAGE_HEIGHT - TOP - BOTTOM;
+
+    /**
+     * Интервалы: после абзаца и перед заголовком, в пунктах.
+     */
+    private static final float SPACE_AFTER = 6;
+
+    private static final float HEADING_SPACE_BEFORE = 12;
+
+    /**
+     * Отступ уровня списка и цитаты; маркер пункта стоит в отступе с зазором до текста.
+     */
+    private static final float INDENT = 36;
+
+    private static final float MARKER_GAP = 6;
+
+    private static final int LIST_LEVELS = 9;
+
+    private static final float CELL_PADDING = 5.4f;
+
+    private static final float BORDER_WIDTH = 0.5f;
+
+    private static final float FOOTER_SIZE = 9;
+
+    private static final int FOOTER_COLOR = 0x666666;
+
+    private static final PdfLayout.Style BODY = new PdfLayout.Style(12, false, false, false);
+
+    private static final PdfLayout.Style QUOTE = new PdfLayout.Style(12, false, true, false);
+
+    private static final PdfLayout.Style PRE = new PdfLayout.Style(10, false, false, true);
+
+    /**
+     * Заголовки H1–H6: полужирные, кегли как у {@link RtfWriter} и {@link DocxWriter}.
+     */
+    private static final PdfLayout.Style[] HEADINGS = {
+        new PdfLayout.Style(24, true, false, false), new PdfLayout.Style(18, true, false, false),
+        new PdfLayout.Style(14, true, false, false), new PdfLayout.Style(12, true, false, false),
+        new PdfLayout.Style(10, true, false, false), new PdfLayout.Style(8, true, false, false),
+    };
+
+    /**
+     * Наклон имитированного курсива: тангенс 12°.
+     */
+    private static final float SKEW = 0.2126f;
+
+    /**
+     * Толщина обводки имитированного полужирного в долях кегля.
+     */
+    private static final float BOLD_STROKE = 0.03f;
+
+    /**
+     * Номера объектов: каталог, дерево страниц, затем по {@value #FONT_OBJECTS} на шрифт.
+     */
+    private static final int CATALOG = 1;
+
+    private static final int PAGES = 2;
+
+    private static final int FIRST_FONT = 3;
+
+    private static final int FONT_OBJECTS = 5;
+
+    private final HTMLDocument doc;
+
+    private final PdfLayoutCache cache;
+
+    private final PdfFonts fonts;
+
+    private final PdfLayout layout;
+
+    private final Output out;
+
+    private final Deflater deflater = new Deflater();
+
+    /**
+     * Использованные глифы по шрифтам.
+     */
+    private final BitSet[] glyphs;
+
+    /**
+     * Смещения объектов в файле по номеру.
+     */
+    private long[] offsets = new long[256];
+
+    private int nextObject;
+
+    private final List<Integer> pageObjects = new ArrayList<>();
+
+    private final List<Heading> headings = new ArrayList<>();
+
+    /**
+     * Что стоит на заполняемой странице и сколько её высоты занято.
+     */
+    private List<Object> placements = new ArrayList<>();
+
+    private float y;
+
+    /**
+     * Интервал после последнего блока: добавляется, если следом на той же странице что-то будет.
+     */
+    private float spaceAfter;
+
+    private int reusedPages;
+
+    private int listDepth;
+
+    /**
+     * Номер последнего пункта нумерованного списка на каждом уровне; -1 — маркированный список.
+     */
+    private final int[] counters = new int[LIST_LEVELS];
+
+    private boolean itemStarted;
+
+    private int quoteDepth;
+
+    private int preDepth;
+
+    private int tableDepth;
+
+    /**
+     * Колонка, в которую идут абзацы: вся ширина текста или ячейка таблицы.
+     */
+    private float columnX;
+
+    private float columnWidth = TEXT_WIDTH;
+
+    /**
+     * Блоки ячейки таблицы; null — блоки сразу расставляются по страницам.
+     */
+    private List<Block> collector;
+
+    private PdfWriter(HTMLDocument doc, OutputStream out, PdfFonts fonts, PdfLayoutCache cache) {
+        this.doc = doc;
+        this.cache = cache;
+        this.fonts = fonts;
+        this.out = new Output(out);
+        layout = new PdfLayout(fonts, doc.getStyleSheet());
+        glyphs = new BitSet[fonts.fonts().size()];
+        for (int i = 0; i < glyphs.length; i++) {
+            glyphs[i] = new BitSet();
+        }
+        nextObject = FIRST_FONT + FONT_OBJECTS * glyphs.length;
+    }
+
+    /**
+     * Атомарно сохраняет документ в файл PDF.
+     *
+     * @param doc    документ
+     * @param target путь к файлу
+     * @param saver  атомарная запись
+     * @param cache  раскладка прошлых экспортов этого документа или null
+     * @throws IOException при ошибке записи или если в системе нет подходящего шрифта;
+     *                     прежнее содержимое файла в этом случае сохраняется
+     */
+    public static void save(HTMLDocument doc, Path target, AtomicFileSaver saver, PdfLayoutCache cache)
+            throws IOException {
+        saver.save(target, channel -> write(doc, Channels.newOutputStream(channel), cache));
+    }
+
+    /**
+     * Записывает документ в поток как PDF под блокировкой чтения документа. Поток не закрывается.
+     *
+     * @param doc   документ
+     * @param out   приёмник
+     * @param cache раскладка прошлых экспортов; используется, только если подключена
+     *              к этому документу ({@link PdfLayoutCache#setDocument})
+     * @return число страниц
+     * @throws IOException при ошибке записи или если в системе нет подходящего шрифта
+     */
+    public static int write(HTMLDocument doc, OutputStream out, PdfLayoutCache cache) throws IOException {
+        PdfFonts fonts = PdfFonts.get();
+        PdfWriter writer = new PdfWriter(doc, out, fonts,
+                cache != null && cache.getDocument() == doc ? cache : new PdfLayoutCache());
+        IOException[] failure = new IOException[1];
+        doc.render(() -> {
+            try {
+                writer.document();
+            } catch (IOException e) {
+                failure[0] = e;
+            } catch (BadLocationException e) {
+                failure[0] = new IOException("Повреждённая структура документа: " + e.getMessage(), e);
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        writer.out.flush();
+        return writer.pageObjects.size();
+    }
+
+    private void document() throws IOException, BadLocationException {
+        out.write("%PDF-1.4\n%âãÏÓ\n");
+        block(doc.getDefaultRootElement());
+        finishPage();
+        cache.setPageCount(pageObjects.size());
+        for (int i = 0; i < glyphs.length; i++) {
+            font(i);
+        }
+        int outlines = outlines();
+        Bytes pages = new Bytes(64 + pageObjects.size() * 8);
+        pages.append("<< /Type /Pages /Count ").append(pageObjects.size()).append(" /Kids [");
+        for (int page : pageObjects) {
+            pages.append(page).append(" 0 R ");
+        }
+        pages.append("] >>");
+        object(PAGES, pages);
+        Bytes catalog = new Bytes(128).append("<< /Type /Catalog /Pages ").append(PAGES).append(" 0 R");
+        if (outlines > 0) {
+            catalog.append(" /Outlines ").append(outlines).append(" 0 R /PageMode /UseOutlines");
+        }
+        object(CATALOG, catalog.append(" >>"));
+        long xref = out.position();
+        Bytes table = new Bytes(64 + nextObject * 20);
+        table.append("xref\n0 ").append(nextObject).append("\n0000000000 65535 f \n");
+        for (int i = 1; i < nextObject; i++) {
+            String offset = Long.toString(offsets[i]);
+            for (int pad = offset.length(); pad < 10; pad++) {
+                table.append('0');
+            }
+            table.append(offset).append(" 00000 n \n");
+        }
+        table.append("trailer\n<< /Size ").append(nextObject).append(" /Root ").append(CATALOG)
+                .append(" 0 R >>\nstartxref\n").append(Long.toString(xref)).append("\n%%EOF\n");
+        out.write(table);
+    }
+
+    /**
+     * Обходит блок и всё, что в нём.
+     */
+    private void block(Element element) throws IOException, BadLocationException {
+        Object tag = element.getAttributes().getAttribute(StyleConstants.NameAttribute);
+        if (tag == HTML.Tag.HEAD) {
+            return;
+        }
+        if (!ElementChanges.hasBlocks(element)) {
+            if (element != doc.getDefaultRootElement()) {
+                paragraph(element);
+            }
+            return;
+        }
+        if (tag == HTML.Tag.TABLE && tableDepth == 0 && table(element)) {
+            return;
+        }
+        boolean list = tag == HTML.Tag.UL || tag == HTML.Tag.OL;
+        if (list) {
+            if (listDepth < LIST_LEVELS) {
+                counters[listDepth] = tag == HTML.Tag.UL ? -1
+                        : Math.max(1, TextStyle.number(element.getAttributes().getAttribute(HTML.Attribute.START))) - 1;
+            }
+            listDepth++;
+        } else if (tag == HTML.Tag.LI) {
+            if (listDepth > 0 && listDepth <= LIST_LEVELS && counters[listDepth - 1] >= 0) {
+                counters[listDepth - 1]++;
+            }
+            itemStarted = true;
+        } else if (tag == HTML.Tag.BLOCKQUOTE) {
+            quoteDepth++;
+        } else if (tag == HTML.Tag.PRE) {
+            preDepth++;
+        }
+        for (int i = 0, n = element.getElementCount(); i < n; i++) {
+            block(element.getElement(i));
+        }
+        if (list) {
+            listDepth--;
+        } else if (tag == HTML.Tag.LI) {
+            itemStarted = false;
+        } else if (tag == HTML.Tag.BLOCKQUOTE) {
+            quoteDepth--;
+        } else if (tag == HTML.Tag.PRE) {
+            preDepth--;
+        }
+    }
+
+    /**
+     * Раскладывает абзац (или берёт раскладку из кеша) и отдаёт его на страницу или в ячейку.
+     */
+    private void paragraph(Element paragraph) throws IOException, BadLocationException {
+        int level = HeadingIndex.level(paragraph);
+        PdfLayout.Style style;
+        if (level > 0) {
+            style = HEADINGS[level - 1];
+        } else if (preDepth > 0 || paragraph.getAttributes().getAttribute(StyleConstants.NameAttribute) == HTML.Tag.PRE) {
+            style = PRE;
+        } else {
+            style = quoteDepth > 0 ? QUOTE : BODY;
+        }
+        float left = 0;
+        float right = 0;
+        if (listDepth > 0) {
+            left = INDENT * Math.min(listDepth, LIST_LEVELS);
+        } else if (quoteDepth > 0) {
+            left = INDENT;
+            right = INDENT;
+        }
+        float width = Math.max(style.size, columnWidth - left - right);
+        PdfLayout.Paragraph laid = cache.get(paragraph, style, width);
+        if (laid == null) {
+            laid = layout.layout(doc, paragraph, style, width);
+            cache.put(paragraph, laid);
+        }
+        String marker = null;
+        if (itemStarted) {
+            int counter = counters[Math.min(listDepth, LIST_LEVELS) - 1];
+            marker = counter < 0 ? "•" : counter + ".";
+            itemStarted = false;
+        }
+        Block block = new Block(laid, columnX + left, level > 0 ? HEADING_SPACE_BEFORE : 0,
+                style == PRE ? 0 : SPACE_AFTER, marker, level > 0);
+        if (collector != null) {
+            collector.add(block);
+            return;
+        }
+        if (level > 0) {
+            headings.add(new Heading(level, text(paragraph)));
+        }
+        place(block);
+    }
+
+    /**
+     * Ставит блок на страницы, начиная новую, когда строка не помещается. Первые две
+     * строки абзаца не разделяются, а заголовок не остаётся внизу страницы без текста.
+     */
+    private void place(Block block) throws IOException {
+        PdfLayout.Paragraph paragraph = block.paragraph;
+        int lines = paragraph.lines();
+        float gap = y == 0 ? 0 : spaceAfter + block.before;
+        float needed = block.keepWithNext ? paragraph.height() + BODY.size * 2
+                : paragraph.lineHeight(0) + (lines > 1 ? paragraph.lineHeight(1) : 0);
+        if (y > 0 && y + gap + needed > TEXT_HEIGHT) {
+            newPage();
+            gap = 0;
+        }
+        y += gap;
+        if (block.keepWithNext && !headings.isEmpty() && headings.get(headings.size() - 1).page < 0) {
+            Heading heading = headings.get(headings.size() - 1);
+            heading.page = pageObjects.size();
+            heading.top = y;
+        }
+        int from = 0;
+        float top = y;
+        for (int line = 0; line < lines; line++) {
+            float height = paragraph.lineHeight(line);
+            if (y + height > TEXT_HEIGHT && y > top) {
+                addLines(block, from, line, top);
+                newPage();
+                from = line;
+                top = 0;
+            }
+            y += height;
+        }
+        addLines(block, from, lines, top);
+        spaceAfter = block.after;
+    }
+
+    private void addLines(Block block, int from, int to, float top) {
+        placements.add(new Lines(block.paragraph, from, to, block.x, top));
+        if (from == 0 && block.marker != null) {
+            placements.add(new Marker(block.marker, block.paragraph.style.size, block.x - MARKER_GAP,
+                    top + block.paragraph.ascent(0)));
+        }
+    }
+
+    /**
+     * Ставит таблицу по строкам: строка таблицы не делится между страницами. Строка выше
+     * страницы выводится содержимым ячеек подряд, без рамок.
+     *
+     * @return false, если в таблице нет ни одной ячейки (тогда её содержимое выводится как обычные блоки)
+     */
+    private boolean table(Element table) throws IOException, BadLocationException {
+        int columns = 0;
+        for (int i = 0, n = table.getElementCount(); i < n; i++) {
+            columns = Math.max(columns, columns(table.getElement(i)));
+        }
+        if (columns == 0) {
+            return false;
+        }
+        float column = columnWidth / columns;
+        for (int i = 0, n = table.getElementCount(); i < n; i++) {
+            Element row = table.getElement(i);
+            if (columns(row) == 0) {
+                continue;
+            }
+            List<List<Block>> cells = new ArrayList<>();
+            List<float[]> bounds = new ArrayList<>();
+            float x = columnX;
+            float height = 0;
+            for (int j = 0, m = row.getElementCount(); j < m; j++) {
+                Element cell = row.getElement(j);
+                if (!isCell(cell)) {
+                    continue;
+                }
+                float width = column * span(cell);
+                List<Block> blocks = cell(cell, x + CELL_PADDING, width - 2 * CELL_PADDING);
+                cells.add(blocks);
+                bounds.add(new float[] {x, width});
+                height = Math.max(height, cellHeight(blocks));
+                x += width;
+            }
+            if (collector != null) {
+                // Таблица внутри ячейки: её ячейки идут подряд
+                for (List<Block> blocks : cells) {
+                    collector.addAll(blocks);
+                }
+                continue;
+            }
+            if (height > TEXT_HEIGHT) {
+                for (List<Block> blocks : cells) {
+                    for (Block block : blocks) {
+                        place(block);
+                    }
+                }
+                continue;
+            }
+            float gap = y == 0 ? 0 : spaceAfter;
+            if (y > 0 && y + gap + height > TEXT_HEIGHT) {
+                newPage();
+                gap = 0;
+            }
+            y += gap;
+            for (int c = 0; c < cells.size(); c++) {
+                float top = y + CELL_PADDING;
+                float previousAfter = 0;
+                boolean first = true;
+                for (Block block : cells.get(c)) {
+                    top += first ? 0 : previousAfter + block.before;
+                    addLines(block, 0, block.paragraph.lines(), top);
+                    top += block.paragraph.height();
+                    previousAfter = block.after;
+                    first = false;
+                }
+                placements.add(new Box(bounds.get(c)[0], y, bounds.get(c)[1], height));
+            }
+            y += height;
+            spaceAfter = 0;
+        }
+        spaceAfter = SPACE_AFTER;
+        return true;
+    }
+
+    /**
+     * Раскладывает содержимое ячейки в её колонку.
+     */
+    private List<Block> cell(Element cell, float x, float width) throws IOException, BadLocationException {
+        List<Block> saved = collector;
+        float savedX = columnX;
+        float savedWidth = columnWidth;
+        // Список, в котором стоит таблица, внутри ячеек не продолжается
+        int depth = listDepth;
+        boolean item = itemStarted;
+        List<Block> blocks = new ArrayList<>();
+        collector = blocks;
+        columnX = x;
+        columnWidth = Math.max(1, width);
+        listDepth = 0;
+        itemStarted = false;
+        tableDepth++;
+        block(cell);
+        tableDepth--;
+        collector = saved;
+        columnX = savedX;
+        columnWidth = savedWidth;
+        listDepth = depth;
+        itemStarted = item;
+        return blocks;
+    }
+
+    private static float cellHeight(List<Block> blocks) {
+        float height = 2 * CELL_PADDING;
+        float previousAfter = 0;
+        boolean first = true;
+        for (Block block : blocks) {
+            height += (first ? 0 : previousAfter + block.before) + block.paragraph.height();
+            previousAfter = block.after;
+            first = false;
+        }
+        return height;
+    }
+
+    /**
+     * Число столбцов строки таблицы с учётом объединённых ячеек (0, если это не строка).
+     */
+    private static int columns(Element row) {
+        if (row.getAttributes().getAttribute(StyleConstants.NameAttribute) != HTML.Tag.TR) {
+            return 0;
+        }
+        int columns = 0;
+        for (int i = 0, n = row.getElementCount(); i < n; i++) {
+            Element cell = row.getElement(i);
+            if (isCell(cell)) {
+                columns += span(cell);
+            }
+        }
+        return columns;
+    }
+
+    private static int span(Element cell) {
+        return Math.max(1, TextStyle.number(cell.getAttributes().getAttribute(HTML.Attribute.COLSPAN)));
+    }
+
+    private static boolean isCell(Element cell) {
+        Object tag = cell.getAttributes().getAttribute(StyleConstants.NameAttribute);
+        return tag == HTML.Tag.TD || tag == HTML.Tag.TH;
+    }
+
+    /**
+     * Текст заголовка для закладки.
+     */
+    private String text(Element paragraph) throws BadLocationException {
+        int start = paragraph.getStartOffset();
+        int end = Math.min(paragraph.getEndOffset(), doc.getLength());
+        return doc.getText(start, Math.max(0, end - start)).replaceAll("\\s+", " ").trim();
+    }
+
+    private void newPage() throws IOException {
+        finishPage();
+        placements = new ArrayList<>();
+        y = 0;
+    }
+
+    /**
+     * Пишет заполненную страницу. Если на странице с тем же номером в прошлом экспорте
+     * стояло то же самое, её поток содержимого берётся готовым.
+     */
+    private void finishPage() throws IOException {
+        int index = pageObjects.size();
+        BitSet pageFonts = markGlyphs(placements);
+        PdfLayoutCache.Page page = cache.page(index);
+        if (page != null && page.placements.equals(placements)) {
+            reusedPages++;
+        } else {
+            page = render(index);
+            cache.setPage(index, page);
+        }
+
+        int contents = nextObject++;
+        Bytes header = new Bytes(64).append("<< /Length ").append(page.content.length)
+                .append(" /Filter /FlateDecode >>\nstream\n");
+        begin(contents);
+        out.write(header);
+        out.write(page.content, 0, page.content.length);
+        out.write("\nendstream\nendobj\n");
+
+        int[] annotations = new int[page.links.length];
+        for (int i = 0; i < annotations.length; i++) {
+            annotations[i] = nextObject++;
+            Bytes link = new Bytes(128).append("<< /Type /Annot /Subtype /Link /Rect [");
+            for (int k = 0; k < 4; k++) {
+                link.append(k > 0 ? " " : "").number(page.linkAreas[i * 4 + k]);
+            }
+            link.append("] /Border [0 0 0] /A << /S /URI /URI ");
+            uri(link, page.links[i]);
+            object(annotations[i], link.append(" >> >>"));
+        }
+
+        int object = nextObject++;
+        Bytes dictionary = new Bytes(256).append("<< /Type /Page /Parent ").append(PAGES)
+                .append(" 0 R /MediaBox [0 0 ").number(PAGE_WIDTH).append(' ').number(PAGE_HEIGHT)
+                .append("] /Resources << /Font <<");
+        for (int font = pageFonts.nextSetBit(0); font >= 0; font = pageFonts.nextSetBit(font + 1)) {
+            dictionary.append(" /F").append(font).append(' ').append(FIRST_FONT + font * FONT_OBJECTS).append(" 0 R");
+        }
+        dictionary.append(" >> >> /Contents ").append(contents).append(" 0 R");
+        if (annotations.length > 0) {
+            dictionary.append(" /Annots [");
+            for (int annotation : annotations) {
+                dictionary.append(annotation).append(" 0 R ");
+            }
+            dictionary.append(']');
+        }
+        object(object, dictionary.append(" >>"));
+        pageObjects.add(object);
+    }
+
+    /**
+     * Отмечает глифы, которые стоят на странице (в том числе на взятой из кеша).
+     *
+     * @return шрифты страницы
+     */
+    private BitSet markGlyphs(List<Object> page) {
+        BitSet pageFonts = new BitSet();
+        for (Object placement : page) {
+            if (placement instanceof Lines) {
+                Lines lines = (Lines) placement;
+                PdfLayout.Paragraph paragraph = lines.paragraph;
+                mark(paragraph, paragraph.firstPiece(lines.from), paragraph.firstPiece(lines.to), pageFonts);
+            } else if (placement instanceof Marker) {
+                Marker marker = (Marker) placement;
+                PdfLayout.Paragraph label = layout.label(marker.text, PdfFonts.REGULAR, marker.size, -1);
+                mark(label, 0, label.pieces.length, pageFonts);
+            }
+        }
+        PdfLayout.Paragraph number = pageNumber(pageObjects.size());
+        mark(number, 0, number.pieces.length, pageFonts);
+        return pageFonts;
+    }
+
+    private void mark(PdfLayout.Paragraph paragraph, int fromPiece, int toPiece, BitSet pageFonts) {
+        for (int p = fromPiece; p < toPiece; p++) {
+            PdfLayout.Piece piece = paragraph.pieces[p];
+            pageFonts.set(piece.font);
+            BitSet used = glyphs[piece.font];
+            for (int g = piece.from; g < piece.to; g++) {
+                used.set(paragraph.glyphs[g]);
+            }
+        }
+    }
+
+    private PdfLayout.Paragraph pageNumber(int index) {
+        return layout.label(Integer.toString(index + 1), PdfFonts.REGULAR, FOOTER_SIZE, FOOTER_COLOR);
+    }
+
+    /**
+     * Отрисовывает страницу: весь текст одним текстовым объектом, затем линии
+     * (подчёркивания, зачёркивания, рамки ячеек).
+     */
+    private PdfLayoutCache.Page render(int index) {
+        Canvas canvas = new Canvas();
+        for (Object placement : placements) {
+            if (placement instanceof Lines) {
+                Lines lines = (Lines) placement;
+                PdfLayout.Paragraph paragraph = lines.paragraph;
+                float top = lines.top;
+                for (int line = lines.from; line < lines.to; line++) {
+                    float baseline = PAGE_HEIGHT - TOP - top - paragraph.ascent(line);
+                    canvas.line(paragraph, line, LEFT + lines.x, baseline);
+                    top += paragraph.lineHeight(line);
+                }
+            } else if (placement instanceof Marker) {
+                Marker marker = (Marker) placement;
+                PdfLayout.Paragraph label = layout.label(marker.text, PdfFonts.REGULAR, marker.size, -1);
+                canvas.line(label, 0, LEFT + marker.right - label.textWidth(), PAGE_HEIGHT - TOP - marker.baseline);
+            } else {
+                Box box = (Box) placement;
+                canvas.box(LEFT + box.x, PAGE_HEIGHT - TOP - box.top - box.height, box.width, box.height);
+            }
+        }
+        PdfLayout.Paragraph number = pageNumber(index);
+        canvas.line(number, 0, LEFT + (TEXT_WIDTH - number.textWidth()) / 2, BOTTOM / 2);
+        return new PdfLayoutCache.Page(placements, deflate(canvas.finish()), canvas.linkAreas(),
+                canvas.links.toArray(new String[0]));
+    }
+
+    /**
+     * Пишет шрифт: составной шрифт {@code Type0}, шрифт CID, описание шрифта, подмножество
+     * файла шрифта и таблицу {@code ToUnicode}. Неиспользованный шрифт заменяется пустыми объектами.
+     */
+    private void font(int index) throws IOException {
+        int first = FIRST_FONT + index * FONT_OBJECTS;
+        BitSet used = glyphs[index];
+        if (used.isEmpty()) {
+            for (int i = 0; i < FONT_OBJECTS; i++) {
+                object(first + i, new Bytes(4).append("null"));
+            }
+            return;
+        }
+        TrueTypeFont font = fonts.fonts().get(index);
+        float scale = 1000f / font.getUnitsPerEm();
+        // Метка подмножества: шесть заглавных букв, зависящих от набора глифов
+        StringBuilder tag = new StringBuilder();
+        int hash = used.hashCode() * 31 + index;
+        for (int i = 0; i < 6; i++) {
+            tag.append((char) ('A' + Math.floorMod(hash, 26)));
+            hash /= 26;
+        }
+        String name = tag + "+" + font.getName();
+
+        object(first, new Bytes(256).append("<< /Type /Font /Subtype /Type0 /BaseFont /").append(name)
+                .append(" /Encoding /Identity-H /DescendantFonts [").append(first + 1)
+                .append(" 0 R] /ToUnicode ").append(first + 4).append(" 0 R >>"));
+
+        Bytes cid = new Bytes(1024).append("<< /Type /Font /Subtype /CIDFontType2 /BaseFont /").append(name)
+                .append(" /CIDSystemInfo << /Registry (Adobe) /Ordering (Identity) /Supplement 0 >> /FontDescriptor ")
+                .append(first + 2).append(" 0 R /CIDToGIDMap /Identity /W [");
+        for (int g = used.nextSetBit(0); g >= 0; ) {
+            int end = used.nextClearBit(g);
+            cid.append(g).append(" [");
+            for (int k = g; k < end; k++) {
+                cid.number(font.advance(k) * scale).append(' ');
+            }
+            cid.append("] ");
+            g = used.nextSetBit(end);
+        }
+        object(first + 1, cid.append("] >>"));
+
+        int[] bbox = font.getBoundingBox();
+        int flags = 32 | (font.isFixedPitch() ? 1 : 0) | (font.getItalicAngle() != 0 ? 64 : 0);
+        Bytes descriptor = new Bytes(256).append("<< /Type /FontDescriptor /FontName /").append(name)
+                .append(" /Flags ").append(flags).append(" /FontBBox [");
+        for (int k = 0; k < bbox.length; k++) {
+            descriptor.append(k > 0 ? " " : "").number(bbox[k] * scale);
+        }
+        descriptor.append("] /ItalicAngle ").append(font.getItalicAngle())
+                .append(" /Ascent ").number(font.getAscent() * scale)
+                .append(" /Descent ").number(-font.getDescent() * scale)
+                .append(" /CapHeight ").number(font.getCapHeight() * scale)
+                .append(" /StemV 80 /FontFile2 ").append(first + 3).append(" 0 R >>");
+        object(first + 2, descriptor);
+
+        byte[] subset = font.subset(used);
+        stream(first + 3, deflate(new Bytes(subset)), " /Length1 " + subset.length);
+
+        int[] codePoints = font.codePoints(used);
+        Bytes cmap = new Bytes(4096).append("/CIDInit /ProcSet findresource begin\n12 dict begin\nbegincmap\n"
+                + "/CIDSystemInfo << /Registry (Adobe) /Ordering (UCS) /Supplement 0 >> def\n"
+                + "/CMapName /Adobe-Identity-UCS def\n/CMapType 2 def\n"
+                + "1 begincodespacerange\n<0000> <FFFF>\nendcodespacerange\n");
+        int[] mapped = new int[100];
+        int count = 0;
+        for (int g = used.nextSetBit(0); g >= 0; g = used.nextSetBit(g + 1)) {
+            if (codePoints[g] != 0) {
+                mapped[count++] = g;
+            }
+            if (count == mapped.length || count > 0 && used.nextSetBit(g + 1) < 0) {
+                cmap.append(count).append(" beginbfchar\n");
+                for (int i = 0; i < count; i++) {
+                    cmap.append('<').hex(mapped[i]).append("> <");
+                    for (char c : Character.toChars(codePoints[mapped[i]])) {
+                        cmap.hex(c);
+                    }
+                    cmap.append(">\n");
+                }
+                cmap.append("endbfchar\n");
+                count = 0;
+            }
+        }
+        cmap.append("endcmap\nCMapName currentdict /CMap defineresource pop\nend\nend\n");
+        stream(first + 4, deflate(cmap), "");
+    }
+
+    /**
+     * Пишет закладки по заголовкам: уровень заголовка — уровень вложенности закладки.
+     *
+     * @return номер корня закладок или 0, если заголовков нет
+     */
+    private int outlines() throws IOException {
+        if (headings.isEmpty()) {
+            return 0;
+        }
+        int root = nextObject++;
+        int[] objects = new int[headings.size()];
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = nextObject++;
+        }
+        // Родитель, следующий и предыдущий соседи, первый и последний ребёнок каждого заголовка
+        int[] parent = new int[objects.length];
+        int[] next = new int[objects.length];
+        int[] previous = new int[objects.length];
+        int[] firstChild = new int[objects.length];
+        int[] lastChild = new int[objects.length];
+        int[] descendants = new int[objects.length];
+        Arrays.fill(next, -1);
+        Arrays.fill(previous, -1);
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(lastChild, -1);
+        int rootFirst = -1;
+        int rootLast = -1;
+        int[] stack = new int[7];
+        int depth = 0;
+        for (int i = 0; i < objects.length; i++) {
+            int level = headings.get(i).level;
+            while (depth > 0 && headings.get(stack[depth - 1]).level >= level) {
+                depth--;
+            }
+            parent[i] = depth > 0 ? stack[depth - 1] : -1;
+            int last = parent[i] >= 0 ? lastChild[parent[i]] : rootLast;
+            if (last >= 0) {
+                next[last] = i;
+                previous[i] = last;
+            } else if (parent[i] >= 0) {
+                firstChild[parent[i]] = i;
+            } else {
+                rootFirst = i;
+            }
+            if (parent[i] >= 0) {
+                lastChild[parent[i]] = i;
+            } else {
+                rootLast = i;
+            }
+            for (int k = 0; k < depth; k++) {
+                descendants[stack[k]]++;
+            }
+            stack[depth++] = i;
+        }
+        object(root, new Bytes(64).append("<< /Type /Outlines /First ").append(objects[rootFirst])
+                .append(" 0 R /Last ").append(objects[rootLast]).append(" 0 R /Count ").append(objects.length)
+                .append(" >>"));
+        for (int i = 0; i < objects.length; i++) {
+            Heading heading = headings.get(i);
+            Bytes item = new Bytes(256).append("<< /Title ");
+            textString(item, heading.title);
+            item.append(" /Parent ").append(parent[i] >= 0 ? objects[parent[i]] : root).append(" 0 R");
+            if (previous[i] >= 0) {
+                item.append(" /Prev ").append(objects[previous[i]]).append(" 0 R");
+            }
+            if (next[i] >= 0) {
+                item.append(" /Next ").append(objects[next[i]]).append(" 0 R");
+            }
+            if (firstChild[i] >= 0) {
+                item.append(" /First ").append(objects[firstChild[i]]).append(" 0 R /Last ")
+                        .append(objects[lastChild[i]]).append(" 0 R /Count ").append(descendants[i]);
+            }
+            int page = Math.max(0, Math.min(heading.page, pageObjects.size() - 1));
+            item.append(" /Dest [").append(pageObjects.get(page)).append(" 0 R /XYZ 0 ")
+                    .number(PAGE_HEIGHT - TOP - Math.max(0, heading.top)).append(" null] >>");
+            object(objects[i], item);
+        }
+        return root;
+    }
+
+    private byte[] deflate(Bytes bytes) {
+        deflater.reset();
+        deflater.setInput(bytes.array, 0, bytes.length);
+        deflater.finish();
+        byte[] buffer = new byte[Math.max(64, bytes.length / 2)];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private void begin(int object) throws IOException {
+        if (object >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, object + 1));
+        }
+        offsets[object] = out.position();
+        out.write(new Bytes(16).append(object).append(" 0 obj\n"));
+    }
+
+    private void object(int object, Bytes body) throws IOException {
+        begin(object);
+        out.write(body);
+        out.write("\nendobj\n");
+    }
+
+    private void stream(int object, byte[] compressed, String entries) throws IOException {
+        begin(object);
+        out.write(new Bytes(64).append("<< /Length ").append(compressed.length).append(" /Filter /FlateDecode")
+                .append(entries).append(" >>\nstream\n"));
+        out.write(compressed, 0, compressed.length);
+        out.write("\nendstream\nendobj\n");
+    }
+
+    /**
+     * Адрес ссылки строкой PDF: символы за пределами ASCII кодируются в UTF-8 через {@code %}.
+     */
+    private static void uri(Bytes bytes, String href) {
+        bytes.append('(');
+        for (byte b : href.getBytes(StandardCharsets.UTF_8)) {
+            int c = b & 0xFF;
+            if (c < 0x21 || c > 0x7E) {
+                bytes.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xF, 16)));
+            } else {
+                if (c == '(' || c == ')' || c == '\\') {
+                    bytes.append('\\');
+                }
+                bytes.append((char) c);
+            }
+        }
+        bytes.append(')');
+    }
+
+    /**
+     * Текстовая строка PDF в UTF-16BE с меткой порядка байт.
+     */
+    private static void textString(Bytes bytes, String text) {
+        bytes.append("<FEFF");
+        for (int i = 0; i < text.length(); i++) {
+            bytes.hex(text.charAt(i));
+        }
+        bytes.append('>');
+    }
+
+    /**
+     * Адрес, который можно открыть из PDF: со схемой ({@code https:}, {@code mailto:}…).
+     */
+    private static boolean isExternal(String href) {
+        int colon = href.indexOf(':');
+        if (colon < 2) {
+            return false;
+        }
+        for (int i = 0; i < colon; i++) {
+            char c = href.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || i > 0 && (c >= '0' && c <= '9' || c == '+' || c == '.' || c == '-'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Поток содержимого страницы. Состояние текста (шрифт, цвет, режим, подъём) переходит
+     * от куска к куску, поэтому меняется, только когда меняется оформление.
+     */
+    private final class Canvas {
+
+        private final Bytes text = new Bytes(16 * 1024);
+
+        private final Bytes graphics = new Bytes(1024);
+
+        private final List<String> links = new ArrayList<>();
+
+        private float[] areas = new float[16];
+
+        private int font = -1;
+
+        private float size = -1;
+
+        private int color = -2;
+
+        private boolean stroked;
+
+        private float strokeWidth = -1;
+
+        private float rise;
+
+        Canvas() {
+            text.append("BT\n");
+        }
+
+        /**
+         * Рисует строку абзаца от заданной точки базовой линии.
+         */
+        void line(PdfLayout.Paragraph paragraph, int line, float x, float baseline) {
+            float justify = paragraph.justify(line);
+            for (int p = paragraph.firstPiece(line), end = paragraph.firstPiece(line + 1); p < end; p++) {
+                PdfLayout.Piece piece = paragraph.pieces[p];
+                if (piece.font != font || piece.size != size) {
+                    font = piece.font;
+                    size = piece.size;
+                    text.append('/').append('F').append(font).append(' ').number(size).append(" Tf\n");
+                }
+                int rgb = Math.max(0, piece.color);
+                if (rgb != color) {
+                    color = rgb;
+                    rgb(text, rgb).append(" rg ");
+                    rgb(text, rgb).append(" RG\n");
+                }
+                boolean bold = (piece.flags & PdfLayout.Piece.SYNTHETIC_BOLD) != 0;
+                if (bold != stroked) {
+                    stroked = bold;
+                    text.append(bold ? "2 Tr\n" : "0 Tr\n");
+                }
+                if (bold && strokeWidth != size * BOLD_STROKE) {
+                    strokeWidth = size * BOLD_STROKE;
+                    text.number(strokeWidth).append(" w\n");
+                }
+                if (piece.rise != rise) {
+                    rise = piece.rise;
+                    text.number(rise).append(" Ts\n");
+                }
+                float left = x + piece.x;
+                boolean italic = (piece.flags & PdfLayout.Piece.SYNTHETIC_ITALIC) != 0;
+                text.append(italic ? "1 0 " : "1 0 0 1 ");
+                if (italic) {
+                    text.number(SKEW).append(" 1 ");
+                }
+                text.number(left).append(' ').number(baseline).append(" Tm ");
+                glyphs(paragraph, piece, justify);
+
+                TrueTypeFont ttf = fonts.fonts().get(piece.font);
+                float em = piece.size / ttf.getUnitsPerEm();
+                if ((piece.flags & PdfLayout.Piece.UNDERLINE) != 0) {
+                    float thickness = Math.max(0.5f, ttf.getUnderlineThickness() * em);
+                    rule(piece.color, left, baseline + piece.rise + ttf.getUnderlinePosition() * em - thickness / 2,
+                            piece.width, thickness);
+                }
+                if ((piece.flags & PdfLayout.Piece.STRIKE) != 0) {
+                    float thickness = Math.max(0.5f, ttf.getUnderlineThickness() * em);
+                    rule(piece.color, left, baseline + piece.rise + ttf.getCapHeight() * em * 0.45f, piece.width,
+                            thickness);
+                }
+                if (piece.href != null && isExternal(piece.href)) {
+                    link(piece.href, left, baseline + piece.rise - ttf.getDescent() * em, left + piece.width,
+                            baseline + piece.rise + ttf.getAscent() * em);
+                }
+            }
+        }
+
+        /**
+         * Глифы куска: при выравнивании по ширине пробелы раздвигаются сдвигами в {@code TJ}.
+         */
+        private void glyphs(PdfLayout.Paragraph paragraph, PdfLayout.Piece piece, float justify) {
+            int space = fonts.fonts().get(piece.font).glyph(' ');
+            boolean spread = false;
+            if (justify > 0) {
+                for (int g = piece.from; g < piece.to && !spread; g++) {
+                    spread = paragraph.glyphs[g] == space;
+                }
+            }
+            if (!spread) {
+                text.append('<');
+                for (int g = piece.from; g < piece.to; g++) {
+                    text.hex(paragraph.glyphs[g]);
+                }
+                text.append("> Tj\n");
+                return;
+            }
+            text.append("[<");
+            for (int g = piece.from; g < piece.to; g++) {
+                text.hex(paragraph.glyphs[g]);
+                if (paragraph.glyphs[g] == space && g + 1 < piece.to) {
+                    text.append("> ").number(-justify * 1000 / piece.size).append(" <");
+                }
+            }
+            text.append(">] TJ\n");
+        }
+
+        void box(float x, float y, float width, float height) {
+            graphics.append("0 0 0 RG ").number(BORDER_WIDTH).append(" w ").number(x).append(' ').number(y)
+                    .append(' ').number(width).append(' ').number(height).append(" re S\n");
+        }
+
+        private void rule(int rgb, float x, float y, float width, float height) {
+            rgb(graphics, Math.max(0, rgb)).append(" rg ").number(x).append(' ').number(y).append(' ')
+                    .number(width).append(' ').number(height).append(" re f\n");
+        }
+
+        /**
+         * Добавляет область ссылки; соседний кусок той же ссылки расширяет прежнюю область.
+         */
+        private void link(String href, float x1, float y1, float x2, float y2) {
+            int last = links.size() - 1;
+            if (last >= 0 && links.get(last).equals(href) && Math.abs(areas[last * 4 + 2] - x1) < 1
+                    && Math.abs(areas[last * 4 + 1] - y1) < 1) {
+                areas[last * 4 + 2] = x2;
+                areas[last * 4 + 3] = Math.max(areas[last * 4 + 3], y2);
+                return;
+            }
+            if (areas.length < (last + 2) * 4) {
+                areas = Arrays.copyOf(areas, areas.length * 2);
+            }
+            links.add(href);
+            int i = (last + 1) * 4;
+            areas[i] = x1;
+            areas[i + 1] = y1;
+            areas[i + 2] = x2;
+            areas[i + 3] = y2;
+        }
+
+        float[] linkAreas() {
+            return Arrays.copyOf(areas, links.size() * 4);
+        }
+
+        Bytes finish() {
+            text.append("ET\n");
+            text.append(graphics);
+            return text;
+        }
+
+        private Bytes rgb(Bytes bytes, int rgb) {
+            return bytes.number((rgb >> 16 & 0xFF) / 255f).append(' ').number((rgb >> 8 & 0xFF) / 255f).append(' ')
+                    .number((rgb & 0xFF) / 255f);
+        }
+    }
+
+    /**
+     * Абзац, готовый встать на страницу или в ячейку: раскладка и место в колонке.
+     */
+    private static final class Block {
+
+        final PdfLayout.Paragraph paragraph;
+
+        final float x;
+
+        final float before;
+
+        final float after;
+
+        /**
+         * Маркер пункта списка или null.
+         */
+        final String marker;
+
+        final boolean keepWithNext;
+
+        Block(PdfLayout.Paragraph paragraph, float x, float before, float after, String marker, boolean keepWithNext) {
+            this.paragraph = paragraph;
+            this.x = x;
+            this.before = before;
+            this.after = after;
+            this.marker = marker;
+            this.keepWithNext = keepWithNext;
+        }
+    }
+
+    /**
+     * Строки абзаца на странице; {@code top} — от верхнего поля.
+     */
+    private static final class Lines {
+
+        final PdfLayout.Paragraph paragraph;
+
+        final int from;
+
+        final int to;
+
+        final float x;
+
+        final float top;
+
+        Lines(PdfLayout.Paragraph paragraph, int from, int to, float x, float top) {
+            this.paragraph = paragraph;
+            this.from = from;
+            this.to = to;
+            this.x = x;
+            this.top = top;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Lines)) {
+                return false;
+            }
+            Lines other = (Lines) o;
+            return paragraph == other.paragraph && from == other.from && to == other.to && x == other.x
+                    && top == other.top;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(paragraph) * 31 + from;
+        }
+    }
+
+    /**
+     * Маркер пункта списка: прижат вправо к {@code right}, стоит на базовой линии первой строки.
+     */
+    private static final class Marker {
+
+        final String text;
+
+        final float size;
+
+        final float right;
+
+        final float baseline;
+
+        Marker(String text, float size, float right, float baseline) {
+            this.text = text;
+            this.size = size;
+            this.right = right;
+            this.baseline = baseline;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Marker)) {
+                return false;
+            }
+            Marker other = (Marker) o;
+            return text.equals(other.text) && size == other.size && right == other.right && baseline == other.baseline;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(text, size, right, baseline);
+        }
+    }
+
+    /**
+     * Рамка ячейки таблицы.
+     */
+    private static final class Box {
+
+        final float x;
+
+        final float top;
+
+        final float width;
+
+        final float height;
+
+        Box(float x, float top, float width, float height) {
+            this.x = x;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Box)) {
+                return false;
+            }
+            Box other = (Box) o;
+            return x == other.x && top == other.top && width == other.width && height == other.height;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(x, top, width, height);
+        }
+    }
+
+    /**
+     * Заголовок для закладок: страница и место, где он встал.
+     */
+    private static final class Heading {
+
+        final int level;
+
+        final String title;
+
+        int page = -1;
+
+        float top;
+
+        Heading(int level, String title) {
+            this.level = level;
+            this.title = title;
+        }
+    }
+
+    /**
+     * Растущий массив байт для потоков и объектов PDF; текст в нём — ASCII.
+     */
+    private static final class Bytes {
+
+        private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+        private byte[] array;
+
+        private int length;
+
+        Bytes(int capacity) {
+            array = new byte[Math.max(16, capacity)];
+        }
+
+        Bytes(byte[] bytes) {
+            array = bytes;
+            length = bytes.length;
+        }
+
+        Bytes append(char c) {
+            ensure(1);
+            array[length++] = (byte) c;
+            return this;
+        }
+
+        Bytes append(String s) {
+            ensure(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                array[length++] = (byte) s.charAt(i);
+            }
+            return this;
+        }
+
+        Bytes append(int value) {
+            return append(Integer.toString(value));
+        }
+
+        Bytes append(Bytes bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes.array, 0, array, length, bytes.length);
+            length += bytes.length;
+            return this;
+        }
+
+        /**
+         * Число с точностью до тысячных, без лишних нулей.
+         */
+        Bytes number(float value) {
+            long scaled = Math.round((double) value * 1000);
+            if (scaled < 0) {
+                append('-');
+                scaled = -scaled;
+            }
+            append(Long.toString(scaled / 1000));
+            int fraction = (int) (scaled % 1000);
+            if (fraction != 0) {
+                append('.');
+                int digits = 100;
+                while (fraction != 0) {
+                    append((char) ('0' + fraction / digits));
+                    fraction %= digits;
+                    digits /= 10;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Четыре шестнадцатеричные цифры: код глифа или символ UTF-16.
+         */
+        Bytes hex(int value) {
+            ensure(4);
+            array[length++] = (byte) HEX[value >> 12 & 0xF];
+            array[length++] = (byte) HEX[value >> 8 & 0xF];
+            array[length++] = (byte) HEX[value >> 4 & 0xF];
+            array[length++] = (byte) HEX[value & 0xF];
+            return this;
+        }
+
+        private void ensure(int count) {
+            if (length + count > array.length) {
+                array = Arrays.copyOf(array, Math.max(array.length * 2, length + count));
+            }
+        }
+    }
+
+    /**
+     * Буферизованный вывод, считающий записанные байты: таблице ссылок нужны смещения объектов.
+     */
+    private static final class Output {
+
+        private final OutputStream out;
+
+        private final byte[] buffer = new byte[64 * 1024];
+
+        private int used;
+
+        private long flushed;
+
+        Output(OutputStream out) {
+            this.out = out;
+        }
+
+        long position() {
+            return flushed + used;
+        }
+
+        void write(String s) throws IOException {
+            for (int i = 0; i < s.length(); i++) {
+                if (used == buffer.length) {
+                    drain();
+                }
+                buffer[used++] = (byte) s.charAt(i);
+            }
+        }
+
+        void write(Bytes bytes) throws IOException {
+            write(bytes.array, 0, bytes.length);
+        }
+
+        void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length > buffer.length - used) {
+                drain();
+                if (length > buffer.length) {
+                    out.write(bytes, offset, length);
+                    flushed += length;
+                    return;
+                }
+            }
+            System.arraycopy(bytes, offset, buffer, used, length);
+            used += length;
+        }
+
+        void flush() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        private void drain() throws IOException {
+            out.write(buffer, 0, used);
+            flushed += used;
+            used = 0;
+        }
+    }
+}
@@ -0,0 +1,500 @@
+package com.example;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Содержимое документа на основе таблицы фрагментов (piece table) вместо {@code GapContent}.
+ *
+ * <p>Текст складывается из фрагментов, ссылающихся на один из двух буферов:
+ * исходный (только для чтения) и буфер добавлений (только дописывается, блоками).
+ * Вставка дописывает текст в буфер добавлений и вставляет один фрагмент, удаление
+ * лишь вырезает фрагменты — сами символы не копируются, поэтому правка в любом месте
+ * документа стоит O(число фрагментов), а не O(длина документа), как перенос разрыва
+ * в {@code GapContent}. Поиск фрагмента начинается с последнего найденного,
+ * так что набор текста подряд стоит O(1).</p>
+ *
+ * <p>Исходным буфером может быть любой {@link CharSequence}, в том числе
+ * {@link CharBuffer}-представление отображённого в память файла: тогда текст остаётся
+ * вне кучи. При загрузке HTML текст документа строит парсер, и он попадает в буфер
+ * добавлений крупными кусками.</p>
+ */
+public class PieceTableContent extends AbstractContent implements SnapshotContent {
+
+    /**
+     * Размер блока буфера добавлений в символах.
+     */
+    static final int BLOCK_SIZE = 16 * 1024;
+
+    /**
+     * Сколько фрагментов нужно пройти при поиске, чтобы прежнее место стало запасным.
+     */
+    private static final int FAR_STEPS = 8;
+
+    /**
+     * Исходный текст.
+     */
+    private final CharSequence original;
+
+    /**
+     * Массив исходного текста, если он доступен без копирования (иначе null).
+     */
+    private final char[] originalArray;
+
+    /**
+     * Смещение исходного текста в {@link #originalArray}.
+     */
+    private final int originalOffset;
+
+    /**
+     * Фрагменты текста по порядку.
+     */
+    private final List<Piece> pieces = new ArrayList<>();
+
+    /**
+     * Текущий блок буфера добавлений.
+     */
+    private char[] block = new char[BLOCK_SIZE];
+
+    /**
+     * Заполненная часть текущего блока.
+     */
+    private int blockUsed;
+
+    /**
+     * Блок, в который попал текст последнего вызова {@link #append(String)}:
+     * текущий блок или отдельный блок крупной вставки.
+     */
+    private char[] appended;
+
+    /**
+     * Длина текста.
+     */
+    private int length;
+
+    /**
+     * Последний найденный фрагмент: индекс и смещение его начала в тексте, упакованные
+     * в одно число ({@link #at}). Документ читают несколько потоков сразу (сохранение
+     * в фоне, поиск, отрисовка) под общей блокировкой чтения, поэтому курсор — только
+     * подсказка для поиска: он читается и пишется одним volatile-обращением, а найденное
+     * место {@link #find} возвращает вызывающему. Гонка читателей теряет подсказку,
+     * но не портит результат.
+     */
+    private volatile long cursor;
+
+    /**
+     * Запасной фрагмент — прежнее место, от которого поиск ушёл далеко; упакован так же.
+     * Чтения у курсора чередуются с правками в другом месте документа (например, при
+     * замене всех вхождений); запасной фрагмент избавляет от проходов по списку между ними.
+     */
+    private volatile long spare;
+
+    /**
+     * Создаёт пустое содержимое (один неявный перевод строки, как у {@code GapContent}).
+     */
+    public PieceTableContent() {
+        this("\n");
+    }
+
+    /**
+     * Создаёт содержимое поверх исходного текста. Если текст не оканчивается
+     * переводом строки, неявный перевод строки добавляется в конец.
+     *
+     * @param original исходный текст; не должен изменяться после передачи
+     */
+    public PieceTableContent(CharSequence original) {
+        this.original = original;
+        if (original instanceof CharBuffer && ((CharBuffer) original).hasArray()) {
+            CharBuffer buffer = (CharBuffer) original;
+            originalArray = buffer.array();
+            originalOffset = buffer.arrayOffset() + buffer.position();
+        } else {
+            originalArray = null;
+            originalOffset = 0;
+        }
+
+        int n = original.length();
+        if (n > 0) {
+            pieces.add(new Piece(null, 0, n));
+        }
+        length = n;
+        if (n == 0 || original.charAt(n - 1) != '\n') {
+            int start = append("\n");
+            pieces.add(new Piece(appended, start, 1));
+            length++;
+        }
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public void getChars(int where, int len, Segment txt) throws BadLocationException {
+        checkRange(where, len);
+        if (len == 0) {
+            txt.array = new char[0];
+            txt.offset = 0;
+            txt.count = 0;
+            return;
+        }
+
+        long found = find(where);
+        int index = index(found);
+        Piece p = pieces.get(index);
+        int inPiece = where - start(found);
+        int available = p.length - inPiece;
+        char[] array = p.array != null ? p.array : originalArray;
+        int base = p.array != null ? p.start : originalOffset + p.start;
+
+        // Запрошенный текст лежит в одном фрагменте или достаточно части: отдаём без копирования
+        if (array != null && (available >= len || txt.isPartialReturn())) {
+            txt.array = array;
+            txt.offset = base + inPiece;
+            txt.count = Math.min(len, available);
+            return;
+        }
+
+        int count = txt.isPartialReturn() ? Math.min(len, available) : len;
+        char[] out = new char[count];
+        int copied = 0;
+        while (copied < count) {
+            int n = Math.min(count - copied, p.length - inPiece);
+            copy(p, inPiece, out, copied, n);
+            copied += n;
+            inPiece = 0;
+            if (copied < count) {
+                p = pieces.get(++index);
+            }
+        }
+        txt.array = out;
+        txt.offset = 0;
+        txt.count = count;
+    }
+
+    /**
+     * Возвращает число фрагментов (для диагностики и тестов производительности).
+     *
+     * @return число фрагментов
+     */
+    public int pieceCount() {
+        return pieces.size();
+    }
+
+    /**
+     * Снимок текста: копия списка фрагментов. Буферы только дописываются,
+     * поэтому снимок остаётся верным при любых последующих правках.
+     * Вызывается под блокировкой документа (списку фрагментов нужна согласованность).
+     *
+     * @return неизменяемый текст документа
+     */
+    @Override
+    public CharSequence snapshot() {
+        int n = pieces.size();
+        char[][] arrays = new char[n][];
+        int[] starts = new int[n];
+        int[] lengths = new int[n];
+        for (int i = 0; i < n; i++) {
+            Piece p = pieces.get(i);
+            arrays[i] = p.array;
+            starts[i] = p.start;
+            lengths[i] = p.length;
+        }
+        return new PieceSnapshot(arrays, starts, lengths, length);
+    }
+
+    @Override
+    protected void insertText(int where, String str) {
+        int n = str.length();
+        int start = append(str);
+
+        long found = find(where);
+        int index = index(found);
+        int pieceStart = start(found);
+        if (where == pieceStart && index > 0) {
+            Piece prev = pieces.get(index - 1);
+            if (prev.array == appended && prev.start + prev.length == start) {
+                // Продолжение набора: удлиняем предыдущий фрагмент
+                prev.length += n;
+                cursor = at(index - 1, pieceStart - (prev.length - n));
+                length += n;
+                shiftSpare(where, 0, n);
+                return;
+            }
+        }
+
+        Piece piece = new Piece(appended, start, n);
+        int added = 1;
+        if (where == pieceStart || index == pieces.size()) {
+            pieces.add(index, piece);
+        } else {
+            added = 2;
+            Piece right = pieces.get(index).splitAt(where - pieceStart);
+            pieces.add(index + 1, piece);
+            pieces.add(index + 2, right);
+            pieceStart = where;
+            index++;
+        }
+        cursor = at(index, pieceStart);
+        length += n;
+        shiftSpare(where, added, n);
+    }
+
+    @Override
+    protected void deleteText(int where, int n) {
+        int from = splitAt(where);
+        int to = splitAt(where + n);
+        pieces.subList(from, to).clear();
+        cursor = at(from, where);
+        length -= n;
+        int spareStart = start(spare);
+        if (spareStart >= where && spareStart < where + n) {
+            // Запасной фрагмент удалён
+            spare = at(from, where);
+        } else {
+            shiftSpare(where + n, from - to, -n);
+        }
+    }
+
+    /**
+     * Сдвигает запасной фрагмент после правки, если он начинается не раньше
+     * её места: фрагменты до места правки не меняются, следующие сдвигаются целиком.
+     *
+     * @param where смещение, с которого сдвинуты фрагменты
+     * @param pieceDelta изменение числа фрагментов
+     * @param charDelta изменение длины текста
+     */
+    private void shiftSpare(int where, int pieceDelta, int charDelta) {
+        long at = spare;
+        if (start(at) >= where) {
+            spare = at(index(at) + pieceDelta, start(at) + charDelta);
+        }
+    }
+
+    /**
+     * Гарантирует, что на смещении начинается фрагмент, разрезая его при необходимости.
+     *
+     * @param offset смещение в тексте
+     * @return индекс фрагмента, начинающегося на смещении
+     */
+    private int splitAt(int offset) {
+        long found = find(offset);
+        int index = index(found);
+        if (index < pieces.size() && offset > start(found)) {
+            Piece right = pieces.get(index).splitAt(offset - start(found));
+            pieces.add(++index, right);
+            cursor = at(index, offset);
+            shiftSpare(offset, 1, 0);
+        }
+        return index;
+    }
+
+    /**
+     * Находит фрагмент, содержащий смещение, двигаясь от последнего найденного или запасного — что ближе.
+     *
+     * @param offset смещение в тексте
+     * @return индекс фрагмента ({@code pieces.size()} для смещения в конце текста)
+     *         и смещение его начала, упакованные {@link #at}
+     */
+    private long find(int offset) {
+        long from = cursor;
+        long other = spare;
+        if (!contains(from, offset)
+                && (contains(other, offset) || Math.abs(offset - start(other)) < Math.abs(offset - start(from)))) {
+            spare = from;
+            from = other;
+        }
+        int index = Math.min(index(from), pieces.size());
+        int start = index == pieces.size() ? length : start(from);
+        if (index == pieces.size() && index > 0 && offset < length) {
+            index--;
+            start -= pieces.get(index).length;
+        }
+        while (offset < start) {
+            index--;
+            start -= pieces.get(index).length;
+        }
+        while (index < pieces.size() && offset >= start + pieces.get(index).length) {
+            start += pieces.get(index).length;
+            index++;
+        }
+        if (Math.abs(index - index(from)) > FAR_STEPS) {
+            // Ушли далеко: прежнее место запоминаем, к нему, вероятно, вернутся
+            spare = from;
+        }
+        long found = at(index, start);
+        cursor = found;
+        return found;
+    }
+
+    private boolean contains(long at, int offset) {
+        int index = index(at);
+        int start = start(at);
+        return index < pieces.size() && offset >= start && offset < start + pieces.get(index).length;
+    }
+
+    /**
+     * Упаковывает место в тексте: индекс фрагмента и смещение его начала.
+     */
+    private static long at(int index, int start) {
+        return (long) index << 32 | start & 0xFFFFFFFFL;
+    }
+
+    private static int index(long at) {
+        return (int) (at >>> 32);
+    }
+
+    private static int start(long at) {
+        return (int) at;
+    }
+
+    /**
+     * Дописывает текст в буфер добавлений. Крупный текст получает собственный блок.
+     *
+     * @param str текст
+     * @return смещение текста в блоке {@link #appended}
+     */
+    private int append(String str) {
+        int n = str.length();
+        if (n > BLOCK_SIZE / 4) {
+            appended = new char[n];
+            str.getChars(0, n, appended, 0);
+            return 0;
+        }
+        if (blockUsed + n > block.length) {
+            block = new char[BLOCK_SIZE];
+            blockUsed = 0;
+        }
+        str.getChars(0, n, block, blockUsed);
+        appended = block;
+        int start = blockUsed;
+        blockUsed += n;
+        return start;
+    }
+
+    /**
+     * Копирует символы фрагмента.
+     *
+     * @param p       фрагмент
+     * @param from    смещение внутри фрагмента
+     * @param dst     приёмник
+     * @param dstPos  смещение в приёмнике
+     * @param n       число символов
+     */
+    private void copy(Piece p, int from, char[] dst, int dstPos, int n) {
+        if (p.array != null) {
+            System.arraycopy(p.array, p.start + from, dst, dstPos, n);
+        } else if (originalArray != null) {
+            System.arraycopy(originalArray, originalOffset + p.start + from, dst, dstPos, n);
+        } else if (original instanceof String) {
+            ((String) original).getChars(p.start + from, p.start + from + n, dst, dstPos);
+        } else {
+            for (int i = 0; i < n; i++) {
+                dst[dstPos + i] = original.charAt(p.start + from + i);
+            }
+        }
+    }
+
+    /**
+     * Фрагмент текста: участок исходного буфера ({@code array == null}) или блока добавлений.
+     */
+    private static final class Piece {
+
+        final char[] array;
+
+        final int start;
+
+        int length;
+
+        Piece(char[] array, int start, int length) {
+            this.array = array;
+            this.start = start;
+            this.length = length;
+        }
+
+        /**
+         * Укорачивает фрагмент до {@code at} символов и возвращает отрезанный остаток.
+         *
+         * @param at смещение разреза внутри фрагмента
+         * @return правая часть
+         */
+        Piece splitAt(int at) {
+            Piece right = new Piece(array, start + at, length - at);
+            length = at;
+            return right;
+        }
+    }
+
+    /**
+     * Неизменяемый снимок текста в виде списка фрагментов.
+     */
+    private final class PieceSnapshot implements CharSequence {
+
+        private final char[][] arrays;
+
+        private final int[] starts;
+
+        private final int[] lengths;
+
+        /**
+         * Смещения начала фрагментов в тексте (для двоичного поиска).
+         */
+        private final int[] offsets;
+
+        private final int length;
+
+        PieceSnapshot(char[][] arrays, int[] starts, int[] lengths, int length) {
+            this.arrays = arrays;
+            this.starts = starts;
+            this.lengths = lengths;
+            this.length = length;
+            this.offsets = new int[lengths.length];
+            for (int i = 1; i < lengths.length; i++) {
+                offsets[i] = offsets[i - 1] + lengths[i - 1];
+            }
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+            }
+            int i = Arrays.binarySearch(offsets, index);
+            if (i < 0) {
+                i = -i - 2;
+            }
+            while (lengths[i] == 0) {
+                i++;
+            }
+            int at = starts[i] + index - offsets[i];
+            return arrays[i] != null ? arrays[i][at]
+                    : originalArray != null ? originalArray[originalOffset + at] : original.charAt(at);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            char[] out = new char[length];
+            int pos = 0;
+            for (int i = 0; i < arrays.length; i++) {
+                copy(new Piece(arrays[i], starts[i], lengths[i]), 0, out, pos, lengths[i]);
+                pos += lengths[i];
+            }
+            return new String(out);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example;
+
+import javax.swing.*;
+import java.awt.*;
+import java.beans.PropertyChangeEvent;
+
+/**
+ * Немодальное окно с индикатором хода длительной фоновой операции
+ * и кнопкой "Отмена".
+ *
+ * <p>Окно следит за свойством {@code progress} переданного {@link SwingWorker}
+ * и закрывается само, когда задача завершается (успешно, с ошибкой или отменой).</p>
+ */
+public class ProgressDialog extends JDialog {
+
+    /**
+     * Индикатор хода выполнения (0–100).
+     */
+    private final JProgressBar progressBar;
+
+    /**
+     * Создаёт окно прогресса для фоновой задачи.
+     *
+     * @param owner   родительское окно
+     * @param title   заголовок окна
+     * @param message поясняющий текст над индикатором
+     * @param worker  отслеживаемая задача; кнопка "Отмена" вызывает её {@code cancel}
+     */
+    public ProgressDialog(Frame owner, String title, String message, SwingWorker<?, ?> worker) {
+        super(owner, title, false);
+
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+
+        JButton cancel = new JButton("Отмена");
+        cancel.addActionListener(e -> worker.cancel(false));
+
+        JPanel panel = new JPanel(new BorderLayout(8, 8));
+        panel.setBorder(BorderFactory.createEmptyBorder(12, 12, 12, 12));
+        panel.add(new JLabel(message), BorderLayout.NORTH);
+        panel.add(progressBar, BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
+        buttons.add(cancel);
+        panel.add(buttons, BorderLayout.SOUTH);
+
+        setContentPane(panel);
+        setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+        setResizable(false);
+        pack();
+        setSize(Math.max(getWidth(), 360), getHeight());
+        setLocationRelativeTo(owner);
+
+        worker.addPropertyChangeListener(this::workerChanged);
+    }
+
+    /**
+     * Обновляет индикатор и закрывает окно по завершении задачи.
+     *
+     * @param e событие изменения свойства задачи
+     */
+    private void workerChanged(PropertyChangeEvent e) {
+        if ("progress".equals(e.getPropertyName())) {
+            progressBar.setValue((Integer) e.getNewValue());
+        } else if ("state".equals(e.getPropertyName()) && e.getNewValue() == SwingWorker.StateValue.DONE) {
+            dispose();
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.example;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+
+/**
+ * Содержимое документа на основе сбалансированной верёвки (rope).
+ *
+ * <p>Текст хранится в листьях неизменяемого двоичного дерева, сбалансированного
+ * по высоте (как AVL-дерево). Вставка и удаление разрезают дерево по смещению
+ * и склеивают части заново — O(log n) узлов, независимо от того, где и как далеко
+ * от предыдущей правки она сделана. Листья разделяют массивы символов,
+ * поэтому разрезание листа ничего не копирует; соседние короткие листья
+ * при склейке сливаются, чтобы набор по одному символу не дробил дерево.</p>
+ *
+ * <p>Узлы никогда не изменяются, поэтому {@link #snapshot()} стоит O(1): снимок —
+ * это просто текущий корень. Снимок можно читать из любого потока, пока
+ * документ продолжает редактироваться.</p>
+ */
+public class RopeContent extends AbstractContent implements SnapshotContent {
+
+    /**
+     * Наибольшая длина листа, получаемого слиянием двух коротких соседей.
+     */
+    static final int MERGE_LIMIT = 512;
+
+    /**
+     * Длина листьев, на которые режется начальный текст.
+     */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Пустое дерево.
+     */
+    private static final Node EMPTY = new Leaf(new char[0], 0, 0);
+
+    /**
+     * Корень дерева.
+     */
+    private Node root;
+
+    /**
+     * Создаёт пустое содержимое (один неявный перевод строки, как у {@code GapContent}).
+     */
+    public RopeContent() {
+        this("\n");
+    }
+
+    /**
+     * Создаёт содержимое с начальным текстом. Если текст не оканчивается
+     * переводом строки, неявный перевод строки добавляется в конец.
+     *
+     * @param text начальный текст (копируется)
+     */
+    public RopeContent(CharSequence text) {
+        int n = text.length();
+        boolean newline = n > 0 && text.charAt(n - 1) == '\n';
+        char[] chars = new char[newline ? n : n + 1];
+        for (int i = 0; i < n; i++) {
+            chars[i] = text.charAt(i);
+        }
+        if (!newline) {
+            chars[n] = '\n';
+        }
+        root = build(chars, 0, chars.length);
+    }
+
+    @Override
+    public int length() {
+        return root.length;
+    }
+
+    @Override
+    public void getChars(int where, int len, Segment txt) throws BadLocationException {
+        checkRange(where, len);
+        if (len == 0) {
+            txt.array = new char[0];
+            txt.offset = 0;
+            txt.count = 0;
+            return;
+        }
+
+        // Спуск к листу, содержащему начало диапазона
+        Node node = root;
+        int at = where;
+        while (node instanceof Concat) {
+            Concat c = (Concat) node;
+            if (at < c.left.length) {
+                node = c.left;
+            } else {
+                at -= c.left.length;
+                node = c.right;
+            }
+        }
+        Leaf leaf = (Leaf) node;
+        int available = leaf.length - at;
+        if (available >= len || txt.isPartialReturn()) {
+            txt.array = leaf.array;
+            txt.offset = leaf.offset + at;
+            txt.count = Math.min(len, available);
+            return;
+        }
+
+        char[] out = new char[len];
+        copy(root, where, where + len, out, 0);
+        txt.array = out;
+        txt.offset = 0;
+        txt.count = len;
+    }
+
+    /**
+     * Возвращает высоту дерева (для диагностики и тестов производительности).
+     *
+     * @return высота; 0 для дерева из одного листа
+     */
+    public int depth() {
+        return root.depth;
+    }
+
+    /**
+     * Снимок текста за O(1): неизменяемое дерево текущего корня.
+     *
+     * @return неизменяемый текст документа
+     */
+    @Override
+    public CharSequence snapshot() {
+        return new RopeSnapshot(root);
+    }
+
+    @Override
+    protected void insertText(int where, String str) {
+        char[] chars = str.toCharArray();
+        Node middle = new Leaf(chars, 0, chars.length);
+        root = join(join(prefix(root, where), middle), suffix(root, where));
+    }
+
+    @Override
+    protected void deleteText(int where, int n) {
+        root = join(prefix(root, where), suffix(root, where + n));
+    }
+
+    /**
+     * Строит сбалансированное дерево из листьев по {@value #CHUNK_SIZE} символов.
+     */
+    private static Node build(char[] chars, int from, int to) {
+        if (to - from <= CHUNK_SIZE) {
+            return new Leaf(chars, from, to - from);
+        }
+        int middle = from + (to - from) / 2;
+        return new Concat(build(chars, from, middle), build(chars, middle, to));
+    }
+
+    /**
+     * Возвращает первые {@code n} символов дерева.
+     */
+    private static Node prefix(Node node, int n) {
+        if (n <= 0) {
+            return EMPTY;
+        }
+        if (n >= node.length) {
+            return node;
+        }
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            return new Leaf(leaf.array, leaf.offset, n);
+        }
+        Concat c = (Concat) node;
+        if (n <= c.left.length) {
+            return prefix(c.left, n);
+        }
+        return join(c.left, prefix(c.right, n - c.left.length));
+    }
+
+    /**
+     * Возвращает текст дерева, начиная с символа {@code from}.
+     */
+    private static Node suffix(Node node, int from) {
+        if (from <= 0) {
+            return node;
+        }
+        if (from >= node.length) {
+            return EMPTY;
+        }
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            return new Leaf(leaf.array, leaf.offset + from, leaf.length - from);
+        }
+        Concat c = (Concat) node;
+        if (from >= c.left.length) {
+            return suffix(c.right, from - c.left.length);
+        }
+        return join(suffix(c.left, from), c.right);
+    }
+
+    /**
+     * Склеивает два дерева, сохраняя баланс: более низкое дерево спускается
+     * вдоль края более высокого, по пути выполняются повороты. Стоит O(разности высот).
+     */
+    private static Node join(Node a, Node b) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        if (a instanceof Leaf && b instanceof Leaf && a.length + b.length <= MERGE_LIMIT) {
+            Leaf x = (Leaf) a;
+            Leaf y = (Leaf) b;
+            char[] chars = new char[x.length + y.length];
+            System.arraycopy(x.array, x.offset, chars, 0, x.length);
+            System.arraycopy(y.array, y.offset, chars, x.length, y.length);
+            return new Leaf(chars, 0, chars.length);
+        }
+        if (a.depth > b.depth + 1) {
+            Concat c = (Concat) a;
+            return balance(c.left, join(c.right, b));
+        }
+        if (b.depth > a.depth + 1) {
+            Concat c = (Concat) b;
+            return balance(join(a, c.left), c.right);
+        }
+        return new Concat(a, b);
+    }
+
+    /**
+     * Соединяет два сбалансированных поддерева, высоты которых отличаются не более
+     * чем на 2, выполняя одинарный или двойной поворот.
+     */
+    private static Node balance(Node l, Node r) {
+        if (l.depth > r.depth + 1) {
+            Concat c = (Concat) l;
+            if (c.left.depth >= c.right.depth) {
+                return new Concat(c.left, new Concat(c.right, r));
+            }
+            Concat m = (Concat) c.right;
+            return new Concat(new Concat(c.left, m.left), new Concat(m.right, r));
+        }
+        if (r.depth > l.depth + 1) {
+            Concat c = (Concat) r;
+            if (c.right.depth >= c.left.depth) {
+                return new Concat(new Concat(l, c.left), c.right);
+            }
+            Concat m = (Concat) c.left;
+            return new Concat(new Concat(l, m.left), new Concat(m.right, c.right));
+        }
+        return new Concat(l, r);
+    }
+
+    /**
+     * Копирует символы [from, to) дерева в массив.
+     */
+    private static void copy(Node node, int from, int to, char[] dst, int dstPos) {
+        while (node instanceof Concat) {
+            Concat c = (Concat) node;
+            int split = c.left.length;
+            if (to <= split) {
+                node = c.left;
+            } else if (from >= split) {
+                node = c.right;
+                from -= split;
+                to -= split;
+            } else {
+                copy(c.left, from, split, dst, dstPos);
+                dstPos += split - from;
+                node = c.right;
+                from = 0;
+                to -= split;
+            }
+        }
+        Leaf leaf = (Leaf) node;
+        System.arraycopy(leaf.array, leaf.offset + from, dst, dstPos, to - from);
+    }
+
+    /**
+     * Узел дерева. Узлы не изменяются после создания.
+     */
+    private abstract static class Node {
+
+        final int length;
+
+        final int depth;
+
+        Node(int length, int depth) {
+            this.length = length;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * Лист: участок массива символов. Массив после создания листа не изменяется.
+     */
+    private static final class Leaf extends Node {
+
+        final char[] array;
+
+        final int offset;
+
+        Leaf(char[] array, int offset, int length) {
+            super(length, 0);
+            this.array = array;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Внутренний узел: текст левого поддерева, за ним текст правого.
+     */
+    private static final class Concat extends Node {
+
+        final Node left;
+
+        final Node right;
+
+        Concat(Node left, Node right) {
+            super(left.length + right.length, Math.max(left.depth, right.depth) + 1);
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    /**
+     * Неизменяемый снимок текста поверх корня дерева.
+     */
+    private static final class RopeSnapshot implements CharSequence {
+
+        private final Node root;
+
+        RopeSnapshot(Node root) {
+            this.root = root;
+        }
+
+        @Override
+        public int length() {
+            return root.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= root.length) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + root.length);
+            }
+            Node node = root;
+            while (node instanceof Concat) {
+                Concat c = (Concat) node;
+                if (index < c.left.length) {
+                    node = c.left;
+                } else {
+                    index -= c.left.length;
+                    node = c.right;
+                }
+            }
+            Leaf leaf = (Leaf) node;
+            return leaf.array[leaf.offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > root.length || start > end) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + root.length);
+            }
+            return new RopeSnapshot(prefix(suffix(root, start), end - start));
+        }
+
+        @Override
+        public String toString() {
+            char[] out = new char[root.length];
+            if (root.length > 0) {
+                copy(root, 0, root.length, out, 0);
+            }
+            return new String(out);
+        }
+    }
+}
@@ -0,0 +1,1327 @@
+package com.example;
+
+import com.example.RtfTokenizer.Keyword;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.DefaultStyledDocument.ElementSpec;
+import javax.swing.text.html.HTML;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Потоковый импорт RTF — пара к {@link RtfWriter}, замена {@link javax.swing.text.rtf.RTFEditorKit}.
+ *
+ * <p>{@code RTFEditorKit} читает RTF в {@code DefaultStyledDocument} (не в HTML-модель
+ * редактора), теряет списки, таблицы и ссылки, не понимает <code>&#92;u</code> и кодовых страниц
+ * шрифтов, а файл разбирает целиком, прежде чем его можно показать. Здесь {@link RtfTokenizer}
+ * один раз проходит файл, и абзацы, заголовки, списки и таблицы сразу превращаются
+ * в {@link ElementSpec} через {@link BlockBuilder} — так же, как {@link DocxReader}
+ * читает DOCX, и так же порциями ({@link #next}).</p>
+ *
+ * <p>Переносятся абзацы и заголовки (стили «heading 1–6» и «title», уровни структуры),
+ * выравнивание, списки ({@code \ls} и старые {@code \pn}), таблицы с объединёнными
+ * по горизонтали ячейками (вложенные таблицы сливаются с внешней), ссылки (поля
+ * {@code HYPERLINK}) и оформление текста: полужирный, курсив, подчёркивание, зачёркивание,
+ * индексы, цвет. Текст в кодировках Windows декодируется по кодовой странице документа
+ * ({@code \ansicpg}) или шрифта ({@code \fcharset}). Картинки, объекты, колонтитулы
+ * и сноски пропускаются.</p>
+ */
+public final class RtfReader implements BlockReader {
+
+    private static final int DEFAULT_CODE_PAGE = 1252;
+
+    /**
+     * Куда идёт текст группы.
+     */
+    private static final int BODY = 0;
+    private static final int FONTS = 2;
+    private static final int COLORS = 3;
+    private static final int STYLES = 4;
+    private static final int LISTS = 5;
+    private static final int LIST_OVERRIDES = 6;
+    private static final int FIELD_INSTRUCTION = 7;
+    private static final int OLD_LIST = 8;
+
+    private static final AttributeSet BREAK = HtmlFragment.tag(HTML.Tag.BR);
+
+    private final RtfTokenizer in;
+
+    private final BlockBuilder blocks = new BlockBuilder();
+
+    /**
+     * Состояния открытых групп; {@code stack[depth]} — текущее. Объекты состояний
+     * переиспользуются.
+     */
+    private State[] stack = new State[32];
+
+    private int depth;
+
+    private State state;
+
+    private int codePage = DEFAULT_CODE_PAGE;
+
+    private int defaultFont;
+
+    /**
+     * Кодовые страницы шрифтов по номеру шрифта.
+     */
+    private final Map<Integer, Integer> fonts = new HashMap<>();
+
+    /**
+     * Шрифт, кодовая страница которого найдена последней, и сама страница (0 — нет своей):
+     * текст идёт байтами {@code \'hh}, и искать шрифт в таблице на каждый байт незачем.
+     */
+    private int pageFont = Integer.MIN_VALUE;
+
+    private int fontPage;
+
+    private final Map<Integer, CharsetDecoder> decoders = new HashMap<>();
+
+    private final List<String> colors = new ArrayList<>();
+
+    private int red;
+
+    private int green;
+
+    private int blue;
+
+    private boolean colorSet;
+
+    /**
+     * Уровни заголовков стилей абзацев по номеру стиля.
+     */
+    private final Map<Integer, Integer> headings = new HashMap<>();
+
+    /**
+     * Глубина группы {@code \stylesheet}; описание стиля — её дочерняя группа.
+     */
+    private int styleTableDepth = -1;
+
+    private int styleNumber;
+
+    /**
+     * Описывается стиль абзаца, а не знаков ({@code \cs}) или таблицы ({@code \ts}).
+     */
+    private boolean paragraphStyle;
+
+    private int styleOutline;
+
+    private final StringBuilder styleName = new StringBuilder();
+
+    /**
+     * Нумерации списков по {@code \listid}, затем по номеру {@code \ls}.
+     */
+    private final Map<Integer, BlockBuilder.Numbering> lists = new HashMap<>();
+
+    private final Map<Integer, BlockBuilder.Numbering> overrides = new HashMap<>();
+
+    private BlockBuilder.Numbering list;
+
+    private int listLevel;
+
+    private int overrideList;
+
+    /**
+     * Нумерации старых списков {@code \pn} по формату номера: соседние пункты одного
+     * формата идут в один список.
+     */
+    private final Map<String, BlockBuilder.Numbering> oldLists = new HashMap<>();
+
+    /**
+     * Свойства абзаца. В отличие от оформления текста они не привязаны к группам:
+     * их сбрасывает только {@code \pard}.
+     */
+    private int style;
+
+    private String align;
+
+    private boolean inTable;
+
+    /**
+     * Уровень структуры {@code \outlinelevel}: 0–5 — заголовок, -1 — обычный текст.
+     */
+    private int outline = -1;
+
+    private int override;
+
+    private int level;
+
+    private String oldListFormat;
+
+    private int oldListStart;
+
+    /**
+     * Определение строки таблицы: сколько столбцов занимает каждая ячейка; 0 — ячейка
+     * продолжает объединение ({@code \clmrg}).
+     */
+    private int[] spans = new int[16];
+
+    private int cells;
+
+    private boolean mergeFirst;
+
+    private boolean mergeNext;
+
+    private int cell;
+
+    /**
+     * Код поля, собираемый из {@code \fldinst}.
+     */
+    private final StringBuilder instruction = new StringBuilder();
+
+    /**
+     * Следующее слово после {@code \*} — необязательная группа, которую можно пропустить.
+     */
+    private boolean optional;
+
+    /**
+     * Сколько символов замены после <code>&#92;u</code> ещё пропустить.
+     */
+    private int fallback;
+
+    /**
+     * Текст текущего фрагмента и его оформление.
+     */
+    private char[] text = new char[256];
+
+    private int textLength;
+
+    private AttributeSet textAttributes;
+
+    private int textFormat;
+
+    private int textColor;
+
+    private String textLink;
+
+    /**
+     * Уровень заголовка начатого абзаца.
+     */
+    private int heading;
+
+    /**
+     * Байты {@code \'hh} подряд: многобайтовый символ может быть записан несколькими.
+     */
+    private final ByteBuffer bytes = ByteBuffer.allocate(64);
+
+    private final CharBuffer decoded = CharBuffer.allocate(64);
+
+    private int bytesCodePage;
+
+    private AttributeSet linkRun;
+
+    private String linkHref;
+
+    private AttributeSet linkAttributes;
+
+    /**
+     * Открывает файл RTF.
+     *
+     * @param file файл RTF
+     * @throws IOException если файл не читается или это не RTF
+     */
+    public RtfReader(Path file) throws IOException {
+        in = new RtfTokenizer(file);
+        try {
+            if (in.next() != RtfTokenizer.GROUP_START || in.next() != RtfTokenizer.WORD
+                    || in.keyword() != Keyword.RTF) {
+                throw new IOException("Not an RTF document: " + file.getFileName());
+            }
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+        for (int i = 0; i < stack.length; i++) {
+            stack[i] = new State();
+        }
+        state = stack[0];
+        state.reset(0);
+    }
+
+    @Override
+    public boolean next(List<ElementSpec> specs, int chars) throws IOException {
+        blocks.setTarget(specs);
+        long limit = blocks.written() + chars;
+        try {
+            while (true) {
+                int token = in.next();
+                if (token != RtfTokenizer.HEX && bytes.position() > 0) {
+                    decodeBytes();
+                }
+                switch (token) {
+                    case RtfTokenizer.EOF:
+                        finish();
+                        return false;
+                    case RtfTokenizer.GROUP_START:
+                        fallback = 0;
+                        push();
+                        break;
+                    case RtfTokenizer.GROUP_END:
+                        fallback = 0;
+                        pop();
+                        break;
+                    case RtfTokenizer.WORD:
+                        if (word(in.keyword(), in.parameter(), in.hasParameter())
+                                && blocks.isTopLevel() && blocks.written() >= limit) {
+                            return true;
+                        }
+                        break;
+                    case RtfTokenizer.SYMBOL:
+                        if (symbol(in.symbol()) && blocks.isTopLevel() && blocks.written() >= limit) {
+                            return true;
+                        }
+                        break;
+                    case RtfTokenizer.HEX:
+                        hex(in.parameter());
+                        break;
+                    default:
+                        text(in.array(), in.start(), in.length());
+                        break;
+                }
+            }
+        } finally {
+            blocks.setTarget(null);
+        }
+    }
+
+    @Override
+    public int getProgress() {
+        return (int) Math.min(100, in.position() * 100 / Math.max(1, in.size()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void push() {
+        if (++depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+            for (int i = depth; i < stack.length; i++) {
+                stack[i] = new State();
+            }
+        }
+        State parent = state;
+        state = stack[depth];
+        state.copy(parent);
+        if (state.destination == STYLES && depth == styleTableDepth + 1) {
+            styleNumber = 0;
+            paragraphStyle = true;
+            styleOutline = -1;
+            styleName.setLength(0);
+        }
+    }
+
+    private void pop() {
+        if (depth == 0) {
+            return;
+        }
+        if (state.destination == STYLES && depth == styleTableDepth + 1) {
+            endStyle();
+        }
+        if (depth == styleTableDepth) {
+            styleTableDepth = -1;
+        }
+        state = stack[--depth];
+    }
+
+    /**
+     * Обрабатывает управляющее слово.
+     *
+     * @return true, если закончился абзац
+     */
+    private boolean word(Keyword word, int parameter, boolean hasParameter) throws IOException {
+        if (fallback > 0) {
+            fallback--;
+            return false;
+        }
+        if (optional) {
+            optional = false;
+            if (word != Keyword.LISTTABLE && word != Keyword.LISTOVERRIDETABLE && word != Keyword.FLDINST
+                    && word != Keyword.PN) {
+                skipGroup();
+                return false;
+            }
+        }
+        if (word == null) {
+            return false;
+        }
+        int destination = state.destination;
+        switch (word) {
+            case BIN:
+                in.skip(Math.max(0, parameter));
+                return false;
+            case U:
+                character((char) (parameter < 0 ? parameter + 65536 : parameter));
+                fallback = state.uc;
+                return false;
+            case UC:
+                state.uc = Math.max(0, parameter);
+                return false;
+            case ANSICPG:
+                codePage = parameter;
+                return false;
+            case MAC:
+                codePage = 10000;
+                return false;
+            case PC:
+                codePage = 437;
+                return false;
+            case PCA:
+                codePage = 850;
+                return false;
+            case DEFF:
+                defaultFont = parameter;
+                return false;
+            case FONTTBL:
+                state.destination = FONTS;
+                return false;
+            case COLORTBL:
+                state.destination = COLORS;
+                colorSet = false;
+                return false;
+            case STYLESHEET:
+                state.destination = STYLES;
+                styleTableDepth = depth;
+                return false;
+            case LISTTABLE:
+                state.destination = LISTS;
+                return false;
+            case LISTOVERRIDETABLE:
+                state.destination = LIST_OVERRIDES;
+                return false;
+            case FLDINST:
+                state.destination = FIELD_INSTRUCTION;
+                instruction.setLength(0);
+                return false;
+            case FLDRSLT:
+                String href = DocxReader.fieldLink(instruction.toString());
+                if (href != null) {
+                    state.link = href;
+                }
+                return false;
+            case FIELD:
+                instruction.setLength(0);
+                return false;
+            case PN:
+                if (destination == BODY) {
+                    state.destination = OLD_LIST;
+                    oldListFormat = "decimal";
+                    oldListStart = 1;
+                } else {
+                    skipGroup();
+                }
+                return false;
+            case INFO:
+            case HEADER:
+            case HEADERL:
+            case HEADERR:
+            case HEADERF:
+            case FOOTER:
+            case FOOTERL:
+            case FOOTERR:
+            case FOOTERF:
+            case FOOTNOTE:
+            case PICT:
+            case OBJECT:
+            case SHP:
+            case SHPPICT:
+            case NONSHPPICT:
+            case NONESTTABLES:
+            case XE:
+            case TC:
+            case TXE:
+            case FTNSEP:
+            case FTNSEPC:
+            case FTNCN:
+            case AFTNSEP:
+            case AFTNSEPC:
+            case AFTNCN:
+            case PNTEXT:
+            case LISTTEXT:
+            case LEVELTEXT:
+            case LEVELNUMBERS:
+            case LISTNAME:
+                skipGroup();
+                return false;
+            default:
+                break;
+        }
+        switch (destination) {
+            case BODY:
+                return bodyWord(word, parameter, hasParameter);
+            case FONTS:
+                fontWord(word, parameter);
+                return false;
+            case COLORS:
+                colorWord(word, parameter);
+                return false;
+            case STYLES:
+                styleWord(word, parameter);
+                return false;
+            case LISTS:
+                listWord(word, parameter);
+                return false;
+            case LIST_OVERRIDES:
+                if (word == Keyword.LISTID) {
+                    overrideList = parameter;
+                } else if (word == Keyword.LS) {
+                    BlockBuilder.Numbering numbering = lists.get(overrideList);
+                    if (numbering != null) {
+                        overrides.put(parameter, numbering);
+                    }
+                }
+                return false;
+            case OLD_LIST:
+                oldListWord(word, parameter);
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private boolean bodyWord(Keyword word, int parameter, boolean hasParameter) {
+        State s = state;
+        switch (word) {
+            case PLAIN:
+                s.format = 0;
+                s.color = 0;
+                s.font = defaultFont;
+                return false;
+            case F:
+                s.font = parameter;
+                return false;
+            case B:
+                s.format = toggle(s.format, BlockBuilder.Format.BOLD, parameter, hasParameter);
+                return false;
+            case I:
+                s.format = toggle(s.format, BlockBuilder.Format.ITALIC, parameter, hasParameter);
+                return false;
+            case UL:
+            case ULD:
+            case ULDB:
+            case ULDASH:
+            case ULTH:
+            case ULW:
+            case ULWAVE:
+                s.format = toggle(s.format, BlockBuilder.Format.UNDERLINE, parameter, hasParameter);
+                return false;
+            case ULNONE:
+                s.format &= ~BlockBuilder.Format.UNDERLINE;
+                return false;
+            case STRIKE:
+            case STRIKED:
+                s.format = toggle(s.format, BlockBuilder.Format.STRIKE, parameter, hasParameter);
+                return false;
+            case SUPER:
+                s.format = s.format & ~BlockBuilder.Format.SUBSCRIPT | BlockBuilder.Format.SUPERSCRIPT;
+                return false;
+            case SUB:
+                s.format = s.format & ~BlockBuilder.Format.SUPERSCRIPT | BlockBuilder.Format.SUBSCRIPT;
+                return false;
+            case NOSUPERSUB:
+                s.format &= ~(BlockBuilder.Format.SUPERSCRIPT | BlockBuilder.Format.SUBSCRIPT);
+                return false;
+            case CF:
+                s.color = parameter;
+                return false;
+            case PARD:
+                style = 0;
+                align = null;
+                inTable = false;
+                outline = -1;
+                override = 0;
+                level = 0;
+                oldListFormat = null;
+                return false;
+            case S:
+                style = parameter;
+                return false;
+            case QL:
+                align = null;
+                return false;
+            case QC:
+                align = "center";
+                return false;
+            case QR:
+                align = "right";
+                return false;
+            case QJ:
+            case QD:
+                align = "justify";
+                return false;
+            case INTBL:
+                inTable = true;
+                return false;
+            case ITAP:
+                inTable = parameter > 0;
+                return false;
+            case OUTLINELEVEL:
+                outline = parameter;
+                return false;
+            case LS:
+                override = parameter;
+                return false;
+            case ILVL:
+                level = parameter;
+                return false;
+            case TROWD:
+                cells = 0;
+                mergeFirst = false;
+                mergeNext = false;
+                return false;
+            case CLMGF:
+                mergeFirst = true;
+                return false;
+            case CLMRG:
+                mergeNext = true;
+                return false;
+            case CELLX:
+                cellDefinition();
+                return false;
+            case PAR:
+                endParagraph();
+                return true;
+            case NESTCELL:
+                endParagraph();
+                return false;
+            case CELL:
+                endCell();
+                return false;
+            case ROW:
+                endRow();
+                return true;
+            case LINE:
+                leaf(BREAK);
+                return false;
+            case TAB:
+                character('\t');
+                return false;
+            case EMDASH:
+                character('\u2014');
+                return false;
+            case ENDASH:
+                character('\u2013');
+                return false;
+            case BULLET:
+                character('\u2022');
+                return false;
+            case LQUOTE:
+                character('\u2018');
+                return false;
+            case RQUOTE:
+                character('\u2019');
+                return false;
+            case LDBLQUOTE:
+                character('\u201C');
+                return false;
+            case RDBLQUOTE:
+                character('\u201D');
+                return false;
+            case EMSPACE:
+                character('\u2003');
+                return false;
+            case ENSPACE:
+                character('\u2002');
+                return false;
+            case QMSPACE:
+                character('\u2005');
+                return false;
+            case ZWJ:
+                character('\u200D');
+                return false;
+            case ZWNJ:
+                character('\u200C');
+                return false;
+            case LTRMARK:
+                character('\u200E');
+                return false;
+            case RTLMARK:
+                character('\u200F');
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Обрабатывает управляющий символ.
+     *
+     * @return true, если закончился абзац
+     */
+    private boolean symbol(char c) {
+        if (c == '*') {
+            optional = true;
+            return false;
+        }
+        if (fallback > 0) {
+            fallback--;
+            return false;
+        }
+        switch (c) {
+            case '\\':
+            case '{':
+            case '}':
+                character(c);
+                return false;
+            case '~':
+                character('\u00A0');
+                return false;
+            case '-':
+                character('\u00AD');
+                return false;
+            case '_':
+                character('\u2011');
+                return false;
+            case '\n':
+                if (state.destination == BODY) {
+                    endParagraph();
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private void text(char[] chars, int start, int length) {
+        if (fallback > 0) {
+            int skipped = Math.min(fallback, length);
+            fallback -= skipped;
+            start += skipped;
+            length -= skipped;
+        }
+        if (length == 0) {
+            return;
+        }
+        switch (state.destination) {
+            case BODY:
+                break;
+            case FIELD_INSTRUCTION:
+                instruction.append(chars, start, length);
+                return;
+            case COLORS:
+                for (int i = start, end = start + length; i < end; i++) {
+                    if (chars[i] == ';') {
+                        colors.add(colorSet ? String.format(Locale.ROOT, "#%02x%02x%02x", red, green, blue) : null);
+                        colorSet = false;
+                        red = 0;
+                        green = 0;
+                        blue = 0;
+                    }
+                }
+                return;
+            case STYLES:
+                if (depth == styleTableDepth + 1) {
+                    styleName.append(chars, start, length);
+                }
+                return;
+            default:
+                return;
+        }
+        int end = start + length;
+        int plain = start;
+        for (int i = start; i < end; i++) {
+            if (chars[i] >= 0x80) {
+                // Восьмибитные байты без \'hh: текст в кодовой странице документа
+                appendText(chars, plain, i - plain);
+                hex(chars[i]);
+                if (i + 1 == end || chars[i + 1] < 0x80) {
+                    decodeBytes();
+                }
+                plain = i + 1;
+            }
+        }
+        appendText(chars, plain, end - plain);
+    }
+
+    private void appendText(char[] chars, int start, int length) {
+        if (length == 0) {
+            return;
+        }
+        prepareText();
+        ensureText(length);
+        System.arraycopy(chars, start, text, textLength, length);
+        textLength += length;
+    }
+
+    private void character(char c) {
+        if (state.destination == FIELD_INSTRUCTION) {
+            instruction.append(c);
+            return;
+        }
+        if (state.destination != BODY) {
+            if (state.destination == STYLES && depth == styleTableDepth + 1) {
+                styleName.append(c);
+            }
+            return;
+        }
+        prepareText();
+        ensureText(1);
+        text[textLength++] = c;
+    }
+
+    private void hex(int value) {
+        if (fallback > 0) {
+            fallback--;
+            return;
+        }
+        int page = codePage();
+        if (bytes.position() > 0 && page != bytesCodePage || !bytes.hasRemaining()) {
+            decodeBytes();
+        }
+        bytesCodePage = page;
+        bytes.put((byte) value);
+    }
+
+    /**
+     * Декодирует накопленные байты {@code \'hh} в кодовой странице, действовавшей при их записи.
+     */
+    private void decodeBytes() {
+        CharsetDecoder decoder = decoder(bytesCodePage);
+        bytes.flip();
+        decoded.clear();
+        decoder.reset();
+        decoder.decode(bytes, decoded, true);
+        decoder.flush(decoded);
+        bytes.clear();
+        decoded.flip();
+        while (decoded.hasRemaining()) {
+            character(decoded.get());
+        }
+    }
+
+    /**
+     * Кодовая страница текущего шрифта или документа.
+     */
+    private int codePage() {
+        if (state.font != pageFont) {
+            Integer page = fonts.get(state.font);
+            pageFont = state.font;
+            fontPage = page == null ? 0 : page;
+        }
+        return fontPage > 0 ? fontPage : codePage;
+    }
+
+    private CharsetDecoder decoder(int page) {
+        CharsetDecoder decoder = decoders.get(page);
+        if (decoder == null) {
+            decoder = charset(page).newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            decoders.put(page, decoder);
+        }
+        return decoder;
+    }
+
+    /**
+     * Кодировка Java по номеру кодовой страницы Windows.
+     */
+    private static Charset charset(int page) {
+        switch (page) {
+            case 65001:
+                return StandardCharsets.UTF_8;
+            case 10000:
+                return forName("x-MacRoman");
+            case 932:
+                return forName("windows-31j");
+            case 936:
+                return forName("GBK");
+            case 949:
+                return forName("x-windows-949");
+            case 950:
+                return forName("x-windows-950");
+            case 437:
+            case 850:
+            case 866:
+                return forName("IBM" + page);
+            default:
+                Charset charset = forName("windows-" + page);
+                return charset != null ? charset : forName("x-windows-" + page);
+        }
+    }
+
+    private static Charset forName(String name) {
+        try {
+            if (Charset.isSupported(name)) {
+                return Charset.forName(name);
+            }
+        } catch (IllegalCharsetNameException e) {
+            // Неизвестная кодовая страница
+        }
+        return name.startsWith("windows-") ? null : Charset.forName("windows-" + DEFAULT_CODE_PAGE);
+    }
+
+    /**
+     * Кодовая страница Windows по набору символов шрифта {@code \fcharset}; 0 — страница документа.
+     */
+    private static int fontCodePage(int charset) {
+        switch (charset) {
+            case 77:
+                return 10000;
+            case 128:
+                return 932;
+            case 129:
+                return 949;
+            case 134:
+                return 936;
+            case 136:
+                return 950;
+            case 161:
+                return 1253;
+            case 162:
+                return 1254;
+            case 163:
+                return 1258;
+            case 177:
+                return 1255;
+            case 178:
+                return 1256;
+            case 186:
+                return 1257;
+            case 204:
+                return 1251;
+            case 222:
+                return 874;
+            case 238:
+                return 1250;
+            case 254:
+                return 437;
+            case 255:
+                return 850;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Начинает фрагмент текста: выдаёт начало абзаца и накопленный текст, если
+     * оформление изменилось.
+     */
+    private void prepareText() {
+        beginParagraph();
+        State s = state;
+        int format = s.format;
+        int colorIndex = s.color;
+        if (heading > 0) {
+            // Заголовок полужирный по стилю, как <h1>; сам текст не выделен
+            format &= ~BlockBuilder.Format.BOLD;
+        }
+        if (s.link != null) {
+            // Подчёркивание и цвет ссылки задаёт оформление ссылки
+            format &= ~BlockBuilder.Format.UNDERLINE;
+            colorIndex = 0;
+        }
+        if (textAttributes != null && format == textFormat && colorIndex == textColor && s.link == textLink) {
+            return;
+        }
+        String color = colorIndex > 0 && colorIndex < colors.size() ? colors.get(colorIndex) : null;
+        AttributeSet attributes = blocks.run(format, color);
+        if (s.link != null) {
+            if (attributes != linkRun || !s.link.equals(linkHref)) {
+                linkRun = attributes;
+                linkHref = s.link;
+                linkAttributes = HtmlFragment.linkAttributes(attributes, s.link);
+            }
+            attributes = linkAttributes;
+        }
+        if (attributes != textAttributes) {
+            flush();
+            textAttributes = attributes;
+        }
+        textFormat = format;
+        textColor = colorIndex;
+        textLink = s.link;
+    }
+
+    private void flush() {
+        if (textLength == 0) {
+            return;
+        }
+        blocks.text(text, 0, textLength, textAttributes);
+        textLength = 0;
+    }
+
+    private void leaf(AttributeSet attributes) {
+        flush();
+        beginParagraph();
+        blocks.leaf(attributes);
+    }
+
+    private void ensureText(int length) {
+        if (textLength + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+        }
+    }
+
+    /**
+     * Выдаёт начало абзаца, если оно ещё не выдано, а перед ним — начало или конец таблицы.
+     */
+    private void beginParagraph() {
+        if (blocks.inParagraph()) {
+            return;
+        }
+        if (inTable) {
+            if (!blocks.isOpen(HTML.Tag.TD)) {
+                beginCell();
+            }
+        } else {
+            endTable();
+        }
+        BlockBuilder.Numbering numbering = null;
+        int listLevel = level;
+        if (oldListFormat != null) {
+            numbering = oldLists.get(oldListFormat);
+            if (numbering == null) {
+                numbering = new BlockBuilder.Numbering();
+                Arrays.fill(numbering.formats, oldListFormat);
+                numbering.starts[0] = oldListStart;
+                oldLists.put(oldListFormat, numbering);
+            }
+            listLevel = 0;
+        } else if (override > 0) {
+            numbering = overrides.get(override);
+        }
+        heading = headingLevel();
+        blocks.beginParagraph(heading, align, numbering, listLevel);
+    }
+
+    private int headingLevel() {
+        if (outline >= 0 && outline < 6) {
+            return outline + 1;
+        }
+        Integer heading = headings.get(style);
+        return heading != null ? heading : 0;
+    }
+
+    private void endParagraph() {
+        flush();
+        beginParagraph();
+        blocks.endParagraph();
+    }
+
+    private void beginCell() {
+        if (!blocks.isOpen(HTML.Tag.TABLE)) {
+            blocks.openTable();
+        }
+        if (!blocks.isOpen(HTML.Tag.TR)) {
+            blocks.openRow();
+            cell = 0;
+        }
+        int span = cell < cells ? spans[cell] : 1;
+        blocks.openCell(Math.max(1, span));
+    }
+
+    /**
+     * Заканчивает ячейку ({@code \cell}). Ячейка, продолжающая объединение, пропускается,
+     * если в ней ничего нет.
+     */
+    private void endCell() {
+        if (blocks.inParagraph() || textLength > 0) {
+            endParagraph();
+        }
+        if (!blocks.isOpen(HTML.Tag.TD)) {
+            if (cell < cells && spans[cell] == 0) {
+                cell++;
+                return;
+            }
+            beginCell();
+        }
+        blocks.closeCell();
+        cell++;
+    }
+
+    private void endRow() {
+        if (blocks.inParagraph() || textLength > 0) {
+            endParagraph();
+        }
+        if (blocks.isOpen(HTML.Tag.TD)) {
+            blocks.closeCell();
+        }
+        if (blocks.isOpen(HTML.Tag.TR)) {
+            blocks.closeBlock();
+        }
+        cell = 0;
+    }
+
+    private void endTable() {
+        if (!blocks.isOpen(HTML.Tag.TABLE)) {
+            return;
+        }
+        if (blocks.isOpen(HTML.Tag.TD)) {
+            blocks.closeCell();
+        }
+        if (blocks.isOpen(HTML.Tag.TR)) {
+            blocks.closeBlock();
+        }
+        blocks.closeBlock();
+    }
+
+    private void cellDefinition() {
+        if (cells == spans.length) {
+            spans = Arrays.copyOf(spans, cells * 2);
+        }
+        if (mergeNext && !mergeFirst && cells > 0) {
+            int first = cells - 1;
+            while (first > 0 && spans[first] == 0) {
+                first--;
+            }
+            spans[first]++;
+            spans[cells++] = 0;
+        } else {
+            spans[cells++] = 1;
+        }
+        mergeFirst = false;
+        mergeNext = false;
+    }
+
+    /**
+     * Конец файла: незаконченный абзац и открытые блоки.
+     */
+    private void finish() {
+        if (blocks.inParagraph() || textLength > 0) {
+            endParagraph();
+        }
+        blocks.closeAll();
+    }
+
+    private void fontWord(Keyword word, int parameter) {
+        if (word == Keyword.F) {
+            state.font = parameter;
+        } else if (word == Keyword.FCHARSET) {
+            int page = fontCodePage(parameter);
+            if (page > 0) {
+                fonts.put(state.font, page);
+                pageFont = Integer.MIN_VALUE;
+            }
+        } else if (word == Keyword.CPG && parameter > 0) {
+            fonts.put(state.font, parameter);
+            pageFont = Integer.MIN_VALUE;
+        }
+    }
+
+    private void colorWord(Keyword word, int parameter) {
+        if (word == Keyword.RED) {
+            red = parameter & 0xFF;
+        } else if (word == Keyword.GREEN) {
+            green = parameter & 0xFF;
+        } else if (word == Keyword.BLUE) {
+            blue = parameter & 0xFF;
+        } else {
+            return;
+        }
+        colorSet = true;
+    }
+
+    private void styleWord(Keyword word, int parameter) {
+        if (depth != styleTableDepth + 1) {
+            return;
+        }
+        switch (word) {
+            case S:
+                styleNumber = parameter;
+                break;
+            case CS:
+            case DS:
+            case TS:
+                paragraphStyle = false;
+                break;
+            case OUTLINELEVEL:
+                styleOutline = parameter;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Конец описания стиля: уровень заголовка по имени («heading 2», «title») или уровню структуры.
+     */
+    private void endStyle() {
+        if (paragraphStyle) {
+            int end = styleName.indexOf(";");
+            String name = (end >= 0 ? styleName.substring(0, end) : styleName.toString())
+                    .trim().toLowerCase(Locale.ROOT);
+            int heading = 0;
+            if (name.equals("title")) {
+                heading = 1;
+            } else if (name.startsWith("heading ") && name.length() == "heading ".length() + 1) {
+                heading = name.charAt(name.length() - 1) - '0';
+            } else if (styleOutline >= 0) {
+                heading = styleOutline + 1;
+            }
+            if (heading >= 1 && heading <= 6) {
+                headings.put(styleNumber, heading);
+            }
+        }
+        paragraphStyle = false;
+    }
+
+    private void listWord(Keyword word, int parameter) {
+        switch (word) {
+            case LIST:
+                list = new BlockBuilder.Numbering();
+                listLevel = -1;
+                break;
+            case LISTLEVEL:
+                listLevel++;
+                break;
+            case LEVELNFC:
+            case LEVELNFCN:
+                if (list != null && listLevel >= 0 && listLevel < BlockBuilder.LIST_LEVELS) {
+                    list.formats[listLevel] = listFormat(parameter);
+                }
+                break;
+            case LEVELSTARTAT:
+                if (list != null && listLevel >= 0 && listLevel < BlockBuilder.LIST_LEVELS) {
+                    list.starts[listLevel] = parameter;
+                }
+                break;
+            case LISTID:
+                if (list != null) {
+                    lists.put(parameter, list);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void oldListWord(Keyword word, int parameter) {
+        switch (word) {
+            case PNLVLBLT:
+                oldListFormat = "bullet";
+                break;
+            case PNLVLBODY:
+            case PNDEC:
+                oldListFormat = "decimal";
+                break;
+            case PNUCLTR:
+                oldListFormat = "upperLetter";
+                break;
+            case PNLCLTR:
+                oldListFormat = "lowerLetter";
+                break;
+            case PNUCRM:
+                oldListFormat = "upperRoman";
+                break;
+            case PNLCRM:
+                oldListFormat = "lowerRoman";
+                break;
+            case PNLVLCONT:
+                oldListFormat = null;
+                break;
+            case PNSTART:
+                oldListStart = parameter;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Формат номера в терминах Word по коду {@code \levelnfc}.
+     */
+    private static String listFormat(int code) {
+        switch (code) {
+            case 0:
+                return "decimal";
+            case 1:
+                return "upperRoman";
+            case 2:
+                return "lowerRoman";
+            case 3:
+                return "upperLetter";
+            case 4:
+                return "lowerLetter";
+            case 23:
+                return "bullet";
+            case 255:
+                return "none";
+            default:
+                return "decimal";
+        }
+    }
+
+    /**
+     * Пропускает текущую группу вместе с вложенными.
+     */
+    private void skipGroup() throws IOException {
+        for (int level = 1; level > 0; ) {
+            int token = in.next();
+            if (token == RtfTokenizer.GROUP_START) {
+                level++;
+            } else if (token == RtfTokenizer.GROUP_END) {
+                level--;
+            } else if (token == RtfTokenizer.WORD && in.keyword() == Keyword.BIN) {
+                in.skip(Math.max(0, in.parameter()));
+            } else if (token == RtfTokenizer.EOF) {
+                return;
+            }
+        }
+        pop();
+    }
+
+    /**
+     * Включает или выключает признак по слову-переключателю RTF: {@code \b} включает,
+     * {@code \b0} выключает.
+     */
+    private static int toggle(int format, int flag, int parameter, boolean hasParameter) {
+        return !hasParameter || parameter != 0 ? format | flag : format & ~flag;
+    }
+
+    /**
+     * Состояние группы: оформление текста и то, куда идёт её текст.
+     */
+    private static final class State {
+
+        int format;
+
+        int color;
+
+        int font;
+
+        /**
+         * Сколько символов замены следует за <code>&#92;u</code>.
+         */
+        int uc;
+
+        int destination;
+
+        /**
+         * Адрес ссылки, в результате поля которой находится группа, или null.
+         */
+        String link;
+
+        void reset(int defaultFont) {
+            format = 0;
+            color = 0;
+            font = defaultFont;
+            uc = 1;
+            destination = BODY;
+            link = null;
+        }
+
+        void copy(State other) {
+            format = other.format;
+            color = other.color;
+            font = other.font;
+            uc = other.uc;
+            destination = other.destination;
+            link = other.link;
+        }
+    }
+}
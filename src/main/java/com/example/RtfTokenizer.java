@@ -0,0 +1,395 @@
+package com.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Разбор RTF на лексемы за один проход, без регулярных выражений и без строк.
+ *
+ * <p>Файл читается {@link MappedFileReader} в кодировке ISO-8859-1 (байт — символ:
+ * RTF записан семибитным ASCII, а восьмибитные байты текста перекодирует читатель)
+ * в {@link CharBuffer}, и лексемы выделяются прямо в его массиве: текст отдаётся
+ * диапазоном ({@link #array()}, {@link #start()}, {@link #length()}) без копирования,
+ * управляющие слова распознаются по хеш-таблице известных слов {@link Keyword}
+ * без создания строк.</p>
+ */
+final class RtfTokenizer implements Closeable {
+
+    /**
+     * Конец файла.
+     */
+    static final int EOF = 0;
+
+    /**
+     * Начало группы: <code>{</code>.
+     */
+    static final int GROUP_START = 1;
+
+    /**
+     * Конец группы: <code>}</code>.
+     */
+    static final int GROUP_END = 2;
+
+    /**
+     * Управляющее слово {@code \слово[число]}: {@link #keyword()}, {@link #parameter()}.
+     */
+    static final int WORD = 3;
+
+    /**
+     * Управляющий символ {@code \x}: {@link #symbol()}. Перевод строки после обратной
+     * косой черты означает {@code \par} и отдаётся символом {@code '\n'}.
+     */
+    static final int SYMBOL = 4;
+
+    /**
+     * Байт {@code \'hh}: {@link #parameter()}.
+     */
+    static final int HEX = 5;
+
+    /**
+     * Текст: {@link #array()}, {@link #start()}, {@link #length()}. Переводы строк
+     * в RTF не значимы и в текст не входят.
+     */
+    static final int TEXT = 6;
+
+    /**
+     * Размер буфера в символах.
+     */
+    private static final int BUFFER = 64 * 1024;
+
+    /**
+     * Сколько символов должно быть в буфере перед управляющим словом: самое длинное
+     * слово (32 буквы) с числом.
+     */
+    private static final int LOOKAHEAD = 64;
+
+    private static final int MAX_WORD = 32;
+
+    private static final Keyword[] KEYWORDS = Keyword.values();
+
+    /**
+     * Хеш-таблица с открытой адресацией: номер слова в {@link #KEYWORDS} плюс один, 0 — пусто.
+     */
+    private static final int[] TABLE = new int[512];
+
+    static {
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            String word = KEYWORDS[i].word;
+            int hash = 0;
+            for (int j = 0; j < word.length(); j++) {
+                hash = hash * 31 + word.charAt(j);
+            }
+            int slot = hash & (TABLE.length - 1);
+            while (TABLE[slot] != 0) {
+                slot = (slot + 1) & (TABLE.length - 1);
+            }
+            TABLE[slot] = i + 1;
+        }
+    }
+
+    private final MappedFileReader in;
+
+    private final CharBuffer buffer = CharBuffer.allocate(BUFFER);
+
+    private final char[] chars = buffer.array();
+
+    private boolean end;
+
+    private Keyword keyword;
+
+    private int parameter;
+
+    private boolean hasParameter;
+
+    private char symbol;
+
+    private int start;
+
+    private int length;
+
+    /**
+     * Открывает файл RTF.
+     *
+     * @param file файл
+     * @throws IOException если файл не открывается
+     */
+    RtfTokenizer(Path file) throws IOException {
+        in = new MappedFileReader(file, StandardCharsets.ISO_8859_1);
+        buffer.limit(0);
+    }
+
+    /**
+     * Читает следующую лексему.
+     *
+     * @return {@link #EOF}, {@link #GROUP_START}, {@link #GROUP_END}, {@link #WORD},
+     * {@link #SYMBOL}, {@link #HEX} или {@link #TEXT}
+     * @throws IOException при ошибке чтения
+     */
+    int next() throws IOException {
+        while (true) {
+            if (buffer.remaining() < LOOKAHEAD && !end) {
+                fill();
+            }
+            if (!buffer.hasRemaining()) {
+                return EOF;
+            }
+            int p = buffer.position();
+            char c = chars[p];
+            switch (c) {
+                case '{':
+                    buffer.position(p + 1);
+                    return GROUP_START;
+                case '}':
+                    buffer.position(p + 1);
+                    return GROUP_END;
+                case '\\':
+                    return control(p + 1);
+                case '\r':
+                case '\n':
+                case 0:
+                    buffer.position(p + 1);
+                    continue;
+                default:
+                    return text(p);
+            }
+        }
+    }
+
+    /**
+     * Управляющее слово или {@code null}, если оно не из {@link Keyword}.
+     *
+     * @return слово последней лексемы {@link #WORD}
+     */
+    Keyword keyword() {
+        return keyword;
+    }
+
+    /**
+     * Числовой параметр слова (0, если его нет) или значение байта {@link #HEX}.
+     *
+     * @return параметр
+     */
+    int parameter() {
+        return parameter;
+    }
+
+    /**
+     * Есть ли у слова числовой параметр: {@code \b} и {@code \b0} — разные слова.
+     *
+     * @return true, если параметр записан
+     */
+    boolean hasParameter() {
+        return hasParameter;
+    }
+
+    char symbol() {
+        return symbol;
+    }
+
+    /**
+     * Массив с текстом лексемы {@link #TEXT}; действителен до следующего вызова {@link #next}.
+     *
+     * @return массив буфера
+     */
+    char[] array() {
+        return chars;
+    }
+
+    int start() {
+        return start;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * Пропускает двоичные данные после {@code \binN}.
+     *
+     * @param count число байт
+     * @throws IOException при ошибке чтения
+     */
+    void skip(long count) throws IOException {
+        while (count > 0) {
+            if (!buffer.hasRemaining()) {
+                if (end) {
+                    return;
+                }
+                fill();
+                continue;
+            }
+            int n = (int) Math.min(count, buffer.remaining());
+            buffer.position(buffer.position() + n);
+            count -= n;
+        }
+    }
+
+    /**
+     * Прочитано байт файла (для индикатора хода).
+     *
+     * @return позиция чтения
+     */
+    long position() {
+        return in.position() - buffer.remaining();
+    }
+
+    long size() {
+        return in.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Разбирает управляющее слово, символ или байт после обратной косой черты.
+     */
+    private int control(int p) {
+        int limit = buffer.limit();
+        if (p >= limit) {
+            buffer.position(p);
+            symbol = '\\';
+            return SYMBOL;
+        }
+        char c = chars[p];
+        if (!isLetter(c)) {
+            if (c == '\'') {
+                int high = p + 1 < limit ? digit(chars[p + 1]) : -1;
+                int low = p + 2 < limit ? digit(chars[p + 2]) : -1;
+                if (high >= 0 && low >= 0) {
+                    parameter = high << 4 | low;
+                    buffer.position(p + 3);
+                    return HEX;
+                }
+            }
+            buffer.position(p + 1);
+            symbol = c == '\r' ? '\n' : c;
+            return SYMBOL;
+        }
+        int wordStart = p;
+        int hash = 0;
+        while (p < limit && isLetter(chars[p]) && p - wordStart < MAX_WORD) {
+            hash = hash * 31 + chars[p];
+            p++;
+        }
+        keyword = lookup(wordStart, p - wordStart, hash);
+        boolean negative = p < limit && chars[p] == '-';
+        int digits = negative ? p + 1 : p;
+        int value = 0;
+        int q = digits;
+        while (q < limit && chars[q] >= '0' && chars[q] <= '9' && q - digits < 10) {
+            value = value * 10 + chars[q] - '0';
+            q++;
+        }
+        hasParameter = q > digits;
+        if (hasParameter) {
+            parameter = negative ? -value : value;
+            p = q;
+        } else {
+            parameter = 0;
+        }
+        // Пробел после слова — разделитель, а не текст
+        if (p < limit && chars[p] == ' ') {
+            p++;
+        }
+        buffer.position(p);
+        return WORD;
+    }
+
+    /**
+     * Выделяет текст до управляющего символа, скобки или перевода строки.
+     */
+    private int text(int p) {
+        int limit = buffer.limit();
+        int q = p;
+        while (q < limit) {
+            char c = chars[q];
+            if (c == '\\' || c == '{' || c == '}' || c == '\r' || c == '\n' || c == 0) {
+                break;
+            }
+            q++;
+        }
+        start = p;
+        length = q - p;
+        buffer.position(q);
+        return TEXT;
+    }
+
+    private Keyword lookup(int offset, int length, int hash) {
+        for (int slot = hash & (TABLE.length - 1); TABLE[slot] != 0; slot = (slot + 1) & (TABLE.length - 1)) {
+            Keyword candidate = KEYWORDS[TABLE[slot] - 1];
+            String word = candidate.word;
+            if (word.length() == length && matches(word, offset)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(String word, int offset) {
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Дочитывает файл в буфер, сдвинув непрочитанный остаток в начало.
+     */
+    private void fill() throws IOException {
+        buffer.compact();
+        while (buffer.hasRemaining()) {
+            int n = in.read(chars, buffer.position(), buffer.remaining());
+            if (n < 0) {
+                end = true;
+                break;
+            }
+            buffer.position(buffer.position() + n);
+        }
+        buffer.flip();
+    }
+
+    private static boolean isLetter(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return c >= 'A' && c <= 'F' ? c - 'A' + 10 : -1;
+    }
+
+    /**
+     * Управляющие слова, которые понимает {@link RtfReader}.
+     * Слово — имя константы в нижнем регистре.
+     */
+    enum Keyword {
+        RTF, ANSI, ANSICPG, MAC, PC, PCA, DEFF, UC, U, BIN,
+        FONTTBL, F, FCHARSET, CPG, COLORTBL, RED, GREEN, BLUE,
+        STYLESHEET, S, CS, DS, TS, OUTLINELEVEL,
+        LISTTABLE, LIST, LISTLEVEL, LEVELNFC, LEVELNFCN, LEVELSTARTAT, LISTID,
+        LISTOVERRIDETABLE, LISTOVERRIDE, LS, ILVL, LEVELTEXT, LEVELNUMBERS, LISTNAME,
+        PN, PNLVLBLT, PNLVLBODY, PNLVLCONT, PNDEC, PNUCLTR, PNLCLTR, PNUCRM, PNLCRM, PNSTART, PNTEXT, LISTTEXT,
+        PLAIN, B, I, UL, ULD, ULDB, ULDASH, ULTH, ULW, ULWAVE, ULNONE, STRIKE, STRIKED, SUPER, SUB, NOSUPERSUB, CF,
+        PAR, PARD, QL, QC, QR, QJ, QD, INTBL, ITAP,
+        TROWD, CELLX, CLMGF, CLMRG, CELL, NESTCELL, ROW, NESTROW,
+        LINE, TAB, EMDASH, ENDASH, BULLET, LQUOTE, RQUOTE, LDBLQUOTE, RDBLQUOTE,
+        EMSPACE, ENSPACE, QMSPACE, ZWJ, ZWNJ, LTRMARK, RTLMARK,
+        FIELD, FLDINST, FLDRSLT,
+        INFO, HEADER, HEADERL, HEADERR, HEADERF, FOOTER, FOOTERL, FOOTERR, FOOTERF, FOOTNOTE,
+        PICT, OBJECT, SHP, SHPPICT, NONSHPPICT, NONESTTABLES, XE, TC, TXE, FTNSEP, FTNSEPC, FTNCN, AFTNSEP, AFTNSEPC, AFTNCN;
+
+        final String word = name().toLowerCase(Locale.ROOT);
+    }
+}
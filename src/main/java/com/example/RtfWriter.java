@@ -0,0 +1,627 @@
+package com.example;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLDocument;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Потоковый экспорт документа в RTF — пара к {@link RtfReader}.
+ *
+ * <p>Как и {@link DocxWriter}, обходит дерево элементов под блокировкой чтения и пишет
+ * файл сразу, без промежуточной модели. Заголовок RTF (цвета и списки) должен идти
+ * до текста, поэтому перед записью дерево проходится ещё раз — без текста, только
+ * по элементам. Текст пишется в кодовой странице 1251: кириллица занимает по четыре
+ * байта ({@code \'hh}), остальные символы — <code>&#92;uN</code>.</p>
+ *
+ * <p>Переносятся абзацы, заголовки H1–H6 (стили «heading 1–6»), списки, цитаты,
+ * преформатированный текст, таблицы (вложенные таблицы сливаются с внешней),
+ * выравнивание абзацев, ссылки (поля {@code HYPERLINK}) и оформление текста:
+ * полужирный, курсив, подчёркивание, зачёркивание, индексы, цвет.</p>
+ */
+public final class RtfWriter {
+
+    /**
+     * Уровней вложенности списков в Word.
+     */
+    private static final int LIST_LEVELS = 9;
+
+    /**
+     * Номер ({@code \ls}) маркированного списка; нумерованные получают свои номера
+     * начиная со следующего, чтобы каждый начинался с единицы.
+     */
+    private static final int BULLET_LIST = 1;
+
+    /**
+     * Ширина текста страницы в твипах: A4 без полей 3 и 1,5 см.
+     */
+    private static final int TEXT_WIDTH = 9355;
+
+    /**
+     * Размеры шрифта заголовков H1–H6 в полупунктах, как в {@link DocxWriter}.
+     */
+    private static final int[] HEADING_SIZES = {48, 36, 28, 24, 20, 16};
+
+    /**
+     * Рамка ячейки таблицы: тонкая линия со всех сторон, как у {@code <table border=1>}.
+     */
+    private static final String CELL_BORDERS = "\\clbrdrt\\brdrs\\brdrw10\\clbrdrl\\brdrs\\brdrw10"
+            + "\\clbrdrb\\brdrs\\brdrw10\\clbrdrr\\brdrs\\brdrw10";
+
+    /**
+     * Номер цвета ссылок в таблице цветов.
+     */
+    private static final int LINK_COLOR = 1;
+
+    /**
+     * Байт кодовой страницы 1251 для символов до {@code U+2122}; 0 — символа в ней нет.
+     */
+    private static final byte[] CP1251 = new byte[0x2123];
+
+    static {
+        Charset charset = Charset.forName("windows-1251");
+        byte[] bytes = new byte[128];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (0x80 + i);
+        }
+        CharBuffer chars = charset.decode(ByteBuffer.wrap(bytes));
+        for (int i = 0; i < bytes.length; i++) {
+            char c = chars.get(i);
+            if (c < CP1251.length) {
+                CP1251[c] = bytes[i];
+            }
+        }
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final HTMLDocument doc;
+
+    private final Writer out;
+
+    private final Segment text = new Segment();
+
+    /**
+     * Буфер вывода: RTF пишется по символу, и вызов {@link Writer#write(int)} на каждый
+     * обошёлся бы дороже самого преобразования.
+     */
+    private final char[] buffer = new char[8192];
+
+    private int used;
+
+    /**
+     * Цвета текста ({@code 0xRRGGBB}) → номер в таблице цветов.
+     */
+    private final Map<Integer, Integer> colors = new HashMap<>();
+
+    /**
+     * Номера ({@code \ls}) открытых списков по уровням и глубина вложенности.
+     */
+    private final int[] lists = new int[LIST_LEVELS];
+
+    private int listDepth;
+
+    private int orderedLists;
+
+    private boolean itemStarted;
+
+    private int quoteDepth;
+
+    private int preDepth;
+
+    private int tableDepth;
+
+    /**
+     * Выведен абзац, а его конец ({@code \par} или {@code \cell}) ещё нет: в ячейке
+     * последний абзац кончается не {@code \par}.
+     */
+    private boolean paragraphOpen;
+
+    private long paragraphs;
+
+    /**
+     * Последний набор атрибутов текста и его оформление в RTF: соседние листья
+     * с одинаковым оформлением обычно делят один набор.
+     */
+    private AttributeSet lastAttributes;
+
+    private boolean lastLink;
+
+    private String lastFormat;
+
+    private RtfWriter(HTMLDocument doc, Writer out) {
+        this.doc = doc;
+        this.out = out;
+        text.setPartialReturn(true);
+    }
+
+    /**
+     * Атомарно сохраняет документ в файл RTF.
+     *
+     * @param doc    документ
+     * @param target путь к файлу
+     * @param saver  атомарная запись
+     * @throws IOException при ошибке записи; прежнее содержимое файла в этом случае сохраняется
+     */
+    public static void save(HTMLDocument doc, Path target, AtomicFileSaver saver) throws IOException {
+        saver.save(target, channel -> write(doc, Channels.newOutputStream(channel)));
+    }
+
+    /**
+     * Записывает документ в поток как RTF под блокировкой чтения документа. Поток не закрывается.
+     *
+     * @param doc документ
+     * @param out приёмник
+     * @throws IOException при ошибке записи
+     */
+    public static void write(HTMLDocument doc, OutputStream out) throws IOException {
+        // RTF целиком в ASCII: всё, что за его пределами, экранировано
+        Writer ascii = new OutputStreamWriter(out, StandardCharsets.US_ASCII);
+        RtfWriter writer = new RtfWriter(doc, ascii);
+        IOException[] failure = new IOException[1];
+        doc.render(() -> {
+            try {
+                writer.document();
+            } catch (IOException e) {
+                failure[0] = e;
+            } catch (BadLocationException e) {
+                failure[0] = new IOException("Повреждённая структура документа: " + e.getMessage(), e);
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        ascii.flush();
+    }
+
+    private void document() throws IOException, BadLocationException {
+        Element root = doc.getDefaultRootElement();
+        prepare(root);
+        header();
+        orderedLists = 0;
+        block(root);
+        if (paragraphOpen) {
+            put("\\par\r\n");
+        }
+        put("}\r\n");
+        out.write(buffer, 0, used);
+        used = 0;
+    }
+
+    /**
+     * Собирает то, что нужно заголовку: цвета текста и число нумерованных списков.
+     */
+    private void prepare(Element element) {
+        Object tag = element.getAttributes().getAttribute(StyleConstants.NameAttribute);
+        if (tag == HTML.Tag.OL) {
+            orderedLists++;
+        }
+        if (ElementChanges.hasBlocks(element)) {
+            for (int i = 0, n = element.getElementCount(); i < n; i++) {
+                prepare(element.getElement(i));
+            }
+            return;
+        }
+        AttributeSet last = null;
+        for (int i = 0, n = element.getElementCount(); i < n; i++) {
+            AttributeSet attributes = element.getElement(i).getAttributes();
+            if (attributes == last || TextStyle.link(attributes) != null) {
+                continue;
+            }
+            last = attributes;
+            int color = TextStyle.color(attributes, doc.getStyleSheet());
+            if (color >= 0 && !colors.containsKey(color)) {
+                colors.put(color, LINK_COLOR + 1 + colors.size());
+            }
+        }
+    }
+
+    private void header() throws IOException {
+        put("{\\rtf1\\ansi\\ansicpg1251\\deff0\\uc1\r\n");
+        put("{\\fonttbl{\\f0\\froman\\fcharset204 Times New Roman;}{\\f1\\fmodern\\fcharset204 Courier New;}}\r\n");
+        put("{\\colortbl;\\red0\\green0\\blue255;");
+        int[] table = new int[colors.size()];
+        for (Map.Entry<Integer, Integer> entry : colors.entrySet()) {
+            table[entry.getValue() - LINK_COLOR - 1] = entry.getKey();
+        }
+        for (int rgb : table) {
+            put("\\red" + (rgb >> 16) + "\\green" + (rgb >> 8 & 0xFF) + "\\blue" + (rgb & 0xFF) + ";");
+        }
+        put("}\r\n{\\stylesheet{\\s0\\f0\\fs24\\sa120 Normal;}");
+        for (int level = 1; level <= HEADING_SIZES.length; level++) {
+            put("{\\s" + level + "\\sb240\\sa120\\keepn\\outlinelevel" + (level - 1) + "\\b\\fs"
+                    + HEADING_SIZES[level - 1] + "\\sbasedon0\\snext0 heading " + level + ";}");
+        }
+        put("}\r\n{\\*\\listtable");
+        list(BULLET_LIST, true);
+        for (int i = 1; i <= orderedLists; i++) {
+            list(BULLET_LIST + i, false);
+        }
+        put("}\r\n{\\*\\listoverridetable");
+        for (int i = 0; i <= orderedLists; i++) {
+            put("{\\listoverride\\listid" + (BULLET_LIST + i) + "\\listoverridecount0\\ls" + (BULLET_LIST + i) + "}");
+        }
+        put("}\r\n\\paperw11906\\paperh16838\\margl1701\\margr850\\margt1134\\margb1134\r\n");
+    }
+
+    /**
+     * Описание списка из девяти уровней: маркеры или номера «1.», начиная с единицы.
+     */
+    private void list(int id, boolean bullet) throws IOException {
+        put("{\\list\\listtemplateid" + id + "\\listhybrid");
+        for (int level = 0; level < LIST_LEVELS; level++) {
+            put("{\\listlevel\\levelnfc" + (bullet ? 23 : 0) + "\\levelnfcn" + (bullet ? 23 : 0)
+                    + "\\leveljc0\\levelfollow0\\levelstartat1");
+            put(bullet ? "{\\leveltext\\'01\\u8226 ?;}{\\levelnumbers;}"
+                    : "{\\leveltext\\'02\\'0" + level + ".;}{\\levelnumbers\\'01;}");
+            put("\\fi-360\\li" + 720 * (level + 1) + "}");
+        }
+        put("{\\listname ;}\\listid" + id + "}");
+    }
+
+    /**
+     * Выводит блок и всё, что в нём.
+     */
+    private void block(Element element) throws IOException, BadLocationException {
+        Object tag = element.getAttributes().getAttribute(StyleConstants.NameAttribute);
+        if (tag == HTML.Tag.HEAD) {
+            return;
+        }
+        if (!ElementChanges.hasBlocks(element)) {
+            if (element != doc.getDefaultRootElement()) {
+                paragraph(element);
+            }
+            return;
+        }
+        if (tag == HTML.Tag.TABLE && tableDepth == 0 && table(element)) {
+            return;
+        }
+        boolean list = tag == HTML.Tag.UL || tag == HTML.Tag.OL;
+        if (list) {
+            if (listDepth < LIST_LEVELS) {
+                lists[listDepth] = tag == HTML.Tag.OL ? BULLET_LIST + ++orderedLists : BULLET_LIST;
+            }
+            listDepth++;
+        } else if (tag == HTML.Tag.LI) {
+            itemStarted = true;
+        } else if (tag == HTML.Tag.BLOCKQUOTE) {
+            quoteDepth++;
+        } else if (tag == HTML.Tag.PRE) {
+            preDepth++;
+        }
+        for (int i = 0, n = element.getElementCount(); i < n; i++) {
+            block(element.getElement(i));
+        }
+        if (list) {
+            listDepth--;
+        } else if (tag == HTML.Tag.LI) {
+            itemStarted = false;
+        } else if (tag == HTML.Tag.BLOCKQUOTE) {
+            quoteDepth--;
+        } else if (tag == HTML.Tag.PRE) {
+            preDepth--;
+        }
+    }
+
+    /**
+     * Выводит таблицу: у каждой строки своё определение ({@code \trowd}), столбцы
+     * равной ширины. Таблицы внутри ячеек выводятся их абзацами.
+     *
+     * @return false, если в таблице нет ни одной ячейки (тогда её содержимое выводится как обычные блоки)
+     */
+    private boolean table(Element table) throws IOException, BadLocationException {
+        int columns = 0;
+        for (int i = 0, n = table.getElementCount(); i < n; i++) {
+            columns = Math.max(columns, columns(table.getElement(i)));
+        }
+        if (columns == 0) {
+            return false;
+        }
+        int width = TEXT_WIDTH / columns;
+        tableDepth++;
+        for (int i = 0, n = table.getElementCount(); i < n; i++) {
+            Element row = table.getElement(i);
+            if (columns(row) == 0) {
+                continue;
+            }
+            endParagraph();
+            put("\\trowd\\trgaph108\\trleft0");
+            int right = 0;
+            for (int j = 0, m = row.getElementCount(); j < m; j++) {
+                Element cell = row.getElement(j);
+                if (!isCell(cell)) {
+                    continue;
+                }
+                // Объединённая ячейка — первая (\clmgf) и продолжающие её (\clmrg)
+                int span = span(cell);
+                for (int k = 0; k < span; k++) {
+                    right += width;
+                    put(span == 1 ? "" : k == 0 ? "\\clmgf" : "\\clmrg");
+                    put(CELL_BORDERS);
+                    put("\\cellx" + right);
+                }
+            }
+            put("\r\n");
+            for (int j = 0, m = row.getElementCount(); j < m; j++) {
+                Element cell = row.getElement(j);
+                if (isCell(cell)) {
+                    cell(cell);
+                    for (int k = span(cell); k > 1; k--) {
+                        put("\\pard\\plain\\intbl\\cell\r\n");
+                    }
+                }
+            }
+            put("\\row\r\n");
+        }
+        tableDepth--;
+        return true;
+    }
+
+    /**
+     * Число столбцов строки таблицы с учётом объединённых ячеек (0, если это не строка).
+     */
+    private static int columns(Element row) {
+        if (row.getAttributes().getAttribute(StyleConstants.NameAttribute) != HTML.Tag.TR) {
+            return 0;
+        }
+        int columns = 0;
+        for (int i = 0, n = row.getElementCount(); i < n; i++) {
+            Element cell = row.getElement(i);
+            if (isCell(cell)) {
+                columns += span(cell);
+            }
+        }
+        return columns;
+    }
+
+    private static int span(Element cell) {
+        return Math.max(1, TextStyle.number(cell.getAttributes().getAttribute(HTML.Attribute.COLSPAN)));
+    }
+
+    private static boolean isCell(Element cell) {
+        Object tag = cell.getAttributes().getAttribute(StyleConstants.NameAttribute);
+        return tag == HTML.Tag.TD || tag == HTML.Tag.TH;
+    }
+
+    private void cell(Element cell) throws IOException, BadLocationException {
+        long before = paragraphs;
+        // Список, в котором стоит таблица, внутри ячеек не продолжается
+        int depth = listDepth;
+        boolean item = itemStarted;
+        listDepth = 0;
+        itemStarted = false;
+        block(cell);
+        listDepth = depth;
+        itemStarted = item;
+        if (paragraphs == before) {
+            put("\\pard\\plain\\intbl ");
+        }
+        put("\\cell\r\n");
+        paragraphOpen = false;
+    }
+
+    /**
+     * Заканчивает выведенный абзац, если он не закончен.
+     */
+    private void endParagraph() throws IOException {
+        if (paragraphOpen) {
+            put("\\par\r\n");
+            paragraphOpen = false;
+        }
+    }
+
+    /**
+     * Выводит абзац: его оформление и текст листьев. Конец абзаца выводится
+     * перед следующим блоком.
+     */
+    private void paragraph(Element paragraph) throws IOException, BadLocationException {
+        endParagraph();
+        paragraphs++;
+        paragraphProperties(paragraph);
+        int end = Math.min(paragraph.getEndOffset() - 1, doc.getLength());
+        AttributeSet link = null;
+        for (int i = 0, n = paragraph.getElementCount(); i < n; i++) {
+            Element leaf = paragraph.getElement(i);
+            AttributeSet attributes = leaf.getAttributes();
+            Object tag = attributes.getAttribute(StyleConstants.NameAttribute);
+            AttributeSet leafLink = TextStyle.link(attributes);
+            if (!TextStyle.sameLink(leafLink, link)) {
+                if (link != null) {
+                    put("}}");
+                }
+                if (leafLink != null) {
+                    hyperlink(leafLink.getAttribute(HTML.Attribute.HREF).toString());
+                }
+                link = leafLink;
+            }
+            if (tag == HTML.Tag.BR) {
+                put("\\line ");
+            } else if (tag == HTML.Tag.CONTENT) {
+                run(attributes, leaf.getStartOffset(), Math.min(leaf.getEndOffset(), end), link != null);
+            }
+        }
+        if (link != null) {
+            put("}}");
+        }
+        paragraphOpen = true;
+    }
+
+    private void paragraphProperties(Element paragraph) throws IOException {
+        AttributeSet attributes = paragraph.getAttributes();
+        put("\\pard\\plain");
+        int level = HeadingIndex.level(paragraph);
+        if (level > 0) {
+            put("\\s" + level + "\\sb240\\sa120\\keepn\\outlinelevel" + (level - 1));
+        } else {
+            put(preDepth > 0 || attributes.getAttribute(StyleConstants.NameAttribute) == HTML.Tag.PRE
+                    ? "\\sa0" : "\\sa120");
+        }
+        String alignment = TextStyle.alignment(attributes);
+        if (alignment != null) {
+            put(alignment.equals("center") ? "\\qc" : alignment.equals("right") ? "\\qr" : "\\qj");
+        }
+        if (listDepth > 0) {
+            int level0 = Math.min(listDepth, LIST_LEVELS) - 1;
+            if (itemStarted) {
+                put("\\ls" + lists[level0] + "\\ilvl" + level0 + "\\fi-360");
+                itemStarted = false;
+            }
+            put("\\li" + 720 * (level0 + 1));
+        } else if (quoteDepth > 0) {
+            put("\\li720\\ri720");
+        }
+        if (tableDepth > 0) {
+            put("\\intbl");
+        }
+        if (level > 0) {
+            put("\\b\\fs" + HEADING_SIZES[level - 1]);
+        } else if (preDepth > 0 || attributes.getAttribute(StyleConstants.NameAttribute) == HTML.Tag.PRE) {
+            put("\\f1\\fs20");
+        } else if (quoteDepth > 0) {
+            put("\\i");
+        }
+        put(' ');
+    }
+
+    /**
+     * Начинает поле ссылки. Адрес внутри кода поля берётся в кавычки, поэтому свои
+     * кавычки адреса кодируются, а обратная косая черта (в путях Windows) удваивается.
+     */
+    private void hyperlink(String href) throws IOException {
+        put("{\\field{\\*\\fldinst{HYPERLINK ");
+        if (href.startsWith("#")) {
+            put("\\\\l ");
+            href = href.substring(1);
+        }
+        put('"');
+        escape(href.replace("\\", "\\\\").replace("\"", "%22"));
+        put("\"}}{\\fldrslt");
+    }
+
+    /**
+     * Выводит кусок текста группой с оформлением листа.
+     */
+    private void run(AttributeSet attributes, int start, int end, boolean link)
+            throws IOException, BadLocationException {
+        if (start >= end) {
+            return;
+        }
+        if (attributes != lastAttributes || link != lastLink) {
+            lastAttributes = attributes;
+            lastLink = link;
+            lastFormat = format(attributes, link);
+        }
+        put('{');
+        put(lastFormat);
+        for (int offset = start; offset < end; offset += text.count) {
+            doc.getText(offset, end - offset, text);
+            escape(text.array, text.offset, text.offset + text.count);
+        }
+        put('}');
+    }
+
+    /**
+     * Оформление текста в RTF: управляющие слова и пробел-разделитель или пустая строка.
+     */
+    private String format(AttributeSet a, boolean link) {
+        StringBuilder sb = new StringBuilder();
+        if (TextStyle.isBold(a)) {
+            sb.append("\\b");
+        }
+        if (TextStyle.isItalic(a)) {
+            sb.append("\\i");
+        }
+        if (link || TextStyle.isUnderline(a)) {
+            sb.append("\\ul");
+        }
+        if (TextStyle.isStrike(a)) {
+            sb.append("\\strike");
+        }
+        int position = TextStyle.position(a);
+        if (position != 0) {
+            sb.append(position > 0 ? "\\super" : "\\sub");
+        }
+        int color = link ? -1 : TextStyle.color(a, doc.getStyleSheet());
+        Integer index = link ? Integer.valueOf(LINK_COLOR) : colors.get(color);
+        if (index != null) {
+            sb.append("\\cf").append(index);
+        }
+        return sb.length() == 0 ? "" : sb.append(' ').toString();
+    }
+
+    private void escape(String s) throws IOException {
+        escape(s.toCharArray(), 0, s.length());
+    }
+
+    /**
+     * Выводит текст: ASCII как есть, кириллицу и прочие символы кодовой страницы 1251
+     * байтами {@code \'hh}, остальное — <code>&#92;uN</code> с заменой «?».
+     */
+    private void escape(char[] chars, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            char c = chars[i];
+            if (c >= ' ' && c < 0x7F) {
+                if (c == '\\' || c == '{' || c == '}') {
+                    put('\\');
+                }
+                put(c);
+            } else if (c == '\t') {
+                put("\\tab ");
+            } else if (c == '\u00A0') {
+                put("\\~");
+            } else if (c == '\u00AD') {
+                put("\\-");
+            } else if (c == '\u2011') {
+                put("\\_");
+            } else if (c < ' ') {
+                // Управляющие символы в тексте RTF не значимы
+                continue;
+            } else if (c < CP1251.length && CP1251[c] != 0) {
+                int b = CP1251[c] & 0xFF;
+                put('\\');
+                put('\'');
+                put(HEX[b >> 4]);
+                put(HEX[b & 0xF]);
+            } else {
+                put("\\u" + (short) c + "?");
+            }
+        }
+    }
+
+    private void put(char c) throws IOException {
+        if (used == buffer.length) {
+            out.write(buffer, 0, used);
+            used = 0;
+        }
+        buffer[used++] = c;
+    }
+
+    private void put(String s) throws IOException {
+        int length = s.length();
+        if (used + length > buffer.length) {
+            out.write(buffer, 0, used);
+            used = 0;
+            if (length > buffer.length) {
+                out.write(s);
+                return;
+            }
+        }
+        s.getChars(0, length, buffer, used);
+        used += length;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example;
+
+/**
+ * Содержимое документа, способное отдать неизменяемый снимок текста.
+ *
+ * <p>Снимок не меняется при последующих правках документа, поэтому фоновые задачи
+ * (сохранение, поиск, подсчёт слов) могут читать его без блокировки документа,
+ * пока пользователь продолжает набор. Сам снимок нужно брать под блокировкой
+ * документа ({@code Document.render}) или в EDT.</p>
+ */
+public interface SnapshotContent {
+
+    /**
+     * Возвращает неизменяемый снимок текущего текста.
+     *
+     * @return текст документа на момент вызова
+     */
+    CharSequence snapshot();
+}
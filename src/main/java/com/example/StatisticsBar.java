@@ -0,0 +1,61 @@
+package com.example;
+
+import javax.swing.*;
+import javax.swing.text.Document;
+
+/**
+ * Строка состояния под редактором: число слов, символов и абзацев документа
+ * и оценка времени чтения.
+ *
+ * <p>Счётчики поддерживает {@link DocumentStatistics}; строка перерисовывается
+ * не чаще раза за цикл событий, сколько бы правок ни пришло за это время.</p>
+ */
+public class StatisticsBar extends JLabel {
+
+    private final DocumentStatistics statistics = new DocumentStatistics();
+
+    /**
+     * Запланировано ли обновление текста.
+     */
+    private boolean refreshPending;
+
+    /**
+     * Создаёт пустую строку состояния.
+     */
+    public StatisticsBar() {
+        setBorder(BorderFactory.createEmptyBorder(2, 8, 2, 8));
+        statistics.addChangeListener(e -> scheduleRefresh());
+        refresh();
+    }
+
+    /**
+     * Подключает строку к документу.
+     *
+     * @param doc     документ
+     * @param counted счётчики документа, посчитанные при загрузке, или null — посчитать сейчас
+     */
+    public void setDocument(Document doc, DocumentStatistics.Tally counted) {
+        statistics.setDocument(doc, counted);
+    }
+
+    private void scheduleRefresh() {
+        if (!refreshPending) {
+            refreshPending = true;
+            SwingUtilities.invokeLater(this::refresh);
+        }
+    }
+
+    private void refresh() {
+        refreshPending = false;
+        setText(String.format("Слов: %,d    Символов: %,d    Абзацев: %,d    Чтение: %s",
+                statistics.getWords(), statistics.getCharacters(), statistics.getParagraphs(),
+                formatMinutes(statistics.getReadingMinutes())));
+    }
+
+    private static String formatMinutes(long minutes) {
+        if (minutes < 60) {
+            return "~" + minutes + " мин";
+        }
+        return "~" + minutes / 60 + " ч " + minutes % 60 + " мин";
+    }
+}
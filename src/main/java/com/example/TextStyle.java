@@ -0,0 +1,131 @@
+package com.example;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.html.CSS;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.StyleSheet;
+import java.awt.*;
+import java.util.Locale;
+
+/**
+ * Оформление текста и абзацев {@link javax.swing.text.html.HTMLDocument} в терминах
+ * текстовых процессоров — для экспорта ({@link DocxWriter}, {@link RtfWriter}).
+ *
+ * <p>Оформление в документе задаётся и тегами ({@code <b>}, {@code <u>}…), и свойствами
+ * CSS; признак считается включённым, если он задан хоть одним способом.</p>
+ */
+final class TextStyle {
+
+    private TextStyle() {
+    }
+
+    static boolean isBold(AttributeSet a) {
+        if (a.getAttribute(HTML.Tag.B) != null || a.getAttribute(HTML.Tag.STRONG) != null) {
+            return true;
+        }
+        String weight = css(a, CSS.Attribute.FONT_WEIGHT);
+        return weight != null && (weight.equals("bold") || weight.equals("bolder") || number(weight) >= 600);
+    }
+
+    static boolean isItalic(AttributeSet a) {
+        String style = css(a, CSS.Attribute.FONT_STYLE);
+        return a.getAttribute(HTML.Tag.I) != null || a.getAttribute(HTML.Tag.EM) != null
+                || "italic".equals(style) || "oblique".equals(style);
+    }
+
+    static boolean isUnderline(AttributeSet a) {
+        String decoration = css(a, CSS.Attribute.TEXT_DECORATION);
+        return a.getAttribute(HTML.Tag.U) != null || decoration != null && decoration.contains("underline");
+    }
+
+    static boolean isStrike(AttributeSet a) {
+        String decoration = css(a, CSS.Attribute.TEXT_DECORATION);
+        return a.getAttribute(HTML.Tag.S) != null || a.getAttribute(HTML.Tag.STRIKE) != null
+                || decoration != null && decoration.contains("line-through");
+    }
+
+    /**
+     * Положение текста относительно строки.
+     *
+     * @param a атрибуты текста
+     * @return 1 — верхний индекс, -1 — нижний, 0 — обычный текст
+     */
+    static int position(AttributeSet a) {
+        String vertical = css(a, CSS.Attribute.VERTICAL_ALIGN);
+        if (a.getAttribute(HTML.Tag.SUP) != null || "super".equals(vertical) || "sup".equals(vertical)) {
+            return 1;
+        }
+        return a.getAttribute(HTML.Tag.SUB) != null || "sub".equals(vertical) ? -1 : 0;
+    }
+
+    /**
+     * Цвет текста.
+     *
+     * @param a   атрибуты текста
+     * @param css таблица стилей документа, разбирающая цвета CSS
+     * @return цвет как {@code 0xRRGGBB} или -1, если цвета нет или он не разобран
+     */
+    static int color(AttributeSet a, StyleSheet css) {
+        String value = css(a, CSS.Attribute.COLOR);
+        Color color = value == null ? null : css.stringToColor(value);
+        return color == null ? -1 : color.getRGB() & 0xFFFFFF;
+    }
+
+    /**
+     * Выравнивание абзаца.
+     *
+     * @param attributes атрибуты абзаца
+     * @return {@code center}, {@code right}, {@code justify} или null для выравнивания по умолчанию
+     */
+    static String alignment(AttributeSet attributes) {
+        String align = css(attributes, CSS.Attribute.TEXT_ALIGN);
+        if (align == null) {
+            Object html = attributes.getAttribute(HTML.Attribute.ALIGN);
+            align = html == null ? null : html.toString().toLowerCase(Locale.ROOT);
+        }
+        return "center".equals(align) || "right".equals(align) || "justify".equals(align) ? align : null;
+    }
+
+    /**
+     * Ссылка, в которой стоит лист.
+     *
+     * @param leaf атрибуты листа
+     * @return атрибуты тега {@code <a>} с адресом или null
+     */
+    static AttributeSet link(AttributeSet leaf) {
+        Object anchor = leaf.getAttribute(HTML.Tag.A);
+        return anchor instanceof AttributeSet && ((AttributeSet) anchor).getAttribute(HTML.Attribute.HREF) != null
+                ? (AttributeSet) anchor : null;
+    }
+
+    /**
+     * Соседние листья одной ссылки: у листьев, разделённых правкой, наборы атрибутов
+     * ссылки могут быть разными объектами.
+     */
+    static boolean sameLink(AttributeSet a, AttributeSet b) {
+        return a == b || a != null && b != null
+                && a.getAttribute(HTML.Attribute.HREF).equals(b.getAttribute(HTML.Attribute.HREF));
+    }
+
+    /**
+     * Значение свойства CSS (с учётом абзаца) в нижнем регистре или null.
+     */
+    private static String css(AttributeSet a, CSS.Attribute key) {
+        Object value = a.getAttribute(key);
+        return value == null ? null : value.toString().trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Целое число из атрибута; 0, если его нет или это не число.
+     */
+    static int number(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
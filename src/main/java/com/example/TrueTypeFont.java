@@ -0,0 +1,672 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Шрифт TrueType: метрики, таблица символов и подмножество для встраивания в PDF
+ * ({@link PdfWriter}).
+ *
+ * <p>Файл читается целиком в память один раз. Из таблиц разбирается только то, что нужно
+ * для раскладки текста (ширины глифов, {@code cmap}) и для описания шрифта в PDF.
+ * Подмножество сохраняет номера глифов: в нём остаются все записи {@code loca}, но
+ * контуры есть только у использованных глифов (и у частей составных глифов),
+ * поэтому текст страниц можно кодировать номерами глифов ({@code Identity-H}).</p>
+ */
+final class TrueTypeFont {
+
+    private static final int ARG_1_AND_2_ARE_WORDS = 0x0001;
+
+    private static final int WE_HAVE_A_SCALE = 0x0008;
+
+    private static final int MORE_COMPONENTS = 0x0020;
+
+    private static final int WE_HAVE_AN_X_AND_Y_SCALE = 0x0040;
+
+    private static final int WE_HAVE_A_TWO_BY_TWO = 0x0080;
+
+    /**
+     * Таблицы, переносимые в подмножество без изменений (кроме {@code head}, {@code post},
+     * {@code loca} и {@code glyf}, которые пишутся заново). {@code cmap} не нужна:
+     * PDF сопоставляет коды глифам сам.
+     */
+    private static final String[] COPIED_TABLES = {"OS/2", "cvt ", "fpgm", "hhea", "hmtx", "maxp", "name", "prep"};
+
+    private final byte[] data;
+
+    /**
+     * Смещение и длина таблиц по тегу.
+     */
+    private final Map<String, int[]> tables = new TreeMap<>();
+
+    private final String name;
+
+    private final int unitsPerEm;
+
+    private final int numGlyphs;
+
+    private final int[] advances;
+
+    private final int[] offsets;
+
+    /**
+     * Глифы символов BMP; 0 — глифа нет.
+     */
+    private final char[] bmp = new char[0x10000];
+
+    /**
+     * Группы символов за пределами BMP: начало, конец, первый глиф.
+     */
+    private int[] groups = new int[0];
+
+    private final int ascent;
+
+    private final int descent;
+
+    private final int lineGap;
+
+    private final int capHeight;
+
+    private final int[] bbox;
+
+    private final int italicAngle;
+
+    private final int underlinePosition;
+
+    private final int underlineThickness;
+
+    private final boolean fixedPitch;
+
+    /**
+     * Читает шрифт из файла.
+     *
+     * @param file файл {@code .ttf}
+     * @return шрифт
+     * @throws IOException если файл не читается или это не шрифт TrueType
+     */
+    static TrueTypeFont load(Path file) throws IOException {
+        try {
+            return new TrueTypeFont(Files.readAllBytes(file), file.getFileName().toString());
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Malformed TrueType font: " + file, e);
+        }
+    }
+
+    private TrueTypeFont(byte[] data, String fileName) throws IOException {
+        this.data = data;
+        int version = int32(0);
+        if (version != 0x00010000 && version != 0x74727565) {
+            throw new IOException("Not a TrueType font (CFF outlines are not supported): " + fileName);
+        }
+        for (int i = 0, n = uint16(4); i < n; i++) {
+            int record = 12 + i * 16;
+            String tag = new String(data, record, 4, StandardCharsets.ISO_8859_1);
+            tables.put(tag, new int[] {int32(record + 8), int32(record + 12)});
+        }
+        for (String required : new String[] {"head", "hhea", "hmtx", "maxp", "loca", "glyf", "cmap"}) {
+            if (!tables.containsKey(required)) {
+                throw new IOException("TrueType font has no '" + required + "' table: " + fileName);
+            }
+        }
+        int head = table("head");
+        unitsPerEm = uint16(head + 18);
+        bbox = new int[] {int16(head + 36), int16(head + 38), int16(head + 40), int16(head + 42)};
+        boolean longOffsets = int16(head + 50) != 0;
+
+        numGlyphs = uint16(table("maxp") + 4);
+        int hhea = table("hhea");
+        ascent = int16(hhea + 4);
+        descent = -int16(hhea + 6);
+        lineGap = int16(hhea + 8);
+        int metrics = Math.max(1, Math.min(uint16(hhea + 34), numGlyphs));
+
+        advances = new int[numGlyphs];
+        int hmtx = table("hmtx");
+        for (int g = 0; g < numGlyphs; g++) {
+            advances[g] = uint16(hmtx + 4 * Math.min(g, metrics - 1));
+        }
+
+        offsets = new int[numGlyphs + 1];
+        int loca = table("loca");
+        for (int g = 0; g <= numGlyphs; g++) {
+            offsets[g] = longOffsets ? int32(loca + 4 * g) : uint16(loca + 2 * g) * 2;
+        }
+
+        int[] post = tables.get("post");
+        italicAngle = post == null ? 0 : int16(post[0] + 4);
+        underlinePosition = post == null ? -unitsPerEm / 10 : int16(post[0] + 8);
+        underlineThickness = post == null ? unitsPerEm / 20 : int16(post[0] + 10);
+        fixedPitch = post != null && int32(post[0] + 12) != 0;
+
+        int[] os2 = tables.get("OS/2");
+        capHeight = os2 != null && uint16(os2[0]) >= 2 && os2[1] >= 90 ? int16(os2[0] + 88) : ascent * 7 / 10;
+
+        readCmap();
+        String postScript = readName();
+        name = postScript != null ? postScript : fileName.replaceFirst("\\.[^.]*$", "").replaceAll("[^A-Za-z0-9-]", "");
+    }
+
+    /**
+     * Имя шрифта PostScript без пробелов.
+     *
+     * @return имя
+     */
+    String getName() {
+        return name;
+    }
+
+    int getUnitsPerEm() {
+        return unitsPerEm;
+    }
+
+    int getNumGlyphs() {
+        return numGlyphs;
+    }
+
+    /**
+     * Подъём над базовой линией в единицах шрифта.
+     *
+     * @return подъём
+     */
+    int getAscent() {
+        return ascent;
+    }
+
+    /**
+     * Спуск под базовую линию в единицах шрифта, положительный.
+     *
+     * @return спуск
+     */
+    int getDescent() {
+        return descent;
+    }
+
+    int getLineGap() {
+        return lineGap;
+    }
+
+    int getCapHeight() {
+        return capHeight;
+    }
+
+    /**
+     * Рамка всех глифов: xMin, yMin, xMax, yMax.
+     *
+     * @return копия рамки
+     */
+    int[] getBoundingBox() {
+        return bbox.clone();
+    }
+
+    /**
+     * Наклон курсива в градусах (отрицательный — вправо).
+     *
+     * @return угол
+     */
+    int getItalicAngle() {
+        return italicAngle;
+    }
+
+    int getUnderlinePosition() {
+        return underlinePosition;
+    }
+
+    int getUnderlineThickness() {
+        return underlineThickness;
+    }
+
+    boolean isFixedPitch() {
+        return fixedPitch;
+    }
+
+    /**
+     * Глиф символа.
+     *
+     * @param codePoint символ Юникода
+     * @return номер глифа; 0 — в шрифте символа нет
+     */
+    int glyph(int codePoint) {
+        if (codePoint < bmp.length) {
+            return bmp[codePoint];
+        }
+        int low = 0;
+        int high = groups.length / 3 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (codePoint < groups[mid * 3]) {
+                high = mid - 1;
+            } else if (codePoint > groups[mid * 3 + 1]) {
+                low = mid + 1;
+            } else {
+                int glyph = groups[mid * 3 + 2] + codePoint - groups[mid * 3];
+                return glyph < numGlyphs ? glyph : 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Ширина глифа в единицах шрифта.
+     *
+     * @param glyph номер глифа
+     * @return ширина
+     */
+    int advance(int glyph) {
+        return advances[glyph];
+    }
+
+    /**
+     * Символы использованных глифов — для таблицы {@code ToUnicode}: текст PDF можно
+     * будет искать и копировать.
+     *
+     * @param glyphs использованные глифы
+     * @return символ по номеру глифа; 0 — глиф не использован или символа у него нет
+     */
+    int[] codePoints(BitSet glyphs) {
+        int[] codePoints = new int[numGlyphs];
+        for (int c = 0; c < bmp.length; c++) {
+            int glyph = bmp[c];
+            if (glyph != 0 && codePoints[glyph] == 0 && glyphs.get(glyph)) {
+                codePoints[glyph] = c;
+            }
+        }
+        for (int i = 0; i < groups.length; i += 3) {
+            for (int c = groups[i]; c <= groups[i + 1]; c++) {
+                int glyph = groups[i + 2] + c - groups[i];
+                if (glyph < numGlyphs && codePoints[glyph] == 0 && glyphs.get(glyph)) {
+                    codePoints[glyph] = c;
+                }
+            }
+        }
+        return codePoints;
+    }
+
+    /**
+     * Собирает файл шрифта, в котором есть только контуры заданных глифов
+     * (и глифа 0). Номера глифов не меняются.
+     *
+     * @param used использованные глифы
+     * @return файл TrueType
+     */
+    byte[] subset(BitSet used) {
+        BitSet glyphs = (BitSet) used.clone();
+        glyphs.set(0);
+        // Составные глифы ссылаются на другие; добавленные части проверяются тем же циклом
+        for (int g = glyphs.nextSetBit(0); g >= 0 && g < numGlyphs; g = glyphs.nextSetBit(g + 1)) {
+            addComponents(g, glyphs);
+        }
+
+        ByteArray glyf = new ByteArray(data.length / 4);
+        ByteArray loca = new ByteArray((numGlyphs + 1) * 4);
+        int glyfStart = table("glyf");
+        for (int g = 0; g < numGlyphs; g++) {
+            loca.int32(glyf.length);
+            int length = offsets[g + 1] - offsets[g];
+            if (length > 0 && glyphs.get(g)) {
+                glyf.write(data, glyfStart + offsets[g], length);
+                glyf.pad();
+            }
+        }
+        loca.int32(glyf.length);
+
+        Map<String, byte[]> out = new TreeMap<>();
+        for (String tag : COPIED_TABLES) {
+            int[] table = tables.get(tag);
+            if (table != null) {
+                out.put(tag, Arrays.copyOfRange(data, table[0], table[0] + table[1]));
+            }
+        }
+        byte[] head = Arrays.copyOfRange(data, table("head"), table("head") + 54);
+        // checkSumAdjustment считается по готовому файлу; смещения loca — четырёхбайтные
+        put32(head, 8, 0);
+        head[50] = 0;
+        head[51] = 1;
+        out.put("head", head);
+        out.put("loca", loca.toArray());
+        out.put("glyf", glyf.toArray());
+        // post версии 3: без имён глифов
+        byte[] post = new byte[32];
+        int[] source = tables.get("post");
+        if (source != null && source[1] >= 32) {
+            System.arraycopy(data, source[0], post, 0, 32);
+        }
+        put32(post, 0, 0x00030000);
+        out.put("post", post);
+        out.put("cmap", cmap(glyphs));
+
+        byte[] font = assemble(out);
+        long sum = checksum(font, 0, font.length);
+        put32(font, headOffset(font) + 8, (int) (0xB1B0AFBAL - sum));
+        return font;
+    }
+
+    /**
+     * Таблица {@code cmap} подмножества: символы BMP оставленных глифов, формат 4 с отрезком
+     * на символ. PDF обращается к глифам по номерам, но без {@code cmap} файл шрифта
+     * считается повреждённым частью программ.
+     */
+    private byte[] cmap(BitSet glyphs) {
+        int[] codePoints = codePoints(glyphs);
+        int[] characters = new int[glyphs.cardinality()];
+        int count = 0;
+        for (int g = glyphs.nextSetBit(0); g >= 0 && g < numGlyphs; g = glyphs.nextSetBit(g + 1)) {
+            if (codePoints[g] > 0 && codePoints[g] < 0xFFFF) {
+                characters[count++] = codePoints[g];
+            }
+        }
+        Arrays.sort(characters, 0, count);
+        int segments = count + 1;
+        int power = Integer.highestOneBit(segments);
+        ByteArray cmap = new ByteArray(12 + 16 + segments * 8);
+        cmap.int16(0);
+        cmap.int16(1);
+        cmap.int16(3);
+        cmap.int16(1);
+        cmap.int32(12);
+        cmap.int16(4);
+        cmap.int16(16 + segments * 8);
+        cmap.int16(0);
+        cmap.int16(segments * 2);
+        cmap.int16(power * 2);
+        cmap.int16(Integer.numberOfTrailingZeros(power));
+        cmap.int16(segments * 2 - power * 2);
+        for (int i = 0; i < count; i++) {
+            cmap.int16(characters[i]);
+        }
+        cmap.int16(0xFFFF);
+        cmap.int16(0);
+        for (int i = 0; i < count; i++) {
+            cmap.int16(characters[i]);
+        }
+        cmap.int16(0xFFFF);
+        for (int i = 0; i < count; i++) {
+            cmap.int16(glyph(characters[i]) - characters[i]);
+        }
+        cmap.int16(1);
+        for (int i = 0; i < segments; i++) {
+            cmap.int16(0);
+        }
+        return cmap.toArray();
+    }
+
+    private void addComponents(int glyph, BitSet glyphs) {
+        int start = offsets[glyph];
+        if (offsets[glyph + 1] - start < 10) {
+            return;
+        }
+        int p = table("glyf") + start;
+        if (int16(p) >= 0) {
+            return;
+        }
+        p += 10;
+        int flags;
+        do {
+            flags = uint16(p);
+            int component = uint16(p + 2);
+            if (component < numGlyphs) {
+                glyphs.set(component);
+            }
+            p += 4 + ((flags & ARG_1_AND_2_ARE_WORDS) != 0 ? 4 : 2);
+            if ((flags & WE_HAVE_A_SCALE) != 0) {
+                p += 2;
+            } else if ((flags & WE_HAVE_AN_X_AND_Y_SCALE) != 0) {
+                p += 4;
+            } else if ((flags & WE_HAVE_A_TWO_BY_TWO) != 0) {
+                p += 8;
+            }
+        } while ((flags & MORE_COMPONENTS) != 0);
+    }
+
+    /**
+     * Складывает таблицы в файл: заголовок, записи таблиц по алфавиту тегов, сами таблицы
+     * с выравниванием на четыре байта.
+     */
+    private static byte[] assemble(Map<String, byte[]> tables) {
+        int count = tables.size();
+        int power = Integer.highestOneBit(count);
+        ByteArray font = new ByteArray(1 << 16);
+        font.int32(0x00010000);
+        font.int16(count);
+        font.int16(power * 16);
+        font.int16(Integer.numberOfTrailingZeros(power));
+        font.int16(count * 16 - power * 16);
+        int offset = 12 + count * 16;
+        for (Map.Entry<String, byte[]> table : tables.entrySet()) {
+            byte[] bytes = table.getValue();
+            font.write(table.getKey().getBytes(StandardCharsets.ISO_8859_1), 0, 4);
+            font.int32((int) checksum(bytes, 0, bytes.length));
+            font.int32(offset);
+            font.int32(bytes.length);
+            offset += (bytes.length + 3) & ~3;
+        }
+        for (byte[] bytes : tables.values()) {
+            font.write(bytes, 0, bytes.length);
+            font.pad();
+        }
+        return font.toArray();
+    }
+
+    private static int headOffset(byte[] font) {
+        for (int i = 0, n = (font[4] & 0xFF) << 8 | font[5] & 0xFF; i < n; i++) {
+            int record = 12 + i * 16;
+            if (font[record] == 'h' && font[record + 1] == 'e' && font[record + 2] == 'a' && font[record + 3] == 'd') {
+                return (font[record + 8] & 0xFF) << 24 | (font[record + 9] & 0xFF) << 16
+                        | (font[record + 10] & 0xFF) << 8 | font[record + 11] & 0xFF;
+            }
+        }
+        throw new IllegalStateException("no head table");
+    }
+
+    private static long checksum(byte[] bytes, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i += 4) {
+            long word = 0;
+            for (int j = 0; j < 4; j++) {
+                word = word << 8 | (i + j < to ? bytes[i + j] & 0xFF : 0);
+            }
+            sum += word;
+        }
+        return sum & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Разбирает таблицу символов: предпочтительно формат 12 (весь Юникод),
+     * иначе формат 4 (BMP) платформы Windows или Unicode.
+     */
+    private void readCmap() throws IOException {
+        int cmap = table("cmap");
+        int best = -1;
+        int bestRank = 0;
+        for (int i = 0, n = uint16(cmap + 2); i < n; i++) {
+            int record = cmap + 4 + i * 8;
+            int platform = uint16(record);
+            int encoding = uint16(record + 2);
+            int subtable = cmap + int32(record + 4);
+            int format = uint16(subtable);
+            int rank = 0;
+            if (format == 12 && (platform == 3 && encoding == 10 || platform == 0)) {
+                rank = 3;
+            } else if (format == 4 && (platform == 3 && encoding == 1 || platform == 0)) {
+                rank = 2;
+            } else if (format == 4 && platform == 3 && encoding == 0) {
+                rank = 1;
+            }
+            if (rank > bestRank) {
+                best = subtable;
+                bestRank = rank;
+            }
+        }
+        if (best < 0) {
+            throw new IOException("TrueType font has no Unicode character map");
+        }
+        if (uint16(best) == 12) {
+            readFormat12(best);
+        } else {
+            readFormat4(best);
+        }
+    }
+
+    private void readFormat4(int subtable) {
+        int segments = uint16(subtable + 6) / 2;
+        int ends = subtable + 14;
+        int starts = ends + segments * 2 + 2;
+        int deltas = starts + segments * 2;
+        int rangeOffsets = deltas + segments * 2;
+        for (int s = 0; s < segments; s++) {
+            int end = uint16(ends + s * 2);
+            int start = uint16(starts + s * 2);
+            int delta = int16(deltas + s * 2);
+            int rangeOffset = uint16(rangeOffsets + s * 2);
+            for (int c = start; c <= end && c != 0xFFFF; c++) {
+                int glyph;
+                if (rangeOffset == 0) {
+                    glyph = (c + delta) & 0xFFFF;
+                } else {
+                    int p = rangeOffsets + s * 2 + rangeOffset + (c - start) * 2;
+                    glyph = uint16(p);
+                    if (glyph != 0) {
+                        glyph = (glyph + delta) & 0xFFFF;
+                    }
+                }
+                if (glyph < numGlyphs) {
+                    bmp[c] = (char) glyph;
+                }
+            }
+        }
+    }
+
+    private void readFormat12(int subtable) {
+        int count = int32(subtable + 12);
+        int[] supplementary = new int[count * 3];
+        int used = 0;
+        for (int i = 0; i < count; i++) {
+            int group = subtable + 16 + i * 12;
+            int start = int32(group);
+            int end = int32(group + 4);
+            int glyph = int32(group + 8);
+            for (int c = start; c <= Math.min(end, 0xFFFF); c++) {
+                int g = glyph + c - start;
+                if (g < numGlyphs) {
+                    bmp[c] = (char) g;
+                }
+            }
+            if (end > 0xFFFF) {
+                int from = Math.max(start, 0x10000);
+                supplementary[used++] = from;
+                supplementary[used++] = end;
+                supplementary[used++] = glyph + from - start;
+            }
+        }
+        groups = Arrays.copyOf(supplementary, used);
+    }
+
+    /**
+     * Имя PostScript (запись 6 таблицы {@code name}) или null.
+     */
+    private String readName() {
+        int[] table = tables.get("name");
+        if (table == null) {
+            return null;
+        }
+        int base = table[0];
+        int strings = base + uint16(base + 4);
+        for (int i = 0, n = uint16(base + 2); i < n; i++) {
+            int record = base + 6 + i * 12;
+            int platform = uint16(record);
+            if (uint16(record + 6) != 6) {
+                continue;
+            }
+            int length = uint16(record + 8);
+            int offset = strings + uint16(record + 10);
+            String value = platform == 3 || platform == 0
+                    ? new String(data, offset, length, StandardCharsets.UTF_16BE)
+                    : new String(data, offset, length, StandardCharsets.ISO_8859_1);
+            value = value.replaceAll("[^!-~]|[\\[\\](){}<>/%#]", "");
+            if (!value.isEmpty()) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private int table(String tag) {
+        return tables.get(tag)[0];
+    }
+
+    private int uint16(int p) {
+        return (data[p] & 0xFF) << 8 | data[p + 1] & 0xFF;
+    }
+
+    private int int16(int p) {
+        return (short) uint16(p);
+    }
+
+    private int int32(int p) {
+        return (data[p] & 0xFF) << 24 | (data[p + 1] & 0xFF) << 16 | (data[p + 2] & 0xFF) << 8 | data[p + 3] & 0xFF;
+    }
+
+    private static void put32(byte[] bytes, int p, int value) {
+        bytes[p] = (byte) (value >>> 24);
+        bytes[p + 1] = (byte) (value >>> 16);
+        bytes[p + 2] = (byte) (value >>> 8);
+        bytes[p + 3] = (byte) value;
+    }
+
+    /**
+     * Растущий массив байт с записью чисел в порядке big-endian.
+     */
+    private static final class ByteArray {
+
+        private byte[] bytes;
+
+        private int length;
+
+        ByteArray(int capacity) {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+
+        void write(byte[] source, int offset, int count) {
+            ensure(count);
+            System.arraycopy(source, offset, bytes, length, count);
+            length += count;
+        }
+
+        void int16(int value) {
+            ensure(2);
+            bytes[length++] = (byte) (value >>> 8);
+            bytes[length++] = (byte) value;
+        }
+
+        void int32(int value) {
+            ensure(4);
+            put32(bytes, length, value);
+            length += 4;
+        }
+
+        /**
+         * Дополняет нулями до границы четырёх байт.
+         */
+        void pad() {
+            ensure(3);
+            while ((length & 3) != 0) {
+                bytes[length++] = 0;
+            }
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+
+        private void ensure(int count) {
+            if (length + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+            }
+        }
+    }
+}
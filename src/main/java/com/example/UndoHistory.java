@@ -0,0 +1,785 @@
+package com.example;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.EventListenerList;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DocumentFilter;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * История отмены и повтора правок документа.
+ *
+ * <p>Стандартный {@code UndoManager} хранит каждое нажатие клавиши отдельным
+ * {@code DefaultDocumentEvent} со своими правками содержимого и элементов.
+ * Здесь набор текста внутри участка, не меняющий структуру элементов, хранится
+ * компактно — смещением и текстом, а отменяется правкой одного содержимого
+ * {@link WordProcessorDocument} с восстановлением позиций, как отменился бы сам
+ * {@code DefaultDocumentEvent}: элементы остаются теми же, и хранимые целиком события
+ * остаются применимыми. Подряд набранные
+ * или стёртые символы сливаются в одну правку до конца слова вместе с пробелами
+ * после него; короткий текст завершённой правки берётся из небольшого словаря
+ * недавних слов истории, так что повторяющиеся слова хранятся один раз. Остальные правки (вставка абзацев, фрагментов, смена атрибутов)
+ * хранятся как есть.</p>
+ *
+ * <p>Правка одного содержимого минует {@code insertUpdate} и {@code postRemoveUpdate}
+ * документа, поэтому компактно хранится только текст без переводов строк (он не меняет
+ * абзацев). Если в документе есть текст справа налево, направления пересчитываются
+ * в тех же методах: тогда компактная правка отменяется и повторяется обычными
+ * {@code insertString} и {@code remove} внутри того же участка.</p>
+ *
+ * <p>Объём истории ограничен бюджетом в байтах (оценка по длине текста); при превышении
+ * отбрасываются самые старые правки. На нажатие клавиши история обычно ничего не выделяет:
+ * текст незавершённой правки копируется в общий буфер через {@link Segment}. Снимок
+ * позиций создаётся, только если они есть в стираемом тексте.</p>
+ *
+ * <p>Удалённый текст в событии документа уже недоступен, поэтому история подключается
+ * и как {@link DocumentFilter}: перед удалением она запоминает удаляемый текст.
+ * Изменения элементов она проверяет как {@link DocumentListener}: начиная с Java 9
+ * слушатели отмены получают обёртку события, в которой этих изменений нет.
+ * Используется в потоке событий.</p>
+ */
+public class UndoHistory extends DocumentFilter implements UndoableEditListener, DocumentListener {
+
+    /**
+     * Бюджет истории по умолчанию: 16 МБ.
+     */
+    public static final long DEFAULT_BUDGET = 16L << 20;
+
+    /**
+     * Оценка служебных затрат на одну правку в байтах.
+     */
+    private static final int STEP_OVERHEAD = 64;
+
+    /**
+     * Оценка затрат на правку, хранимую событием документа целиком.
+     */
+    private static final int EVENT_OVERHEAD = 512;
+
+    /**
+     * Наибольшая длина текста правки, хранимого в словаре слов.
+     */
+    private static final int MAX_WORD = 32;
+
+    /**
+     * Наибольшее число слов в словаре.
+     */
+    private static final int MAX_WORDS = 4096;
+
+    /**
+     * Свойство документа {@code AbstractDocument.I18NProperty}: в документе есть текст,
+     * для которого ведётся структура направлений.
+     */
+    private static final String I18N = "i18n";
+
+    /**
+     * Наибольший объём истории в байтах.
+     */
+    private final long budget;
+
+    /**
+     * Словарь недавних слов: одинаковый текст правок хранится одной строкой.
+     * Вытесняются давно не встречавшиеся слова, так что словарь не удерживает
+     * текст отброшенных правок.
+     */
+    private final Map<String, String> words = new LinkedHashMap<String, String>(MAX_WORDS * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_WORDS;
+        }
+    };
+
+    /**
+     * Правки для отмены; последняя — в конце.
+     */
+    private final ArrayDeque<Step> undo = new ArrayDeque<>();
+
+    /**
+     * Отменённые правки для повтора; последняя отменённая — в конце.
+     */
+    private final ArrayDeque<Step> redo = new ArrayDeque<>();
+
+    private final EventListenerList listeners = new EventListenerList();
+
+    /**
+     * Буфер для чтения текста документа без выделения памяти.
+     */
+    private final Segment segment = new Segment();
+
+    /**
+     * Текст незавершённой (открытой для слияния) правки.
+     */
+    private final StringBuilder open = new StringBuilder();
+
+    /**
+     * Текст, который сейчас удаляется (запомнен фильтром до удаления).
+     */
+    private final StringBuilder removing = new StringBuilder();
+
+    /**
+     * Правка, в которую сливается набор; её текст — в {@link #open}. null, если её нет.
+     */
+    private TextStep openStep;
+
+    /**
+     * Смещение запомненного удаления или -1.
+     */
+    private int removingOffset = -1;
+
+    /**
+     * Смещение и длина последней правки, не изменившей элементов, или -1.
+     */
+    private int simpleOffset = -1;
+
+    private int simpleLength;
+
+    /**
+     * Участок, из которого удаляется текст.
+     */
+    private Element removingLeaf;
+
+    /**
+     * Позиции внутри удаляемого текста или null.
+     */
+    private MarkTracker.Snapshot removingPositions;
+
+    /**
+     * Участок, в котором идёт открытая правка.
+     */
+    private Element openLeaf;
+
+    /**
+     * Документ, к которому подключена история.
+     */
+    private AbstractDocument document;
+
+    /**
+     * Тот же документ, если его правки можно хранить компактно; иначе null.
+     */
+    private WordProcessorDocument textDocument;
+
+    /**
+     * Фильтр документа, установленный до истории; вызовы передаются ему.
+     */
+    private DocumentFilter previousFilter;
+
+    /**
+     * Идёт ли отмена или повтор (свои правки не записываются).
+     */
+    private boolean applying;
+
+    /**
+     * Текущий объём истории в байтах.
+     */
+    private long used;
+
+    /**
+     * Доступность отмены и повтора, о которой последний раз сообщили слушателям.
+     */
+    private boolean couldUndo;
+
+    private boolean couldRedo;
+
+    /**
+     * Создаёт историю с заданным бюджетом.
+     *
+     * @param budget наибольший объём истории в байтах
+     */
+    public UndoHistory(long budget) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("Budget must be positive: " + budget);
+        }
+        this.budget = budget;
+    }
+
+    /**
+     * Подключает историю к документу (отключая от прежнего) и очищает её.
+     *
+     * @param doc документ; null — только отключить
+     */
+    public void attach(AbstractDocument doc) {
+        if (document != null) {
+            document.removeUndoableEditListener(this);
+            document.removeDocumentListener(this);
+            document.setDocumentFilter(previousFilter);
+        }
+        document = doc;
+        textDocument = doc instanceof WordProcessorDocument && ((WordProcessorDocument) doc).tracksPositions()
+                ? (WordProcessorDocument) doc : null;
+        previousFilter = null;
+        if (doc != null) {
+            previousFilter = doc.getDocumentFilter();
+            doc.setDocumentFilter(this);
+            doc.addDocumentListener(this);
+            doc.addUndoableEditListener(this);
+        }
+        discardAllEdits();
+    }
+
+    /**
+     * Очищает историю, например после замены всего текста документа.
+     */
+    public void discardAllEdits() {
+        for (Step step : undo) {
+            step.die();
+        }
+        undo.clear();
+        discardRedo();
+        openStep = null;
+        openLeaf = null;
+        open.setLength(0);
+        words.clear();
+        used = 0;
+        fireStateChanged();
+    }
+
+    /**
+     * Завершает текущую правку: следующий набранный символ начнёт новую.
+     */
+    public void endEdit() {
+        closeOpenStep();
+    }
+
+    /**
+     * Проверяет, есть ли что отменять.
+     *
+     * @return true, если история не пуста
+     */
+    public boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    /**
+     * Проверяет, есть ли что повторять.
+     *
+     * @return true, если есть отменённые правки
+     */
+    public boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    /**
+     * Проверяет, идёт ли сейчас отмена или повтор: правки документа в это время
+     * не набраны пользователем, а восстановлены из истории.
+     *
+     * @return true во время {@link #undo} и {@link #redo}
+     */
+    public boolean isApplying() {
+        return applying;
+    }
+
+    /**
+     * Отменяет последнюю правку.
+     *
+     * @throws CannotUndoException если отменять нечего или документ изменился несовместимо
+     */
+    public void undo() {
+        if (undo.isEmpty()) {
+            throw new CannotUndoException();
+        }
+        closeOpenStep();
+        Step step = undo.removeLast();
+        apply(step, true);
+        redo.addLast(step);
+        fireStateChanged();
+    }
+
+    /**
+     * Повторяет последнюю отменённую правку.
+     *
+     * @throws CannotRedoException если повторять нечего или документ изменился несовместимо
+     */
+    public void redo() {
+        if (redo.isEmpty()) {
+            throw new CannotRedoException();
+        }
+        Step step = redo.removeLast();
+        apply(step, false);
+        undo.addLast(step);
+        fireStateChanged();
+    }
+
+    /**
+     * Возвращает оценку текущего объёма истории.
+     *
+     * @return объём в байтах
+     */
+    public long getUsedBytes() {
+        return used;
+    }
+
+    /**
+     * Добавляет слушателя изменений доступности отмены и повтора.
+     *
+     * @param l слушатель
+     */
+    public void addChangeListener(ChangeListener l) {
+        listeners.add(ChangeListener.class, l);
+    }
+
+    /**
+     * Удаляет слушателя изменений.
+     *
+     * @param l слушатель
+     */
+    public void removeChangeListener(ChangeListener l) {
+        listeners.remove(ChangeListener.class, l);
+    }
+
+    @Override
+    public void remove(FilterBypass fb, int offset, int length) throws BadLocationException {
+        rememberRemoval(offset, length);
+        if (previousFilter != null) {
+            previousFilter.remove(fb, offset, length);
+        } else {
+            fb.remove(offset, length);
+        }
+    }
+
+    @Override
+    public void insertString(FilterBypass fb, int offset, String text, AttributeSet attrs)
+            throws BadLocationException {
+        if (previousFilter != null) {
+            previousFilter.insertString(fb, offset, text, attrs);
+        } else {
+            fb.insertString(offset, text, attrs);
+        }
+    }
+
+    @Override
+    public void replace(FilterBypass fb, int offset, int length, String text, AttributeSet attrs)
+            throws BadLocationException {
+        rememberRemoval(offset, length);
+        if (previousFilter != null) {
+            previousFilter.replace(fb, offset, length, text, attrs);
+        } else {
+            fb.replace(offset, length, text, attrs);
+        }
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        checkStructure(e);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        checkStructure(e);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        simpleOffset = -1;
+    }
+
+    @Override
+    public void undoableEditHappened(UndoableEditEvent e) {
+        if (applying) {
+            return;
+        }
+        UndoableEdit edit = e.getEdit();
+        try {
+            if (!(edit instanceof DocumentEvent) || !recordText((DocumentEvent) edit)) {
+                closeOpenStep();
+                push(new EventStep(edit, (edit instanceof DocumentEvent ? ((DocumentEvent) edit).getLength() * 2 : 0)
+                        + EVENT_OVERHEAD));
+            }
+        } finally {
+            removingOffset = -1;
+            removingLeaf = null;
+            removingPositions = null;
+            simpleOffset = -1;
+        }
+        discardRedo();
+        trim();
+        fireStateChanged();
+    }
+
+    /**
+     * Отбрасывает отменённые правки: после новой правки их уже не повторить.
+     */
+    private void discardRedo() {
+        for (Step step : redo) {
+            used -= step.cost();
+            step.die();
+        }
+        redo.clear();
+    }
+
+    /**
+     * Запоминает удаляемый текст, если он лежит внутри одного участка.
+     */
+    private void rememberRemoval(int offset, int length) throws BadLocationException {
+        removingOffset = -1;
+        if (applying || textDocument == null || length <= 0) {
+            return;
+        }
+        Element leaf = leafAt(offset);
+        if (inside(leaf, offset, length)) {
+            document.getText(offset, length, segment);
+            if (hasNewline(segment)) {
+                return;
+            }
+            removing.setLength(0);
+            removing.append(segment.array, segment.offset, segment.count);
+            removingOffset = offset;
+            removingLeaf = leaf;
+            removingPositions = textDocument.positions(offset, length);
+        }
+    }
+
+    /**
+     * Запоминает правку, если она не изменила элементов на пути к своему смещению.
+     * Слушатели документа получают событие до слушателей отмены.
+     */
+    private void checkStructure(DocumentEvent event) {
+        simpleOffset = -1;
+        if (applying || textDocument == null) {
+            return;
+        }
+        Element e = document.getDefaultRootElement();
+        while (e != null) {
+            if (event.getChange(e) != null) {
+                return;
+            }
+            e = e.isLeaf() ? null : e.getElement(e.getElementIndex(event.getOffset()));
+        }
+        simpleOffset = event.getOffset();
+        simpleLength = event.getLength();
+    }
+
+    /**
+     * Записывает вставку или удаление текста компактно, если структура элементов
+     * не изменилась.
+     *
+     * @return false, если событие нужно хранить целиком
+     */
+    private boolean recordText(DocumentEvent event) {
+        DocumentEvent.EventType type = event.getType();
+        int offset = event.getOffset();
+        int length = event.getLength();
+        if (type == DocumentEvent.EventType.CHANGE || offset != simpleOffset || length != simpleLength) {
+            return false;
+        }
+        if (type == DocumentEvent.EventType.INSERT) {
+            return recordInsert(offset, length);
+        }
+        return removingOffset == offset && removing.length() == length && recordRemove(offset, length);
+    }
+
+    private boolean recordInsert(int offset, int length) {
+        Element leaf = leafAt(offset);
+        if (!inside(leaf, offset, length)) {
+            return false;
+        }
+        try {
+            document.getText(offset, length, segment);
+        } catch (BadLocationException e) {
+            return false;
+        }
+        if (hasNewline(segment)) {
+            return false;
+        }
+        TextStep step = openStep;
+        boolean merge = step != null && step.insert && length == 1 && openLeaf == leaf
+                && offset == step.offset + open.length() && !wordEnded(open.charAt(open.length() - 1),
+                segment.array[segment.offset]);
+        if (merge) {
+            open.append(segment.array[segment.offset]);
+            used += 2;
+        } else {
+            closeOpenStep();
+            step = new TextStep(true, offset);
+            // Вставку нескольких символов (например, из буфера обмена) не продолжаем
+            if (length == 1) {
+                open.append(segment.array[segment.offset]);
+                openStep = step;
+                openLeaf = leaf;
+            } else {
+                step.text = share(new String(segment.array, segment.offset, segment.count));
+            }
+            push(step);
+        }
+        return true;
+    }
+
+    private boolean recordRemove(int offset, int length) {
+        TextStep step = openStep;
+        // Стёртое с позициями внутри (границы участков, выделение) хранится отдельной правкой
+        boolean merge = step != null && !step.insert && length == 1 && openLeaf == removingLeaf
+                && step.positions == null && removingPositions == null;
+        if (merge && offset + 1 == step.offset && !wordEnded(removing.charAt(0), open.charAt(0))) {
+            // Backspace: символ перед уже стёртыми
+            open.insert(0, removing.charAt(0));
+            step.offset = offset;
+        } else if (merge && offset == step.offset && !wordEnded(open.charAt(open.length() - 1), removing.charAt(0))) {
+            // Delete: символ после уже стёртых
+            open.append(removing.charAt(0));
+        } else {
+            closeOpenStep();
+            step = new TextStep(false, offset);
+            step.positions = removingPositions;
+            if (length == 1) {
+                open.append(removing.charAt(0));
+                openStep = step;
+                openLeaf = removingLeaf;
+            } else {
+                step.text = share(removing.toString());
+            }
+            push(step);
+            return true;
+        }
+        used += 2;
+        return true;
+    }
+
+    /**
+     * Проверяет, что текст лежит в участке и начинается не с его начала. Текст, вставленный
+     * в содержимое на границе, достаётся предыдущему участку (или абзацу), поэтому правку
+     * на границе нельзя повторить без элементов.
+     */
+    private static boolean inside(Element leaf, int offset, int length) {
+        return offset > leaf.getStartOffset() && offset + length <= leaf.getEndOffset();
+    }
+
+    private static boolean hasNewline(Segment text) {
+        for (int i = text.offset, end = text.offset + text.count; i < end; i++) {
+            if (text.array[i] == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Element leafAt(int offset) {
+        Element e = document.getDefaultRootElement();
+        while (!e.isLeaf()) {
+            e = e.getElement(e.getElementIndex(offset));
+        }
+        return e;
+    }
+
+    /**
+     * Граница слова: после пробелов начинается не пробел.
+     */
+    private static boolean wordEnded(char before, char after) {
+        return Character.isWhitespace(before) && !Character.isWhitespace(after);
+    }
+
+    /**
+     * Завершает открытую правку: её текст переносится из общего буфера в строку из словаря слов.
+     */
+    private void closeOpenStep() {
+        if (openStep != null) {
+            openStep.text = share(open.toString());
+            open.setLength(0);
+            openStep = null;
+            openLeaf = null;
+        }
+    }
+
+    /**
+     * Возвращает строку из словаря слов для короткого текста; длинные вставки хранятся как есть.
+     */
+    String share(String text) {
+        if (text.length() > MAX_WORD) {
+            return text;
+        }
+        String shared = words.get(text);
+        if (shared == null) {
+            words.put(text, text);
+            return text;
+        }
+        return shared;
+    }
+
+    private void push(Step step) {
+        undo.addLast(step);
+        used += step.cost();
+    }
+
+    /**
+     * Отбрасывает самые старые правки, пока история не уложится в бюджет.
+     * Последняя правка остаётся в любом случае.
+     */
+    private void trim() {
+        while (used > budget && undo.size() > 1) {
+            Step oldest = undo.removeFirst();
+            used -= oldest.cost();
+            oldest.die();
+        }
+    }
+
+    /**
+     * Отменяет или повторяет правку, не записывая вызванные этим события.
+     */
+    private void apply(Step step, boolean undoing) {
+        applying = true;
+        try {
+            if (undoing) {
+                step.undo(this);
+            } else {
+                step.redo(this);
+            }
+        } catch (BadLocationException e) {
+            RuntimeException failure = undoing ? new CannotUndoException() : new CannotRedoException();
+            failure.initCause(e);
+            throw failure;
+        } finally {
+            applying = false;
+        }
+    }
+
+    private void fireStateChanged() {
+        // При наборе доступность отмены не меняется — не создаём события на каждую клавишу
+        if (canUndo() == couldUndo && canRedo() == couldRedo) {
+            return;
+        }
+        couldUndo = canUndo();
+        couldRedo = canRedo();
+        ChangeEvent event = null;
+        for (ChangeListener l : listeners.getListeners(ChangeListener.class)) {
+            if (event == null) {
+                event = new ChangeEvent(this);
+            }
+            l.stateChanged(event);
+        }
+    }
+
+    /**
+     * Правка в истории.
+     */
+    private abstract static class Step {
+
+        abstract void undo(UndoHistory history) throws BadLocationException;
+
+        abstract void redo(UndoHistory history) throws BadLocationException;
+
+        /**
+         * Оценка занимаемой памяти в байтах.
+         */
+        abstract long cost();
+
+        /**
+         * Освобождает правку, выпавшую из истории.
+         */
+        void die() {
+        }
+    }
+
+    /**
+     * Вставка или удаление текста внутри одного участка.
+     */
+    private static final class TextStep extends Step {
+
+        /**
+         * Вставка (иначе удаление).
+         */
+        final boolean insert;
+
+        /**
+         * Смещение текста.
+         */
+        int offset;
+
+        /**
+         * Текст правки; null, пока правка открыта (текст в общем буфере).
+         */
+        String text;
+
+        /**
+         * Позиции, схлопнутые удалением текста, пока текста нет в документе; иначе null.
+         */
+        MarkTracker.Snapshot positions;
+
+        TextStep(boolean insert, int offset) {
+            this.insert = insert;
+            this.offset = offset;
+        }
+
+        @Override
+        void undo(UndoHistory history) throws BadLocationException {
+            apply(history.textDocument, !insert);
+        }
+
+        @Override
+        void redo(UndoHistory history) throws BadLocationException {
+            apply(history.textDocument, insert);
+        }
+
+        private void apply(WordProcessorDocument doc, boolean inserting) throws BadLocationException {
+            if (Boolean.TRUE.equals(doc.getProperty(I18N))) {
+                // Направления текста пересчитывает только обычная правка; позиции
+                // в стёртом тексте при этом не восстанавливаются
+                if (inserting) {
+                    doc.insertString(offset, text, doc.getCharacterElement(offset - 1).getAttributes());
+                } else {
+                    doc.remove(offset, text.length());
+                }
+                positions = null;
+                return;
+            }
+            if (inserting) {
+                doc.insertContent(offset, text, positions);
+                positions = null;
+            } else {
+                positions = doc.removeContent(offset, text.length());
+            }
+        }
+
+        @Override
+        long cost() {
+            // Открытая правка при добавлении в историю содержит один символ,
+            // следующие учитываются по мере набора
+            return STEP_OVERHEAD + (text != null ? 2L * text.length() : 2);
+        }
+    }
+
+    /**
+     * Правка, хранимая целиком (событие документа или другая {@link UndoableEdit}).
+     */
+    private static final class EventStep extends Step {
+
+        final UndoableEdit edit;
+
+        final long cost;
+
+        EventStep(UndoableEdit edit, long cost) {
+            this.edit = edit;
+            this.cost = cost;
+        }
+
+        @Override
+        void undo(UndoHistory history) {
+            edit.undo();
+        }
+
+        @Override
+        void redo(UndoHistory history) {
+            edit.redo();
+        }
+
+        @Override
+        long cost() {
+            return cost;
+        }
+
+        @Override
+        void die() {
+            edit.die();
+        }
+    }
+}
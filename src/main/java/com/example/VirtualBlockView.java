@@ -0,0 +1,619 @@
+package com.example;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Position;
+import javax.swing.text.View;
+import javax.swing.text.ViewFactory;
+import javax.swing.text.html.CSS;
+import javax.swing.text.html.HTML;
+import javax.swing.text.StyleConstants;
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Ленивая обёртка представления блока (абзаца, заголовка, списка, таблицы).
+ *
+ * <p>Пока блок не виден, обёртка не создаёт настоящего представления и сообщает
+ * оценку высоты: число строк по длине текста и средней ширине символа шрифта,
+ * умноженное на высоту строки. После измерения (при показе, фоновым переносом строк
+ * {@link ParagraphLayoutService} или временным представлением) используется
+ * измеренная высота для той ширины, при которой она измерена.
+ * Настоящее представление создаётся при отрисовке и запросах координат
+ * и освобождается фабрикой, когда блок давно не показывался.</p>
+ *
+ * <p>Для представлений стиля обёртка прозрачна: {@link #getAttributes()} возвращает
+ * атрибуты родителя, поэтому CSS-наследование внутри блока такое же, как без обёртки.</p>
+ */
+class VirtualBlockView extends View {
+
+    /**
+     * Строчные теги, не меняющие размер и гарнитуру шрифта.
+     */
+    private static final Set<HTML.Tag> PLAIN_INLINE_TAGS = new HashSet<>(Arrays.asList(
+            HTML.Tag.A, HTML.Tag.B, HTML.Tag.STRONG, HTML.Tag.I, HTML.Tag.EM,
+            HTML.Tag.U, HTML.Tag.S, HTML.Tag.STRIKE, HTML.Tag.CONTENT, HTML.Tag.BR));
+
+    /**
+     * Фабрика, создавшая обёртку.
+     */
+    private final VirtualizingViewFactory factory;
+
+    /**
+     * Настоящее представление блока (null, пока не создано).
+     */
+    private View delegate;
+
+    /**
+     * Ширина, выделенная блоку при последней раскладке (-1 — ещё не было).
+     */
+    private int width = -1;
+
+    /**
+     * Измеренная высота блока.
+     */
+    private float measured;
+
+    /**
+     * Ширина, при которой измерена {@link #measured} (-1 — не измерена).
+     */
+    private int measuredWidth = -1;
+
+    /**
+     * Оценка высоты.
+     */
+    private float estimate;
+
+    /**
+     * Ширина, для которой посчитана {@link #estimate} (-1 — не посчитана).
+     */
+    private int estimatedWidth = -1;
+
+    /**
+     * Стиль блока из {@link VirtualizingViewFactory#blockStyle}.
+     */
+    private VirtualizingViewFactory.BlockStyle style;
+
+    /**
+     * Длины абзацев блока в символах (для строк таблицы — длина самой длинной ячейки).
+     */
+    private int[] paragraphLengths;
+
+    /**
+     * Версия содержимого: увеличивается при каждой правке блока.
+     */
+    private int version;
+
+    /**
+     * Простой ли это абзац для фоновой раскладки (null — ещё не проверено).
+     */
+    private Boolean plain;
+
+    /**
+     * Запрос фоновой раскладки, результат которого ещё не пришёл.
+     */
+    private ParagraphLayoutService.Request requested;
+
+    /**
+     * Область блока при последнем обращении к настоящему представлению.
+     */
+    private Rectangle lastAllocation;
+
+    /**
+     * Признак того, что блок стоит в очереди уточнения фабрики.
+     */
+    boolean queued;
+
+    /**
+     * Создаёт обёртку.
+     *
+     * @param elem    элемент блока
+     * @param factory фабрика, создающая настоящее представление
+     */
+    VirtualBlockView(Element elem, VirtualizingViewFactory factory) {
+        super(elem);
+        this.factory = factory;
+    }
+
+    @Override
+    public void setParent(View parent) {
+        super.setParent(parent);
+        if (parent == null) {
+            release();
+            factory.forget(this);
+        } else {
+            factory.schedule(this);
+        }
+    }
+
+    @Override
+    public AttributeSet getAttributes() {
+        View parent = getParent();
+        return parent != null ? parent.getAttributes() : super.getAttributes();
+    }
+
+    @Override
+    public float getPreferredSpan(int axis) {
+        if (delegate != null) {
+            return delegate.getPreferredSpan(axis);
+        }
+        return axis == Y_AXIS ? height() : 0;
+    }
+
+    @Override
+    public float getMinimumSpan(int axis) {
+        if (delegate != null) {
+            return delegate.getMinimumSpan(axis);
+        }
+        return axis == Y_AXIS ? height() : 0;
+    }
+
+    @Override
+    public float getMaximumSpan(int axis) {
+        if (delegate != null) {
+            return delegate.getMaximumSpan(axis);
+        }
+        return axis == Y_AXIS ? height() : Integer.MAX_VALUE;
+    }
+
+    @Override
+    public float getAlignment(int axis) {
+        return delegate != null ? delegate.getAlignment(axis) : super.getAlignment(axis);
+    }
+
+    @Override
+    public void setSize(float w, float h) {
+        int newWidth = (int) w;
+        if (delegate != null) {
+            if (newWidth != width && width > 0
+                    && !VirtualizingViewFactory.nearVisibleArea(getContainer(), lastAllocation)) {
+                // Далёкий от экрана блок не раскладываем заново: высоту при новой ширине посчитает фон
+                float old = delegate.getPreferredSpan(Y_AXIS);
+                discard();
+                width = newWidth;
+                measuredWidth = -1;
+                if (height() != old) {
+                    preferenceChanged(null, false, true);
+                }
+                factory.schedule(this);
+                return;
+            }
+            width = newWidth;
+            delegate.setSize(w, h);
+            return;
+        }
+        if (newWidth != width) {
+            float old = height();
+            width = newWidth;
+            if (height() != old) {
+                preferenceChanged(null, false, true);
+            }
+            if (measuredWidth != newWidth) {
+                factory.schedule(this);
+            }
+        }
+    }
+
+    @Override
+    public void paint(Graphics g, Shape allocation) {
+        realize(allocation).paint(g, allocation);
+    }
+
+    @Override
+    public Shape modelToView(int pos, Shape a, Position.Bias b) throws BadLocationException {
+        return realize(a).modelToView(pos, a, b);
+    }
+
+    @Override
+    public Shape modelToView(int p0, Position.Bias b0, int p1, Position.Bias b1, Shape a)
+            throws BadLocationException {
+        return realize(a).modelToView(p0, b0, p1, b1, a);
+    }
+
+    @Override
+    public int viewToModel(float x, float y, Shape a, Position.Bias[] biasReturn) {
+        return realize(a).viewToModel(x, y, a, biasReturn);
+    }
+
+    @Override
+    public int getNextVisualPositionFrom(int pos, Position.Bias b, Shape a, int direction,
+                                         Position.Bias[] biasRet) throws BadLocationException {
+        return realize(a).getNextVisualPositionFrom(pos, b, a, direction, biasRet);
+    }
+
+    @Override
+    public int getViewCount() {
+        return delegate != null ? 1 : 0;
+    }
+
+    @Override
+    public View getView(int n) {
+        return n == 0 ? delegate : null;
+    }
+
+    @Override
+    public int getViewIndex(int pos, Position.Bias b) {
+        return delegate != null && pos >= getStartOffset() && pos < getEndOffset() ? 0 : -1;
+    }
+
+    @Override
+    public Shape getChildAllocation(int index, Shape a) {
+        return a;
+    }
+
+    @Override
+    public void preferenceChanged(View child, boolean width, boolean height) {
+        // Представления, измеряемые и уже отброшенные, на раскладку не влияют
+        if (child == null || child == delegate) {
+            super.preferenceChanged(child, width, height);
+        }
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        contentChanged();
+        if (delegate != null) {
+            delegate.insertUpdate(e, a, f);
+        }
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        contentChanged();
+        if (delegate != null) {
+            delegate.removeUpdate(e, a, f);
+        }
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        style = null;
+        contentChanged();
+        if (delegate != null) {
+            delegate.changedUpdate(e, a, f);
+        }
+    }
+
+    /**
+     * Сбрасывает измерения после правки блока; без созданного представления
+     * сообщает родителю новую оценку и ставит блок на уточнение.
+     */
+    private void contentChanged() {
+        version++;
+        plain = null;
+        requested = null;
+        paragraphLengths = null;
+        measuredWidth = -1;
+        estimatedWidth = -1;
+        if (delegate == null) {
+            preferenceChanged(null, true, true);
+            factory.schedule(this);
+        }
+    }
+
+    /**
+     * Создаёт настоящее представление, если его ещё нет, и подгоняет его под выделенную область.
+     *
+     * @param a область блока (может быть null)
+     * @return настоящее представление
+     */
+    private View realize(Shape a) {
+        if (delegate != null) {
+            factory.touch(this);
+        } else {
+            int w = layoutWidth();
+            float reported = height();
+            View view = factory.createDelegate(getElement());
+            view.setParent(this);
+            view.setSize(w, reported);
+            delegate = view;
+            factory.realized(this);
+            if (view.getPreferredSpan(Y_AXIS) != reported) {
+                preferenceChanged(view, false, true);
+            }
+        }
+        if (a != null) {
+            Rectangle r = a.getBounds();
+            lastAllocation = r;
+            delegate.setSize(r.width, r.height);
+        }
+        return delegate;
+    }
+
+    /**
+     * Освобождает настоящее представление, запомнив его высоту.
+     */
+    void release() {
+        if (delegate != null) {
+            View view = delegate;
+            float reported = view.getPreferredSpan(Y_AXIS);
+            if (getParent() != null) {
+                // После правки раскладка представления может быть ещё не пересчитана
+                int w = layoutWidth();
+                view.setSize(w, reported);
+                measured = view.getPreferredSpan(Y_AXIS);
+                measuredWidth = w;
+            }
+            delegate = null;
+            view.setParent(null);
+            if (getParent() != null && measured != reported) {
+                preferenceChanged(null, false, true);
+            }
+        }
+    }
+
+    /**
+     * Отбрасывает настоящее представление, не измеряя его.
+     */
+    private void discard() {
+        View view = delegate;
+        delegate = null;
+        view.setParent(null);
+        factory.forget(this);
+    }
+
+    /**
+     * Проверяет, можно ли раскладывать блок в фоне: это абзац или заголовок,
+     * состоящий только из текста и переносов строк, без смены размера
+     * или гарнитуры шрифта внутри.
+     *
+     * @return true для простого абзаца
+     */
+    boolean isPlainParagraph() {
+        if (plain == null) {
+            plain = isPlainParagraph(getElement());
+        }
+        return plain;
+    }
+
+    /**
+     * Снимает абзац для фоновой раскладки при текущей ширине.
+     *
+     * @return запрос или null, если высота уже известна, запрос уже отправлен
+     * или блок показан
+     */
+    ParagraphLayoutService.Request layoutRequest() {
+        int w = layoutWidth();
+        if (getParent() == null || delegate != null || measuredWidth == w) {
+            return null;
+        }
+        if (requested != null && requested.width == w) {
+            return null;
+        }
+        if (style == null) {
+            style = factory.blockStyle(this);
+        }
+        Element elem = getElement();
+        int start = elem.getStartOffset();
+        int count = elem.getElementCount();
+        char[] text;
+        try {
+            text = getDocument().getText(start, elem.getEndOffset() - start).toCharArray();
+        } catch (BadLocationException e) {
+            return null;
+        }
+        int[] runStarts = new int[count];
+        Font[] fonts = new Font[count];
+        int[] lineHeights = new int[count];
+        for (int i = 0; i < count; i++) {
+            Element leaf = elem.getElement(i);
+            runStarts[i] = leaf.getStartOffset() - start;
+            if (leaf.getAttributes().getAttribute(StyleConstants.NameAttribute) == HTML.Tag.BR) {
+                // <br> хранится пробелом, а в раскладке это принудительный перенос
+                text[runStarts[i]] = '\n';
+            }
+            fonts[i] = runFont(style.font, leaf.getAttributes());
+            lineHeights[i] = factory.metrics(fonts[i]).getHeight();
+        }
+        requested = new ParagraphLayoutService.Request(this, version, w, new String(text), runStarts, fonts,
+                lineHeights, factory.metrics(style.font).getFontRenderContext(),
+                w - style.left - style.right, style.top, style.bottom);
+        return requested;
+    }
+
+    /**
+     * Принимает высоту, посчитанную фоновой раскладкой. Результат для устаревшей
+     * версии текста или другой ширины отбрасывается.
+     *
+     * @param request выполненный запрос
+     * @return изменение сообщаемой высоты
+     */
+    float applyLayout(ParagraphLayoutService.Request request) {
+        if (request != requested) {
+            return 0;
+        }
+        requested = null;
+        if (getParent() == null || delegate != null || request.version != version
+                || request.width != layoutWidth()) {
+            return 0;
+        }
+        float old = height();
+        measured = request.height;
+        measuredWidth = request.width;
+        float delta = measured - old;
+        if (delta != 0) {
+            preferenceChanged(null, false, true);
+        }
+        return delta;
+    }
+
+    /**
+     * Измеряет высоту блока при текущей ширине, временно создав представление.
+     *
+     * @return изменение сообщаемой высоты (0, если блок уже измерен или показан)
+     */
+    float refine() {
+        int w = layoutWidth();
+        if (getParent() == null || delegate != null || measuredWidth == w) {
+            return 0;
+        }
+        float old = height();
+        View view = factory.createDelegate(getElement());
+        view.setParent(this);
+        view.setSize(w, old);
+        view.setSize(w, view.getPreferredSpan(Y_AXIS));
+        measured = view.getPreferredSpan(Y_AXIS);
+        measuredWidth = w;
+        view.setParent(null);
+
+        float delta = measured - old;
+        if (delta != 0) {
+            preferenceChanged(null, false, true);
+        }
+        return delta;
+    }
+
+    /**
+     * Возвращает ширину раскладки: выделенную родителем или ширину редактора.
+     *
+     * @return ширина в пикселях
+     */
+    private int layoutWidth() {
+        return width > 0 ? width : factory.defaultWidth(getContainer());
+    }
+
+    /**
+     * Высота блока без настоящего представления: измеренная или оценка.
+     *
+     * @return высота в пикселях
+     */
+    private float height() {
+        int w = layoutWidth();
+        if (measuredWidth == w) {
+            return measured;
+        }
+        if (estimatedWidth != w) {
+            estimate = estimateHeight(w);
+            estimatedWidth = w;
+        }
+        return estimate;
+    }
+
+    /**
+     * Оценивает высоту блока по длинам абзацев и метрикам шрифта.
+     *
+     * @param w ширина блока
+     * @return оценка высоты
+     */
+    private float estimateHeight(int w) {
+        if (getParent() == null) {
+            return 0;
+        }
+        if (style == null) {
+            style = factory.blockStyle(this);
+        }
+        if (paragraphLengths == null) {
+            paragraphLengths = paragraphLengths(getElement());
+        }
+        float charWidth = style.charWidth;
+        float content = Math.max(charWidth, w - style.left - style.right);
+        int lines = 0;
+        for (int length : paragraphLengths) {
+            lines += Math.max(1, (int) Math.ceil(length * charWidth / content));
+        }
+        return style.top + style.bottom + lines * style.lineHeight;
+    }
+
+    /**
+     * Проверяет, что элемент — абзац или заголовок из одного текста,
+     * который раскладывается одной гарнитурой и размером шрифта.
+     *
+     * @param elem элемент блока
+     * @return true для простого абзаца
+     */
+    private static boolean isPlainParagraph(Element elem) {
+        Object tag = elem.getAttributes().getAttribute(StyleConstants.NameAttribute);
+        if (tag != HTML.Tag.P && tag != HTML.Tag.IMPLIED && tag != HTML.Tag.H1 && tag != HTML.Tag.H2
+                && tag != HTML.Tag.H3 && tag != HTML.Tag.H4 && tag != HTML.Tag.H5 && tag != HTML.Tag.H6) {
+            return false;
+        }
+        for (int i = 0; i < elem.getElementCount(); i++) {
+            Element leaf = elem.getElement(i);
+            if (!leaf.isLeaf()) {
+                return false;
+            }
+            AttributeSet attrs = leaf.getAttributes();
+            Object name = attrs.getAttribute(StyleConstants.NameAttribute);
+            if (name != HTML.Tag.CONTENT && name != HTML.Tag.BR) {
+                return false;
+            }
+            Enumeration<?> keys = attrs.getAttributeNames();
+            while (keys.hasMoreElements()) {
+                Object key = keys.nextElement();
+                if (key instanceof HTML.Tag && !PLAIN_INLINE_TAGS.contains(key)) {
+                    return false;
+                }
+                if (key == CSS.Attribute.FONT || key == CSS.Attribute.FONT_FAMILY || key == CSS.Attribute.FONT_SIZE
+                        || key == CSS.Attribute.VERTICAL_ALIGN) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Шрифт участка текста: шрифт блока с начертанием, заданным на самом участке.
+     *
+     * @param font  шрифт блока
+     * @param attrs атрибуты листа
+     * @return шрифт участка
+     */
+    private static Font runFont(Font font, AttributeSet attrs) {
+        int style = font.getStyle();
+        Object weight = attrs.getAttribute(CSS.Attribute.FONT_WEIGHT);
+        if (attrs.isDefined(HTML.Tag.B) || attrs.isDefined(HTML.Tag.STRONG)) {
+            style |= Font.BOLD;
+        } else if (weight != null) {
+            String w = weight.toString();
+            boolean bold = w.equals("bold") || w.equals("bolder") || w.matches("[6-9]00");
+            style = bold ? style | Font.BOLD : style & ~Font.BOLD;
+        }
+        Object italic = attrs.getAttribute(CSS.Attribute.FONT_STYLE);
+        if (attrs.isDefined(HTML.Tag.I) || attrs.isDefined(HTML.Tag.EM)) {
+            style |= Font.ITALIC;
+        } else if (italic != null) {
+            String s = italic.toString();
+            style = s.equals("italic") || s.equals("oblique") ? style | Font.ITALIC : style & ~Font.ITALIC;
+        }
+        return style == font.getStyle() ? font : font.deriveFont(style);
+    }
+
+    /**
+     * Собирает длины абзацев элемента. Ячейки строки таблицы стоят рядом,
+     * поэтому строка считается одним абзацем длиной в самую длинную ячейку.
+     *
+     * @param elem элемент блока
+     * @return длины абзацев в символах
+     */
+    private static int[] paragraphLengths(Element elem) {
+        int count = elem.getElementCount();
+        if (count == 0 || elem.getElement(0).isLeaf()) {
+            return new int[] {elem.getEndOffset() - elem.getStartOffset()};
+        }
+        boolean row = elem.getAttributes().getAttribute(StyleConstants.NameAttribute) == HTML.Tag.TR;
+        int[] result = new int[0];
+        int longest = 0;
+        for (int i = 0; i < count; i++) {
+            int[] child = paragraphLengths(elem.getElement(i));
+            if (row) {
+                int sum = 0;
+                for (int length : child) {
+                    sum += length;
+                }
+                longest = Math.max(longest, sum);
+            } else {
+                int[] joined = new int[result.length + child.length];
+                System.arraycopy(result, 0, joined, 0, result.length);
+                System.arraycopy(child, 0, joined, result.length, child.length);
+                result = joined;
+            }
+        }
+        return row ? new int[] {longest} : result;
+    }
+}
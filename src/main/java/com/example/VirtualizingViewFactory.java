@@ -0,0 +1,460 @@
+package com.example;
+
+import javax.swing.*;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.View;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.text.html.StyleSheet;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Фабрика представлений, которая строит и раскладывает только абзацы рядом с видимой областью.
+ *
+ * <p>Обычный {@link HTMLEditorKit.HTMLFactory} создаёт и раскладывает представление
+ * для каждого абзаца документа сразу; на документе в десятки тысяч абзацев это секунды
+ * раскладки и сотни мегабайт объектов. Здесь дочерние блоки длинных контейнеров
+ * ({@code body}, {@code div}, {@code blockquote}) оборачиваются в лёгкие
+ * {@link VirtualBlockView}: настоящее представление создаётся, только когда блок
+ * рисуется или у него спрашивают координаты, а для остальных высота оценивается
+ * по числу символов и метрикам шрифта.</p>
+ *
+ * <p>Созданных представлений хранится не больше {@value #MAX_REALIZED} — давно
+ * не показанные освобождаются, запомнив свою высоту. Оценки уточняются в фоне:
+ * таймер в потоке событий порциями по {@value #REFINE_SLICE_MS} мс снимает текст
+ * простых абзацев и отправляет его {@link ParagraphLayoutService}, который переносит
+ * строки в рабочих потоках; сложные блоки (списки, таблицы, {@code pre}, абзацы
+ * со сменой размера шрифта) по-прежнему раскладываются в потоке событий временным
+ * представлением. Если уточнённые блоки лежат выше видимой области, прокрутка
+ * сдвигается на разницу высот, чтобы текст на экране не прыгал.</p>
+ *
+ * <p>При изменении ширины редактора заново раскладываются только созданные
+ * представления рядом с видимой областью; остальные отбрасываются, и их высота
+ * пересчитывается в фоне.</p>
+ */
+public class VirtualizingViewFactory extends HTMLEditorKit.HTMLFactory {
+
+    /**
+     * Число дочерних блоков, начиная с которого контейнер виртуализируется.
+     */
+    static final int VIRTUALIZE_THRESHOLD = 100;
+
+    /**
+     * Наибольшее число одновременно созданных представлений блоков.
+     */
+    static final int MAX_REALIZED = 256;
+
+    /**
+     * Время одной порции уточнения высот в потоке событий.
+     */
+    static final int REFINE_SLICE_MS = 4;
+
+    /**
+     * Пауза между порциями уточнения.
+     */
+    static final int REFINE_INTERVAL_MS = 20;
+
+    /**
+     * Число абзацев в одном задании фоновой раскладки.
+     */
+    static final int LAYOUT_BATCH = 256;
+
+    /**
+     * Ширина раскладки, пока представление ещё не получило размер.
+     */
+    static final int DEFAULT_WIDTH = 600;
+
+    /**
+     * Созданные представления блоков в порядке последнего обращения.
+     */
+    private final Map<VirtualBlockView, Boolean> realized =
+            new LinkedHashMap<VirtualBlockView, Boolean>(MAX_REALIZED * 2, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<VirtualBlockView, Boolean> eldest) {
+                    if (size() > MAX_REALIZED) {
+                        eldest.getKey().release();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    /**
+     * Блоки, высоту которых нужно уточнить.
+     */
+    private final ArrayDeque<VirtualBlockView> pending = new ArrayDeque<>();
+
+    /**
+     * Таймер порций уточнения.
+     */
+    private final Timer refiner = new Timer(REFINE_INTERVAL_MS, e -> refine());
+
+    /**
+     * Запросы, выполненные фоновой раскладкой и ещё не применённые.
+     */
+    private final Queue<ParagraphLayoutService.Request> completed = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Признак того, что применение результатов уже запланировано в потоке событий.
+     */
+    private final AtomicBoolean publishScheduled = new AtomicBoolean();
+
+    /**
+     * Метрики шрифтов для оценки высоты.
+     */
+    private final Map<Font, FontMetrics> metrics = new HashMap<>();
+
+    /**
+     * Стили блоков по атрибутам элемента и его родителя: у однотипных блоков они совпадают.
+     */
+    private final Map<List<AttributeSet>, BlockStyle> styleCache = new HashMap<>();
+
+    /**
+     * Графический контекст для получения метрик без компонента.
+     */
+    private Graphics2D metricsGraphics;
+
+    /**
+     * Создаёт представление элемента: для блоков длинных контейнеров — ленивую обёртку.
+     *
+     * @param elem элемент документа
+     * @return представление
+     */
+    @Override
+    public View create(Element elem) {
+        if (shouldVirtualize(elem)) {
+            return new VirtualBlockView(elem, this);
+        }
+        return super.create(elem);
+    }
+
+    /**
+     * Создаёт настоящее представление блока, которое обёртка показывает вместо себя.
+     *
+     * @param elem элемент блока
+     * @return представление стандартной фабрики HTML
+     */
+    View createDelegate(Element elem) {
+        return super.create(elem);
+    }
+
+    /**
+     * Проверяет, нужно ли обернуть элемент: это блок внутри контейнера
+     * с числом детей не меньше {@link #VIRTUALIZE_THRESHOLD}.
+     *
+     * @param elem элемент
+     * @return true, если представление элемента создаётся лениво
+     */
+    private static boolean shouldVirtualize(Element elem) {
+        Element parent = elem.getParentElement();
+        if (elem.isLeaf() || parent == null || parent.getElementCount() < VIRTUALIZE_THRESHOLD) {
+            return false;
+        }
+        Object tag = parent.getAttributes().getAttribute(StyleConstants.NameAttribute);
+        return tag == HTML.Tag.BODY || tag == HTML.Tag.DIV || tag == HTML.Tag.BLOCKQUOTE;
+    }
+
+    /**
+     * Запоминает созданное представление блока; самое давнее сверх предела освобождается.
+     *
+     * @param view обёртка с созданным представлением
+     */
+    void realized(VirtualBlockView view) {
+        realized.put(view, Boolean.TRUE);
+    }
+
+    /**
+     * Отмечает обращение к созданному представлению.
+     *
+     * @param view обёртка
+     */
+    void touch(VirtualBlockView view) {
+        realized.get(view);
+    }
+
+    /**
+     * Забывает обёртку, удалённую из дерева представлений.
+     *
+     * @param view обёртка
+     */
+    void forget(VirtualBlockView view) {
+        realized.remove(view);
+    }
+
+    /**
+     * Ставит блок в очередь уточнения высоты.
+     *
+     * @param view обёртка
+     */
+    void schedule(VirtualBlockView view) {
+        if (!view.queued) {
+            view.queued = true;
+            pending.add(view);
+        }
+        if (!refiner.isRunning()) {
+            refiner.start();
+        }
+    }
+
+    /**
+     * Уточняет высоты очередной порции блоков и сохраняет положение текста на экране.
+     * Простые абзацы отправляются на фоновую раскладку, остальные блоки
+     * раскладываются здесь же.
+     */
+    private void refine() {
+        long deadline = System.nanoTime() + REFINE_SLICE_MS * 1_000_000L;
+        JTextComponent editor = null;
+        int firstVisible = -1;
+        float shift = 0;
+        List<ParagraphLayoutService.Request> batch = new ArrayList<>();
+
+        while (!pending.isEmpty() && System.nanoTime() < deadline) {
+            VirtualBlockView view = pending.poll();
+            view.queued = false;
+            Container c = view.getContainer();
+            if (!(c instanceof JTextComponent)) {
+                continue;
+            }
+            if (view.isPlainParagraph()) {
+                ParagraphLayoutService.Request request = view.layoutRequest();
+                if (request != null) {
+                    batch.add(request);
+                    if (batch.size() == LAYOUT_BATCH) {
+                        ParagraphLayoutService.submit(batch, this::completed);
+                        batch = new ArrayList<>();
+                    }
+                }
+                continue;
+            }
+            if (c != editor) {
+                editor = (JTextComponent) c;
+                firstVisible = firstVisibleOffset(editor);
+            }
+            float delta = view.refine();
+            if (delta != 0 && view.getEndOffset() <= firstVisible) {
+                shift += delta;
+            }
+        }
+        if (!batch.isEmpty()) {
+            ParagraphLayoutService.submit(batch, this::completed);
+        }
+        if (pending.isEmpty()) {
+            refiner.stop();
+        }
+        keepScrollPosition(editor, shift);
+    }
+
+    /**
+     * Принимает выполненные запросы из рабочего потока. Применение результатов
+     * объединяется: пока оно ждёт своей очереди в потоке событий, новое не планируется,
+     * чтобы родитель блоков перераскладывался один раз на много пачек.
+     *
+     * @param batch выполненные запросы
+     */
+    private void completed(List<ParagraphLayoutService.Request> batch) {
+        completed.addAll(batch);
+        if (publishScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::publish);
+        }
+    }
+
+    /**
+     * Применяет высоты, посчитанные фоновой раскладкой, и сохраняет положение текста на экране.
+     */
+    private void publish() {
+        publishScheduled.set(false);
+        JTextComponent editor = null;
+        int firstVisible = -1;
+        float shift = 0;
+        ParagraphLayoutService.Request request;
+        while ((request = completed.poll()) != null) {
+            VirtualBlockView view = request.view;
+            Container c = view.getContainer();
+            if (!(c instanceof JTextComponent)) {
+                continue;
+            }
+            if (c != editor) {
+                editor = (JTextComponent) c;
+                firstVisible = firstVisibleOffset(editor);
+            }
+            float delta = view.applyLayout(request);
+            if (delta != 0 && view.getEndOffset() <= firstVisible) {
+                shift += delta;
+            }
+        }
+        keepScrollPosition(editor, shift);
+    }
+
+    /**
+     * Сдвигает прокрутку редактора на изменение высоты блоков выше видимой области.
+     *
+     * @param editor редактор (может быть null)
+     * @param shift  изменение высоты в пикселях
+     */
+    private static void keepScrollPosition(JTextComponent editor, float shift) {
+        if (shift != 0) {
+            // Новые размеры применятся при ближайшей проверке компонентов, после неё сдвигаем прокрутку
+            JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, editor);
+            int dy = Math.round(shift);
+            if (viewport != null && dy != 0) {
+                SwingUtilities.invokeLater(() -> {
+                    Point p = viewport.getViewPosition();
+                    p.y = Math.max(0, p.y + dy);
+                    viewport.setViewPosition(p);
+                });
+            }
+        }
+    }
+
+    /**
+     * Проверяет, лежит ли область блока в пределах экрана от видимой части редактора.
+     * Блоки дальше можно не раскладывать заново при изменении ширины.
+     *
+     * @param c          компонент редактора (может быть null)
+     * @param allocation последняя область блока (может быть null)
+     * @return true, если блок рядом с видимой областью
+     */
+    static boolean nearVisibleArea(Container c, Rectangle allocation) {
+        if (!(c instanceof JComponent) || allocation == null) {
+            return true;
+        }
+        Rectangle visible = ((JComponent) c).getVisibleRect();
+        if (visible.isEmpty()) {
+            return true;
+        }
+        visible.grow(0, visible.height);
+        return visible.intersects(allocation);
+    }
+
+    /**
+     * Находит смещение в документе, видимое в левом верхнем углу области прокрутки.
+     *
+     * @param editor редактор
+     * @return смещение или -1, если редактор не в области прокрутки
+     */
+    private static int firstVisibleOffset(JTextComponent editor) {
+        JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, editor);
+        if (viewport == null || editor.getWidth() <= 0) {
+            return -1;
+        }
+        return editor.viewToModel(viewport.getViewPosition());
+    }
+
+    /**
+     * Возвращает ширину раскладки для блока, ещё не получившего размер.
+     *
+     * @param c компонент редактора (может быть null)
+     * @return ширина в пикселях
+     */
+    int defaultWidth(Container c) {
+        if (c == null) {
+            return DEFAULT_WIDTH;
+        }
+        Insets insets = c.getInsets();
+        int width = c.getWidth() - insets.left - insets.right;
+        return width > 0 ? width : DEFAULT_WIDTH;
+    }
+
+    /**
+     * Возвращает стиль блока: шрифт и поля по CSS элемента. Результат общий для блоков
+     * с одинаковыми атрибутами элемента и родителя.
+     *
+     * @param view обёртка блока (должна быть в дереве представлений)
+     * @return стиль блока
+     */
+    BlockStyle blockStyle(VirtualBlockView view) {
+        Element elem = view.getElement();
+        List<AttributeSet> key = Arrays.asList(elem.getAttributes().copyAttributes(),
+                elem.getParentElement().getAttributes().copyAttributes());
+        BlockStyle cached = styleCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        StyleSheet styles = ((HTMLDocument) view.getDocument()).getStyleSheet();
+        AttributeSet attrs = styles.getViewAttributes(view);
+        StyleSheet.BoxPainter painter = styles.getBoxPainter(attrs);
+        Font font = styles.getFont(attrs);
+        FontMetrics fm = metrics(font);
+        String sample = "The quick brown fox jumps over the lazy dog. Съешь же ещё этих мягких булок.";
+        BlockStyle result = new BlockStyle(font, fm.getHeight(), fm.stringWidth(sample) / (float) sample.length(),
+                // Поля округляются так же, как в ParagraphView.setPropertiesFromAttributes
+                (short) painter.getInset(View.TOP, view), (short) painter.getInset(View.BOTTOM, view),
+                (short) painter.getInset(View.LEFT, view), (short) painter.getInset(View.RIGHT, view));
+        styleCache.put(key, result);
+        return result;
+    }
+
+    /**
+     * Возвращает метрики шрифта в контексте отрисовки без сглаживания и дробных метрик,
+     * как у обычного текстового компонента.
+     *
+     * @param font шрифт
+     * @return метрики
+     */
+    FontMetrics metrics(Font font) {
+        FontMetrics fm = metrics.get(font);
+        if (fm == null) {
+            if (metricsGraphics == null) {
+                metricsGraphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+            }
+            fm = metricsGraphics.getFontMetrics(font);
+            metrics.put(font, fm);
+        }
+        return fm;
+    }
+
+    /**
+     * Стиль блока, нужный для оценки и фоновой раскладки его высоты.
+     */
+    static final class BlockStyle {
+
+        /**
+         * Шрифт блока.
+         */
+        final Font font;
+
+        /**
+         * Высота строки шрифта.
+         */
+        final int lineHeight;
+
+        /**
+         * Средняя ширина символа.
+         */
+        final float charWidth;
+
+        /**
+         * Поля блока: сверху, снизу, слева, справа.
+         */
+        final float top;
+        final float bottom;
+        final float left;
+        final float right;
+
+        BlockStyle(Font font, int lineHeight, float charWidth, float top, float bottom, float left, float right) {
+            this.font = font;
+            this.lineHeight = lineHeight;
+            this.charWidth = charWidth;
+            this.top = top;
+            this.bottom = bottom;
+            this.left = left;
+            this.right = right;
+        }
+    }
+}
@@ -0,0 +1,825 @@
+package com.example;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Locale;
+
+/**
+ * Очистка HTML, сохранённого Word, по пути от файла к парсеру.
+ *
+ * <p>Word пишет в «веб-страницу» много разметки, которую {@link javax.swing.text.html.HTMLEditorKit}
+ * не показывает, но честно разбирает: условные комментарии {@code <!--[if ...]>…<![endif]-->}
+ * (с настройками документа в {@code <xml>} и рисунками VML), теги с префиксами
+ * ({@code <o:p>}, {@code <v:shape>}, {@code <w:…>}), стили {@code mso-…}. Фильтр за один
+ * проход:</p>
+ * <ul>
+ *   <li>выбрасывает условные комментарии, инструкции {@code <?…?>}, элементы {@code <xml>}
+ *       и {@code <v:…>} вместе с содержимым;</li>
+ *   <li>выбрасывает прочие теги с префиксом, оставляя их содержимое, и маркеры
+ *       {@code <![if …]>}/{@code <![endif]>} (содержимое между ними видно в браузерах
+ *       и остаётся);</li>
+ *   <li>убирает объявления {@code mso-…} из атрибутов {@code style} и из {@code <style>},
+ *       атрибуты с префиксом ({@code xmlns:o}, {@code o:spid}) и {@code lang} у {@code <span>};
+ *       {@code <span>}, у которого не осталось атрибутов, убирается вместе с парным
+ *       {@code </span>};</li>
+ *   <li>убирает служебные {@code <link>} (кроме таблиц стилей) и {@code <meta>}
+ *       Generator/ProgId/Originator.</li>
+ * </ul>
+ *
+ * <p>Память не зависит от размера файла: в буфере лежит не больше одного тега или
+ * объявления CSS, а тег длиннее {@link #MAX_MARKUP} символов пропускается как есть.
+ * Обычный HTML проходит без изменений.</p>
+ */
+public class WordHtmlFilter extends FilterReader {
+
+    /**
+     * Свойство документа, в которое {@link DocumentLoadWorker#read} кладёт число
+     * выброшенных фильтром символов ({@link Long}).
+     */
+    public static final String REMOVED_PROPERTY = "swp.wordMarkupRemoved";
+
+    /**
+     * Наибольшая длина тега или объявления CSS, которые разбираются; более длинные
+     * пропускаются без изменений.
+     */
+    static final int MAX_MARKUP = 64 * 1024;
+
+    /**
+     * Наибольший кусок текста, который фильтр готовит за один шаг.
+     */
+    private static final int CHUNK = 8192;
+
+    /**
+     * Обычный текст и теги.
+     */
+    private static final int TEXT = 0;
+
+    /**
+     * Комментарий, который остаётся: копируется до {@code -->}.
+     */
+    private static final int COMMENT = 1;
+
+    /**
+     * Условный комментарий: выбрасывается до {@code -->}.
+     */
+    private static final int CONDITIONAL = 2;
+
+    /**
+     * Остаток слишком длинного тега: копируется или выбрасывается до {@code >}.
+     */
+    private static final int LONG_TAG = 3;
+
+    /**
+     * Входной буфер; символы {@code [position, limit)} ещё не обработаны.
+     */
+    private final char[] buffer = new char[8192];
+
+    private int position;
+
+    private int limit;
+
+    private boolean eof;
+
+    /**
+     * Подготовленный вывод и позиция выдачи в нём.
+     */
+    private final StringBuilder output = new StringBuilder();
+
+    private int outputPosition;
+
+    /**
+     * Текущий тег или объявление CSS.
+     */
+    private final StringBuilder markup = new StringBuilder();
+
+    /**
+     * Тег после правки атрибутов.
+     */
+    private final StringBuilder rewritten = new StringBuilder();
+
+    private int mode = TEXT;
+
+    /**
+     * Для {@link #LONG_TAG}: копировать ли остаток тега и кавычка, внутри которой он сейчас (0 — вне кавычек).
+     */
+    private boolean keepLongTag;
+
+    private char longTagQuote;
+
+    /**
+     * Для комментариев: число подряд идущих дефисов перед текущим символом.
+     */
+    private int dashes;
+
+    /**
+     * Элемент, выбрасываемый вместе с содержимым, и глубина его вложенности; null, если такого нет.
+     */
+    private String dropping;
+
+    private int dropDepth;
+
+    /**
+     * Внутри {@code <style>} и глубина фигурных скобок CSS.
+     */
+    private boolean inStyle;
+
+    private int braces;
+
+    /**
+     * Кавычка CSS, внутри которой текущий символ (0 — вне кавычек).
+     */
+    private char cssQuote;
+
+    /**
+     * Для открытых {@code <span>} по глубине: выброшен ли открывающий тег.
+     */
+    private final BitSet droppedSpans = new BitSet();
+
+    private int spanDepth;
+
+    /**
+     * Разобранные атрибуты текущего тега: по четыре смещения в {@link #markup} — начало
+     * атрибута, его конец, конец имени и начало значения (-1, если значения нет).
+     */
+    private int[] attributes = new int[4 * 16];
+
+    private int attributeCount;
+
+    private long read;
+
+    private long delivered;
+
+    /**
+     * Создаёт фильтр.
+     *
+     * @param in исходный HTML
+     */
+    public WordHtmlFilter(Reader in) {
+        super(in);
+    }
+
+    /**
+     * Число прочитанных из источника символов.
+     *
+     * @return символы
+     */
+    public long getCharactersRead() {
+        return read - (limit - position);
+    }
+
+    /**
+     * Число выброшенных символов среди прочитанных.
+     *
+     * @return символы
+     */
+    public long getCharactersRemoved() {
+        return getCharactersRead() - delivered - (output.length() - outputPosition);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        delivered++;
+        return output.charAt(outputPosition++);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, output.length() - outputPosition);
+        output.getChars(outputPosition, outputPosition + n, cbuf, off);
+        outputPosition += n;
+        delivered += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && fill()) {
+            int step = (int) Math.min(n - skipped, output.length() - outputPosition);
+            outputPosition += step;
+            delivered += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return outputPosition < output.length() || in.ready();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset() not supported");
+    }
+
+    /**
+     * Готовит вывод, если прежний выдан целиком.
+     *
+     * @return false, если вход исчерпан и выдавать больше нечего
+     */
+    private boolean fill() throws IOException {
+        while (outputPosition == output.length()) {
+            output.setLength(0);
+            outputPosition = 0;
+            if (!step()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Обрабатывает очередной кусок входа: текст, тег, часть комментария.
+     *
+     * @return false, если вход исчерпан
+     */
+    private boolean step() throws IOException {
+        switch (mode) {
+            case COMMENT:
+            case CONDITIONAL:
+                comment();
+                return true;
+            case LONG_TAG:
+                longTag();
+                return true;
+            default:
+                break;
+        }
+        if (!ensure(1)) {
+            flushDeclaration();
+            return false;
+        }
+        if (buffer[position] == '<' && (!inStyle || lookingAt("</style"))) {
+            flushDeclaration();
+            position++;
+            markup();
+        } else if (inStyle) {
+            css();
+        } else {
+            text();
+        }
+        return true;
+    }
+
+    /**
+     * Копирует текст до следующего тега (или выбрасывает внутри выбрасываемого элемента).
+     */
+    private void text() throws IOException {
+        boolean keep = dropping == null;
+        do {
+            int start = position;
+            while (position < limit && buffer[position] != '<') {
+                position++;
+            }
+            if (keep) {
+                output.append(buffer, start, position - start);
+            }
+            if (position < limit) {
+                return;
+            }
+        } while (output.length() < CHUNK && ensure(1));
+    }
+
+    /**
+     * Разбирает разметку после {@code <}.
+     */
+    private void markup() throws IOException {
+        if (lookingAt("!--")) {
+            position += 3;
+            boolean conditional = lookingAt("[if");
+            if (!conditional && dropping == null) {
+                output.append("<!--");
+            }
+            mode = conditional || dropping != null ? CONDITIONAL : COMMENT;
+            dashes = 0;
+            return;
+        }
+        int c = ensure(1) ? buffer[position] : -1;
+        if (c == '!') {
+            // <![if ...]>, <![endif]> — маркеры; <!DOCTYPE ...> остаётся
+            boolean keep = !lookingAt("![") && dropping == null;
+            markup.setLength(0);
+            markup.append('<');
+            if (readTag(keep) && keep) {
+                output.append(markup);
+            }
+        } else if (c == '?') {
+            markup.setLength(0);
+            readTag(false);
+        } else if (c == '/' || c >= 0 && Character.isLetter((char) c)) {
+            markup.setLength(0);
+            markup.append('<');
+            if (readTag(true)) {
+                tag();
+            }
+        } else if (dropping == null) {
+            // Одиночный знак «меньше» в тексте
+            output.append('<');
+        }
+    }
+
+    /**
+     * Дочитывает тег в {@link #markup} до {@code >} вне кавычек. Если тег длиннее
+     * {@link #MAX_MARKUP}, прочитанное выдаётся (или выбрасывается) как есть, а остаток
+     * пропускается в режиме {@link #LONG_TAG}.
+     *
+     * @param keepLong копировать ли слишком длинный тег
+     * @return true, если тег прочитан целиком
+     */
+    private boolean readTag(boolean keepLong) throws IOException {
+        char quote = 0;
+        while (ensure(1)) {
+            int start = position;
+            boolean closed = false;
+            while (position < limit) {
+                char c = buffer[position++];
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    closed = true;
+                    break;
+                }
+            }
+            markup.append(buffer, start, position - start);
+            if (closed) {
+                return true;
+            }
+            if (markup.length() > MAX_MARKUP) {
+                keepLong = keepLong && longTagKept();
+                if (keepLong) {
+                    output.append(markup);
+                }
+                mode = LONG_TAG;
+                keepLongTag = keepLong;
+                longTagQuote = quote;
+                return false;
+            }
+        }
+        if (keepLong) {
+            output.append(markup);
+        }
+        return false;
+    }
+
+    /**
+     * Решает, оставить ли слишком длинный тег, по его имени; учитывает его в стеке {@code <span>}.
+     */
+    private boolean longTagKept() {
+        boolean end = markup.charAt(1) == '/';
+        String name = tagName(end ? 2 : 1);
+        if (dropping != null || name.indexOf(':') >= 0 || name.equals("xml")) {
+            return false;
+        }
+        if (name.equals("span")) {
+            if (end) {
+                return spanDepth == 0 || !droppedSpans.get(--spanDepth);
+            }
+            droppedSpans.clear(spanDepth++);
+        } else if (name.equals("style") && !end) {
+            inStyle = true;
+            braces = 0;
+            cssQuote = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Пропускает остаток слишком длинного тега.
+     */
+    private void longTag() throws IOException {
+        if (!ensure(1)) {
+            mode = TEXT;
+            return;
+        }
+        int start = position;
+        while (position < limit) {
+            char c = buffer[position++];
+            if (longTagQuote != 0) {
+                if (c == longTagQuote) {
+                    longTagQuote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                longTagQuote = c;
+            } else if (c == '>') {
+                mode = TEXT;
+                break;
+            }
+        }
+        if (keepLongTag) {
+            output.append(buffer, start, position - start);
+        }
+    }
+
+    /**
+     * Копирует или выбрасывает комментарий до {@code -->}.
+     */
+    private void comment() throws IOException {
+        if (!ensure(1)) {
+            mode = TEXT;
+            return;
+        }
+        boolean keep = mode == COMMENT;
+        int start = position;
+        while (position < limit) {
+            char c = buffer[position++];
+            if (c == '>' && dashes >= 2) {
+                mode = TEXT;
+                break;
+            }
+            dashes = c == '-' ? dashes + 1 : 0;
+        }
+        if (keep) {
+            output.append(buffer, start, position - start);
+        }
+    }
+
+    /**
+     * Обрабатывает прочитанный целиком открывающий или закрывающий тег.
+     */
+    private void tag() {
+        boolean end = markup.charAt(1) == '/';
+        int nameStart = end ? 2 : 1;
+        String name = tagName(nameStart);
+        int nameEnd = nameStart + name.length();
+        boolean empty = markup.length() >= 3 && markup.charAt(markup.length() - 2) == '/';
+        if (dropping != null) {
+            if (name.equals(dropping)) {
+                if (end) {
+                    if (--dropDepth == 0) {
+                        dropping = null;
+                    }
+                } else if (!empty) {
+                    dropDepth++;
+                }
+            }
+            return;
+        }
+        if (!end && !empty && (name.equals("xml") || name.startsWith("v:"))) {
+            dropping = name;
+            dropDepth = 1;
+            return;
+        }
+        if (name.indexOf(':') >= 0 || name.equals("xml")) {
+            return;
+        }
+        if (end) {
+            if (name.equals("span") && spanDepth > 0 && droppedSpans.get(--spanDepth)) {
+                return;
+            }
+            if (name.equals("style")) {
+                inStyle = false;
+            }
+            output.append(markup);
+            return;
+        }
+
+        parseAttributes(nameEnd);
+        if (name.equals("link") && !"stylesheet".equalsIgnoreCase(attribute("rel"))
+                || name.equals("meta") && isWordMeta(attribute("name"))) {
+            return;
+        }
+        int kept = 0;
+        boolean changed = false;
+        rewritten.setLength(0);
+        rewritten.append(markup, 0, nameEnd);
+        for (int i = 0; i < attributeCount; i++) {
+            int a = i * 4;
+            if (isPrefixed(attributes[a], attributes[a + 2])
+                    || name.equals("span") && nameIs(a, "lang")) {
+                changed = true;
+                continue;
+            }
+            if (attributes[a + 3] >= 0 && nameIs(a, "style")) {
+                int valueStart = attributes[a + 3];
+                int valueEnd = attributes[a + 1];
+                char quote = markup.charAt(valueStart);
+                boolean quoted = quote == '"' || quote == '\'';
+                String value = markup.substring(quoted ? valueStart + 1 : valueStart, quoted ? valueEnd - 1 : valueEnd);
+                String style = cleanStyle(value);
+                if (style != value) {
+                    changed = true;
+                    if (!style.isEmpty()) {
+                        rewritten.append(' ').append(markup, attributes[a], valueStart);
+                        if (quoted) {
+                            rewritten.append(quote).append(style).append(quote);
+                        } else {
+                            rewritten.append('"').append(style).append('"');
+                        }
+                        kept++;
+                    }
+                    continue;
+                }
+            }
+            rewritten.append(' ').append(markup, attributes[a], attributes[a + 1]);
+            kept++;
+        }
+        if (name.equals("span")) {
+            boolean drop = kept == 0;
+            droppedSpans.set(spanDepth++, drop);
+            if (drop) {
+                return;
+            }
+        }
+        if (name.equals("style")) {
+            inStyle = true;
+            braces = 0;
+            cssQuote = 0;
+        }
+        if (changed) {
+            rewritten.append(empty ? "/>" : ">");
+            output.append(rewritten);
+        } else {
+            output.append(markup);
+        }
+    }
+
+    /**
+     * Имя тега в {@link #markup} в нижнем регистре.
+     */
+    private String tagName(int start) {
+        int end = start;
+        while (end < markup.length() && isNameChar(markup.charAt(end))) {
+            end++;
+        }
+        return markup.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Разбирает атрибуты тега в {@link #markup} начиная со смещения.
+     */
+    private void parseAttributes(int from) {
+        attributeCount = 0;
+        int i = from;
+        int length = markup.length() - 1;
+        while (i < length) {
+            char c = markup.charAt(i);
+            if (Character.isWhitespace(c) || c == '/') {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(markup.charAt(i)) && markup.charAt(i) != '='
+                    && !(markup.charAt(i) == '/' && i + 1 == length)) {
+                i++;
+            }
+            int nameEnd = i;
+            int valueStart = -1;
+            int j = i;
+            while (j < length && Character.isWhitespace(markup.charAt(j))) {
+                j++;
+            }
+            if (j < length && markup.charAt(j) == '=') {
+                j++;
+                while (j < length && Character.isWhitespace(markup.charAt(j))) {
+                    j++;
+                }
+                valueStart = j;
+                char quote = j < length ? markup.charAt(j) : 0;
+                if (quote == '"' || quote == '\'') {
+                    j++;
+                    while (j < length && markup.charAt(j) != quote) {
+                        j++;
+                    }
+                    j = Math.min(j + 1, length);
+                } else {
+                    while (j < length && !Character.isWhitespace(markup.charAt(j))) {
+                        j++;
+                    }
+                }
+                i = j;
+            }
+            if (nameEnd > start) {
+                if (attributes.length < (attributeCount + 1) * 4) {
+                    attributes = Arrays.copyOf(attributes, attributes.length * 2);
+                }
+                int a = attributeCount++ * 4;
+                attributes[a] = start;
+                attributes[a + 1] = i;
+                attributes[a + 2] = nameEnd;
+                attributes[a + 3] = valueStart;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Значение атрибута текущего тега без кавычек или null.
+     */
+    private String attribute(String name) {
+        for (int i = 0; i < attributeCount; i++) {
+            int a = i * 4;
+            if (attributes[a + 3] >= 0 && nameIs(a, name)) {
+                String value = markup.substring(attributes[a + 3], attributes[a + 1]);
+                return value.length() >= 2 && (value.charAt(0) == '"' || value.charAt(0) == '\'')
+                        ? value.substring(1, value.length() - 1) : value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Совпадает ли без учёта регистра имя атрибута номер {@code a / 4} с заданным в нижнем регистре.
+     */
+    private boolean nameIs(int a, String name) {
+        int start = attributes[a];
+        if (attributes[a + 2] - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.toLowerCase(markup.charAt(start + i)) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Есть ли у имени в {@link #markup} префикс ({@code o:spid}, {@code xmlns:v}).
+     */
+    private boolean isPrefixed(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (markup.charAt(i) == ':') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWordMeta(String name) {
+        return "ProgId".equalsIgnoreCase(name) || "Generator".equalsIgnoreCase(name)
+                || "Originator".equalsIgnoreCase(name);
+    }
+
+    /**
+     * Убирает из значения атрибута style объявления {@code mso-…}.
+     *
+     * @return то же значение (тот же объект), если убирать нечего
+     */
+    static String cleanStyle(String style) {
+        boolean found = false;
+        for (int i = style.indexOf('-', 3); i >= 0 && !found; i = style.indexOf('-', i + 1)) {
+            found = style.regionMatches(true, i - 3, "mso-", 0, 4);
+        }
+        if (!found) {
+            return style;
+        }
+        StringBuilder cleaned = new StringBuilder(style.length());
+        int start = 0;
+        char quote = 0;
+        for (int i = 0; i <= style.length(); i++) {
+            char c = i < style.length() ? style.charAt(i) : ';';
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == ';') {
+                String declaration = style.substring(start, i).trim();
+                if (!declaration.isEmpty() && !isMso(declaration)) {
+                    if (cleaned.length() > 0) {
+                        cleaned.append(';');
+                    }
+                    cleaned.append(declaration);
+                }
+                start = i + 1;
+            }
+        }
+        return cleaned.toString();
+    }
+
+    private static boolean isMso(CharSequence declaration) {
+        int i = 0;
+        while (i < declaration.length() && Character.isWhitespace(declaration.charAt(i))) {
+            i++;
+        }
+        return declaration.length() - i >= 4 && declaration.subSequence(i, i + 4).toString().equalsIgnoreCase("mso-");
+    }
+
+    /**
+     * Обрабатывает таблицу стилей до следующего {@code <} (первый символ — в любом случае):
+     * объявления внутри фигурных скобок копятся в {@link #markup} и выбрасываются, если это
+     * {@code mso-…}.
+     */
+    private void css() {
+        do {
+            char c = buffer[position++];
+            if (braces == 0) {
+                output.append(c);
+                if (c == '{') {
+                    braces = 1;
+                    markup.setLength(0);
+                }
+            } else if (cssQuote != 0 || c == '"' || c == '\'') {
+                cssQuote = c == cssQuote ? 0 : cssQuote != 0 ? cssQuote : c;
+                markup.append(c);
+            } else if (c == ';' || c == '}') {
+                if (!isMso(markup)) {
+                    output.append(markup);
+                    if (c == ';') {
+                        output.append(c);
+                    }
+                }
+                markup.setLength(0);
+                if (c == '}') {
+                    output.append(c);
+                    braces--;
+                }
+            } else if (c == '{') {
+                // Вложенное правило (@media): накопленное — селектор
+                output.append(markup).append(c);
+                markup.setLength(0);
+                braces++;
+            } else {
+                markup.append(c);
+                if (markup.length() > MAX_MARKUP) {
+                    output.append(markup);
+                    markup.setLength(0);
+                }
+            }
+        } while (position < limit && buffer[position] != '<' && output.length() < CHUNK);
+    }
+
+    /**
+     * Выдаёт недописанное объявление CSS как есть.
+     */
+    private void flushDeclaration() {
+        if (inStyle && braces > 0 && markup.length() > 0) {
+            output.append(markup);
+            markup.setLength(0);
+        }
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == ':' || c == '-' || c == '_' || c == '.';
+    }
+
+    /**
+     * Проверяет без учёта регистра, идут ли дальше во входе эти символы; вход не сдвигается.
+     */
+    private boolean lookingAt(String expected) throws IOException {
+        if (!ensure(expected.length())) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (Character.toLowerCase(buffer[position + i]) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Дочитывает вход, чтобы в буфере было хотя бы {@code n} необработанных символов.
+     *
+     * @return false, если вход кончился раньше
+     */
+    private boolean ensure(int n) throws IOException {
+        while (limit - position < n) {
+            if (eof) {
+                return false;
+            }
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                position = 0;
+            }
+            int r = in.read(buffer, limit, buffer.length - limit);
+            if (r < 0) {
+                eof = true;
+            } else {
+                limit += r;
+                read += r;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,536 @@
+package com.example;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.StyleSheet;
+import javax.swing.undo.CompoundEdit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * HTML-документ текстового процессора.
+ *
+ * <p>Добавляет к {@link HTMLDocument} вставку заранее собранных фрагментов
+ * ({@link HtmlFragment}) без разбора HTML: элементы фрагмента дополняются
+ * переходом от точки вставки к нужному уровню дерева и вставляются одним
+ * вызовом {@link #insert(int, ElementSpec[])} — одно событие документа и одна
+ * правка для отмены.</p>
+ *
+ * <p>Замена всех вхождений ({@link #replaceAll}) тоже даёт одну правку для отмены,
+ * а вхождения внутри участков заменяются без перестройки элементов.
+ * Так же разом ставятся ссылки на найденные в тексте адреса ({@link #addLinks}).</p>
+ */
+public class WordProcessorDocument extends HTMLDocument {
+
+    /**
+     * Атрибуты перевода строки, которым заканчивается первая часть разделённого абзаца.
+     */
+    private static final AttributeSet CONTENT;
+
+    static {
+        SimpleAttributeSet content = new SimpleAttributeSet();
+        content.addAttribute(StyleConstants.NameAttribute, HTML.Tag.CONTENT);
+        CONTENT = content;
+    }
+
+    /**
+     * Составная правка, в которую собираются правки документа вместо рассылки
+     * слушателям; null, если сбор не идёт.
+     */
+    private CompoundEdit collected;
+
+    /**
+     * Создаёт документ с заданным содержимым и таблицей стилей.
+     *
+     * @param content содержимое документа
+     * @param styles  таблица стилей
+     */
+    public WordProcessorDocument(AbstractDocument.Content content, StyleSheet styles) {
+        super(content, styles);
+    }
+
+    /**
+     * Вставляет фрагмент. Строчный фрагмент (ссылка) вставляется в текст абзаца.
+     * Блочный встаёт перед абзацем, если смещение в его начале, и после абзаца,
+     * если смещение в его конце. Иначе абзац делится на два.
+     * Смещение внутри {@code <head>} переносится в начало {@code <body>}.
+     *
+     * @param offset смещение вставки
+     * @param fragment фрагмент
+     * @throws BadLocationException если смещение вне документа
+     */
+    public void insertFragment(int offset, HtmlFragment fragment) throws BadLocationException {
+        if (offset < 0 || offset > getLength()) {
+            throw new BadLocationException("Invalid insert", offset);
+        }
+        offset = bodyOffset(offset);
+        List<Element> at = path(offset);
+        Element paragraph = at.get(at.size() - 1);
+        if (fragment.isBlock() && offset > paragraph.getStartOffset()
+                && offset == paragraph.getEndOffset() - 1 && paragraph.getEndOffset() < getLength()) {
+            // В конце абзаца новый блок ставится после него, а не отрезает пустой абзац
+            List<Element> next = path(paragraph.getEndOffset());
+            if (next.get(next.size() - 2) == at.get(at.size() - 2)) {
+                offset = paragraph.getEndOffset();
+                at = next;
+                paragraph = next.get(next.size() - 1);
+            }
+        }
+
+        List<ElementSpec> specs = new ArrayList<>();
+        if (offset > 0 && offset == paragraph.getStartOffset()) {
+            // Вставка на границе: выходим из предыдущего абзаца и входим в этот
+            // (для блочного фрагмента — в его родителя)
+            List<Element> previous = path(offset - 1);
+            int common = 0;
+            while (common < previous.size() && common < at.size() && previous.get(common) == at.get(common)) {
+                common++;
+            }
+            for (int i = previous.size(); i > common; i--) {
+                specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+            }
+            int depth = fragment.isBlock() ? at.size() - 1 : at.size();
+            for (int i = common; i < depth; i++) {
+                ElementSpec start = new ElementSpec(at.get(i).getAttributes(), ElementSpec.StartTagType);
+                start.setDirection(ElementSpec.JoinNextDirection);
+                specs.add(start);
+            }
+        } else if (fragment.isBlock()) {
+            // Делим абзац: первая часть получает перевод строки и закрывается
+            specs.add(new ElementSpec(CONTENT, ElementSpec.ContentType, new char[] {'\n'}, 0, 1));
+            specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+        }
+        Collections.addAll(specs, fragment.specs());
+        insert(offset, specs.toArray(new ElementSpec[0]));
+    }
+
+    /**
+     * Дописывает блоки (абзацы, списки, таблицы уровня {@code <body>}) в конец документа,
+     * который строится вне редактора, например при импорте DOCX ({@link DocxReader}).
+     * Блоки встают перед пустым абзацем, с которого начинается новый документ; в конце
+     * вызывается {@link #finishAppending()}.
+     *
+     * @param blocks описания блоков; каждый открытый в них элемент в них же и закрыт
+     * @throws BadLocationException при ошибке построения документа
+     */
+    void appendBlocks(ElementSpec[] blocks) throws BadLocationException {
+        int length = getLength();
+        // Текст, вставленный в конец, продлевает последний абзац и его родителей:
+        // выходим из них до уровня <body>
+        int depth = path(Math.max(0, length - 1)).size() - 2;
+        ElementSpec[] specs = new ElementSpec[depth + blocks.length];
+        for (int i = 0; i < depth; i++) {
+            specs[i] = new ElementSpec(null, ElementSpec.EndTagType);
+        }
+        System.arraycopy(blocks, 0, specs, depth, blocks.length);
+        insert(length, specs);
+    }
+
+    /**
+     * Завершает документ, собранный {@link #appendBlocks}: пустой абзац в конце сливается
+     * с последним блоком, если это обычный абзац. После таблицы или списка он остаётся,
+     * как в Word.
+     *
+     * @throws BadLocationException при ошибке построения документа
+     */
+    void finishAppending() throws BadLocationException {
+        int length = getLength();
+        if (length == 0) {
+            return;
+        }
+        List<Element> last = path(length - 1);
+        if (last.size() == 3) {
+            // Абзацы сливаются, только если у них один тег: пустой абзац принимает атрибуты последнего
+            setParagraphAttributes(length, 1, last.get(2).getAttributes().copyAttributes(), true);
+            remove(length - 1, 1);
+        }
+    }
+
+    /**
+     * Проверяет, умеет ли содержимое запоминать и восстанавливать позиции
+     * (см. {@link #positions}); без этого правки содержимого нельзя отменять в обход событий.
+     *
+     * @return true для собственных реализаций содержимого
+     */
+    boolean tracksPositions() {
+        return getContent() instanceof AbstractContent;
+    }
+
+    /**
+     * Запоминает позиции в диапазоне, которые схлопнутся при его удалении.
+     * Вызывается под блокировкой записи или в потоке событий.
+     *
+     * @param offset смещение
+     * @param length длина
+     * @return снимок или null, если позиций там нет или содержимое их не запоминает
+     */
+    MarkTracker.Snapshot positions(int offset, int length) {
+        Content content = getContent();
+        return content instanceof AbstractContent ? ((AbstractContent) content).positions(offset, length) : null;
+    }
+
+    /**
+     * Возвращает неизменяемый снимок текста, если содержимое умеет его делать
+     * ({@link SnapshotContent}). Снимок включает завершающий перевод строки содержимого.
+     * Вызывается под блокировкой чтения или в потоке событий.
+     *
+     * @return снимок или null для содержимого без снимков
+     */
+    CharSequence snapshot() {
+        Content content = getContent();
+        return content instanceof SnapshotContent ? ((SnapshotContent) content).snapshot() : null;
+    }
+
+    /**
+     * Вставляет текст только в содержимое, не меняя элементов: текст достаётся участку,
+     * который заканчивается на этом смещении или содержит его. Так отменяется удаление
+     * (и повторяется вставка) текста, не менявшее структуру, — как это делает отмена
+     * {@code DefaultDocumentEvent}, но без хранения самого события.
+     * Событие правки для отмены не создаётся.
+     *
+     * @param offset    смещение внутри участка (не в его начале)
+     * @param text      текст
+     * @param positions позиции, схлопнутые удалением этого текста, или null
+     * @throws BadLocationException если смещение вне документа
+     */
+    void insertContent(int offset, String text, MarkTracker.Snapshot positions) throws BadLocationException {
+        writeLock();
+        try {
+            getContent().insertString(offset, text);
+            if (positions != null) {
+                ((AbstractContent) getContent()).restore(positions, offset, text.length());
+            }
+            DefaultDocumentEvent event = new DefaultDocumentEvent(offset, text.length(), DocumentEvent.EventType.INSERT);
+            event.end();
+            fireInsertUpdate(event);
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Удаляет текст только из содержимого, не меняя элементов (см. {@link #insertContent}).
+     *
+     * @param offset смещение
+     * @param length длина
+     * @return позиции, схлопнутые удалением, для {@link #insertContent}, или null
+     * @throws BadLocationException если диапазон вне документа
+     */
+    MarkTracker.Snapshot removeContent(int offset, int length) throws BadLocationException {
+        writeLock();
+        try {
+            MarkTracker.Snapshot positions = positions(offset, length);
+            DefaultDocumentEvent event = new DefaultDocumentEvent(offset, length, DocumentEvent.EventType.REMOVE);
+            getContent().remove(offset, length);
+            event.end();
+            fireRemoveUpdate(event);
+            return positions;
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Заменяет вхождения текста одной правкой для отмены.
+     *
+     * <p>Вхождения внутри одного участка заменяются только в содержимом, без перестройки
+     * элементов: позиции внутри вхождения (границы элементов, выделения) переносятся
+     * в замену, а слушатели получают удаление и вставку самого вхождения. Работа и события
+     * растут с числом вхождений, а не с расстоянием между ними. Вхождения через границу
+     * участков или с переводом строки, а также все вхождения, если содержимое
+     * не запоминает позиции, заменяются обычными правками.</p>
+     *
+     * @param offsets     смещения вхождений по возрастанию; перекрывающиеся с предыдущим пропускаются
+     * @param count       число смещений
+     * @param length      длина вхождения
+     * @param replacement текст замены
+     * @return число замен
+     * @throws BadLocationException если вхождение выходит за документ
+     */
+    public int replaceAll(int[] offsets, int count, int length, String replacement) throws BadLocationException {
+        if (length <= 0) {
+            throw new IllegalArgumentException("Match length must be positive: " + length);
+        }
+        int[] matches = new int[count];
+        boolean[] inContent = new boolean[count];
+        int n = 0;
+        Segment text = new Segment();
+        readLock();
+        try {
+            int end = 0;
+            for (int i = 0; i < count; i++) {
+                int offset = offsets[i];
+                if (offset < end) {
+                    continue;
+                }
+                if (offset < 0 || offset + length > getLength()) {
+                    throw new BadLocationException("Invalid match", offset);
+                }
+                end = offset + length;
+                inContent[n] = replaceableInContent(offset, length, replacement, text);
+                matches[n++] = offset;
+            }
+        } finally {
+            readUnlock();
+        }
+        if (n == 0) {
+            return 0;
+        }
+
+        CompoundEdit edit = new CompoundEdit();
+        collected = edit;
+        try {
+            // С конца, чтобы не сдвигать ещё не заменённые вхождения
+            for (int i = n - 1; i >= 0; i--) {
+                if (inContent[i]) {
+                    replaceInContent(matches[i], length, replacement, edit);
+                } else {
+                    replace(matches[i], length, replacement, leafAt(matches[i]).getAttributes());
+                }
+            }
+        } finally {
+            collected = null;
+            edit.end();
+        }
+        fireUndoableEditUpdate(new UndoableEditEvent(this, edit));
+        return n;
+    }
+
+    /**
+     * Превращает участки текста в ссылки одной правкой и одним событием документа.
+     *
+     * <p>Листья, через которые проходят участки, заменяются частями: текст ссылки получает
+     * атрибуты {@link HtmlFragment#linkAttributes}, остальное — прежние атрибуты листа.
+     * На каждого родителя приходится одна замена детей, так что тысячи ссылок в одном
+     * абзаце не порождают тысяч изменений элементов.</p>
+     *
+     * @param starts начала участков по возрастанию
+     * @param ends   концы участков (не включая); участки не перекрываются и не переходят
+     *               из абзаца в абзац
+     * @param hrefs  адреса ссылок
+     * @param count  число участков
+     * @throws BadLocationException если участок вне документа
+     */
+    public void addLinks(int[] starts, int[] ends, String[] hrefs, int count) throws BadLocationException {
+        if (count == 0) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            if (starts[i] < 0 || ends[i] > getLength() || starts[i] >= ends[i] || i > 0 && starts[i] < ends[i - 1]) {
+                throw new BadLocationException("Invalid link range", starts[i]);
+            }
+        }
+        writeLock();
+        try {
+            DefaultDocumentEvent event = new DefaultDocumentEvent(starts[0], ends[count - 1] - starts[0],
+                    DocumentEvent.EventType.CHANGE);
+            Element parent = leafAt(starts[0]).getParentElement();
+            int first = 0;
+            for (int i = 1; i <= count; i++) {
+                Element next = i < count ? leafAt(starts[i]).getParentElement() : null;
+                if (next != parent) {
+                    replaceLeaves(parent, starts, ends, hrefs, first, i, event);
+                    parent = next;
+                    first = i;
+                }
+            }
+            event.end();
+            fireChangedUpdate(event);
+            fireUndoableEditUpdate(new UndoableEditEvent(this, event));
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Заменяет листья родителя, задетые участками {@code [from, to)}, частями с атрибутами ссылок.
+     */
+    private void replaceLeaves(Element parent, int[] starts, int[] ends, String[] hrefs, int from, int to,
+                               DefaultDocumentEvent event) {
+        int first = parent.getElementIndex(starts[from]);
+        int last = parent.getElementIndex(ends[to - 1] - 1);
+        Element[] removed = new Element[last - first + 1];
+        List<Element> added = new ArrayList<>();
+        int range = from;
+        for (int index = first; index <= last; index++) {
+            Element leaf = parent.getElement(index);
+            removed[index - first] = leaf;
+            int leafStart = leaf.getStartOffset();
+            int leafEnd = leaf.getEndOffset();
+            if (range == to || starts[range] >= leafEnd) {
+                added.add(leaf);
+                continue;
+            }
+            AttributeSet attrs = leaf.getAttributes();
+            int position = leafStart;
+            while (range < to && starts[range] < leafEnd) {
+                int start = Math.max(starts[range], leafStart);
+                int end = Math.min(ends[range], leafEnd);
+                if (start > position) {
+                    added.add(createLeafElement(parent, attrs, position, start));
+                }
+                added.add(createLeafElement(parent, HtmlFragment.linkAttributes(attrs, hrefs[range]), start, end));
+                position = end;
+                if (ends[range] > leafEnd) {
+                    // Участок продолжается в следующем листе
+                    break;
+                }
+                range++;
+            }
+            if (position < leafEnd) {
+                added.add(createLeafElement(parent, attrs, position, leafEnd));
+            }
+        }
+        Element[] replacement = added.toArray(new Element[0]);
+        ((BranchElement) parent).replace(first, removed.length, replacement);
+        event.addEdit(new ElementEdit(parent, first, removed, replacement));
+    }
+
+    @Override
+    protected void fireUndoableEditUpdate(UndoableEditEvent e) {
+        if (collected != null) {
+            collected.addEdit(e.getEdit());
+        } else {
+            super.fireUndoableEditUpdate(e);
+        }
+    }
+
+    /**
+     * Проверяет, можно ли заменить вхождение в одном содержимом: оно лежит в одном участке,
+     * не содержит перевода строки и не стирает участок целиком.
+     */
+    private boolean replaceableInContent(int offset, int length, String replacement, Segment text)
+            throws BadLocationException {
+        if (!tracksPositions() || replacement.indexOf('\n') >= 0) {
+            return false;
+        }
+        Element leaf = leafAt(offset);
+        if (offset + length > leaf.getEndOffset()
+                || replacement.isEmpty() && offset == leaf.getStartOffset() && offset + length == leaf.getEndOffset()) {
+            return false;
+        }
+        getText(offset, length, text);
+        for (int i = 0; i < text.count; i++) {
+            if (text.array[text.offset + i] == '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Заменяет вхождение внутри участка только в содержимом. События удаления и вставки
+     * вхождения служат и правками для отмены, как у обычной правки документа,
+     * только без изменений элементов.
+     *
+     * @param offset смещение вхождения
+     * @param edit   правка, в которую собираются замены
+     */
+    private void replaceInContent(int offset, int length, String replacement, CompoundEdit edit)
+            throws BadLocationException {
+        AbstractContent content = (AbstractContent) getContent();
+        writeLock();
+        try {
+            MarkTracker.Snapshot positions = content.positions(offset, length);
+            DefaultDocumentEvent removal = new DefaultDocumentEvent(offset, length, DocumentEvent.EventType.REMOVE);
+            removal.addEdit(content.remove(offset, length));
+            removal.end();
+            fireRemoveUpdate(removal);
+            edit.addEdit(removal);
+            if (!replacement.isEmpty()) {
+                DefaultDocumentEvent insertion = new DefaultDocumentEvent(offset, replacement.length(),
+                        DocumentEvent.EventType.INSERT);
+                insertion.addEdit(content.insertString(offset, replacement));
+                content.remap(positions, offset, replacement.length(),
+                        new ReplacementMap(offset, length, replacement.length()));
+                insertion.end();
+                fireInsertUpdate(insertion);
+                edit.addEdit(insertion);
+            }
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    private Element leafAt(int offset) {
+        Element e = getDefaultRootElement();
+        while (!e.isLeaf()) {
+            e = e.getElement(e.getElementIndex(offset));
+        }
+        return e;
+    }
+
+    /**
+     * Переносит смещение из {@code <head>} в начало {@code <body>}.
+     */
+    private int bodyOffset(int offset) {
+        Element root = getDefaultRootElement();
+        Element head = null;
+        Element body = null;
+        for (int i = 0; i < root.getElementCount(); i++) {
+            Element e = root.getElement(i);
+            Object tag = e.getAttributes().getAttribute(StyleConstants.NameAttribute);
+            if (tag == HTML.Tag.HEAD) {
+                head = e;
+            } else if (tag == HTML.Tag.BODY) {
+                body = e;
+            }
+        }
+        if (head != null && body != null && offset >= head.getStartOffset() && offset < head.getEndOffset()) {
+            return body.getStartOffset();
+        }
+        return offset;
+    }
+
+    /**
+     * Возвращает ветви дерева от корня до абзаца, содержащего смещение.
+     */
+    private List<Element> path(int offset) {
+        List<Element> path = new ArrayList<>();
+        Element e = getDefaultRootElement();
+        while (!e.isLeaf()) {
+            path.add(e);
+            e = e.getElement(e.getElementIndex(offset));
+        }
+        return path;
+    }
+
+    /**
+     * Новое смещение позиции вхождения после его замены: позиция внутри вхождения
+     * остаётся внутри замены (не дальше её конца), позиция в конце вхождения
+     * переходит в конец замены.
+     */
+    private static final class ReplacementMap implements IntUnaryOperator {
+
+        private final int start;
+
+        private final int length;
+
+        private final int replacementLength;
+
+        ReplacementMap(int start, int length, int replacementLength) {
+            this.start = start;
+            this.length = length;
+            this.replacementLength = replacementLength;
+        }
+
+        @Override
+        public int applyAsInt(int offset) {
+            if (offset >= start + length) {
+                return start + replacementLength;
+            }
+            return start + Math.min(offset - start, replacementLength);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.Document;
+import javax.swing.text.GapContent;
+import javax.swing.text.ViewFactory;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.text.html.StyleSheet;
+
+/**
+ * Редакторский набор текстового процессора.
+ *
+ * <p>Отличается от {@link HTMLEditorKit} тем, что создаваемые документы хранят
+ * текст в выбранном {@link ContentEngine} вместо {@code GapContent}: правки вдали от
+ * предыдущей не копируют большие массивы символов в документах на сотни мегабайт.
+ * По умолчанию используется таблица фрагментов; другой вариант выбирается свойством
+ * {@code -Dswp.content=gap|piece|rope}.</p>
+ *
+ * <p>Представления строит {@link VirtualizingViewFactory}: в длинных документах
+ * создаются и раскладываются только абзацы рядом с видимой областью.</p>
+ */
+public class WordProcessorEditorKit extends HTMLEditorKit {
+
+    /**
+     * Способ хранения текста документа.
+     */
+    public enum ContentEngine {
+
+        /**
+         * Стандартный {@link GapContent} Swing.
+         */
+        GAP("gap"),
+
+        /**
+         * {@link PieceTableContent}.
+         */
+        PIECE_TABLE("piece"),
+
+        /**
+         * {@link RopeContent}.
+         */
+        ROPE("rope");
+
+        /**
+         * Имя в свойстве {@code swp.content}.
+         */
+        private final String key;
+
+        ContentEngine(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Создаёт пустое содержимое документа.
+         *
+         * @return новое содержимое
+         */
+        public AbstractDocument.Content create() {
+            switch (this) {
+                case GAP:
+                    return new GapContent();
+                case ROPE:
+                    return new RopeContent();
+                default:
+                    return new PieceTableContent();
+            }
+        }
+
+        /**
+         * Выбирает способ хранения по свойству {@code swp.content}.
+         *
+         * @return выбранный способ; таблица фрагментов, если свойство не задано или неизвестно
+         */
+        public static ContentEngine fromProperty() {
+            String value = System.getProperty("swp.content", PIECE_TABLE.key);
+            for (ContentEngine engine : values()) {
+                if (engine.key.equalsIgnoreCase(value)) {
+                    return engine;
+                }
+            }
+            return PIECE_TABLE;
+        }
+    }
+
+    /**
+     * Способ хранения текста новых документов.
+     */
+    private final ContentEngine engine;
+
+    /**
+     * Фабрика представлений документов этого набора.
+     */
+    private final ViewFactory viewFactory = new VirtualizingViewFactory();
+
+    /**
+     * Создаёт набор со способом хранения из свойства {@code swp.content}.
+     */
+    public WordProcessorEditorKit() {
+        this(ContentEngine.fromProperty());
+    }
+
+    /**
+     * Создаёт набор с заданным способом хранения текста.
+     *
+     * @param engine способ хранения
+     */
+    public WordProcessorEditorKit(ContentEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Возвращает способ хранения текста новых документов.
+     *
+     * @return способ хранения
+     */
+    public ContentEngine getContentEngine() {
+        return engine;
+    }
+
+    /**
+     * Возвращает фабрику представлений с ленивым созданием блоков длинных документов.
+     *
+     * @return фабрика представлений
+     */
+    @Override
+    public ViewFactory getViewFactory() {
+        return viewFactory;
+    }
+
+    /**
+     * Создаёт пустой HTML-документ так же, как {@link HTMLEditorKit#createDefaultDocument()},
+     * но с содержимым выбранного способа хранения. Документ — {@link WordProcessorDocument},
+     * в него можно вставлять готовые фрагменты без разбора HTML.
+     *
+     * @return новый документ
+     */
+    @Override
+    public Document createDefaultDocument() {
+        StyleSheet styles = getStyleSheet();
+        StyleSheet ss = new StyleSheet();
+        ss.addStyleSheet(styles);
+
+        HTMLDocument doc = new WordProcessorDocument(engine.create(), ss);
+        doc.setParser(getParser());
+        doc.setAsynchronousLoadPriority(4);
+        doc.setTokenThreshold(100);
+        return doc;
+    }
+}
@@ -0,0 +1,134 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.undo.UndoManager;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Автоссылки при наборе и вставке: адрес становится ссылкой после разделителя,
+ * отдельной правкой, которую можно отменить.
+ */
+class AutoLinkerTest {
+
+    private boolean replaying;
+
+    private WordProcessorDocument doc;
+
+    private AutoLinker linker;
+
+    private LinkIndex links;
+
+    private final UndoManager undo = new UndoManager();
+
+    private void open() throws Exception {
+        doc = (WordProcessorDocument) DocumentLoadWorker.read(new WordProcessorEditorKit(),
+                new StringReader("<html><body><p>Начало</p><p>конец</p></body></html>"));
+        linker = new AutoLinker(() -> replaying);
+        linker.setDocument(doc);
+        links = new LinkIndex();
+        links.setDocument(doc);
+        doc.addUndoableEditListener(undo);
+    }
+
+    @Test
+    void linksTypedAddressAfterSeparator() throws Exception {
+        open();
+        int at = doc.getParagraphElement(1).getEndOffset() - 1;
+        onEdt(() -> type(at, " www.example.com"));
+        assertEquals(new ArrayList<String>(), links());
+
+        onEdt(() -> type(at + " www.example.com".length(), "."));
+        assertEquals(new ArrayList<String>(), links(), "точка может быть частью адреса");
+        onEdt(() -> type(at + " www.example.com.".length(), " "));
+        assertEquals(list("www.example.com -> http://www.example.com"), links());
+    }
+
+    @Test
+    void linksPastedAddressesInOneUndoableEdit() throws Exception {
+        open();
+        int at = doc.getParagraphElement(1).getEndOffset() - 1;
+        String pasted = " почта: a.b@example.org,\nсм. (http://x.org/a_(b)) и C:\\Docs\\a.doc.";
+        onEdt(() -> doc.insertString(at, pasted, doc.getCharacterElement(at - 1).getAttributes()));
+        assertEquals(list("a.b@example.org -> mailto:a.b@example.org",
+                "http://x.org/a_(b) -> http://x.org/a_(b)",
+                "C:\\Docs\\a.doc -> file:///C:/Docs/a.doc"), links());
+
+        // Отмена снимает ссылки одной правкой и не ставит их заново
+        onEdt(() -> {
+            replaying = true;
+            try {
+                undo.undo();
+            } finally {
+                replaying = false;
+            }
+        });
+        assertEquals(new ArrayList<String>(), links());
+        assertEquals(pasted, doc.getText(at, pasted.length()));
+    }
+
+    @Test
+    void leavesExistingLinksAndDisabledLinker() throws Exception {
+        open();
+        linker.setEnabled(false);
+        onEdt(() -> type(1, "http://a.ru "));
+        assertEquals(new ArrayList<String>(), links());
+
+        linker.setEnabled(true);
+        onEdt(() -> type(1 + "http://a.ru".length(), " "));
+        assertEquals(list("http://a.ru -> http://a.ru"), links());
+        // Набор внутри ссылки её продолжает, а не ставит вторую
+        onEdt(() -> type(5, "y"));
+        assertEquals(1, links.size());
+    }
+
+    private void type(int offset, String text) throws BadLocationException {
+        for (int i = 0; i < text.length(); i++) {
+            doc.insertString(offset + i, text.substring(i, i + 1), doc.getCharacterElement(offset + i - 1).getAttributes());
+        }
+    }
+
+    private List<String> links() {
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < links.size(); i++) {
+            out.add(links.get(i).getText() + " -> " + links.get(i).getHref());
+        }
+        return out;
+    }
+
+    private static List<String> list(String... items) {
+        List<String> out = new ArrayList<>();
+        for (String item : items) {
+            out.add(item);
+        }
+        return out;
+    }
+
+    /**
+     * Выполняет правку в потоке событий и ждёт проверки, отложенной до конца цикла событий.
+     */
+    private static void onEdt(Edit edit) throws Exception {
+        Exception[] failure = new Exception[1];
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                edit.run();
+            } catch (Exception e) {
+                failure[0] = e;
+            }
+        });
+        SwingUtilities.invokeAndWait(() -> { });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    private interface Edit {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,170 @@
+package com.example;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.GapContent;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.UndoableEdit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Дифференциальная проверка реализации {@link AbstractDocument.Content}: та же
+ * случайная последовательность вставок, удалений, отмен и повторов применяется
+ * к проверяемому содержимому и к эталонному {@link GapContent}, после каждого шага
+ * сравниваются текст, чтение произвольных диапазонов (в том числе по частям)
+ * и смещения позиций. Снимки {@link SnapshotContent} не должны меняться после правок.
+ */
+final class ContentDifferential {
+
+    private final AbstractDocument.Content content;
+
+    private final GapContent reference = new GapContent();
+
+    private final Random random;
+
+    private final List<Position> positions = new ArrayList<>();
+
+    private final List<Position> referencePositions = new ArrayList<>();
+
+    private final List<UndoableEdit[]> edits = new ArrayList<>();
+
+    /**
+     * Последние снимки и текст, который каждый из них должен хранить.
+     */
+    private final List<Object[]> snapshots = new ArrayList<>();
+
+    /**
+     * @param content проверяемое содержимое; эталон начинается с его текущего текста
+     * @param seed    начальное значение генератора шагов
+     * @throws BadLocationException не возникает
+     */
+    ContentDifferential(AbstractDocument.Content content, long seed) throws BadLocationException {
+        this.content = content;
+        this.random = new Random(seed);
+        reference.insertString(0, content.getString(0, content.length() - 1));
+    }
+
+    /**
+     * Выполняет заданное число случайных шагов со сверкой после каждого.
+     *
+     * @param steps число шагов
+     * @throws BadLocationException при ошибке правки
+     */
+    void run(int steps) throws BadLocationException {
+        String initial = text(1 + random.nextInt(200));
+        step(content.insertString(0, initial), reference.insertString(0, initial));
+        for (int i = 0; i < steps; i++) {
+            int op = random.nextInt(20);
+            if (op < 8) {
+                int where = random.nextInt(content.length());
+                String str = text(random.nextInt(8) == 0 ? 1 + random.nextInt(500) : 1 + random.nextInt(6));
+                step(content.insertString(where, str), reference.insertString(where, str));
+            } else if (op < 14) {
+                if (content.length() > 1) {
+                    int where = random.nextInt(content.length() - 1);
+                    // Пустых удалений AbstractDocument не передаёт
+                    int n = 1 + random.nextInt(Math.min(content.length() - 1 - where, 50));
+                    step(content.remove(where, n), reference.remove(where, n));
+                }
+            } else if (op < 16) {
+                undoRedo();
+            } else if (op < 18) {
+                int offset = random.nextInt(content.length() + 1);
+                positions.add(content.createPosition(offset));
+                referencePositions.add(reference.createPosition(offset));
+                // Новая позиция может совпасть с меткой, схлопнутой прежним удалением, и GapContent
+                // выбирает такую метку произвольно: правки до создания позиции больше не отменяем
+                edits.clear();
+            } else if (content instanceof SnapshotContent) {
+                CharSequence snapshot = ((SnapshotContent) content).snapshot();
+                snapshots.add(new Object[]{snapshot, reference.getString(0, reference.length())});
+                if (snapshots.size() > 8) {
+                    snapshots.remove(0);
+                }
+            }
+            verify();
+        }
+    }
+
+    private void step(UndoableEdit edit, UndoableEdit referenceEdit) {
+        edits.add(new UndoableEdit[]{edit, referenceEdit});
+    }
+
+    /**
+     * Отменяет несколько последних правок в обратном порядке и повторяет их.
+     */
+    private void undoRedo() {
+        int n = Math.min(edits.size(), 1 + random.nextInt(4));
+        for (int i = edits.size() - 1; i >= edits.size() - n; i--) {
+            edits.get(i)[0].undo();
+            edits.get(i)[1].undo();
+            verify();
+        }
+        if (random.nextBoolean()) {
+            for (int i = edits.size() - n; i < edits.size(); i++) {
+                edits.get(i)[0].redo();
+                edits.get(i)[1].redo();
+            }
+        } else {
+            edits.subList(edits.size() - n, edits.size()).clear();
+        }
+    }
+
+    private void verify() {
+        try {
+            int length = reference.length();
+            assertEquals(length, content.length(), "length");
+            assertEquals(reference.getString(0, length), content.getString(0, length));
+
+            int where = random.nextInt(length);
+            int len = random.nextInt(length - where + 1);
+            assertEquals(reference.getString(where, len), content.getString(where, len), "range " + where);
+
+            // Чтение по частям, как в Document.getText с partialReturn
+            Segment segment = new Segment();
+            segment.setPartialReturn(true);
+            StringBuilder parts = new StringBuilder();
+            for (int offset = where; offset < where + len; offset += segment.count) {
+                content.getChars(offset, where + len - offset, segment);
+                parts.append(segment.array, segment.offset, segment.count);
+            }
+            assertEquals(reference.getString(where, len), parts.toString(), "partial " + where);
+
+            assertThrows(BadLocationException.class, () -> content.getChars(length, 1, new Segment()));
+        } catch (BadLocationException e) {
+            throw new AssertionError(e);
+        }
+        for (int i = 0; i < positions.size(); i++) {
+            assertEquals(referencePositions.get(i).getOffset(), positions.get(i).getOffset(), "position " + i);
+        }
+        for (Object[] snapshot : snapshots) {
+            assertEquals(snapshot[1], snapshot[0].toString(), "snapshot");
+        }
+    }
+
+    /**
+     * Случайный текст: буквы, пробелы, переводы строк и изредка суррогатные пары.
+     */
+    private String text(int n) {
+        StringBuilder sb = new StringBuilder(n);
+        while (sb.length() < n) {
+            int kind = random.nextInt(30);
+            if (kind == 0) {
+                sb.append('\n');
+            } else if (kind < 5) {
+                sb.append(' ');
+            } else if (kind == 5) {
+                sb.appendCodePoint(0x1F600 + random.nextInt(50));
+            } else {
+                sb.append(random.nextBoolean() ? (char) ('a' + random.nextInt(26)) : (char) ('а' + random.nextInt(32)));
+            }
+        }
+        return sb.toString();
+    }
+}
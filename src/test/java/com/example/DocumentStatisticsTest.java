@@ -0,0 +1,57 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.html.HTMLDocument;
+import java.io.StringReader;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Счётчики статистики, поддерживаемые по правкам, совпадают с полным пересчётом.
+ */
+class DocumentStatisticsTest {
+
+    @Test
+    void countsWordsCharactersAndParagraphs() throws Exception {
+        HTMLDocument doc = DocumentLoadWorker.read(new WordProcessorEditorKit(), new StringReader(
+                "<html><body><p>Два слова</p><p></p><p>и — ещё, 42 три!</p></body></html>"));
+        DocumentStatistics statistics = new DocumentStatistics();
+        statistics.setDocument(doc, DocumentStatistics.count(doc));
+
+        // Тире — не слово: в нём нет ни букв, ни цифр
+        assertEquals(6, statistics.getWords());
+        assertEquals("Два слова".length() + "и — ещё, 42 три!".length(), statistics.getCharacters());
+        assertEquals(2, statistics.getParagraphs());
+        assertEquals(1, statistics.getReadingMinutes());
+
+        statistics.setDocument(null, null);
+        assertEquals(0, statistics.getWords());
+    }
+
+    @Test
+    void incrementalCountsMatchRecountAfterRandomEdits() throws Exception {
+        for (WordProcessorEditorKit.ContentEngine engine : WordProcessorEditorKit.ContentEngine.values()) {
+            Random random = new Random(18);
+            HTMLDocument doc = RandomEdits.sample(engine);
+            DocumentStatistics statistics = new DocumentStatistics();
+            statistics.setDocument(doc, DocumentStatistics.count(doc));
+            int[] changes = new int[1];
+            statistics.addChangeListener(e -> changes[0]++);
+
+            for (int step = 0; step < 400; step++) {
+                RandomEdits.apply(doc, random);
+                String where = engine + ", step " + step;
+                DocumentStatistics recount = new DocumentStatistics();
+                recount.setDocument(doc, null);
+                assertEquals(recount.getWords(), statistics.getWords(), where);
+                assertEquals(recount.getCharacters(), statistics.getCharacters(), where);
+                assertEquals(recount.getParagraphs(), statistics.getParagraphs(), where);
+                recount.setDocument(null, null);
+            }
+            assertTrue(changes[0] > 0);
+        }
+    }
+}
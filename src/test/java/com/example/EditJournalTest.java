@@ -0,0 +1,257 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.html.HTMLDocument;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Журнал правок: запись, чтение после "сбоя" и применение к документу,
+ * заново прочитанному из файла-снимка.
+ */
+class EditJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysEditsOntoReloadedSnapshot() throws Exception {
+        Path file = write("<p>Первый абзац</p><p>второй</p>");
+        HTMLDocument doc = load(file);
+        EditJournal journal = EditJournal.open(file, doc, false, false, () -> { }, e -> { });
+        doc.addDocumentListener(journal);
+        doc.insertString(1, "abc", null);
+        doc.remove(5, 3);
+        doc.insertString(doc.getLength(), " конец", null);
+        journal.close();
+
+        HTMLDocument reloaded = load(file);
+        EditJournal.Recovery recovery = EditJournal.read(file);
+        assertFalse(recovery.isEmpty());
+        EditJournal.replay(reloaded, recovery);
+        assertEquals(text(doc), text(reloaded));
+    }
+
+    @Test
+    void closedWithoutEditsLeavesNoJournal() throws Exception {
+        Path file = write("<p>текст</p>");
+        EditJournal.open(file, load(file), false, false, () -> { }, e -> { }).close();
+        assertFalse(Files.exists(EditJournal.journalPath(file)));
+    }
+
+    @Test
+    void commitDropsRecordsBeforeCheckpoint() throws Exception {
+        Path file = write("<p>Один два три</p>");
+        HTMLDocument doc = load(file);
+        EditJournal journal = EditJournal.open(file, doc, false, false, () -> { }, e -> { });
+        doc.addDocumentListener(journal);
+        doc.insertString(1, "до снимка ", null);
+
+        EditJournal.Checkpoint[] checkpoint = new EditJournal.Checkpoint[1];
+        DocumentSaver.save(doc, file, new AtomicFileSaver(), () -> checkpoint[0] = journal.checkpoint(doc));
+        journal.commit(checkpoint[0]);
+        doc.insertString(doc.getLength(), " после", null);
+        journal.close();
+
+        HTMLDocument reloaded = load(file);
+        EditJournal.Recovery recovery = EditJournal.read(file);
+        EditJournal.replay(reloaded, recovery);
+        assertEquals(text(doc), text(reloaded));
+    }
+
+    /**
+     * Запись в HTML схлопывает пробелы: перечитанный документ отличается от текста,
+     * к которому относятся записи, и перед ними приводится к тексту снимка из журнала.
+     */
+    @Test
+    void replaysOntoReloadedTextThatDiffers() throws Exception {
+        Path file = write("<p>слово</p><p>второй абзац</p><p>третий</p>");
+        HTMLDocument doc = load(file);
+        EditJournal journal = EditJournal.open(file, doc, false, false, () -> { }, e -> { });
+        doc.addDocumentListener(journal);
+        doc.insertString(1, "a    b", null);
+        doc.insertString(doc.getParagraphElement(doc.getLength()).getStartOffset(), "  два  пробела ", null);
+
+        EditJournal.Checkpoint[] checkpoint = new EditJournal.Checkpoint[1];
+        DocumentSaver.save(doc, file, new AtomicFileSaver(), () -> checkpoint[0] = journal.checkpoint(doc));
+        journal.commit(checkpoint[0]);
+        doc.insertString(doc.getLength(), "хвост", null);
+        doc.remove(3, 2);
+        journal.close();
+
+        HTMLDocument reloaded = load(file);
+        EditJournal.Recovery recovery = EditJournal.read(file);
+        assertFalse(recovery.isEmpty());
+        assertFalse(recovery.isFileChanged());
+        assertNotEquals(recovery.text, text(reloaded));
+        EditJournal.replay(reloaded, recovery);
+        assertEquals(text(doc), text(reloaded));
+        assertEquals(doc.getDefaultRootElement().getElementCount(),
+                reloaded.getDefaultRootElement().getElementCount());
+    }
+
+    /**
+     * Сбой между заменой файла при сохранении и сжатием журнала: журнал относится
+     * к прежней версии файла, но не удаляется, а применяется к новой после вопроса.
+     */
+    @Test
+    void keepsJournalWhenSaveIsInterrupted() throws Exception {
+        Path file = write("<p>Один два три</p>");
+        HTMLDocument doc = load(file);
+        EditJournal journal = EditJournal.open(file, doc, false, false, () -> { }, e -> { });
+        doc.addDocumentListener(journal);
+        doc.insertString(1, "до снимка ", null);
+        // Файл заменён, но commit не выполнен
+        DocumentSaver.save(doc, file, new AtomicFileSaver(), () -> journal.checkpoint(doc));
+        doc.insertString(doc.getLength(), " после", null);
+        journal.close();
+
+        EditJournal.Recovery recovery = EditJournal.read(file);
+        assertFalse(recovery.isEmpty());
+        assertTrue(recovery.isFileChanged());
+        HTMLDocument reloaded = load(file);
+        EditJournal.replay(reloaded, recovery);
+        assertEquals(text(doc), text(reloaded));
+    }
+
+    /**
+     * Документ на собственном содержимом: снимок текста берётся из содержимого без копирования.
+     */
+    @Test
+    void snapshotsContentWithoutCopy() throws Exception {
+        Path file = write("<p>Первый абзац</p><p>второй</p>");
+        for (WordProcessorEditorKit.ContentEngine engine : WordProcessorEditorKit.ContentEngine.values()) {
+            HTMLDocument doc = load(file, engine);
+            EditJournal journal = EditJournal.open(file, doc, false, false, () -> { }, e -> { });
+            doc.addDocumentListener(journal);
+            doc.insertString(3, "вставка", null);
+            doc.remove(0, 2);
+            journal.close();
+
+            HTMLDocument reloaded = load(file, engine);
+            EditJournal.replay(reloaded, EditJournal.read(file));
+            assertEquals(text(doc), text(reloaded), engine.name());
+        }
+    }
+
+    @Test
+    void rejectsRecordsOutOfRange() throws Exception {
+        Path file = write("<p>текст</p>");
+        HTMLDocument doc = load(file);
+        String before = text(doc);
+        List<EditJournal.Record> records = Arrays.asList(
+                new EditJournal.Record(EditJournal.INSERT, 1, 3, "abc"),
+                new EditJournal.Record(EditJournal.REMOVE, 2, 100, null));
+        EditJournal.Recovery recovery = new EditJournal.Recovery(before + "!", records, false);
+        assertThrows(IOException.class, () -> EditJournal.replay(doc, recovery));
+        assertEquals(before, text(doc));
+    }
+
+    @Test
+    void ignoresTornTail() throws Exception {
+        Path file = write("<p>текст</p>");
+        HTMLDocument doc = load(file);
+        EditJournal journal = EditJournal.open(file, doc, false, false, () -> { }, e -> { });
+        doc.addDocumentListener(journal);
+        doc.insertString(1, "раз", null);
+        doc.insertString(1, "два", null);
+        journal.close();
+
+        // Последняя запись дописана не до конца
+        try (FileChannel channel = FileChannel.open(EditJournal.journalPath(file), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        HTMLDocument expected = load(file);
+        expected.insertString(1, "раз", null);
+        HTMLDocument reloaded = load(file);
+        EditJournal.replay(reloaded, EditJournal.read(file));
+        assertEquals(text(expected), text(reloaded));
+    }
+
+    @Test
+    void keepsJournalWhenFileChanged() throws Exception {
+        Path file = write("<p>текст</p>");
+        HTMLDocument doc = load(file);
+        EditJournal journal = EditJournal.open(file, doc, false, false, () -> { }, e -> { });
+        doc.addDocumentListener(journal);
+        doc.insertString(1, "правка", null);
+        journal.close();
+
+        Files.write(file, "<html><body><p>другой текст</p></body></html>".getBytes(Charset.defaultCharset()));
+        EditJournal.Recovery recovery = EditJournal.read(file);
+        assertTrue(recovery.isFileChanged());
+        assertTrue(Files.exists(EditJournal.journalPath(file)));
+        HTMLDocument reloaded = load(file);
+        EditJournal.replay(reloaded, recovery);
+        assertEquals(text(doc), text(reloaded));
+    }
+
+    @Test
+    void discardsJournalWithCorruptSnapshot() throws Exception {
+        Path file = write("<p>текст</p>");
+        HTMLDocument doc = load(file);
+        EditJournal journal = EditJournal.open(file, doc, false, false, () -> { }, e -> { });
+        doc.addDocumentListener(journal);
+        doc.insertString(1, "правка", null);
+        journal.close();
+
+        // Первый символ текста снимка в заголовке
+        try (FileChannel channel = FileChannel.open(EditJournal.journalPath(file), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 'X'}), 4 + 8 + 8 + 4);
+        }
+        assertTrue(EditJournal.read(file).isEmpty());
+        assertFalse(Files.exists(EditJournal.journalPath(file)));
+    }
+
+    @Test
+    void journalWithoutSnapshotIsNotReplayed() throws Exception {
+        Path file = write("<p>текст</p>");
+        HTMLDocument doc = load(file);
+        EditJournal journal = EditJournal.open(file, null, false, true, () -> { }, e -> { });
+        doc.addDocumentListener(journal);
+        doc.insertString(1, "правка", null);
+        journal.close();
+
+        assertTrue(EditJournal.read(file).isEmpty());
+    }
+
+    private Path write(String body) throws IOException {
+        Path file = dir.resolve("doc.html");
+        Files.write(file, ("<html><body>" + body + "</body></html>").getBytes(Charset.defaultCharset()));
+        return file;
+    }
+
+    private static HTMLDocument load(Path file) throws IOException, BadLocationException {
+        try (Reader in = Files.newBufferedReader(file, Charset.defaultCharset())) {
+            return DocumentLoadWorker.read(new WordProcessorEditorKit(), in);
+        }
+    }
+
+    private static HTMLDocument load(Path file, WordProcessorEditorKit.ContentEngine engine)
+            throws IOException, BadLocationException {
+        try (Reader in = Files.newBufferedReader(file, Charset.defaultCharset())) {
+            return DocumentLoadWorker.read(new WordProcessorEditorKit(engine), in);
+        }
+    }
+
+    private static String text(HTMLDocument doc) throws BadLocationException {
+        return doc.getText(0, doc.getLength());
+    }
+}
@@ -0,0 +1,178 @@
+package com.example;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLDocument;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Общее для проверок импорта и экспорта: документ-образец со всем, что переносят
+ * {@link DocxWriter} и {@link RtfWriter}, чтение файла тем же путём, что и в редакторе,
+ * и описание документа, по которому сравниваются исходный и прочитанный обратно.
+ */
+final class FormatRoundTrip {
+
+    /**
+     * Образец: заголовки, оформление текста, ссылка, выравнивание, списки, таблица,
+     * кириллица и символы вне BMP.
+     */
+    static final String SAMPLE = "<html><body>"
+            + "<h1>Заголовок первого уровня</h1>"
+            + "<p>Обычный <b>полужирный</b> <i>курсив</i> <u>подчёркнутый</u> <s>зачёркнутый</s>"
+            + " и <a href=\"http://example.com/путь?a=1&amp;b=2\">ссылка</a>.</p>"
+            + "<h2>Второй уровень</h2>"
+            + "<p align=\"center\">По центру: 😀 — «кавычки» € ½</p>"
+            + "<ul><li>первый пункт</li><li>второй <b>пункт</b></li></ul>"
+            + "<ol><li>раз</li><li>два</li></ol>"
+            + "<table><tr><td>A1</td><td>B1</td></tr><tr><td>A2</td><td>B2</td></tr></table>"
+            + "<p>Последний абзац</p>"
+            + "</body></html>";
+
+    /**
+     * Формат, в который документ сохраняется и из которого читается обратно.
+     */
+    enum Format {
+
+        /**
+         * {@link DocxWriter} и {@link DocxReader}.
+         */
+        DOCX {
+            @Override
+            void save(HTMLDocument doc, Path file) throws IOException {
+                DocxWriter.save(doc, file, new AtomicFileSaver());
+            }
+        },
+
+        /**
+         * {@link RtfWriter} и {@link RtfReader}.
+         */
+        RTF {
+            @Override
+            void save(HTMLDocument doc, Path file) throws IOException {
+                RtfWriter.save(doc, file, new AtomicFileSaver());
+            }
+        };
+
+        /**
+         * Сохраняет документ в файл этого формата.
+         *
+         * @param doc  документ
+         * @param file файл
+         * @throws IOException при ошибке записи
+         */
+        abstract void save(HTMLDocument doc, Path file) throws IOException;
+
+        /**
+         * Сохраняет документ в новый файл каталога и открывает его, как редактор.
+         *
+         * @param doc документ
+         * @param dir каталог для файла
+         * @return прочитанный документ
+         * @throws Exception при ошибке записи или чтения
+         */
+        HTMLDocument roundTrip(HTMLDocument doc, Path dir) throws Exception {
+            Path file = dir.resolve("doc" + System.nanoTime() + "." + name().toLowerCase(Locale.ROOT));
+            save(doc, file);
+            return open(file);
+        }
+    }
+
+    private FormatRoundTrip() {
+    }
+
+    /**
+     * Разбирает HTML так же, как редактор открывает файл.
+     *
+     * @param html разметка
+     * @return документ
+     * @throws IOException          при ошибке чтения
+     * @throws BadLocationException при ошибке построения документа
+     */
+    static HTMLDocument parse(String html) throws IOException, BadLocationException {
+        return DocumentLoadWorker.read(new WordProcessorEditorKit(), new StringReader(html));
+    }
+
+    /**
+     * Открывает файл тем же путём, что и редактор (DOCX и RTF — через {@link BlockReader}).
+     *
+     * @param file файл
+     * @return документ
+     * @throws Exception при ошибке чтения
+     */
+    static HTMLDocument open(Path file) throws Exception {
+        return new DocumentLoadWorker(file.toFile(), new WordProcessorEditorKit()).doInBackground();
+    }
+
+    /**
+     * Описывает текст и оформление документа: абзац на строку с видом блока
+     * и выравниванием, отрезки текста с отметками оформления и адресом ссылки.
+     *
+     * @param doc документ
+     * @return описание для сравнения
+     * @throws BadLocationException не возникает
+     */
+    static String describe(HTMLDocument doc) throws BadLocationException {
+        StringBuilder out = new StringBuilder();
+        describe(doc, doc.getDefaultRootElement(), out);
+        return out.toString();
+    }
+
+    private static void describe(HTMLDocument doc, Element e, StringBuilder out) throws BadLocationException {
+        if (e.getElementCount() == 0 || !e.getElement(0).isLeaf()) {
+            for (int i = 0; i < e.getElementCount(); i++) {
+                describe(doc, e.getElement(i), out);
+            }
+            return;
+        }
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < e.getElementCount(); i++) {
+            Element leaf = e.getElement(i);
+            String text = doc.getText(leaf.getStartOffset(), leaf.getEndOffset() - leaf.getStartOffset())
+                    .replace("\n", "");
+            if (text.trim().isEmpty()) {
+                line.append(text.isEmpty() ? "" : " ");
+                continue;
+            }
+            AttributeSet a = leaf.getAttributes();
+            AttributeSet link = TextStyle.link(a);
+            // Ссылка подчёркнута и так; Word пишет это подчёркивание явно
+            boolean underline = link == null && TextStyle.isUnderline(a);
+            String marks = (TextStyle.isBold(a) ? "B" : "") + (TextStyle.isItalic(a) ? "I" : "")
+                    + (underline ? "U" : "") + (TextStyle.isStrike(a) ? "S" : "");
+            if (link != null) {
+                marks += "@" + link.getAttribute(HTML.Attribute.HREF);
+            }
+            line.append(marks.isEmpty() ? text : "[" + marks + ":" + text + "]");
+        }
+        String text = line.toString().replaceAll(" +", " ").trim();
+        if (text.isEmpty()) {
+            return;
+        }
+        String align = TextStyle.alignment(e.getAttributes());
+        out.append(block(e)).append(align == null || align.equals("left") ? "" : "|" + align)
+                .append(": ").append(text).append('\n');
+    }
+
+    /**
+     * Вид блока: ближайший заголовок, пункт списка (с видом списка) или ячейка таблицы,
+     * иначе абзац.
+     */
+    private static String block(Element e) {
+        for (Element p = e; p != null; p = p.getParentElement()) {
+            String name = p.getName();
+            if (name.matches("h[1-6]") || name.equals("td") || name.equals("th")) {
+                return name.equals("th") ? "td" : name;
+            }
+            if (name.equals("li")) {
+                Element list = p.getParentElement();
+                return list == null ? "li" : list.getName() + "/li";
+            }
+        }
+        return "p";
+    }
+}
@@ -0,0 +1,53 @@
+package com.example;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import javax.swing.text.html.HTMLDocument;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Экспорт в каждый формат ({@link FormatRoundTrip.Format}) и импорт обратно:
+ * текст и оформление не теряются и не меняются при повторном сохранении.
+ */
+class FormatRoundTripTest {
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @EnumSource(FormatRoundTrip.Format.class)
+    void keepsTextAndFormatting(FormatRoundTrip.Format format) throws Exception {
+        HTMLDocument doc = FormatRoundTrip.parse(FormatRoundTrip.SAMPLE);
+        HTMLDocument back = format.roundTrip(doc, dir);
+        assertEquals(FormatRoundTrip.describe(doc), FormatRoundTrip.describe(back));
+    }
+
+    @ParameterizedTest
+    @EnumSource(FormatRoundTrip.Format.class)
+    void secondRoundTripChangesNothing(FormatRoundTrip.Format format) throws Exception {
+        HTMLDocument once = format.roundTrip(FormatRoundTrip.parse(FormatRoundTrip.SAMPLE), dir);
+        HTMLDocument twice = format.roundTrip(once, dir);
+        assertEquals(FormatRoundTrip.describe(once), FormatRoundTrip.describe(twice));
+    }
+
+    /**
+     * Документ длиннее нескольких порций импорта: порции не теряют и не дублируют абзацы.
+     */
+    @ParameterizedTest
+    @EnumSource(FormatRoundTrip.Format.class)
+    void readsLargeDocumentInBatches(FormatRoundTrip.Format format) throws Exception {
+        StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < 20_000; i++) {
+            html.append("<p>Абзац номер ").append(i)
+                    .append(i % 7 == 0 ? " <b>с выделением</b>" : i % 7 == 3 ? " <i>с курсивом</i>" : "")
+                    .append("</p>");
+        }
+        HTMLDocument doc = FormatRoundTrip.parse(html.append("</body></html>").toString());
+        HTMLDocument back = format.roundTrip(doc, dir);
+        assertEquals(FormatRoundTrip.describe(doc), FormatRoundTrip.describe(back));
+    }
+}
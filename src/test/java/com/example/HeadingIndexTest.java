@@ -0,0 +1,84 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.Element;
+import javax.swing.text.html.HTMLDocument;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Индекс заголовков, поддерживаемый по правкам, совпадает с построенным заново.
+ */
+class HeadingIndexTest {
+
+    @Test
+    void buildsHeadingsInDocumentOrder() throws Exception {
+        HTMLDocument doc = RandomEdits.sample(WordProcessorEditorKit.ContentEngine.PIECE_TABLE);
+        HeadingIndex index = new HeadingIndex();
+        index.setDocument(doc);
+
+        assertEquals(4, index.size());
+        assertEquals(1, index.getLevel(0));
+        assertEquals(2, index.getLevel(1));
+        assertEquals(3, index.getLevel(2));
+        assertEquals(2, index.getLevel(3));
+        assertEquals(-1, index.indexAt(0));
+        assertEquals(0, index.indexAt(index.get(0).getStartOffset()));
+        assertEquals(0, index.indexAt(index.get(1).getStartOffset() - 1));
+        assertEquals(1, index.indexAt(index.get(1).getStartOffset()));
+    }
+
+    @Test
+    void incrementalIndexMatchesRebuildAfterRandomEdits() throws Exception {
+        for (WordProcessorEditorKit.ContentEngine engine : WordProcessorEditorKit.ContentEngine.values()) {
+            Random random = new Random(17);
+            HTMLDocument doc = RandomEdits.sample(engine);
+            HeadingIndex index = new HeadingIndex();
+            index.setDocument(doc);
+            int[] changes = new int[1];
+            index.addListener(new HeadingIndex.Listener() {
+                @Override
+                public void headingsChanged() {
+                    changes[0]++;
+                }
+
+                @Override
+                public void headingTextChanged(int i) {
+                    assertTrue(i >= 0 && i < index.size());
+                }
+            });
+
+            for (int step = 0; step < 400; step++) {
+                RandomEdits.apply(doc, random);
+                assertEquals(rebuild(doc), headings(index), engine + ", step " + step);
+            }
+            assertTrue(changes[0] > 0);
+        }
+    }
+
+    private static List<String> rebuild(HTMLDocument doc) {
+        HeadingIndex fresh = new HeadingIndex();
+        fresh.setDocument(doc);
+        List<String> out = headings(fresh);
+        fresh.setDocument(null);
+        return out;
+    }
+
+    /**
+     * Заголовки индекса: уровень, границы и тождество элемента.
+     */
+    private static List<String> headings(HeadingIndex index) {
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < index.size(); i++) {
+            Element e = index.get(i);
+            out.add("h" + index.getLevel(i) + " " + e.getStartOffset() + "-" + e.getEndOffset()
+                    + " @" + System.identityHashCode(e));
+        }
+        return out;
+    }
+}
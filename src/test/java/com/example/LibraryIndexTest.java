@@ -0,0 +1,143 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.html.HTMLDocument;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Индекс библиотеки: поиск фраз по смещениям в тексте документов, обновление
+ * только изменённых файлов, сохранение на диск и слияние сегментов.
+ */
+class LibraryIndexTest {
+
+    @TempDir
+    Path root;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsPhraseAtDocumentOffsets() throws Exception {
+        write("a.html", "<p>Быстрая коричневая лиса прыгает</p><p>через ленивую собаку</p>");
+        write("b.htm", "<p>Лиса, <b>прыгает</b>! Лиса прыгает.</p>");
+        write("sub/c.doc", "<p>только лиса</p>");
+        write("notes.txt", "лиса прыгает");
+        LibraryIndex index = new LibraryIndex(root, directory, 2);
+
+        LibraryIndex.Report report = index.update(null);
+        assertEquals(3, report.indexed);
+        assertEquals(0, report.getFailed());
+        assertEquals(3, index.size());
+
+        List<LibraryIndex.Hit> hits = index.search("лиса ПРЫГАЕТ", 100);
+        assertEquals(3, hits.size(), hits.toString());
+        for (LibraryIndex.Hit hit : hits) {
+            String found = text(hit.getFile()).substring(hit.getStart(), hit.getEnd());
+            assertTrue(found.matches("(?iu)лиса\\W+прыгает"), found);
+        }
+        // Слова соседних абзацев тоже идут подряд
+        assertEquals(1, index.search("прыгает через", 100).size());
+        assertEquals(0, index.search("лиса через", 100).size());
+        assertEquals(2, index.search("лиса прыгает", 2).size());
+        assertTrue(index.search("", 100).isEmpty());
+    }
+
+    @Test
+    void reindexesOnlyChangedFiles() throws Exception {
+        Path a = write("a.html", "<p>первый документ</p>");
+        Path b = write("b.html", "<p>второй документ</p>");
+        Path c = write("c.html", "<p>третий документ</p>");
+        LibraryIndex index = new LibraryIndex(root, directory, 2);
+        index.update(null);
+
+        LibraryIndex.Report report = index.update(null);
+        assertEquals(0, report.indexed);
+        assertEquals(3, report.unchanged);
+
+        write("b.html", "<p>второй изменённый документ</p>");
+        Files.setLastModifiedTime(b, FileTime.fromMillis(Files.getLastModifiedTime(b).toMillis() + 10_000));
+        Files.delete(c);
+        write("d.html", "<p>четвёртый документ</p>");
+        report = index.update(null);
+        assertEquals(2, report.indexed);
+        assertEquals(1, report.unchanged);
+        assertEquals(1, report.removed);
+
+        assertEquals(3, index.size());
+        assertEquals(3, index.search("документ", 100).size());
+        assertTrue(index.search("второй документ", 100).isEmpty());
+        assertEquals(b, index.search("изменённый документ", 100).get(0).getFile());
+        assertTrue(index.search("третий", 100).isEmpty());
+        assertEquals(a, index.search("первый", 100).get(0).getFile());
+    }
+
+    @Test
+    void persistsAndMergesSegments() throws Exception {
+        LibraryIndex index = new LibraryIndex(root, directory, 1);
+        for (int i = 0; i < 20; i++) {
+            write("doc" + i + ".html", "<p>общая фраза номер " + i + "</p>");
+            index.update(null);
+        }
+        assertEquals(20, index.search("общая фраза", 100).size());
+        try (Stream<Path> files = Files.list(directory)) {
+            long segments = files.filter(f -> f.getFileName().toString().startsWith("segment-")).count();
+            assertTrue(segments <= 8, "segments " + segments);
+        }
+
+        LibraryIndex reopened = new LibraryIndex(root, directory, 1);
+        assertEquals(20, reopened.size());
+        assertEquals(paths(index.search("общая фраза", 100)), paths(reopened.search("общая фраза", 100)));
+        assertEquals(root.resolve("doc7.html"), reopened.search("номер 7", 100).get(0).getFile());
+        assertEquals(20, reopened.update(null).unchanged);
+    }
+
+    @Test
+    void tokenizerContinuesWordsAcrossChunks() {
+        List<String> tokens = new ArrayList<>();
+        LibraryIndex.Tokenizer tokenizer = new LibraryIndex.Tokenizer(
+                (term, ordinal, offset) -> tokens.add(term + " " + ordinal + " " + offset));
+        char[] text = "Сло-во РАЗ".toCharArray();
+        tokenizer.feed(text, 0, 2, 0);
+        tokenizer.feed(text, 2, 5, 2);
+        tokenizer.feed(text, 7, 3, 7);
+        tokenizer.finish();
+        assertEquals(LibraryIndex.terms("Сло во раз"), tokens.stream()
+                .map(t -> t.substring(0, t.indexOf(' '))).collect(Collectors.toList()));
+        assertEquals("сло 0 0", tokens.get(0));
+        assertEquals("во 1 4", tokens.get(1));
+        assertEquals("раз 2 7", tokens.get(2));
+    }
+
+    private Path write(String name, String body) throws IOException {
+        Path file = root.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, ("<html><body>" + body + "</body></html>").getBytes(Charset.defaultCharset()));
+        return file;
+    }
+
+    private static String text(Path file) throws IOException, BadLocationException {
+        try (Reader in = Files.newBufferedReader(file, Charset.defaultCharset())) {
+            HTMLDocument doc = DocumentLoadWorker.read(new WordProcessorEditorKit(), in);
+            return doc.getText(0, doc.getLength());
+        }
+    }
+
+    private static List<Path> paths(List<LibraryIndex.Hit> hits) {
+        return hits.stream().map(LibraryIndex.Hit::getFile).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,70 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Проверка ссылок: сведение адресов к локальным путям и фоновая проверка файлов.
+ */
+class LinkCheckerTest {
+
+    @TempDir
+    Path folder;
+
+    /**
+     * Имена файлов латиницей: кодировка имён в системе может быть однобайтовой.
+     */
+    @Test
+    void resolvesLocalLinks() throws Exception {
+        assertEquals(folder.resolve("docs/a.html"), LinkChecker.resolve("docs/a.html", folder));
+        assertEquals(folder.resolve("a.html"), LinkChecker.resolve("docs/../a.html#part", folder));
+        assertEquals(folder.resolve("folder with space/b.doc"), LinkChecker.resolve("folder with space/b.doc", folder));
+        // Word пишет имена файлов без кодирования
+        assertEquals(folder.resolve("Report [1].doc"), LinkChecker.resolve("Report [1].doc", folder));
+        assertEquals(folder.resolve("x.html"), LinkChecker.resolve(folder.resolve("x.html").toUri().toString(), null));
+        assertEquals(Paths.get("C:\\docs\\a.doc").normalize(), LinkChecker.resolve("C:\\docs\\a.doc", null));
+
+        assertNull(LinkChecker.resolve("#якорь", folder));
+        assertNull(LinkChecker.resolve("http://example.com/a.html", folder));
+        assertNull(LinkChecker.resolve("mailto:someone@example.com", folder));
+        assertNull(LinkChecker.resolve("docs/a.html", null));
+        assertThrows(URISyntaxException.class, () -> LinkChecker.resolve("http://[плохой", folder));
+    }
+
+    @Test
+    void checksFilesInBackground() throws Exception {
+        Files.createFile(folder.resolve("exists.html"));
+        LinkChecker checker = new LinkChecker();
+
+        assertEquals(LinkChecker.Status.OK, await(checker, "exists.html"));
+        assertEquals(LinkChecker.Status.MISSING, await(checker, "missing.html"));
+        assertEquals(LinkChecker.Status.EXTERNAL, checker.getStatus("http://example.com", folder));
+        assertEquals(LinkChecker.Status.EXTERNAL, checker.getStatus("#якорь", folder));
+        assertEquals(LinkChecker.Status.UNRESOLVED, checker.getStatus("a.html", null));
+        assertEquals(LinkChecker.Status.INVALID, checker.getStatus("http://[плохой", folder));
+
+        // Результат кешируется до сброса
+        Files.createFile(folder.resolve("missing.html"));
+        assertEquals(LinkChecker.Status.MISSING, checker.getStatus("missing.html", folder));
+        checker.invalidate();
+        assertEquals(LinkChecker.Status.OK, await(checker, "missing.html"));
+    }
+
+    private LinkChecker.Status await(LinkChecker checker, String href) throws InterruptedException {
+        LinkChecker.Status status = checker.getStatus(href, folder);
+        for (int i = 0; i < 500 && status == LinkChecker.Status.PENDING; i++) {
+            Thread.sleep(10);
+            status = checker.getStatus(href, folder);
+        }
+        return status;
+    }
+}
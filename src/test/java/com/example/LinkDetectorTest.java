@@ -0,0 +1,83 @@
+package com.example;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Поиск адресов в тексте: границы найденного адреса и адрес ссылки.
+ */
+class LinkDetectorTest {
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            // Знаки препинания в конце — не часть адреса
+            "См. http://example.com/a.         | http://example.com/a         | http://example.com/a",
+            "Вот: https://example.com/?q=1&b=2, | https://example.com/?q=1&b=2 | https://example.com/?q=1&b=2",
+            "Правда ftp://files.example.com/x?! | ftp://files.example.com/x    | ftp://files.example.com/x",
+            // Открывающие скобки и кавычки перед адресом, парная скобка внутри
+            "(http://example.com/wiki/A_(b))   | http://example.com/wiki/A_(b) | http://example.com/wiki/A_(b)",
+            "['https://example.com/x']         | https://example.com/x        | https://example.com/x",
+            "«HTTP://EXAMPLE.COM»              | HTTP://EXAMPLE.COM           | HTTP://EXAMPLE.COM",
+            // Сайт без схемы получает http://
+            "сайт www.пример.рф.               | www.пример.рф                | http://www.пример.рф",
+            "{www.example.com/путь}            | www.example.com/путь         | http://www.example.com/путь",
+            // Пути Windows и сетевые пути
+            "файл C:\\Docs\\Отчёт.doc;         | C:\\Docs\\Отчёт.doc          | file:///C:/Docs/Отчёт.doc",
+            "d:/work/a.html                    | d:/work/a.html               | file:///d:/work/a.html",
+            "\\\\server\\share\\a.doc.         | \\\\server\\share\\a.doc     | file://server/share/a.doc",
+            // Почта
+            "пишите ivan.petrov+x@example.com. | ivan.petrov+x@example.com    | mailto:ivan.petrov+x@example.com",
+            "(a_b@mail.example.org)            | a_b@mail.example.org         | mailto:a_b@mail.example.org",
+            "mailto:someone@example.com        | mailto:someone@example.com   | mailto:someone@example.com",
+            "file:///home/user/a.html          | file:///home/user/a.html     | file:///home/user/a.html",
+    })
+    void findsAddress(String text, String address, String href) {
+        List<String> found = scan(text);
+        assertEquals(1, found.size(), found.toString());
+        int start = text.indexOf(address);
+        assertTrue(start >= 0);
+        assertEquals(start + " " + (start + address.length()) + " " + href, found.get(0));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "обычный текст без адресов",
+            "http:// и https://.",
+            "www. и www..",
+            "a@b, x@y.z1, user@localhost, @example.com",
+            "время 10:30, счёт 2:1",
+            "C: диск и \\\\",
+    })
+    void ignoresNonAddresses(String text) {
+        assertEquals(new ArrayList<String>(), scan(text));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"http://a.ru и www.b.ru, c@d.ru", "http://a.ru\tи\nwww.b.ru «c@d.ru»"})
+    void findsSeveralAddressesInOrder(String text) {
+        List<String> found = scan(text);
+        assertEquals(3, found.size(), found.toString());
+        assertTrue(found.get(0).endsWith(" http://a.ru"));
+        assertTrue(found.get(1).endsWith(" http://www.b.ru"));
+        assertTrue(found.get(2).endsWith(" mailto:c@d.ru"));
+    }
+
+    /**
+     * Найденные адреса: начало, конец и адрес ссылки. Текст лежит в массиве со сдвигом,
+     * как участок документа в {@code Segment}.
+     */
+    private static List<String> scan(String text) {
+        char[] array = ("xx " + text + " yy").toCharArray();
+        List<String> found = new ArrayList<>();
+        LinkDetector.scan(array, 3, 3 + text.length(),
+                (start, end, href) -> found.add((start - 3) + " " + (end - 3) + " " + href));
+        return found;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLDocument;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Индекс ссылок: ссылка через несколько участков — одна, индекс по правкам
+ * совпадает с построенным заново.
+ */
+class LinkIndexTest {
+
+    @Test
+    void joinsRunsOfOneLink() throws Exception {
+        HTMLDocument doc = DocumentLoadWorker.read(new WordProcessorEditorKit(), new StringReader(
+                "<html><body><p>См. <a href=\"a.html\">первый <b>файл</b></a> и"
+                        + " <a href=\"http://example.com\">сайт</a>.</p>"
+                        + "<p><a name=\"якорь\">не ссылка</a></p></body></html>"));
+        LinkIndex index = new LinkIndex();
+        index.setDocument(doc);
+
+        assertEquals(2, index.size());
+        LinkIndex.Link first = index.get(0);
+        assertEquals("a.html", first.getHref());
+        assertEquals("первый файл", first.getText());
+        assertEquals("http://example.com", index.get(1).getHref());
+        assertEquals("сайт", index.get(1).getText());
+        assertEquals(0, index.indexAt(first.getStart()));
+        assertEquals(0, index.indexAt(first.getEnd() - 1));
+        assertEquals(-1, index.indexAt(first.getEnd()));
+        assertEquals(-1, index.indexAt(0));
+    }
+
+    @Test
+    void incrementalIndexMatchesRebuildAfterRandomEdits() throws Exception {
+        String[] hrefs = {"a.html", "b.html", "http://example.com"};
+        for (WordProcessorEditorKit.ContentEngine engine : WordProcessorEditorKit.ContentEngine.values()) {
+            Random random = new Random(19);
+            HTMLDocument doc = RandomEdits.sample(engine);
+            LinkIndex index = new LinkIndex();
+            index.setDocument(doc);
+
+            for (int step = 0; step < 400; step++) {
+                if (random.nextInt(4) == 0 && doc.getLength() > 12) {
+                    // Ссылка ставится сменой атрибутов текста
+                    SimpleAttributeSet anchor = new SimpleAttributeSet();
+                    anchor.addAttribute(HTML.Attribute.HREF, hrefs[random.nextInt(hrefs.length)]);
+                    SimpleAttributeSet attrs = new SimpleAttributeSet();
+                    attrs.addAttribute(HTML.Tag.A, anchor);
+                    doc.setCharacterAttributes(1 + random.nextInt(doc.getLength() - 11),
+                            1 + random.nextInt(10), attrs, false);
+                } else {
+                    RandomEdits.apply(doc, random);
+                }
+                LinkIndex fresh = new LinkIndex();
+                fresh.setDocument(doc);
+                assertEquals(links(fresh), links(index), engine + ", step " + step);
+                fresh.setDocument(null);
+            }
+        }
+    }
+
+    private static List<LinkIndex.Link> links(LinkIndex index) {
+        List<LinkIndex.Link> out = new ArrayList<>();
+        for (int i = 0; i < index.size(); i++) {
+            out.add(index.get(i));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.html.HTMLDocument;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Экспорт в PDF ({@link PdfWriter}): целостность файла, число страниц и
+ * совпадение повторного экспорта по кэшу раскладки ({@link PdfLayoutCache}) с экспортом заново.
+ */
+class PdfWriterTest {
+
+    @BeforeEach
+    void requireFonts() {
+        try {
+            PdfFonts.get();
+        } catch (IOException e) {
+            assumeTrue(false, "нет шрифтов для PDF: " + e.getMessage());
+        }
+    }
+
+    @Test
+    void writesConsistentCrossReferenceTable() throws Exception {
+        HTMLDocument doc = FormatRoundTrip.parse(FormatRoundTrip.SAMPLE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int pages = PdfWriter.write(doc, out, null);
+        String pdf = new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+
+        assertTrue(pdf.startsWith("%PDF-1.4\n"));
+        assertTrue(pdf.endsWith("%%EOF\n"));
+        Matcher start = Pattern.compile("startxref\n(\\d+)\n%%EOF\n$").matcher(pdf);
+        assertTrue(start.find());
+        int xref = Integer.parseInt(start.group(1));
+        Matcher header = Pattern.compile("xref\n0 (\\d+)\n").matcher(pdf).region(xref, pdf.length());
+        assertTrue(header.lookingAt(), "xref at " + xref);
+        int objects = Integer.parseInt(header.group(1));
+        int entry = header.end() + 20;
+        for (int i = 1; i < objects; i++, entry += 20) {
+            int offset = Integer.parseInt(pdf.substring(entry, entry + 10));
+            assertTrue(pdf.startsWith(i + " 0 obj\n", offset), "object " + i + " at " + offset);
+        }
+        assertTrue(pdf.startsWith("trailer\n<< /Size " + objects + " ", entry));
+        assertEquals(pages, count(pdf, "/Type /Page /Parent"));
+        assertTrue(pdf.contains("/Type /Pages /Count " + pages + " "));
+    }
+
+    @Test
+    void breaksLongDocumentIntoPages() throws Exception {
+        HTMLDocument doc = FormatRoundTrip.parse(longDocument());
+        int pages = PdfWriter.write(doc, new ByteArrayOutputStream(), null);
+        assertTrue(pages > 10, "pages " + pages);
+    }
+
+    /**
+     * После правки одного абзаца экспорт с раскладкой прошлого экспорта
+     * даёт тот же файл, что и экспорт с нуля.
+     */
+    @Test
+    void cachedLayoutMatchesFreshLayout() throws Exception {
+        HTMLDocument doc = FormatRoundTrip.parse(longDocument());
+        PdfLayoutCache cache = new PdfLayoutCache();
+        cache.setDocument(doc);
+        try {
+            PdfWriter.write(doc, new ByteArrayOutputStream(), cache);
+            doc.insertString(doc.getLength() / 2, "вставка посреди документа ", null);
+            doc.remove(doc.getLength() / 3, 10);
+
+            ByteArrayOutputStream cached = new ByteArrayOutputStream();
+            PdfWriter.write(doc, cached, cache);
+            ByteArrayOutputStream fresh = new ByteArrayOutputStream();
+            PdfWriter.write(doc, fresh, null);
+            assertArrayEquals(fresh.toByteArray(), cached.toByteArray());
+        } finally {
+            cache.setDocument(null);
+        }
+    }
+
+    private static String longDocument() {
+        StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < 500; i++) {
+            if (i % 50 == 0) {
+                html.append("<h2>Раздел ").append(i / 50).append("</h2>");
+            }
+            html.append("<p>Абзац ").append(i).append(": съешь же ещё этих мягких французских булок,")
+                    .append(" да выпей <b>чаю</b>. The quick brown fox jumps over the lazy dog.</p>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    private static int count(String text, String part) {
+        int n = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            n++;
+        }
+        return n;
+    }
+}
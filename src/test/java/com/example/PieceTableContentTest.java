@@ -0,0 +1,88 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link PieceTableContent} против эталонного {@code GapContent}.
+ */
+class PieceTableContentTest {
+
+    @Test
+    void matchesGapContent() throws BadLocationException {
+        for (long seed = 1; seed <= 20; seed++) {
+            new ContentDifferential(new PieceTableContent(), seed).run(2000);
+        }
+    }
+
+    @Test
+    void matchesGapContentOverOriginalText() throws BadLocationException {
+        StringBuilder original = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            original.append("строка ").append(i).append('\n');
+        }
+        PieceTableContent content = new PieceTableContent(CharBuffer.wrap(original.toString().toCharArray()));
+        assertEquals(original.toString(), content.getString(0, content.length()));
+        new ContentDifferential(content, 42).run(2000);
+    }
+
+    @Test
+    void appendsImplicitNewline() throws BadLocationException {
+        PieceTableContent content = new PieceTableContent("abc");
+        assertEquals(4, content.length());
+        assertEquals("abc\n", content.getString(0, 4));
+    }
+
+    /**
+     * Чтение не меняет общего состояния: параллельные читатели под блокировкой чтения
+     * документа получают тот же текст, что и последовательное чтение.
+     */
+    @Test
+    void concurrentReadersSeeConsistentText() throws Exception {
+        PieceTableContent content = new PieceTableContent();
+        Random random = new Random(7);
+        for (int i = 0; i < 5000; i++) {
+            content.insertString(random.nextInt(content.length()), "слово" + i + ' ');
+        }
+        String expected = content.getString(0, content.length());
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                long seed = t;
+                readers.add(pool.submit((Callable<Integer>) () -> {
+                    Random r = new Random(seed);
+                    Segment segment = new Segment();
+                    int bad = 0;
+                    for (int i = 0; i < 200_000; i++) {
+                        int where = r.nextInt(expected.length());
+                        int len = Math.min(r.nextInt(64), expected.length() - where);
+                        content.getChars(where, len, segment);
+                        if (!expected.regionMatches(where, new String(segment.array, segment.offset, segment.count), 0, len)) {
+                            bad++;
+                        }
+                    }
+                    return bad;
+                }));
+            }
+            for (Future<Integer> reader : readers) {
+                assertEquals(0, (int) reader.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
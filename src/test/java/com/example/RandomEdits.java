@@ -0,0 +1,100 @@
+package com.example;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLDocument;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+/**
+ * Случайные правки документа для проверок индексов, поддерживаемых по событиям:
+ * набор текста с переводами строк, удаление (в том числе через границы абзацев),
+ * смена тега абзаца и вставка блоков разметки.
+ */
+final class RandomEdits {
+
+    /**
+     * Исходный документ: заголовки разных уровней, списки, оформление текста.
+     */
+    static final String SAMPLE = "<html><body>"
+            + "<h1>Введение</h1>"
+            + "<p>Первый абзац с <b>полужирным</b> словом и ссылкой www.example.com.</p>"
+            + "<h2>Раздел один</h2>"
+            + "<ul><li>пункт один</li><li>пункт два</li></ul>"
+            + "<p>Текст раздела, 42 слова?</p>"
+            + "<h3>Подраздел</h3>"
+            + "<p></p>"
+            + "<h2>Раздел два</h2>"
+            + "<p>Последний абзац.</p>"
+            + "</body></html>";
+
+    private static final String LETTERS = "абвгдежз abc 123 .,!";
+
+    private static final HTML.Tag[] TAGS = {HTML.Tag.P, HTML.Tag.H1, HTML.Tag.H2, HTML.Tag.H3};
+
+    private RandomEdits() {
+    }
+
+    /**
+     * Разбирает исходный документ.
+     *
+     * @param engine хранилище текста
+     * @return документ
+     * @throws IOException          при ошибке чтения
+     * @throws BadLocationException при ошибке построения документа
+     */
+    static HTMLDocument sample(WordProcessorEditorKit.ContentEngine engine) throws IOException, BadLocationException {
+        return DocumentLoadWorker.read(new WordProcessorEditorKit(engine), new StringReader(SAMPLE));
+    }
+
+    /**
+     * Выполняет одну случайную правку.
+     *
+     * @param doc    документ
+     * @param random источник случайных чисел
+     * @throws Exception при ошибке правки
+     */
+    static void apply(HTMLDocument doc, Random random) throws Exception {
+        int length = doc.getLength();
+        int offset = 1 + random.nextInt(Math.max(1, length - 1));
+        switch (random.nextInt(6)) {
+            case 0:
+            case 1:
+                // Набор с атрибутами предыдущего символа
+                doc.insertString(offset, text(random), doc.getCharacterElement(offset - 1).getAttributes());
+                break;
+            case 2:
+                doc.insertString(offset, random.nextBoolean() ? "\n" : "строка\nещё ", null);
+                break;
+            case 3:
+                if (length > 2) {
+                    int from = 1 + random.nextInt(length - 2);
+                    doc.remove(from, 1 + random.nextInt(Math.min(length - from - 1, 40)));
+                }
+                break;
+            case 4:
+                SimpleAttributeSet tag = new SimpleAttributeSet();
+                tag.addAttribute(StyleConstants.NameAttribute, TAGS[random.nextInt(TAGS.length)]);
+                doc.setParagraphAttributes(offset, 1, tag, false);
+                break;
+            default:
+                Element paragraph = doc.getParagraphElement(offset);
+                HTML.Tag block = TAGS[random.nextInt(TAGS.length)];
+                doc.insertBeforeStart(paragraph, "<" + block + ">Вставленный блок " + random.nextInt(100)
+                        + "</" + block + ">");
+                break;
+        }
+    }
+
+    private static String text(Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 1 + random.nextInt(8); i > 0; i--) {
+            text.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,42 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.BadLocationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link RopeContent} против эталонного {@code GapContent}.
+ */
+class RopeContentTest {
+
+    @Test
+    void matchesGapContent() throws BadLocationException {
+        for (long seed = 1; seed <= 20; seed++) {
+            new ContentDifferential(new RopeContent(), seed).run(2000);
+        }
+    }
+
+    @Test
+    void matchesGapContentOverInitialText() throws BadLocationException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append("строка ").append(i).append('\n');
+        }
+        RopeContent content = new RopeContent(text);
+        assertEquals(text.toString(), content.getString(0, content.length()));
+        new ContentDifferential(content, 42).run(2000);
+    }
+
+    @Test
+    void staysBalancedUnderTyping() throws BadLocationException {
+        RopeContent content = new RopeContent();
+        for (int i = 0; i < 100_000; i++) {
+            content.insertString(content.length() - 1, "x");
+        }
+        assertEquals(100_001, content.length());
+        assertTrue(content.depth() < 64, "depth " + content.depth());
+    }
+}
@@ -0,0 +1,86 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Разбор RTF на лексемы ({@link RtfTokenizer}). Экспорт и импорт обратно проверяет
+ * {@link FormatRoundTripTest}.
+ */
+class RtfRoundTripTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void tokenizesControlWordsSymbolsAndText() throws IOException {
+        Path file = write("{\\rtf1\\ansi\\ansicpg1251{\\b жирный}\\par\r\n\\'c0\\u-3937?\\~x\\\\y}");
+        List<String> tokens = new ArrayList<>();
+        try (RtfTokenizer tokenizer = new RtfTokenizer(file)) {
+            for (int t; (t = tokenizer.next()) != RtfTokenizer.EOF; ) {
+                tokens.add(describe(tokenizer, t));
+            }
+        }
+        assertEquals("[{, \\rtf1, \\ansi, \\ansicpg1251, {, \\b, 'жирный', }, \\par, hex c0, \\u-3937,"
+                + " '?', sym ~, 'x', sym \\, 'y', }]", tokens.toString());
+    }
+
+    /**
+     * Текст длиннее буфера токенизатора отдаётся несколькими отрезками без потерь,
+     * а управляющее слово на границе буфера распознаётся целиком.
+     */
+    @Test
+    void tokenizesAcrossBufferBoundaries() throws IOException {
+        StringBuilder rtf = new StringBuilder("{\\rtf1 ");
+        for (int i = 0; i < 30_000; i++) {
+            rtf.append("abcdefg\\par ");
+        }
+        Path file = write(rtf.append('}').toString());
+        int text = 0;
+        int pars = 0;
+        try (RtfTokenizer tokenizer = new RtfTokenizer(file)) {
+            for (int t; (t = tokenizer.next()) != RtfTokenizer.EOF; ) {
+                if (t == RtfTokenizer.TEXT) {
+                    text += tokenizer.length();
+                } else if (t == RtfTokenizer.WORD && tokenizer.keyword() == RtfTokenizer.Keyword.PAR) {
+                    pars++;
+                }
+            }
+        }
+        assertEquals(30_000 * 7, text);
+        assertEquals(30_000, pars);
+    }
+
+    private Path write(String rtf) throws IOException {
+        Path file = dir.resolve("tokens.rtf");
+        Files.write(file, rtf.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String describe(RtfTokenizer tokenizer, int token) {
+        switch (token) {
+            case RtfTokenizer.GROUP_START:
+                return "{";
+            case RtfTokenizer.GROUP_END:
+                return "}";
+            case RtfTokenizer.WORD:
+                return "\\" + tokenizer.keyword().word + (tokenizer.hasParameter() ? tokenizer.parameter() : "");
+            case RtfTokenizer.SYMBOL:
+                return "sym " + tokenizer.symbol();
+            case RtfTokenizer.HEX:
+                return "hex " + Integer.toHexString(tokenizer.parameter());
+            default:
+                String text = new String(tokenizer.array(), tokenizer.start(), tokenizer.length());
+                return "'" + new String(text.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8) + "'";
+        }
+    }
+}
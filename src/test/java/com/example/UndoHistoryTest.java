@@ -0,0 +1,229 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.text.*;
+import javax.swing.undo.UndoManager;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * История отмены: компактные правки набора отменяются и повторяются так же,
+ * как события документа в стандартном {@link UndoManager} — с тем же текстом,
+ * теми же элементами и той же структурой направлений.
+ */
+class UndoHistoryTest {
+
+    private static final String HTML = "<html><body><p>Первый <b>жирный</b> абзац</p><p>второй</p></body></html>";
+
+    @Test
+    void undoAndRedoMatchUndoManager() throws Exception {
+        Editor compact = new Editor(new UndoHistory(UndoHistory.DEFAULT_BUDGET));
+        Editor plain = new Editor(null);
+        String original = compact.text();
+        List<String> structure = compact.structure();
+
+        for (Editor editor : new Editor[]{compact, plain}) {
+            editor.pane.setCaretPosition(3);
+            editor.type("набор слов ");
+            editor.backspace(2);
+            editor.type("\nновый абзац");
+            editor.pane.setCaretPosition(editor.doc.getLength() - 2);
+            editor.delete(1);
+            editor.type("текст справа налево: שלום עולם");
+        }
+        String edited = compact.text();
+        List<String> editedStructure = compact.structure();
+        assertEquals(plain.text(), edited);
+        assertEquals(plain.structure(), editedStructure);
+
+        compact.undoAll();
+        plain.undoAll();
+        assertEquals(original, compact.text());
+        assertEquals(plain.structure(), compact.structure());
+        assertEquals(structure, compact.structure());
+
+        compact.redoAll();
+        plain.redoAll();
+        assertEquals(edited, compact.text());
+        assertEquals(plain.structure(), compact.structure());
+        assertEquals(editedStructure, compact.structure());
+    }
+
+    @Test
+    void coalescesTypingIntoWords() throws Exception {
+        UndoHistory history = new UndoHistory(UndoHistory.DEFAULT_BUDGET);
+        Editor editor = new Editor(history);
+        editor.pane.setCaretPosition(3);
+        String before = editor.text();
+        editor.type("один два три");
+        // Набор внутри участка хранится смещением и текстом, а не событиями документа
+        assertTrue(history.getUsedBytes() < 512, "used " + history.getUsedBytes());
+
+        history.undo();
+        assertEquals(insert(before, 3, "один два "), editor.text());
+        history.undo();
+        assertEquals(insert(before, 3, "один "), editor.text());
+        history.redo();
+        assertEquals(insert(before, 3, "один два "), editor.text());
+
+        editor.type("x");
+        assertFalse(history.canRedo());
+        // Стёртые подряд символы сливаются до границы слова: "x" и "ва " — две правки
+        editor.backspace(4);
+        assertEquals(insert(before, 3, "один д"), editor.text());
+        history.undo();
+        assertEquals(insert(before, 3, "один два "), editor.text());
+        history.undo();
+        assertEquals(insert(before, 3, "один два x"), editor.text());
+    }
+
+    @Test
+    void dropsOldestStepsOverBudget() throws Exception {
+        UndoHistory history = new UndoHistory(1000);
+        Editor editor = new Editor(history);
+        editor.pane.setCaretPosition(3);
+        String before = editor.text();
+        StringBuilder typed = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            editor.type("слово ");
+            typed.append("слово ");
+            assertTrue(history.getUsedBytes() <= 1000, "used " + history.getUsedBytes());
+        }
+
+        int steps = 0;
+        while (history.canUndo()) {
+            history.undo();
+            steps++;
+        }
+        assertTrue(steps > 1 && steps < 100, "steps " + steps);
+        assertEquals(insert(before, 3, typed.substring(0, (100 - steps) * "слово ".length())), editor.text());
+    }
+
+    @Test
+    void sharesRecentWords() {
+        UndoHistory history = new UndoHistory(UndoHistory.DEFAULT_BUDGET);
+        String word = history.share(new String("кот"));
+        String first = history.share(new String("пёс"));
+        assertSame(word, history.share(new String("кот")));
+        String longText = new String(new char[40]);
+        assertSame(longText, history.share(longText));
+        assertNotSame(longText, history.share(new String(new char[40])));
+
+        for (int i = 0; i < 10_000; i++) {
+            history.share("w" + i);
+            if (i % 1000 == 0) {
+                assertSame(word, history.share(new String("кот")));
+            }
+        }
+        // Недавно встречавшееся слово остаётся, давно не встречавшееся вытеснено
+        assertSame(word, history.share(new String("кот")));
+        assertNotSame(first, history.share(new String("пёс")));
+    }
+
+    private static String insert(String text, int offset, String inserted) {
+        return text.substring(0, offset) + inserted + text.substring(offset);
+    }
+
+    /**
+     * Редактор с историей отмены: {@link UndoHistory} или, если её нет, {@link UndoManager}.
+     */
+    private static final class Editor {
+
+        final WordProcessorDocument doc;
+
+        final JEditorPane pane = new JEditorPane();
+
+        final UndoHistory history;
+
+        final UndoManager manager = new UndoManager();
+
+        Editor(UndoHistory history) throws Exception {
+            WordProcessorEditorKit kit = new WordProcessorEditorKit(WordProcessorEditorKit.ContentEngine.PIECE_TABLE);
+            doc = (WordProcessorDocument) DocumentLoadWorker.read(kit, new StringReader(HTML));
+            // Каретка следит за правками и вне потока событий
+            ((DefaultCaret) pane.getCaret()).setUpdatePolicy(DefaultCaret.ALWAYS_UPDATE);
+            pane.setEditorKit(kit);
+            pane.setDocument(doc);
+            this.history = history;
+            if (history != null) {
+                history.attach(doc);
+            } else {
+                manager.setLimit(-1);
+                doc.addUndoableEditListener((UndoableEditListener) manager);
+            }
+        }
+
+        void type(String text) {
+            for (char c : text.toCharArray()) {
+                pane.replaceSelection(String.valueOf(c));
+            }
+        }
+
+        void backspace(int count) throws BadLocationException {
+            for (int i = 0; i < count; i++) {
+                doc.remove(pane.getCaretPosition() - 1, 1);
+            }
+        }
+
+        void delete(int count) throws BadLocationException {
+            for (int i = 0; i < count; i++) {
+                doc.remove(pane.getCaretPosition(), 1);
+            }
+        }
+
+        void undoAll() {
+            if (history != null) {
+                while (history.canUndo()) {
+                    history.undo();
+                }
+            } else {
+                while (manager.canUndo()) {
+                    manager.undo();
+                }
+            }
+        }
+
+        void redoAll() {
+            if (history != null) {
+                while (history.canRedo()) {
+                    history.redo();
+                }
+            } else {
+                while (manager.canRedo()) {
+                    manager.redo();
+                }
+            }
+        }
+
+        String text() throws BadLocationException {
+            return doc.getText(0, doc.getLength());
+        }
+
+        /**
+         * Элементы документа и структуры направлений по порядку обхода: имя, начало и конец.
+         */
+        List<String> structure() {
+            List<String> out = new ArrayList<>();
+            collect(doc.getDefaultRootElement(), out);
+            collect(doc.getBidiRootElement(), out);
+            return out;
+        }
+
+        private static void collect(Element e, List<String> out) {
+            out.add(e.getName() + " " + e.getStartOffset() + " " + e.getEndOffset());
+            for (int i = 0; i < e.getElementCount(); i++) {
+                collect(e.getElement(i), out);
+            }
+        }
+    }
+}
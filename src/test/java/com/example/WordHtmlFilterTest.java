@@ -0,0 +1,139 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Очистка HTML из Word: условные комментарии, теги и атрибуты с префиксами,
+ * объявления {@code mso-…} — в том числе когда разметку разрезает граница чтения.
+ */
+class WordHtmlFilterTest {
+
+    private static final String WORD = "<html xmlns:o=\"urn:schemas-microsoft-com:office:office\""
+            + " xmlns:v=\"urn:schemas-microsoft-com:vml\">\n"
+            + "<head><meta name=Generator content=\"Microsoft Word 15\"><meta charset=\"utf-8\">"
+            + "<link rel=File-List href=\"a_files/filelist.xml\"><link rel=stylesheet href=\"a.css\">\n"
+            + "<style><!--\n"
+            + "p.MsoNormal {mso-style-parent:\"\"; margin:0cm; font-family:\"Calibri\";mso-fareast-font-family:Calibri}\n"
+            + "@media print {p {mso-pagination:none;color:red}}\n"
+            + "--></style>\n"
+            + "<!--[if gte mso 9]><xml><w:WordDocument><w:View>Print</w:View></w:WordDocument></xml><![endif]-->\n"
+            + "<!-- обычный комментарий -->\n"
+            + "</head>\n"
+            + "<body lang=RU style='tab-interval:35.4pt'>\n"
+            + "<?xml:namespace prefix = o ns = \"urn:schemas-microsoft-com:office:office\" /?>\n"
+            + "<p class=MsoNormal style='margin:0cm;mso-line-height-alt:12pt'>Текст "
+            + "<span lang=EN-US style='mso-ansi-language:EN-US'>English</span><o:p></o:p></p>\n"
+            + "<![if !supportLists]><span style='font-family:Symbol'>·</span><![endif]>\n"
+            + "<v:shape id=\"x\" o:spid=\"_x0000_s1026\"><v:imagedata src=\"a.png\"/><v:shape>вложенная</v:shape>"
+            + " текст рисунка</v:shape>\n"
+            + "<p o:title=\"\" align=center>1 < 2 &lt; 3</p>\n"
+            + "</body></html>";
+
+    private static final String CLEAN = "<html>\n"
+            + "<head><meta charset=\"utf-8\"><link rel=stylesheet href=\"a.css\">\n"
+            + "<style><!--\n"
+            + "p.MsoNormal { margin:0cm; font-family:\"Calibri\";}\n"
+            + "@media print {p {color:red}}\n"
+            + "--></style>\n"
+            + "\n"
+            + "<!-- обычный комментарий -->\n"
+            + "</head>\n"
+            + "<body lang=RU style='tab-interval:35.4pt'>\n"
+            + "\n"
+            + "<p class=MsoNormal style='margin:0cm'>Текст English</p>\n"
+            + "<span style='font-family:Symbol'>·</span>\n"
+            + "\n"
+            + "<p align=center>1 < 2 &lt; 3</p>\n"
+            + "</body></html>";
+
+    @Test
+    void removesWordMarkup() throws IOException {
+        WordHtmlFilter filter = new WordHtmlFilter(new StringReader(WORD));
+        assertEquals(CLEAN, read(filter, 4096));
+        assertEquals(WORD.length(), filter.getCharactersRead());
+        assertEquals(WORD.length() - CLEAN.length(), filter.getCharactersRemoved());
+    }
+
+    @Test
+    void leavesPlainHtmlUnchanged() throws IOException {
+        String html = "<!DOCTYPE html><html><head><style>p {color:red; margin:0}</style></head>"
+                + "<body><!-- комментарий --><p style=\"font-size:12pt\">a <span class=x>b</span></p></body></html>";
+        WordHtmlFilter filter = new WordHtmlFilter(new StringReader(html));
+        assertEquals(html, read(filter, 4096));
+        assertEquals(0, filter.getCharactersRemoved());
+    }
+
+    @Test
+    void sameResultWhenReadsSplitMarkup() throws IOException {
+        // Источник отдаёт по нескольку символов: граница чтения проходит через каждый тег,
+        // комментарий и объявление стиля
+        for (int chunk = 1; chunk <= 13; chunk++) {
+            for (int request = 1; request <= 5; request += 4) {
+                WordHtmlFilter filter = new WordHtmlFilter(new ChunkedReader(WORD, chunk));
+                assertEquals(CLEAN, read(filter, request), "chunk " + chunk + ", request " + request);
+                assertEquals(WORD.length() - CLEAN.length(), filter.getCharactersRemoved());
+            }
+        }
+    }
+
+    @Test
+    void sameResultAcrossFullBuffer() throws IOException {
+        // Сдвиг разметки относительно конца буфера фильтра в 8192 символа
+        for (int padding = 8100; padding <= 8200; padding++) {
+            StringBuilder text = new StringBuilder(padding);
+            for (int i = 0; i < padding; i++) {
+                text.append((char) ('a' + i % 26));
+            }
+            String body = "<p>" + text + "</p>";
+            WordHtmlFilter filter = new WordHtmlFilter(new StringReader(body + WORD));
+            assertEquals(body + CLEAN, read(filter, 8192), "padding " + padding);
+        }
+    }
+
+    private static String read(Reader in, int request) throws IOException {
+        StringBuilder out = new StringBuilder();
+        char[] buffer = new char[request];
+        for (int n; (n = in.read(buffer, 0, buffer.length)) >= 0; ) {
+            out.append(buffer, 0, n);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Источник, который за одно чтение отдаёт не больше заданного числа символов.
+     */
+    private static final class ChunkedReader extends Reader {
+
+        private final String text;
+
+        private final int chunk;
+
+        private int position;
+
+        ChunkedReader(String text, int chunk) {
+            this.text = text;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (position == text.length()) {
+                return -1;
+            }
+            int n = Math.min(Math.min(len, chunk), text.length() - position);
+            text.getChars(position, position + n, cbuf, off);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.example;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.*;
+import javax.swing.undo.UndoManager;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Замена всех вхождений ({@link WordProcessorDocument#replaceAll}) через несколько абзацев.
+ * Документ на {@link PieceTableContent} заменяет вхождения в содержимом, документ
+ * на {@code GapContent} — обычными правками; текст и каретка у них должны совпасть,
+ * а границы элементов и позиции — перейти на смещения, которые даёт замена.
+ */
+class WordProcessorDocumentTest {
+
+    private static final String HTML = "<html><body>"
+            + "<p>кот и <b>кот</b> и котёнок</p>"
+            + "<p>кот</p>"
+            + "<h1>ещё кот</h1>"
+            + "<ul><li>кот, кот</li></ul>"
+            + "<p>без совпадений</p>"
+            + "<p>последний кот.</p>"
+            + "</body></html>";
+
+    private static final String MATCH = "кот";
+
+    @ParameterizedTest
+    @ValueSource(strings = {"кошка", "К", ""})
+    void replacesAcrossParagraphs(String replacement) throws Exception {
+        Editor batched = new Editor(WordProcessorEditorKit.ContentEngine.PIECE_TABLE);
+        Editor plain = new Editor(WordProcessorEditorKit.ContentEngine.GAP);
+        String text = batched.text();
+        List<Integer> matches = new ArrayList<>();
+        for (int i = text.indexOf(MATCH); i >= 0; i = text.indexOf(MATCH, i + MATCH.length())) {
+            matches.add(i);
+        }
+        assertTrue(matches.size() >= 7);
+        int[] offsets = matches.stream().mapToInt(Integer::intValue).toArray();
+
+        // Каретка внутри предпоследнего вхождения
+        int caret = offsets[offsets.length - 2] + 1;
+        batched.pane.setCaretPosition(caret);
+        plain.pane.setCaretPosition(caret);
+        List<String> structure = batched.structure();
+        List<Position> positions = new ArrayList<>();
+        for (int offset = 0; offset <= batched.doc.getLength(); offset++) {
+            positions.add(batched.doc.createPosition(offset));
+        }
+        List<int[]> events = new ArrayList<>();
+        batched.doc.addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                events.add(new int[]{e.getOffset(), e.getLength()});
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                events.add(new int[]{e.getOffset(), e.getLength()});
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+
+        assertEquals(offsets.length, batched.doc.replaceAll(offsets, offsets.length, MATCH.length(), replacement));
+        assertEquals(offsets.length, plain.doc.replaceAll(offsets, offsets.length, MATCH.length(), replacement));
+
+        String replaced = text.replace(MATCH, replacement);
+        assertEquals(replaced, batched.text());
+        assertEquals(replaced, plain.text());
+        assertEquals(plain.pane.getCaretPosition(), batched.pane.getCaretPosition());
+        // События — о самих вхождениях, а не о тексте между ними
+        for (int[] event : events) {
+            assertTrue(event[1] <= Math.max(MATCH.length(), replacement.length()), "event length " + event[1]);
+        }
+        if (!replacement.isEmpty()) {
+            assertEquals(map(structure, offsets, replacement.length()), batched.structure());
+        }
+        assertPositions(positions, offsets, replacement.length());
+
+        batched.undo.undo();
+        plain.undo.undo();
+        assertEquals(text, batched.text());
+        assertEquals(text, plain.text());
+        assertEquals(structure, batched.structure());
+        assertEquals(plain.pane.getCaretPosition(), batched.pane.getCaretPosition());
+        for (int offset = 0; offset < positions.size(); offset++) {
+            assertEquals(offset, positions.get(offset).getOffset(), "position after undo");
+        }
+
+        batched.undo.redo();
+        plain.undo.redo();
+        assertEquals(replaced, batched.text());
+        assertEquals(replaced, plain.text());
+        assertEquals(plain.pane.getCaretPosition(), batched.pane.getCaretPosition());
+        if (!replacement.isEmpty()) {
+            assertEquals(map(structure, offsets, replacement.length()), batched.structure());
+        }
+        assertPositions(positions, offsets, replacement.length());
+    }
+
+    private static void assertPositions(List<Position> positions, int[] offsets, int replacementLength) {
+        for (int offset = 0; offset < positions.size(); offset++) {
+            assertEquals(map(offset, offsets, replacementLength), positions.get(offset).getOffset(),
+                    "position " + offset);
+        }
+    }
+
+    /**
+     * Новое смещение по прежнему: внутри вхождения — не дальше конца замены,
+     * за вхождением — со сдвигом на разницу длин.
+     */
+    private static int map(int offset, int[] offsets, int replacementLength) {
+        int delta = replacementLength - MATCH.length();
+        int shift = 0;
+        for (int start : offsets) {
+            if (offset < start) {
+                break;
+            }
+            if (offset < start + MATCH.length()) {
+                return start + shift + Math.min(offset - start, replacementLength);
+            }
+            shift += delta;
+        }
+        return offset + shift;
+    }
+
+    private static List<String> map(List<String> structure, int[] offsets, int replacementLength) {
+        List<String> mapped = new ArrayList<>();
+        for (String line : structure) {
+            String[] parts = line.split(" ");
+            mapped.add(parts[0] + " " + map(Integer.parseInt(parts[1]), offsets, replacementLength)
+                    + " " + map(Integer.parseInt(parts[2]), offsets, replacementLength));
+        }
+        return mapped;
+    }
+
+    /**
+     * Документ в редакторе с историей отмены.
+     */
+    private static final class Editor {
+
+        final WordProcessorDocument doc;
+
+        final JEditorPane pane = new JEditorPane();
+
+        final UndoManager undo = new UndoManager();
+
+        Editor(WordProcessorEditorKit.ContentEngine engine) throws Exception {
+            WordProcessorEditorKit kit = new WordProcessorEditorKit(engine);
+            doc = (WordProcessorDocument) DocumentLoadWorker.read(kit, new StringReader(HTML));
+            // Каретка следит за правками и вне потока событий
+            ((DefaultCaret) pane.getCaret()).setUpdatePolicy(DefaultCaret.ALWAYS_UPDATE);
+            pane.setEditorKit(kit);
+            pane.setDocument(doc);
+            doc.addUndoableEditListener(undo);
+        }
+
+        String text() throws BadLocationException {
+            return doc.getText(0, doc.getLength());
+        }
+
+        /**
+         * Элементы документа по порядку обхода: имя, начало и конец.
+         */
+        List<String> structure() {
+            List<String> out = new ArrayList<>();
+            collect(doc.getDefaultRootElement(), out);
+            return out;
+        }
+
+        private static void collect(Element e, List<String> out) {
+            out.add(e.getName() + " " + e.getStartOffset() + " " + e.getEndOffset());
+            for (int i = 0; i < e.getElementCount(); i++) {
+                collect(e.getElement(i), out);
+            }
+        }
+    }
+}